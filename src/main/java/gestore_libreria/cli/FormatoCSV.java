@@ -0,0 +1,129 @@
+package gestore_libreria.cli;
+
+import gestore_libreria.model.Libro;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lettura e scrittura dei libri in CSV (RFC 4180) una riga alla volta, così importazioni ed esportazioni
+ * non tengono in memoria l'intero catalogo.
+ * I campi con virgole, virgolette o a capo sono racchiusi tra virgolette, raddoppiando quelle interne.
+ */
+final class FormatoCSV {
+
+    static final List<String> INTESTAZIONE = List.of("id", "titolo", "autore", "isbn", "genere", "valutazione", "stato", "copertina");
+
+    private FormatoCSV() {
+    }
+
+    /**
+     * @param destinazione dove scrivere
+     * @param campi i campi della riga
+     * @post la riga, terminata da {@code \r\n}, è stata scritta in {@code destinazione}
+     */
+    static void scriviRiga(Appendable destinazione, List<String> campi) throws IOException {
+        for (int i = 0; i < campi.size(); i++) {
+            if (i > 0) {
+                destinazione.append(',');
+            }
+            String campo = campi.get(i) == null ? "" : campi.get(i);
+            if (campo.indexOf(',') >= 0 || campo.indexOf('"') >= 0 || campo.indexOf('\n') >= 0 || campo.indexOf('\r') >= 0) {
+                destinazione.append('"').append(campo.replace("\"", "\"\"")).append('"');
+            } else {
+                destinazione.append(campo);
+            }
+        }
+        destinazione.append("\r\n");
+    }
+
+    static void scriviLibro(Appendable destinazione, Libro libro) throws IOException {
+        scriviRiga(destinazione, List.of(String.valueOf(libro.getId()), libro.getTitolo(), libro.getAutore(),
+                testo(libro.getIsbn()), testo(libro.getGenere()), String.valueOf(libro.getValutazione()),
+                testo(libro.getStatoLettura()), testo(libro.getPercorsoCopertina())));
+    }
+
+    private static String testo(String valore) {
+        return valore == null ? "" : valore;
+    }
+
+    /**
+     * @param sorgente il testo CSV, letto fino alla fine della riga successiva
+     * @return i campi della riga, o null se il testo è finito
+     * @throws IllegalArgumentException se il testo termina dentro un campo tra virgolette
+     */
+    static List<String> leggiRiga(Reader sorgente) throws IOException {
+        int carattere = sorgente.read();
+        if (carattere < 0) {
+            return null;
+        }
+        List<String> campi = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean traVirgolette = false;
+        while (true) {
+            if (traVirgolette) {
+                if (carattere < 0) {
+                    throw new IllegalArgumentException("CSV non valido: virgolette non chiuse");
+                }
+                if (carattere == '"') {
+                    carattere = sorgente.read();
+                    if (carattere != '"') {
+                        traVirgolette = false;
+                        continue;       // il carattere dopo la virgoletta di chiusura va esaminato fuori dal campo
+                    }
+                }
+                campo.append((char) carattere);
+            } else if (carattere == '"' && campo.isEmpty()) {
+                traVirgolette = true;
+            } else if (carattere == ',') {
+                campi.add(campo.toString());
+                campo.setLength(0);
+            } else if (carattere == '\n' || carattere < 0) {
+                break;
+            } else if (carattere != '\r') {
+                campo.append((char) carattere);
+            }
+            carattere = sorgente.read();
+        }
+        campi.add(campo.toString());
+        return campi;
+    }
+
+    /**
+     * Costruisce un libro da una riga letta con {@link #leggiRiga(Reader)}, nell'ordine di {@link #INTESTAZIONE}.
+     * L'id viene ignorato: i libri importati ricevono un id nuovo.
+     *
+     * @param campi i campi della riga
+     * @param numeroRiga il numero della riga, per i messaggi di errore
+     * @return il libro descritto dalla riga
+     * @throws IllegalArgumentException se mancano titolo o autore o la valutazione non è valida
+     */
+    static Libro libro(List<String> campi, int numeroRiga) {
+        if (campi.size() < 3 || campi.get(1).isBlank() || campi.get(2).isBlank()) {
+            throw new IllegalArgumentException("Riga " + numeroRiga + ": titolo e autore sono obbligatori");
+        }
+        Libro.Costruttore costruttore = new Libro.Costruttore(campi.get(1).strip(), campi.get(2).strip())
+                .isbn(campo(campi, 3))
+                .genere(campo(campi, 4))
+                .percorsoCopertina(campo(campi, 7));
+        String valutazione = campo(campi, 5);
+        if (!valutazione.isEmpty()) {
+            try {
+                costruttore.valutazione(Integer.parseInt(valutazione));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Riga " + numeroRiga + ": valutazione non valida: " + valutazione);
+            }
+        }
+        String stato = campo(campi, 6);
+        if (!stato.isEmpty()) {
+            costruttore.statoLettura(stato);
+        }
+        return costruttore.build();
+    }
+
+    private static String campo(List<String> campi, int indice) {
+        return indice < campi.size() ? campi.get(indice).strip() : "";
+    }
+}
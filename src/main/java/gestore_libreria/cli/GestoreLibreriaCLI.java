@@ -0,0 +1,473 @@
+package gestore_libreria.cli;
+
+import gestore_libreria.copertine.ArchivioCopertine;
+import gestore_libreria.db.DatabaseConnectionSingleton;
+import gestore_libreria.db.ElaborazioneParallela;
+import gestore_libreria.db.ErroreDatabase;
+import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.db.InterrogazioneViva;
+import gestore_libreria.db.RepositoryLibroSQLite;
+import gestore_libreria.indice.ContatoreFacet;
+import gestore_libreria.memento.CustodeCronologiaLibro;
+import gestore_libreria.memento.GiornaleCronologia;
+import gestore_libreria.model.CampoLibro;
+import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.model.Libro;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Punto di ingresso a riga di comando per le operazioni pianificate sulla libreria, ad esempio i job notturni.
+ * Usa solo il gestore e il repository SQLite: non imposta il look and feel, non crea finestre e non carica
+ * nessuna classe AWT o Swing, quindi parte rapidamente e funziona anche senza display.
+ * <p>
+ * Uso: {@code java -cp Gestore_Libreria.jar gestore_libreria.cli.GestoreLibreriaCLI [--db file] comando [opzioni]}.
+ * I risultati vengono scritti su standard output man mano che sono letti; i messaggi e gli errori su standard error.
+ * Il codice di uscita è 0 in caso di successo, 1 per un errore durante l'esecuzione e 2 per un uso errato.
+ * <p>
+ * Le modifiche fatte da qui non entrano nella cronologia di undo/redo dell'interfaccia grafica.
+ */
+public class GestoreLibreriaCLI {
+
+    private static final String USO = """
+            Uso: GestoreLibreriaCLI [--db file] comando [opzioni]
+
+            Comandi:
+              cerca [filtri] [--ordina criterio]    stampa i libri in CSV
+              statistiche                           conteggi per stato, valutazione e genere
+              importa file.csv|file.db|-            aggiunge i libri di un CSV (- per standard input)
+                                                    oppure sostituisce il database con una copia
+              esporta file.csv|file.db|- [--ordina criterio]
+                                                    scrive i libri in CSV (- per standard output)
+                                                    oppure una copia compatta del database
+              aggiorna --campo campo --valore valore (filtri | --tutti)
+                                                    imposta un campo sui libri filtrati, in una transazione
+              compatta                              VACUUM e ottimizzazione degli indici
+
+            Filtri (il testo è cercato ovunque nel campo, senza distinguere maiuscole e minuscole):
+              --titolo testo  --autore testo  --isbn testo  --genere testo  --stato testo  --valutazione n
+            Campi: titolo, autore, isbn, genere, valutazione, stato, copertina
+            Criteri: %s
+            """.formatted(String.join(", ", nomiCriteri()));
+
+    // libri aggiunti con una sola transazione durante l'importazione di un CSV
+    static final int BLOCCO_IMPORTAZIONE = 1_000;
+
+    private static final Map<String, CampoLibro> CAMPI = Map.of(
+            "titolo", CampoLibro.TITOLO,
+            "autore", CampoLibro.AUTORE,
+            "isbn", CampoLibro.ISBN,
+            "genere", CampoLibro.GENERE,
+            "valutazione", CampoLibro.VALUTAZIONE,
+            "stato", CampoLibro.STATO_LETTURA,
+            "copertina", CampoLibro.PERCORSO_COPERTINA);
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private GestoreLibroConcreto gestore;
+
+    GestoreLibreriaCLI(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        // nessuna libreria usata qui ha bisogno di un display; lo dichiaro per chi dovesse caricare AWT indirettamente
+        System.setProperty("java.awt.headless", "true");
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                false, StandardCharsets.UTF_8);
+        // il repository e la connessione stampano messaggi di servizio su System.out: li sposto su standard error
+        // perché standard output deve contenere solo i risultati, ad esempio il CSV da reimportare
+        System.setOut(System.err);
+        int esito = new GestoreLibreriaCLI(out, System.err).esegui(args);
+        out.flush();
+        System.exit(esito);
+    }
+
+    /**
+     * @param args gli argomenti della riga di comando
+     * @post la connessione al database è chiusa
+     * @return il codice di uscita
+     */
+    int esegui(String[] args) {
+        List<String> argomenti = new ArrayList<>(List.of(args));
+        try {
+            String database = opzione(argomenti, "--db");
+            if (database != null) {
+                DatabaseConnectionSingleton.setDatabasePath(database);
+            }
+            if (argomenti.isEmpty()) {
+                err.print(USO);
+                return 2;
+            }
+            String comando = argomenti.remove(0);
+            return switch (comando) {
+                case "cerca" -> cerca(argomenti);
+                case "statistiche" -> statistiche(argomenti);
+                case "importa" -> importa(argomenti);
+                case "esporta" -> esporta(argomenti);
+                case "aggiorna" -> aggiorna(argomenti);
+                case "compatta" -> compatta(argomenti);
+                case "aiuto", "-h", "--help" -> {
+                    out.print(USO);
+                    yield 0;
+                }
+                default -> throw new IllegalArgumentException("Comando sconosciuto: " + comando + "\n\n" + USO);
+            };
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (IOException | SQLException | ErroreDatabase e) {
+            err.println("Errore: " + e.getMessage());
+            return 1;
+        } finally {
+            out.flush();
+            DatabaseConnectionSingleton.closeConnection();
+        }
+    }
+
+    // il gestore viene creato solo dai comandi che lo usano: l'importazione di un .db deve prima sostituire il file
+    private GestoreLibroConcreto gestore() {
+        if (gestore == null) {
+            gestore = new GestoreLibroConcreto(new RepositoryLibroSQLite(), new CustodeCronologiaLibro());
+        }
+        return gestore;
+    }
+
+    private int cerca(List<String> argomenti) throws IOException {
+        CriterioOrdinamento criterio = criterio(opzione(argomenti, "--ordina"));
+        List<Libro> libri = trova(argomenti, criterio);
+        nessunAltroArgomento(argomenti);
+        scriviCSV(libri, out);
+        return 0;
+    }
+
+    private int statistiche(List<String> argomenti) {
+        nessunAltroArgomento(argomenti);
+        ContatoreFacet facet = gestore().getContatoreFacet();
+        out.println("totale\t" + facet.getTotale());
+        for (String stato : List.of("letto", "in lettura", "da leggere")) {
+            out.println("stato\t" + stato + "\t" + facet.getPerStato(stato));
+        }
+        for (int valutazione = 0; valutazione <= 5; valutazione++) {
+            out.println("valutazione\t" + valutazione + "\t" + facet.getPerValutazione(valutazione));
+        }
+        for (Map.Entry<String, Integer> genere : facet.getGeneriPrincipali(Integer.MAX_VALUE).entrySet()) {
+            out.println("genere\t" + genere.getKey() + "\t" + genere.getValue());
+        }
+        return 0;
+    }
+
+    private int importa(List<String> argomenti) throws IOException, SQLException {
+        String file = unicoArgomento(argomenti, "importa");
+        if (file.endsWith(".db")) {
+            return importaDatabase(Path.of(file));
+        }
+        Reader sorgente = file.equals("-")
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8);
+        int importati = 0;
+        try (BufferedReader lettore = new BufferedReader(sorgente)) {
+            List<String> campi = FormatoCSV.leggiRiga(lettore);
+            if (campi != null && !campi.isEmpty() && !campi.get(0).isEmpty() && campi.get(0).charAt(0) == '﻿') {
+                campi.set(0, campi.get(0).substring(1));
+            }
+            int numeroRiga = 1;
+            // la prima riga è l'intestazione solo se coincide con quella scritta da esporta
+            if (campi != null && campi.equals(FormatoCSV.INTESTAZIONE)) {
+                campi = FormatoCSV.leggiRiga(lettore);
+                numeroRiga++;
+            }
+            List<Libro> blocco = new ArrayList<>(BLOCCO_IMPORTAZIONE);
+            for (; campi != null; campi = FormatoCSV.leggiRiga(lettore), numeroRiga++) {
+                if (campi.size() == 1 && campi.get(0).isBlank()) {
+                    continue;
+                }
+                blocco.add(FormatoCSV.libro(campi, numeroRiga));
+                if (blocco.size() == BLOCCO_IMPORTAZIONE) {
+                    importati += aggiungi(blocco);
+                }
+            }
+            importati += aggiungi(blocco);
+        }
+        err.println("Libri importati: " + importati);
+        return 0;
+    }
+
+    private int aggiungi(List<Libro> blocco) {
+        int aggiunti = blocco.size();
+        if (aggiunti > 0) {
+            gestore().aggiungiLibri(new ArrayList<>(blocco));
+            blocco.clear();
+        }
+        return aggiunti;
+    }
+
+    // come l'importazione dell'interfaccia grafica: il file sostituisce il database e la cronologia salvata viene svuotata
+    private int importaDatabase(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("file non trovato: " + file);
+        }
+        String database = DatabaseConnectionSingleton.getDatabasePath();
+        DatabaseConnectionSingleton.closeConnection();
+        Files.copy(file, Path.of(database), StandardCopyOption.REPLACE_EXISTING);
+        CustodeCronologiaLibro cronologia = new CustodeCronologiaLibro(CustodeCronologiaLibro.MASSIMO_VOCI_PREDEFINITO,
+                CustodeCronologiaLibro.MASSIMO_BYTE_PREDEFINITO, new GiornaleCronologia(percorsoCronologia(database)));
+        cronologia.cleanAll();
+        cronologia.chiudi();
+        // le copertine esterne del database importato vengono archiviate al prossimo avvio dell'interfaccia
+        ArchivioCopertine.getIstanza().riapriMigrazione();
+        // il repository aggiunge le colonne e le chiavi di ordinamento mancanti nei database di versioni precedenti
+        err.println("Database importato: " + gestore().contaLibri() + " libri");
+        return 0;
+    }
+
+    private static Path percorsoCronologia(String database) {
+        if (database.equals(DatabaseConnectionSingleton.DATABASE_PREDEFINITO)) {
+            return Path.of(GiornaleCronologia.FILE_PREDEFINITO);
+        }
+        return Path.of(database.endsWith(".db") ? database.substring(0, database.length() - 3) + ".cronologia" : database + ".cronologia");
+    }
+
+    private int esporta(List<String> argomenti) throws IOException, SQLException {
+        CriterioOrdinamento criterio = criterio(opzione(argomenti, "--ordina"));
+        String file = unicoArgomento(argomenti, "esporta");
+        if (file.endsWith(".db")) {
+            Path destinazione = Path.of(file).toAbsolutePath().normalize();
+            if (stessoFile(destinazione, Path.of(DatabaseConnectionSingleton.getDatabasePath()))) {
+                throw new IllegalArgumentException("La destinazione è il database aperto: " + file);
+            }
+            // VACUUM INTO scrive una copia coerente e compatta senza chiudere il database; la destinazione
+            // viene sostituita solo a copia completata, così un errore non la lascia vuota
+            Path temporaneo = destinazione.resolveSibling(destinazione.getFileName() + ".tmp");
+            Files.deleteIfExists(temporaneo);
+            Connection connection = DatabaseConnectionSingleton.getInstance();
+            try (PreparedStatement vacuum = connection.prepareStatement("VACUUM INTO ?")) {
+                vacuum.setString(1, temporaneo.toString());
+                vacuum.execute();
+                try {
+                    Files.move(temporaneo, destinazione, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporaneo, destinazione, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporaneo);
+            }
+            err.println("Database esportato in " + destinazione);
+            return 0;
+        }
+        List<Libro> libri = gestore().getTuttiLibriPaginati(criterio);
+        if (file.equals("-")) {
+            scriviCSV(libri, out);
+        } else {
+            try (Writer scrittore = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(Path.of(file)), StandardCharsets.UTF_8))) {
+                scriviCSV(libri, scrittore);
+            }
+            err.println("Libri esportati: " + libri.size());
+        }
+        return 0;
+    }
+
+    private static boolean stessoFile(Path primo, Path secondo) throws IOException {
+        if (Files.exists(primo) && Files.exists(secondo)) {
+            return Files.isSameFile(primo, secondo);
+        }
+        return primo.toAbsolutePath().normalize().equals(secondo.toAbsolutePath().normalize());
+    }
+
+    private int aggiorna(List<String> argomenti) throws IOException {
+        String nomeCampo = opzione(argomenti, "--campo");
+        String testo = opzione(argomenti, "--valore");
+        boolean tutti = argomenti.remove("--tutti");
+        if (nomeCampo == null || testo == null) {
+            throw new IllegalArgumentException("aggiorna richiede --campo e --valore");
+        }
+        CampoLibro campo = CAMPI.get(nomeCampo.toLowerCase(Locale.ROOT));
+        if (campo == null) {
+            throw new IllegalArgumentException("Campo sconosciuto: " + nomeCampo);
+        }
+        Object valore = valoreCampo(campo, testo);
+        int filtri = argomenti.size();
+        List<Libro> libri = trova(argomenti, CriterioOrdinamento.NESSUNO);
+        nessunAltroArgomento(argomenti);
+        if (filtri == 0 && !tutti) {
+            throw new IllegalArgumentException("aggiorna senza filtri modifica tutti i libri: aggiungere --tutti per confermare");
+        }
+        List<Integer> ids = new ArrayList<>();
+        int cambiati = 0;
+        for (Libro libro : libri) {
+            ids.add(libro.getId());
+            if (!valore.equals(campo.valore(libro))) {
+                cambiati++;
+            }
+        }
+        gestore().impostaCampo(ids, campo, valore);
+        err.println("Libri trovati: " + ids.size() + ", modificati: " + cambiati);
+        return 0;
+    }
+
+    private static Object valoreCampo(CampoLibro campo, String testo) {
+        if (campo == CampoLibro.VALUTAZIONE) {
+            return valutazione(testo);
+        }
+        if ((campo == CampoLibro.TITOLO || campo == CampoLibro.AUTORE) && testo.isBlank()) {
+            throw new IllegalArgumentException("Titolo e autore non possono essere vuoti");
+        }
+        return testo;
+    }
+
+    private int compatta(List<String> argomenti) throws SQLException, IOException {
+        nessunAltroArgomento(argomenti);
+        Path file = Path.of(DatabaseConnectionSingleton.getDatabasePath());
+        long prima = Files.exists(file) ? Files.size(file) : 0;
+        Connection connection = DatabaseConnectionSingleton.getInstance();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA optimize");
+            statement.execute("VACUUM");
+        }
+        err.printf("Database compattato: %d KB -> %d KB%n", prima / 1024, Files.size(file) / 1024);
+        return 0;
+    }
+
+    /**
+     * Legge i libri che rispettano i filtri indicati negli argomenti. Il primo filtro restringe la query,
+     * gli altri vengono applicati ai libri letti; senza filtri il catalogo viene letto a pagine.
+     */
+    private List<Libro> trova(List<String> argomenti, CriterioOrdinamento criterio) {
+        List<Function<CriterioOrdinamento, List<Libro>>> query = new ArrayList<>();
+        List<Predicate<Libro>> condizioni = new ArrayList<>();
+        GestoreLibroConcreto gestore = gestore();
+        String testo;
+        if ((testo = opzione(argomenti, "--titolo")) != null) {
+            String cercato = testo;
+            query.add(c -> gestore.trovaLibroPerTitolo(cercato, c));
+            condizioni.add(InterrogazioneViva.contiene(Libro::getTitolo, testo));
+        }
+        if ((testo = opzione(argomenti, "--autore")) != null) {
+            String cercato = testo;
+            query.add(c -> gestore.trovaLibroPerAutore(cercato, c));
+            condizioni.add(InterrogazioneViva.contiene(Libro::getAutore, testo));
+        }
+        if ((testo = opzione(argomenti, "--isbn")) != null) {
+            String cercato = testo;
+            query.add(c -> gestore.trovaLibroPerIsbn(cercato, c));
+            condizioni.add(InterrogazioneViva.contiene(Libro::getIsbn, testo));
+        }
+        if ((testo = opzione(argomenti, "--genere")) != null) {
+            String cercato = testo;
+            query.add(c -> gestore.trovaLibroPerGenere(cercato, c));
+            condizioni.add(InterrogazioneViva.contiene(Libro::getGenere, testo));
+        }
+        if ((testo = opzione(argomenti, "--stato")) != null) {
+            String cercato = testo;
+            query.add(c -> gestore.filtraLibroPerStatoLettura(cercato, c));
+            condizioni.add(InterrogazioneViva.contiene(Libro::getStatoLettura, testo));
+        }
+        if ((testo = opzione(argomenti, "--valutazione")) != null) {
+            int valutazione = valutazione(testo);
+            query.add(c -> gestore.filtraLibroPerValutazione(valutazione, c));
+            condizioni.add(libro -> libro.getValutazione() == valutazione);
+        }
+        if (query.isEmpty()) {
+            return gestore.getTuttiLibriPaginati(criterio);
+        }
+        List<Libro> libri = query.get(0).apply(criterio);
+        if (condizioni.size() > 1) {
+            Predicate<Libro> resto = condizioni.subList(1, condizioni.size()).stream().reduce(Predicate::and).orElseThrow();
+            // il primo filtro può restituire buona parte di un catalogo grande: il resto si valuta in parallelo
+            libri = ElaborazioneParallela.getIstanza().filtra(libri, resto);
+        }
+        return libri;
+    }
+
+    private static void scriviCSV(List<Libro> libri, Appendable destinazione) throws IOException {
+        FormatoCSV.scriviRiga(destinazione, FormatoCSV.INTESTAZIONE);
+        // per il catalogo a pagine l'iterazione legge una pagina alla volta
+        for (Libro libro : libri) {
+            FormatoCSV.scriviLibro(destinazione, libro);
+        }
+    }
+
+    private static int valutazione(String testo) {
+        try {
+            int valutazione = Integer.parseInt(testo.strip());
+            if (valutazione < 0 || valutazione > 5) {
+                throw new NumberFormatException();
+            }
+            return valutazione;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valutazione non valida, deve essere tra 0 e 5: " + testo);
+        }
+    }
+
+    private static CriterioOrdinamento criterio(String nome) {
+        if (nome == null) {
+            return CriterioOrdinamento.NESSUNO;
+        }
+        try {
+            return CriterioOrdinamento.valueOf(nome.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Criterio sconosciuto: " + nome + " (" + String.join(", ", nomiCriteri()) + ")");
+        }
+    }
+
+    private static List<String> nomiCriteri() {
+        List<String> nomi = new ArrayList<>();
+        for (CriterioOrdinamento criterio : CriterioOrdinamento.values()) {
+            nomi.add(criterio.name().toLowerCase(Locale.ROOT));
+        }
+        return nomi;
+    }
+
+    // toglie dagli argomenti "nome valore" e restituisce il valore, o null se l'opzione non c'è
+    private static String opzione(List<String> argomenti, String nome) {
+        int indice = argomenti.indexOf(nome);
+        if (indice < 0) {
+            return null;
+        }
+        if (indice + 1 >= argomenti.size()) {
+            throw new IllegalArgumentException("Manca il valore di " + nome);
+        }
+        argomenti.remove(indice);
+        return argomenti.remove(indice);
+    }
+
+    private static String unicoArgomento(List<String> argomenti, String comando) {
+        if (argomenti.size() != 1) {
+            throw new IllegalArgumentException(comando + " richiede un solo file");
+        }
+        return argomenti.remove(0);
+    }
+
+    private static void nessunAltroArgomento(List<String> argomenti) {
+        if (!argomenti.isEmpty()) {
+            throw new IllegalArgumentException("Argomenti non riconosciuti: " + String.join(" ", argomenti));
+        }
+    }
+}
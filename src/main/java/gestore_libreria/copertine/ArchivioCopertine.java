@@ -0,0 +1,196 @@
+package gestore_libreria.copertine;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Archivio delle copertine gestito dall'applicazione.
+ * Ogni immagine scelta dall'utente viene copiata una sola volta in una cartella locale con il nome dato dall'hash
+ * SHA-256 del contenuto: la stessa copertina scelta da più posizioni occupa un solo file e le letture avvengono
+ * sempre da disco locale, anche se l'originale si trovava su un percorso lento o rimovibile.
+ */
+public class ArchivioCopertine {
+
+    /**
+     * Cartella predefinita dell'archivio, relativa alla cartella di lavoro come il database predefinito
+     */
+    public static final String CARTELLA_PREDEFINITA = "copertine";
+
+    static final String MARCATORE_MIGRAZIONE = ".migrazione-completata";
+
+    private static final ArchivioCopertine ISTANZA = new ArchivioCopertine(Path.of(CARTELLA_PREDEFINITA));
+
+    private final Path cartella;
+
+    /**
+     * @param cartella la cartella in cui conservare le copertine, creata al primo utilizzo
+     */
+    public ArchivioCopertine(Path cartella) {
+        this.cartella = cartella.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return l'istanza condivisa usata dall'interfaccia grafica
+     */
+    public static ArchivioCopertine getIstanza() {
+        return ISTANZA;
+    }
+
+    /**
+     * Indica se il percorso si riferisce a una copertina già contenuta nell'archivio.
+     *
+     * @param percorso il percorso da verificare
+     * @return {@code true} se il file si trova nella cartella dell'archivio
+     */
+    public boolean contiene(String percorso) {
+        if (percorso == null || percorso.isEmpty() || CaricatoreImmagini.isRisorsa(percorso)) {
+            return false;
+        }
+        try {
+            return cartella.equals(Path.of(percorso).toAbsolutePath().normalize().getParent());
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copia l'immagine nell'archivio, a meno che un'immagine con lo stesso contenuto non sia già presente.
+     *
+     * @param percorso percorso del file scelto dall'utente
+     * @pre il file deve esistere ed essere leggibile
+     * @post l'archivio contiene un file con il contenuto dell'immagine, chiamato con il suo hash SHA-256
+     * @return il percorso della copertina nell'archivio, o il percorso originale se è una risorsa del JAR,
+     * è già nell'archivio oppure la copia non è riuscita
+     */
+    public String importa(String percorso) {
+        if (percorso == null || percorso.isEmpty() || CaricatoreImmagini.isRisorsa(percorso) || contiene(percorso)) {
+            return percorso;
+        }
+        String hash = CaricatoreImmagini.hashContenuto(percorso);
+        if (hash == null) {
+            return percorso;
+        }
+        Path destinazione = cartella.resolve(hash + estensione(percorso));
+        if (Files.isRegularFile(destinazione)) {
+            // stessa immagine già importata: nessuna copia
+            return destinazione.toString();
+        }
+        Path temporaneo = null;
+        try {
+            Files.createDirectories(cartella);
+            // copio in un file temporaneo e poi lo rinomino, così l'archivio non contiene mai copie parziali
+            temporaneo = Files.createTempFile(cartella, hash, ".tmp");
+            Files.copy(Path.of(percorso), temporaneo, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temporaneo, destinazione, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaneo, destinazione);
+            }
+            return destinazione.toString();
+        } catch (FileAlreadyExistsException e) {
+            // importata in contemporanea da un altro thread
+            return destinazione.toString();
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Impossibile importare la copertina " + percorso + ": " + e.getMessage());
+            return percorso;
+        } finally {
+            if (temporaneo != null) {
+                try {
+                    Files.deleteIfExists(temporaneo);
+                } catch (IOException e) {
+                    // il file temporaneo verrà sovrascritto o ignorato
+                }
+            }
+        }
+    }
+
+    /**
+     * Importa nell'archivio le copertine indicate, se la migrazione non è già stata completata.
+     * I file originali non vengono eliminati; le copertine mancanti o le risorse del JAR restano invariate.
+     * Può essere ripetuta senza effetti collaterali: le copertine già importate non vengono copiate di nuovo.
+     *
+     * @param percorsi i percorsi delle copertine attualmente nel database
+     * @post se la migrazione non era già stata completata, ogni copertina esistente è stata copiata nell'archivio
+     * @return la corrispondenza tra vecchio e nuovo percorso delle copertine importate, vuota se la migrazione
+     * era già stata completata
+     */
+    public Map<String, String> migra(Collection<String> percorsi) {
+        Map<String, String> nuoviPercorsi = new HashMap<>();
+        if (isMigrazioneCompletata()) {
+            return nuoviPercorsi;
+        }
+        for (String percorso : percorsi) {
+            if (percorso == null || contiene(percorso) || CaricatoreImmagini.isRisorsa(percorso) || !esiste(percorso)) {
+                continue;
+            }
+            String importato = importa(percorso);
+            if (!importato.equals(percorso)) {
+                nuoviPercorsi.put(percorso, importato);
+            }
+        }
+        return nuoviPercorsi;
+    }
+
+    /**
+     * @return {@code true} se il file marcatore della migrazione è presente nell'archivio
+     */
+    public boolean isMigrazioneCompletata() {
+        return Files.exists(cartella.resolve(MARCATORE_MIGRAZIONE));
+    }
+
+    /**
+     * Registra che i percorsi restituiti da {@link #migra(Collection)} sono stati salvati nel database.
+     *
+     * @post le chiamate successive a {@link #migra(Collection)} non importano nulla
+     */
+    public void completaMigrazione() {
+        try {
+            Files.createDirectories(cartella);
+            Files.writeString(cartella.resolve(MARCATORE_MIGRAZIONE), "");
+        } catch (IOException e) {
+            System.err.println("Impossibile registrare la migrazione delle copertine: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Annulla la registrazione della migrazione, ad esempio dopo l'importazione di un database le cui copertine
+     * si trovano ancora fuori dall'archivio. La migrazione è idempotente: le copertine già archiviate non vengono
+     * copiate di nuovo.
+     *
+     * @post {@code isMigrazioneCompletata()} restituisce {@code false}
+     */
+    public void riapriMigrazione() {
+        try {
+            Files.deleteIfExists(cartella.resolve(MARCATORE_MIGRAZIONE));
+        } catch (IOException e) {
+            System.err.println("Impossibile riaprire la migrazione delle copertine: " + e.getMessage());
+        }
+    }
+
+    private static boolean esiste(String percorso) {
+        try {
+            return Files.isRegularFile(Path.of(percorso));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    private static String estensione(String percorso) {
+        String nome = Path.of(percorso).getFileName().toString();
+        int punto = nome.lastIndexOf('.');
+        return punto > 0 ? nome.substring(punto).toLowerCase(Locale.ROOT) : "";
+    }
+
+    public Path getCartella() {
+        return cartella;
+    }
+}
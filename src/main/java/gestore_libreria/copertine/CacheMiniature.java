@@ -0,0 +1,502 @@
+package gestore_libreria.copertine;
+
+import gestore_libreria.db.ImplementatoreRepositoryMiniature;
+
+import javax.swing.ImageIcon;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Cache LRU delle copertine già lette e ridimensionate, limitata dalla memoria occupata dalle immagini.
+ * Una copertina viene letta dal disco solo la prima volta che viene disegnata a una certa dimensione: i successivi
+ * repaint, ad esempio durante lo scroll della tabella, la trovano già pronta.
+ * Se il file viene modificato la voce viene ricaricata, controllando la data di modifica al più una volta
+ * ogni {@link #INTERVALLO_VERIFICA_MS} per non accedere al disco a ogni repaint.
+ * Se è abilitata la persistenza, le miniature sono salvate anche in un archivio indicizzato per contenuto,
+ * così ai successivi avvii si leggono piccole immagini già ridimensionate invece degli originali.
+ */
+public class CacheMiniature {
+
+    /**
+     * Memoria massima occupata dalle immagini in cache (48 MB, circa 2500 miniature 60x75)
+     */
+    public static final long BUDGET_PREDEFINITO = 48L * 1024 * 1024;
+
+    /**
+     * Proprietà di sistema con cui impostare il budget in MB, ad esempio {@code -Dgestore_libreria.copertine.budgetMB=16}
+     */
+    public static final String PROPRIETA_BUDGET = "gestore_libreria.copertine.budgetMB";
+
+    /**
+     * Livello di {@link #liberaMemoria(int)}: rimuove le voci meno usate di recente
+     */
+    public static final int PRESSIONE_MODERATA = 1;
+
+    /**
+     * Livello di {@link #liberaMemoria(int)}: dopo le voci meno usate riduce a metà risoluzione le anteprime
+     */
+    public static final int PRESSIONE_ALTA = 2;
+
+    /**
+     * Lato oltre il quale una voce è considerata un'anteprima, come quelle dei dialoghi, e non una miniatura della tabella
+     */
+    static final int LATO_ANTEPRIMA = 100;
+
+    static final long INTERVALLO_VERIFICA_MS = 5_000;
+
+    private static final CacheMiniature ISTANZA = new CacheMiniature(budgetConfigurato());
+
+    /**
+     * Chiave della cache: la stessa copertina a dimensioni diverse occupa voci diverse.
+     */
+    private record Chiave(String percorso, int larghezza, int altezza) {}
+
+    private static final class Voce {
+        private final ImageIcon icona;
+        private final long dataModifica;
+        private final long byteOccupati;
+        private final boolean ridotta;      // copia a metà risoluzione lasciata da liberaMemoria
+        private long ultimaVerifica;
+
+        private Voce(ImageIcon icona, long dataModifica, long byteOccupati, long ultimaVerifica) {
+            this(icona, dataModifica, byteOccupati, false, ultimaVerifica);
+        }
+
+        private Voce(ImageIcon icona, long dataModifica, long byteOccupati, boolean ridotta, long ultimaVerifica) {
+            this.icona = icona;
+            this.dataModifica = dataModifica;
+            this.byteOccupati = byteOccupati;
+            this.ridotta = ridotta;
+            this.ultimaVerifica = ultimaVerifica;
+        }
+    }
+
+    /**
+     * Icona ridotta che si disegna alla dimensione della voce originale, così i componenti non cambiano layout.
+     */
+    private static final class IconaRidotta extends ImageIcon {
+        private static final long serialVersionUID = 1L;
+
+        private final int larghezza;
+        private final int altezza;
+
+        private IconaRidotta(BufferedImage immagine, int larghezza, int altezza) {
+            super(immagine);
+            this.larghezza = larghezza;
+            this.altezza = altezza;
+        }
+
+        @Override
+        public int getIconWidth() {
+            return larghezza;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return altezza;
+        }
+
+        @Override
+        public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+            g.drawImage(getImage(), x, y, larghezza, altezza, c);
+        }
+    }
+
+    private final LinkedHashMap<Chiave, Voce> voci = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Chiave, ImageIcon> segnaposti = new HashMap<>();
+    private final long budget;
+    private long byteOccupati;
+    private volatile ImplementatoreRepositoryMiniature archivio;
+    private volatile Dimension[] varianti = new Dimension[0];
+
+    private long hit;
+    private long miss;
+    private long evizioni;
+    private long letteDaArchivio;
+    private long liberazioni;
+
+    /**
+     * @param budget la memoria massima in byte occupata dalle immagini in cache
+     * @pre {@code budget > 0}
+     */
+    public CacheMiniature(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return l'istanza condivisa usata dall'interfaccia grafica
+     */
+    public static CacheMiniature getIstanza() {
+        return ISTANZA;
+    }
+
+    /**
+     * Calcola il budget dell'istanza condivisa: quello indicato da {@link #PROPRIETA_BUDGET} oppure
+     * {@link #BUDGET_PREDEFINITO}, in ogni caso non oltre un quarto dell'heap massimo, così sulle macchine con
+     * poca memoria le immagini non possono occupare la maggior parte dello heap.
+     *
+     * @return il budget in byte
+     */
+    static long budgetConfigurato() {
+        long budget = BUDGET_PREDEFINITO;
+        String configurato = System.getProperty(PROPRIETA_BUDGET);
+        if (configurato != null) {
+            try {
+                budget = Math.max(1, Long.parseLong(configurato.trim())) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                System.err.println("Valore non valido per " + PROPRIETA_BUDGET + ": " + configurato);
+            }
+        }
+        return Math.min(budget, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Abilita il salvataggio persistente delle miniature.
+     * Quando una copertina viene decodificata dall'originale vengono salvate tutte le varianti indicate, così
+     * ad esempio l'anteprima dei dialoghi è già pronta quando si apre il dettaglio di un libro visto in tabella.
+     *
+     * @param archivio l'archivio in cui salvare le miniature
+     * @param varianti le dimensioni da generare e salvare ogni volta che si decodifica un originale
+     * @post le letture successive cercano la miniatura nell'archivio prima di decodificare l'originale
+     */
+    public void abilitaPersistenza(ImplementatoreRepositoryMiniature archivio, Dimension... varianti) {
+        this.varianti = varianti.clone();
+        this.archivio = archivio;
+    }
+
+    /**
+     * Restituisce la copertina ridimensionata, leggendola dal disco solo se non è già in cache o se il file è cambiato.
+     *
+     * @param percorso percorso della copertina (risorsa del JAR o file esterno)
+     * @param larghezza larghezza desiderata in pixel
+     * @param altezza altezza desiderata in pixel
+     * @pre {@code larghezza > 0 && altezza > 0}
+     * @post se l'immagine è stata letta, è presente in cache e le voci meno usate di recente sono state
+     * rimosse finché la memoria occupata non rientra nel budget; una voce ridotta da {@link #liberaMemoria(int)}
+     * viene riletta a piena risoluzione
+     * @return l'icona ridimensionata, {@code null} se l'immagine non può essere letta
+     */
+    public ImageIcon getMiniatura(String percorso, int larghezza, int altezza) {
+        if (percorso == null || percorso.isEmpty()) {
+            return null;
+        }
+        Chiave chiave = new Chiave(percorso, larghezza, altezza);
+        long adesso = System.currentTimeMillis();
+        synchronized (this) {
+            Voce voce = voci.get(chiave);
+            if (voce != null && !voce.ridotta && adesso - voce.ultimaVerifica < INTERVALLO_VERIFICA_MS) {
+                voce.ultimaVerifica = adesso;
+                hit++;
+                return voce.icona;
+            }
+        }
+
+        // la data di modifica si legge dal disco fuori dal lock, poi la voce viene ricontrollata: nel frattempo
+        // un altro thread può averla sostituita o rimossa
+        long dataModifica = dataModifica(percorso);
+        synchronized (this) {
+            Voce voce = voci.get(chiave);
+            if (voce != null) {
+                if (!voce.ridotta && voce.dataModifica == dataModifica) {
+                    voce.ultimaVerifica = adesso;
+                    hit++;
+                    return voce.icona;
+                }
+                rimuovi(chiave);
+            }
+            miss++;
+        }
+
+        BufferedImage immagine = leggi(percorso, larghezza, altezza, dataModifica);
+        if (immagine == null) {
+            return null;
+        }
+        ImageIcon icona = new ImageIcon(immagine);
+        inserisci(chiave, new Voce(icona, dataModifica, dimensioneRaster(immagine), adesso));
+        return icona;
+    }
+
+    private BufferedImage leggi(String percorso, int larghezza, int altezza, long dataModifica) {
+        ImplementatoreRepositoryMiniature archivio = this.archivio;
+        File file = new File(percorso);
+        if (archivio == null || CaricatoreImmagini.isRisorsa(percorso) || !file.isFile()) {
+            return CaricatoreImmagini.caricaScalata(percorso, larghezza, altezza);
+        }
+
+        // l'hash viene ricalcolato solo se dimensione o data di modifica del file sono cambiate
+        long dimensione = file.length();
+        String hash = archivio.findHash(percorso, dimensione, dataModifica);
+        if (hash == null) {
+            hash = CaricatoreImmagini.hashContenuto(percorso);
+            if (hash == null) {
+                return null;
+            }
+            archivio.saveSource(percorso, dimensione, dataModifica, hash);
+        }
+        byte[] salvata = archivio.findThumbnail(hash, larghezza, altezza);
+        BufferedImage miniatura = salvata != null ? CaricatoreImmagini.decodifica(salvata) : null;
+        if (miniatura != null) {
+            synchronized (this) {
+                letteDaArchivio++;
+            }
+            return miniatura;
+        }
+
+        // miniatura non ancora in archivio: decodifico l'originale una sola volta, sottocampionato per la
+        // variante più grande, e salvo tutte le varianti
+        int larghezzaMassima = larghezza;
+        int altezzaMassima = altezza;
+        for (Dimension variante : varianti) {
+            larghezzaMassima = Math.max(larghezzaMassima, variante.width);
+            altezzaMassima = Math.max(altezzaMassima, variante.height);
+        }
+        BufferedImage originale = CaricatoreImmagini.carica(percorso, larghezzaMassima, altezzaMassima);
+        if (originale == null) {
+            return null;
+        }
+        miniatura = salva(archivio, hash, originale, larghezza, altezza);
+        for (Dimension variante : varianti) {
+            if (variante.width != larghezza || variante.height != altezza) {
+                salva(archivio, hash, originale, variante.width, variante.height);
+            }
+        }
+        return miniatura;
+    }
+
+    private static BufferedImage salva(ImplementatoreRepositoryMiniature archivio, String hash, BufferedImage originale,
+                                       int larghezza, int altezza) {
+        BufferedImage miniatura = CaricatoreImmagini.ridimensiona(originale, larghezza, altezza);
+        byte[] dati = CaricatoreImmagini.codificaPng(miniatura);
+        if (dati != null) {
+            archivio.saveThumbnail(hash, larghezza, altezza, dati);
+        }
+        return miniatura;
+    }
+
+    /**
+     * Restituisce la copertina solo se è già in cache, senza mai accedere al disco.
+     * Pensato per i renderer, che non devono bloccare l'EDT.
+     *
+     * @param percorso percorso della copertina
+     * @param larghezza larghezza in pixel
+     * @param altezza altezza in pixel
+     * @return l'icona in cache, {@code null} se non presente
+     */
+    public synchronized ImageIcon trova(String percorso, int larghezza, int altezza) {
+        Voce voce = voci.get(new Chiave(percorso, larghezza, altezza));
+        if (voce == null) {
+            return null;
+        }
+        hit++;
+        return voce.icona;
+    }
+
+    /**
+     * Indica se la copertina è già in cache, senza accedere al disco e senza contarla come utilizzata.
+     *
+     * @param percorso percorso della copertina
+     * @param larghezza larghezza in pixel
+     * @param altezza altezza in pixel
+     * @return {@code true} se la copertina è in cache a questa dimensione
+     */
+    public synchronized boolean contiene(String percorso, int larghezza, int altezza) {
+        return voci.containsKey(new Chiave(percorso, larghezza, altezza));
+    }
+
+    /**
+     * Indica se la voce in cache non viene confrontata con il file da più di {@link #INTERVALLO_VERIFICA_MS}
+     * e va quindi ricontrollata con {@link #getMiniatura(String, int, int)}. Non accede al disco.
+     *
+     * @param percorso percorso della copertina
+     * @param larghezza larghezza in pixel
+     * @param altezza altezza in pixel
+     * @return {@code true} se la voce è presente e va ricontrollata
+     */
+    public synchronized boolean richiedeVerifica(String percorso, int larghezza, int altezza) {
+        Voce voce = voci.get(new Chiave(percorso, larghezza, altezza));
+        return voce != null && System.currentTimeMillis() - voce.ultimaVerifica >= INTERVALLO_VERIFICA_MS;
+    }
+
+    /**
+     * Restituisce l'immagine segnaposto alla dimensione richiesta. Il segnaposto viene letto dal JAR
+     * una sola volta per dimensione e poi condiviso da tutte le celle.
+     *
+     * @param larghezza larghezza desiderata in pixel
+     * @param altezza altezza desiderata in pixel
+     * @return l'icona segnaposto, {@code null} se la risorsa non è disponibile
+     */
+    public synchronized ImageIcon getSegnaposto(int larghezza, int altezza) {
+        Chiave chiave = new Chiave(CaricatoreImmagini.PERCORSO_SEGNAPOSTO, larghezza, altezza);
+        if (!segnaposti.containsKey(chiave)) {
+            BufferedImage immagine = CaricatoreImmagini.caricaScalata(CaricatoreImmagini.PERCORSO_SEGNAPOSTO, larghezza, altezza);
+            segnaposti.put(chiave, immagine != null ? new ImageIcon(immagine) : null);
+        }
+        return segnaposti.get(chiave);
+    }
+
+    private synchronized void inserisci(Chiave chiave, Voce voce) {
+        rimuovi(chiave);
+        voci.put(chiave, voce);
+        byteOccupati += voce.byteOccupati;
+        Iterator<Map.Entry<Chiave, Voce>> iteratore = voci.entrySet().iterator();
+        while (byteOccupati > budget && iteratore.hasNext()) {
+            Map.Entry<Chiave, Voce> menoUsata = iteratore.next();
+            if (Objects.equals(menoUsata.getKey(), chiave)) {
+                continue;
+            }
+            byteOccupati -= menoUsata.getValue().byteOccupati;
+            iteratore.remove();
+            evizioni++;
+        }
+    }
+
+    private void rimuovi(Chiave chiave) {
+        Voce rimossa = voci.remove(chiave);
+        if (rimossa != null) {
+            byteOccupati -= rimossa.byteOccupati;
+        }
+    }
+
+    /**
+     * Rimuove dalla cache, a tutte le dimensioni, le copertine il cui percorso soddisfa la condizione.
+     * Usato quando un file di copertina viene modificato o eliminato.
+     *
+     * @param condizione la condizione sul percorso delle voci da rimuovere
+     * @post la cache non contiene voci il cui percorso soddisfa {@code condizione}
+     * @return i percorsi delle copertine rimosse
+     */
+    public synchronized Set<String> invalida(Predicate<String> condizione) {
+        Set<String> rimossi = new HashSet<>();
+        voci.entrySet().removeIf(voce -> {
+            if (!condizione.test(voce.getKey().percorso())) {
+                return false;
+            }
+            byteOccupati -= voce.getValue().byteOccupati;
+            rimossi.add(voce.getKey().percorso());
+            return true;
+        });
+        return rimossi;
+    }
+
+    /**
+     * Libera memoria in risposta a una segnalazione di pressione sullo heap.
+     * In entrambi i casi vengono prima rimosse le voci meno usate di recente fino a dimezzare il budget.
+     * Con {@link #PRESSIONE_ALTA} le anteprime rimaste, con un lato oltre {@link #LATO_ANTEPRIMA}, vengono poi
+     * sostituite da copie a metà risoluzione, e solo se non basta si rimuovono altre voci fino a un quarto del budget:
+     * una copertina sgranata per qualche istante costa meno di una da rileggere dal disco.
+     *
+     * @param livello {@link #PRESSIONE_MODERATA} o {@link #PRESSIONE_ALTA}
+     * @post la memoria occupata non supera metà del budget, o un quarto con {@link #PRESSIONE_ALTA}
+     * @return i byte liberati
+     */
+    public synchronized long liberaMemoria(int livello) {
+        long prima = byteOccupati;
+        rimuoviMenoUsate(budget / 2);
+        if (livello >= PRESSIONE_ALTA) {
+            // setValue non conta come accesso: le voci ridotte mantengono la loro posizione nell'ordine LRU
+            for (Map.Entry<Chiave, Voce> voce : voci.entrySet()) {
+                Chiave chiave = voce.getKey();
+                Voce attuale = voce.getValue();
+                if (attuale.ridotta || Math.max(chiave.larghezza(), chiave.altezza()) <= LATO_ANTEPRIMA
+                        || !(attuale.icona.getImage() instanceof BufferedImage immagine)) {
+                    continue;
+                }
+                BufferedImage ridotta = CaricatoreImmagini.ridimensiona(immagine,
+                        Math.max(1, immagine.getWidth() / 2), Math.max(1, immagine.getHeight() / 2));
+                Voce sostituta = new Voce(new IconaRidotta(ridotta, immagine.getWidth(), immagine.getHeight()),
+                        attuale.dataModifica, dimensioneRaster(ridotta), true, attuale.ultimaVerifica);
+                byteOccupati += sostituta.byteOccupati - attuale.byteOccupati;
+                voce.setValue(sostituta);
+            }
+            rimuoviMenoUsate(budget / 4);
+        }
+        liberazioni++;
+        return prima - byteOccupati;
+    }
+
+    private void rimuoviMenoUsate(long limite) {
+        Iterator<Map.Entry<Chiave, Voce>> iteratore = voci.entrySet().iterator();
+        while (byteOccupati > limite && iteratore.hasNext()) {
+            byteOccupati -= iteratore.next().getValue().byteOccupati;
+            iteratore.remove();
+            evizioni++;
+        }
+    }
+
+    /**
+     * Svuota la cache, ad esempio dopo l'importazione di un nuovo database.
+     *
+     * @post la cache non contiene voci e la memoria occupata è 0
+     */
+    public synchronized void svuota() {
+        voci.clear();
+        byteOccupati = 0;
+    }
+
+    private static long dataModifica(String percorso) {
+        return CaricatoreImmagini.isRisorsa(percorso) ? 0 : new File(percorso).lastModified();
+    }
+
+    static long dimensioneRaster(BufferedImage immagine) {
+        return (long) immagine.getWidth() * immagine.getHeight() * immagine.getColorModel().getPixelSize() / 8;
+    }
+
+    //metriche
+
+    public synchronized long getHit() {
+        return hit;
+    }
+
+    public synchronized long getMiss() {
+        return miss;
+    }
+
+    public synchronized long getEvizioni() {
+        return evizioni;
+    }
+
+    public synchronized long getByteOccupati() {
+        return byteOccupati;
+    }
+
+    public synchronized long getLiberazioni() {
+        return liberazioni;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getLetteDaArchivio() {
+        return letteDaArchivio;
+    }
+
+    public synchronized int getNumeroVoci() {
+        return voci.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CacheMiniature{" +
+                "voci=" + voci.size() +
+                ", byteOccupati=" + byteOccupati +
+                ", budget=" + budget +
+                ", hit=" + hit +
+                ", miss=" + miss +
+                ", evizioni=" + evizioni +
+                ", letteDaArchivio=" + letteDaArchivio +
+                ", liberazioni=" + liberazioni +
+                '}';
+    }
+}
@@ -0,0 +1,239 @@
+package gestore_libreria.copertine;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+
+/**
+ * Si occupa di leggere le immagini di copertina (dal JAR o da file esterno) e di ridimensionarle
+ * alla dimensione richiesta.
+ */
+public final class CaricatoreImmagini {
+
+    /**
+     * Percorso della risorsa usata come segnaposto quando un libro non ha una copertina valida
+     */
+    public static final String PERCORSO_SEGNAPOSTO = "/images/segnaposto_immagine.png";
+
+    private CaricatoreImmagini() {}
+
+    /**
+     * Indica se il percorso si riferisce a una risorsa contenuta nel JAR invece che a un file esterno.
+     *
+     * @param percorso il percorso da verificare
+     * @return {@code true} se il percorso inizia con "/images/"
+     */
+    public static boolean isRisorsa(String percorso) {
+        return percorso != null && percorso.startsWith("/images/");
+    }
+
+    /**
+     * Legge l'immagine dal percorso indicato e la ridimensiona alla dimensione richiesta.
+     * Le immagini molto più grandi della dimensione richiesta vengono sottocampionate già in lettura,
+     * senza mai allocare l'immagine a piena risoluzione.
+     *
+     * @param percorso percorso di una risorsa del JAR (es. "/images/...") o di un file esterno
+     * @param larghezza larghezza desiderata in pixel
+     * @param altezza altezza desiderata in pixel
+     * @pre {@code larghezza > 0 && altezza > 0}
+     * @return l'immagine ridimensionata, {@code null} se il percorso è vuoto o l'immagine non può essere letta
+     */
+    public static BufferedImage caricaScalata(String percorso, int larghezza, int altezza) {
+        BufferedImage originale = carica(percorso, larghezza, altezza);
+        return originale != null ? ridimensiona(originale, larghezza, altezza) : null;
+    }
+
+    /**
+     * Legge l'immagine dal percorso indicato, sottocampionandola in lettura in modo che resti comunque
+     * almeno doppia rispetto alla dimensione minima richiesta, così il ridimensionamento finale mantiene la qualità.
+     * Dall'intestazione del file vengono lette solo le dimensioni, poi si decodifica una riga e una colonna
+     * ogni {@code n}: una scansione 4000x6000 ridotta per una miniatura 60x75 occupa così circa 1 MB invece di 96 MB.
+     *
+     * @param percorso percorso di una risorsa del JAR (es. "/images/...") o di un file esterno
+     * @param larghezzaMinima larghezza minima dell'immagine letta
+     * @param altezzaMinima altezza minima dell'immagine letta
+     * @return l'immagine letta, {@code null} se il percorso è vuoto o l'immagine non può essere letta
+     */
+    static BufferedImage carica(String percorso, int larghezzaMinima, int altezzaMinima) {
+        if (percorso == null || percorso.isEmpty()) {
+            return null;
+        }
+        try {
+            if (isRisorsa(percorso)) {
+                try (InputStream imageStream = CaricatoreImmagini.class.getResourceAsStream(percorso)) {
+                    return imageStream != null ? leggi(ImageIO.createImageInputStream(imageStream), larghezzaMinima, altezzaMinima) : null;
+                }
+            }
+            File file = new File(percorso);
+            return file.isFile() ? leggi(ImageIO.createImageInputStream(file), larghezzaMinima, altezzaMinima) : null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Errore nel caricamento immagine da: " + percorso + ". " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static BufferedImage leggi(ImageInputStream input, int larghezzaMinima, int altezzaMinima) throws IOException {
+        if (input == null) {
+            return null;
+        }
+        try (input) {
+            Iterator<ImageReader> lettori = ImageIO.getImageReaders(input);
+            if (!lettori.hasNext()) {
+                return null;
+            }
+            ImageReader lettore = lettori.next();
+            try {
+                lettore.setInput(input, true, true);
+                ImageReadParam parametri = lettore.getDefaultReadParam();
+                int passo = fattoreSottocampionamento(lettore.getWidth(0), lettore.getHeight(0), larghezzaMinima, altezzaMinima);
+                if (passo > 1) {
+                    parametri.setSourceSubsampling(passo, passo, 0, 0);
+                }
+                return lettore.read(0, parametri);
+            } finally {
+                lettore.dispose();
+            }
+        }
+    }
+
+    /**
+     * Verifica che il file esista e che la sua intestazione sia quella di un'immagine leggibile,
+     * senza decodificare i pixel.
+     *
+     * @param percorso percorso di un file esterno
+     * @return {@code true} se esiste un lettore in grado di leggere l'immagine e di ricavarne le dimensioni
+     */
+    static boolean isLeggibile(String percorso) {
+        File file = new File(percorso);
+        if (!file.isFile() || !file.canRead()) {
+            return false;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> lettori = input != null ? ImageIO.getImageReaders(input) : null;
+            if (lettori == null || !lettori.hasNext()) {
+                return false;
+            }
+            ImageReader lettore = lettori.next();
+            try {
+                lettore.setInput(input, true, true);
+                return lettore.getWidth(0) > 0 && lettore.getHeight(0) > 0;
+            } finally {
+                lettore.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Calcola ogni quante righe e colonne leggere un pixel perché l'immagine letta resti almeno doppia
+     * rispetto alla dimensione minima in entrambe le direzioni.
+     *
+     * @param larghezza larghezza originale dell'immagine
+     * @param altezza altezza originale dell'immagine
+     * @param larghezzaMinima larghezza di destinazione
+     * @param altezzaMinima altezza di destinazione
+     * @return il passo di sottocampionamento, 1 se l'immagine non va sottocampionata
+     */
+    static int fattoreSottocampionamento(int larghezza, int altezza, int larghezzaMinima, int altezzaMinima) {
+        int passo = Math.min(larghezza / (2 * larghezzaMinima), altezza / (2 * altezzaMinima));
+        return Math.max(1, passo);
+    }
+
+    /**
+     * Calcola l'hash SHA-256 del contenuto di un file, usato per riconoscere la stessa immagine
+     * anche se spostata, rinominata o usata da più libri.
+     *
+     * @param percorso percorso del file
+     * @return l'hash in esadecimale, {@code null} se il file non può essere letto
+     */
+    public static String hashContenuto(String percorso) {
+        try (InputStream input = new DigestInputStream(Files.newInputStream(Path.of(percorso)),
+                MessageDigest.getInstance("SHA-256"))) {
+            byte[] buffer = new byte[64 * 1024];
+            while (input.read(buffer) != -1) {
+                // il digest viene aggiornato dalla lettura
+            }
+            return HexFormat.of().formatHex(((DigestInputStream) input).getMessageDigest().digest());
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            System.err.println("Errore nel calcolo dell'hash di: " + percorso + ". " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Comprime una miniatura in PNG per salvarla nell'archivio persistente.
+     *
+     * @param immagine la miniatura da comprimere
+     * @return i byte PNG, {@code null} in caso di errore
+     */
+    static byte[] codificaPng(BufferedImage immagine) {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(8 * 1024);
+            return ImageIO.write(immagine, "png", output) ? output.toByteArray() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodifica una miniatura letta dall'archivio persistente.
+     *
+     * @param dati i byte dell'immagine compressa
+     * @return l'immagine, {@code null} se i dati non sono validi
+     */
+    static BufferedImage decodifica(byte[] dati) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(dati));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ridimensiona un'immagine in una nuova immagine della dimensione indicata.
+     * Le riduzioni forti vengono fatte dimezzando l'immagine più volte con interpolazione bilineare, per una qualità
+     * paragonabile a {@code SCALE_SMOOTH} ma senza passare dalle immagini asincrone di {@code getScaledInstance}.
+     *
+     * @param originale l'immagine da ridimensionare
+     * @param larghezza larghezza desiderata in pixel
+     * @param altezza altezza desiderata in pixel
+     * @return una nuova immagine ARGB di dimensione {@code larghezza x altezza}
+     */
+    static BufferedImage ridimensiona(BufferedImage originale, int larghezza, int altezza) {
+        BufferedImage corrente = originale;
+        int w = originale.getWidth();
+        int h = originale.getHeight();
+        do {
+            w = Math.max(larghezza, w / 2);
+            h = Math.max(altezza, h / 2);
+            BufferedImage passo = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = passo.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(corrente, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            corrente = passo;
+        } while (w != larghezza || h != altezza);
+        return corrente;
+    }
+}
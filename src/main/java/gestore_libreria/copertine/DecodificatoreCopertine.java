@@ -0,0 +1,200 @@
+package gestore_libreria.copertine;
+
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Legge e ridimensiona le copertine su un piccolo pool di thread in background, così l'EDT non viene mai
+ * bloccato dalla decodifica di un'immagine.
+ * Le richieste sono servite per priorità (prima le righe visibili) e, a parità di priorità, in ordine di arrivo.
+ * La stessa copertina non viene mai decodificata due volte in contemporanea e le richieste per righe uscite
+ * dalla vista vengono scartate prima di essere eseguite. Le copertine che non è stato possibile leggere
+ * sono registrate nel {@link ValidatoreCopertine} e non vengono più richieste.
+ */
+public class DecodificatoreCopertine {
+
+    /**
+     * Priorità delle copertine delle righe attualmente visibili
+     */
+    public static final int PRIORITA_VISIBILE = 0;
+
+    /**
+     * Priorità delle copertine precaricate per le righe non ancora visibili
+     */
+    public static final int PRIORITA_PREFETCH = 1;
+
+    /**
+     * Listener notificato sull'EDT quando una copertina è pronta in cache.
+     */
+    public interface OnCopertinaPronta {
+        /**
+         * @param percorso il percorso della copertina appena decodificata
+         */
+        void copertinaPronta(String percorso);
+    }
+
+    private record Chiave(String percorso, int larghezza, int altezza) {}
+
+    private final class Richiesta implements Runnable, Comparable<Richiesta> {
+        private final Chiave chiave;
+        private final long sequenza = contatoreSequenza.incrementAndGet();
+        private volatile int priorita;
+        private volatile int riga;
+
+        private Richiesta(Chiave chiave, int priorita, int riga) {
+            this.chiave = chiave;
+            this.priorita = priorita;
+            this.riga = riga;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ImageIcon precedente = cache.trova(chiave.percorso(), chiave.larghezza(), chiave.altezza());
+                ImageIcon icona = cache.getMiniatura(chiave.percorso(), chiave.larghezza(), chiave.altezza());
+                // se la voce in cache era ancora valida non serve ridisegnare
+                if (icona == null) {
+                    validatore.segnaNonValido(chiave.percorso());
+                } else if (icona != precedente) {
+                    decodificate.incrementAndGet();
+                    SwingUtilities.invokeLater(() -> listener.copertinaPronta(chiave.percorso()));
+                }
+            } finally {
+                inCorso.remove(chiave);
+            }
+        }
+
+        @Override
+        public int compareTo(Richiesta altra) {
+            int confronto = Integer.compare(priorita, altra.priorita);
+            return confronto != 0 ? confronto : Long.compare(sequenza, altra.sequenza);
+        }
+    }
+
+    private final CacheMiniature cache;
+    private final ValidatoreCopertine validatore;
+    private final OnCopertinaPronta listener;
+    private final ThreadPoolExecutor esecutore;
+    private final Map<Chiave, Richiesta> inCorso = new ConcurrentHashMap<>();
+    private final AtomicLong contatoreSequenza = new AtomicLong();
+    private final AtomicLong decodificate = new AtomicLong();
+    private final AtomicLong scartate = new AtomicLong();
+
+    /**
+     * @param cache la cache in cui salvare le copertine decodificate
+     * @param validatore il registro delle copertine non leggibili
+     * @param listener il listener da notificare sull'EDT quando una copertina è pronta
+     * @pre {@code cache}, {@code validatore} e {@code listener} non devono essere null
+     * @post è stato creato un pool di al più 4 thread daemon per la decodifica
+     */
+    public DecodificatoreCopertine(CacheMiniature cache, ValidatoreCopertine validatore, OnCopertinaPronta listener) {
+        this.cache = cache;
+        this.validatore = validatore;
+        this.listener = listener;
+        int thread = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger numeroThread = new AtomicInteger();
+        this.esecutore = new ThreadPoolExecutor(thread, thread, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "decodifica-copertine-" + numeroThread.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+        this.esecutore.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Richiede la decodifica di una copertina. Se la stessa copertina è già in coda o in decodifica la richiesta
+     * viene unita a quella esistente, aggiornandone riga e priorità.
+     *
+     * @param percorso percorso della copertina
+     * @param larghezza larghezza desiderata in pixel
+     * @param altezza altezza desiderata in pixel
+     * @param riga la riga della tabella che mostra la copertina
+     * @param priorita la priorità della richiesta, valori più bassi vengono serviti prima
+     * @post la copertina verrà decodificata al più una volta e il listener notificato quando pronta,
+     * a meno che la richiesta non venga scartata da {@link #aggiornaRigheVisibili(int, int, int)}
+     */
+    public void richiedi(String percorso, int larghezza, int altezza, int riga, int priorita) {
+        if (percorso == null || percorso.isEmpty()) {
+            return;
+        }
+        if (validatore.isNonValido(percorso)) {
+            return;
+        }
+        Chiave chiave = new Chiave(percorso, larghezza, altezza);
+        Richiesta nuova = new Richiesta(chiave, priorita, riga);
+        Richiesta esistente = inCorso.putIfAbsent(chiave, nuova);
+        if (esistente == null) {
+            esecutore.execute(nuova);
+        } else {
+            esistente.riga = riga;
+            if (priorita < esistente.priorita && esecutore.getQueue().remove(esistente)) {
+                // la priorità fa parte dell'ordinamento: la richiesta va reinserita per essere riordinata
+                esistente.priorita = priorita;
+                esecutore.execute(esistente);
+            }
+        }
+    }
+
+    /**
+     * Scarta dalla coda le richieste per righe che non sono più visibili, con un margine di tolleranza.
+     * Le richieste di prefetch non vengono toccate: le gestisce chi le ha fatte con {@link #annullaPrefetch()}.
+     *
+     * @param primaRiga la prima riga visibile
+     * @param ultimaRiga l'ultima riga visibile
+     * @param margine il numero di righe prima e dopo la vista da conservare comunque
+     * @post in coda restano solo richieste per righe comprese tra {@code primaRiga - margine} e
+     * {@code ultimaRiga + margine}
+     */
+    public void aggiornaRigheVisibili(int primaRiga, int ultimaRiga, int margine) {
+        esecutore.getQueue().removeIf(task -> {
+            Richiesta richiesta = (Richiesta) task;
+            boolean fuoriVista = richiesta.priorita == PRIORITA_VISIBILE
+                    && (richiesta.riga < primaRiga - margine || richiesta.riga > ultimaRiga + margine);
+            if (fuoriVista) {
+                inCorso.remove(richiesta.chiave, richiesta);
+                scartate.incrementAndGet();
+            }
+            return fuoriVista;
+        });
+    }
+
+    /**
+     * Scarta dalla coda tutte le richieste di prefetch non ancora iniziate.
+     *
+     * @post in coda restano solo richieste con priorità {@link #PRIORITA_VISIBILE}
+     */
+    public void annullaPrefetch() {
+        esecutore.getQueue().removeIf(task -> {
+            Richiesta richiesta = (Richiesta) task;
+            if (richiesta.priorita != PRIORITA_PREFETCH) {
+                return false;
+            }
+            inCorso.remove(richiesta.chiave, richiesta);
+            scartate.incrementAndGet();
+            return true;
+        });
+    }
+
+    //metriche
+
+    public int getRichiesteInCoda() {
+        return esecutore.getQueue().size();
+    }
+
+    public long getDecodificate() {
+        return decodificate.get();
+    }
+
+    public long getScartate() {
+        return scartate.get();
+    }
+}
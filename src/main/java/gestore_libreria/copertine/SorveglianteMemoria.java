@@ -0,0 +1,77 @@
+package gestore_libreria.copertine;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Fa liberare memoria alla {@link CacheMiniature} quando lo heap si avvicina all'esaurimento.
+ * Sulle aree dello heap viene impostata una soglia di occupazione dopo la garbage collection: se la JVM la supera,
+ * la memoria viva è davvero tanta e la cache rimuove le voci meno usate; se la segnalazione si ripete a breve
+ * distanza la pressione è considerata alta e vengono rimosse per prime le immagini più grandi.
+ */
+public class SorveglianteMemoria implements NotificationListener {
+
+    /**
+     * Frazione dello heap oltre la quale, dopo una garbage collection, la cache viene ridotta
+     */
+    public static final double SOGLIA_PREDEFINITA = 0.75;
+
+    // due segnalazioni entro questo intervallo indicano che la prima riduzione non è bastata
+    static final long INTERVALLO_ESCALATION_MS = 10_000;
+
+    private final CacheMiniature cache;
+    private long ultimaSegnalazione = Long.MIN_VALUE / 2;
+
+    /**
+     * @param cache la cache da ridurre quando la memoria scarseggia
+     * @pre {@code cache} non deve essere null
+     */
+    public SorveglianteMemoria(CacheMiniature cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Imposta la soglia sulle aree dello heap che la supportano e registra il sorvegliante presso il
+     * {@link java.lang.management.MemoryMXBean}.
+     *
+     * @param soglia la frazione dello heap, tra 0 e 1, oltre la quale ridurre la cache
+     * @pre {@code 0 < soglia < 1}
+     * @post il sorvegliante riceve le notifiche di superamento della soglia
+     */
+    public void installa(double soglia) {
+        for (MemoryPoolMXBean area : ManagementFactory.getMemoryPoolMXBeans()) {
+            long massimo = area.getUsage().getMax();
+            if (area.getType() == MemoryType.HEAP && area.isCollectionUsageThresholdSupported() && massimo > 0) {
+                area.setCollectionUsageThreshold((long) (massimo * soglia));
+            }
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    @Override
+    public void handleNotification(Notification notifica, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notifica.getType())) {
+            segnala(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Riduce la cache in base a quanto è recente la segnalazione precedente.
+     *
+     * @param adesso l'istante della segnalazione in millisecondi
+     * @return il livello di pressione applicato
+     */
+    synchronized int segnala(long adesso) {
+        int livello = adesso - ultimaSegnalazione < INTERVALLO_ESCALATION_MS
+                ? CacheMiniature.PRESSIONE_ALTA : CacheMiniature.PRESSIONE_MODERATA;
+        ultimaSegnalazione = adesso;
+        long liberati = cache.liberaMemoria(livello);
+        System.err.println("Memoria scarsa: liberati " + liberati / 1024 + " KB di copertine (livello " + livello + ")");
+        return livello;
+    }
+}
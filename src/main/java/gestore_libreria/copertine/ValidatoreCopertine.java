@@ -0,0 +1,262 @@
+package gestore_libreria.copertine;
+
+import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.model.Libro;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Tiene traccia delle copertine mancanti o non leggibili, così il renderer può mostrare subito il segnaposto
+ * senza accedere al disco a ogni repaint.
+ * All'avvio tutte le copertine vengono verificate in parallelo leggendo solo l'intestazione del file; le cartelle
+ * che le contengono vengono poi osservate con un {@link WatchService}, in modo che una copertina ricompaia
+ * appena il file viene creato o sostituito e venga scartata appena viene eliminato.
+ */
+public class ValidatoreCopertine implements GestoreLibroConcreto.OnMutazioneListener {
+
+    // la verifica è dominata dall'accesso al disco: conviene qualche thread in più dei core
+    private static final int PARALLELISMO = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private final CacheMiniature cache;
+    private final Set<String> nonValidi = ConcurrentHashMap.newKeySet();
+    private final Map<Path, WatchKey> cartelleOsservate = new ConcurrentHashMap<>();
+    private volatile WatchService osservatore;
+    private volatile Consumer<String> onCopertinaCambiata;
+
+    /**
+     * @param cache la cache da cui rimuovere le copertine modificate o eliminate
+     * @pre {@code cache} non deve essere null
+     */
+    public ValidatoreCopertine(CacheMiniature cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param onCopertinaCambiata listener invocato sull'EDT con il percorso della copertina quando il file
+     *                            viene creato, modificato o eliminato
+     */
+    public void setOnCopertinaCambiata(Consumer<String> onCopertinaCambiata) {
+        this.onCopertinaCambiata = onCopertinaCambiata;
+    }
+
+    /**
+     * Indica se la copertina è nota come mancante o non leggibile. Non accede al disco.
+     *
+     * @param percorso percorso della copertina
+     * @return {@code true} se la copertina non va né letta né decodificata
+     */
+    public boolean isNonValido(String percorso) {
+        return percorso != null && nonValidi.contains(percorso);
+    }
+
+    /**
+     * Registra una copertina che non è stata possibile leggere, ad esempio dopo un errore di decodifica.
+     *
+     * @param percorso percorso della copertina
+     * @post {@code isNonValido(percorso)} restituisce {@code true} finché il file non viene creato o modificato
+     */
+    public void segnaNonValido(String percorso) {
+        nonValidi.add(percorso);
+    }
+
+    /**
+     * Dimentica tutte le copertine registrate come non valide, ad esempio dopo l'importazione di un nuovo database.
+     *
+     * @post {@code getNumeroNonValidi() == 0}
+     */
+    public void azzera() {
+        nonValidi.clear();
+    }
+
+    /**
+     * Verifica in parallelo le copertine indicate, leggendo solo l'intestazione di ciascun file, e inizia
+     * a osservare le cartelle che le contengono.
+     * Le risorse del JAR sono sempre considerate valide.
+     *
+     * @param percorsi i percorsi delle copertine da verificare
+     * @post le copertine mancanti o non leggibili sono registrate come non valide
+     */
+    public void valida(Collection<String> percorsi) {
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISMO);
+        try {
+            pool.submit(() -> percorsi.parallelStream()
+                    .filter(percorso -> percorso != null && !percorso.isEmpty() && !CaricatoreImmagini.isRisorsa(percorso))
+                    .forEach(this::verifica)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Errore nella verifica delle copertine: " + e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void verifica(String percorso) {
+        osservaCartella(percorso);
+        if (CaricatoreImmagini.isLeggibile(percorso)) {
+            nonValidi.remove(percorso);
+        } else {
+            nonValidi.add(percorso);
+        }
+    }
+
+    /**
+     * Avvia il thread che riceve le notifiche del file system per le cartelle delle copertine.
+     *
+     * @post le cartelle registrate da {@link #valida(Collection)} e dalle modifiche ai libri sono osservate
+     */
+    public synchronized void avviaOsservazione() {
+        if (osservatore != null) {
+            return;
+        }
+        try {
+            osservatore = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            System.err.println("Impossibile osservare le cartelle delle copertine: " + e.getMessage());
+            return;
+        }
+        Thread thread = new Thread(this::ricevi, "osservatore-copertine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ferma l'osservazione delle cartelle.
+     *
+     * @post il thread di osservazione termina e nessuna cartella è più osservata
+     */
+    public synchronized void ferma() {
+        if (osservatore != null) {
+            try {
+                osservatore.close();
+            } catch (IOException e) {
+                System.err.println("Errore nella chiusura dell'osservatore delle copertine: " + e.getMessage());
+            }
+            osservatore = null;
+            cartelleOsservate.clear();
+        }
+    }
+
+    private void osservaCartella(String percorso) {
+        WatchService servizio = osservatore;
+        if (servizio == null || CaricatoreImmagini.isRisorsa(percorso)) {
+            return;
+        }
+        try {
+            Path cartella = Path.of(percorso).toAbsolutePath().normalize().getParent();
+            if (cartella != null && !cartelleOsservate.containsKey(cartella) && cartella.toFile().isDirectory()) {
+                cartelleOsservate.computeIfAbsent(cartella, c -> {
+                    try {
+                        return c.register(servizio, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    } catch (IOException | ClosedWatchServiceException e) {
+                        return null;
+                    }
+                });
+            }
+        } catch (InvalidPathException e) {
+            nonValidi.add(percorso);
+        }
+    }
+
+    private void ricevi() {
+        WatchService servizio = osservatore;
+        try {
+            while (servizio != null) {
+                WatchKey chiave = servizio.take();
+                Path cartella = (Path) chiave.watchable();
+                for (WatchEvent<?> evento : chiave.pollEvents()) {
+                    if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // eventi persi: tutte le copertine della cartella vanno riverificate
+                        cambiato(percorso -> cartella.equals(normalizza(percorso).getParent()), false);
+                    } else {
+                        Path file = cartella.resolve((Path) evento.context());
+                        cambiato(percorso -> file.equals(normalizza(percorso)),
+                                evento.kind() == StandardWatchEventKinds.ENTRY_DELETE);
+                    }
+                }
+                if (!chiave.reset()) {
+                    cartelleOsservate.remove(cartella);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // osservazione terminata
+        }
+    }
+
+    private void cambiato(Predicate<String> corrisponde, boolean eliminato) {
+        Set<String> cambiati = new HashSet<>(cache.invalida(corrisponde));
+        if (eliminato) {
+            // il file non c'è più: le copertine che lo mostravano passano direttamente al segnaposto
+            nonValidi.addAll(cambiati);
+        } else {
+            nonValidi.removeIf(percorso -> corrisponde.test(percorso) && cambiati.add(percorso));
+        }
+        Consumer<String> listener = onCopertinaCambiata;
+        if (listener != null) {
+            for (String percorso : cambiati) {
+                SwingUtilities.invokeLater(() -> listener.accept(percorso));
+            }
+        }
+    }
+
+    private static Path normalizza(String percorso) {
+        try {
+            return Path.of(percorso).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            return Path.of("");
+        }
+    }
+
+    @Override
+    public void libroAggiunto(Libro libro) {
+        nuovaCopertina(libro.getPercorsoCopertina());
+    }
+
+    @Override
+    public void libroAggiornato(Libro precedente, Libro nuovo) {
+        nuovaCopertina(nuovo.getPercorsoCopertina());
+    }
+
+    @Override
+    public void libroRimosso(Libro libro) {
+        // la copertina può essere condivisa con altri libri: lo stato resta valido
+    }
+
+    private void nuovaCopertina(String percorso) {
+        if (percorso == null || percorso.isEmpty() || CaricatoreImmagini.isRisorsa(percorso)) {
+            return;
+        }
+        // la copertina appena scelta viene ritentata; la registrazione della cartella avviene fuori dall'EDT
+        nonValidi.remove(percorso);
+        ForkJoinPool.commonPool().execute(() -> osservaCartella(percorso));
+    }
+
+    //metriche
+
+    public int getNumeroNonValidi() {
+        return nonValidi.size();
+    }
+
+    public int getNumeroCartelleOsservate() {
+        return cartelleOsservate.size();
+    }
+}
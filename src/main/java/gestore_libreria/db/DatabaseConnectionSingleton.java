@@ -1,25 +1,107 @@
 package gestore_libreria.db;
 
+import org.sqlite.SQLiteConfig;
+
 import java.sql.*;
 
 public final class DatabaseConnectionSingleton {
 
     //Riutilizzo la stessa connessione al database, ed evito di aprire una connessione per ogni query che eseguo
 
-    private static final String url = "jdbc:sqlite:Books_db.db";
+    public static final String DATABASE_PREDEFINITO = "Books_db.db";
+
+    private static String databasePath = DATABASE_PREDEFINITO;
     private static Connection instance;
+    private static Connection thumbnailConnection;
+    private static Connection readConnection;
+
+    //millisecondi che una connessione attende il lock di scrittura tenuto dall'altra prima di fallire
+    private static final int BUSY_TIMEOUT_MS = 10_000;
 
     //costruttore privato
     private DatabaseConnectionSingleton(){}
 
     public static synchronized Connection getInstance() throws SQLException{
         if (instance == null || instance.isClosed()){
-            instance = DriverManager.getConnection(url);
+            instance = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+            try (Statement statement = instance.createStatement()) {
+                statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            }
         }
         return instance;
     }
 
-    public static void closeConnection() {
+    /**
+     * Connessione sullo stesso file riservata alle miniature delle copertine, scritte dai thread di decodifica.
+     * Con la connessione principale le loro scritture entrerebbero nella transazione eventualmente aperta
+     * dall'EDT e verrebbero annullate insieme a essa; su una connessione separata attendono invece che
+     * quella transazione termini e restano indipendenti.
+     *
+     * @post la connessione restituita è aperta e usa il file di {@link #getDatabasePath()}
+     * @return la connessione delle miniature
+     */
+    public static synchronized Connection getThumbnailConnection() throws SQLException {
+        if (thumbnailConnection == null || thumbnailConnection.isClosed()) {
+            thumbnailConnection = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+            try (Statement statement = thumbnailConnection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            }
+        }
+        return thumbnailConnection;
+    }
+
+    /**
+     * Connessione di sola lettura sullo stesso file, per chi legge i libri fuori dall'EDT: le pagine della tabella
+     * e le ricerche in background. Sulla connessione principale vedrebbero le righe non ancora confermate di una
+     * transazione aperta dall'EDT; su questa vedono solo lo stato confermato.
+     *
+     * @pre il file di {@link #getDatabasePath()} deve esistere, ad esempio creato da {@link RepositoryLibroSQLite}
+     * @post la connessione restituita è aperta in sola lettura e usa il file di {@link #getDatabasePath()}
+     * @return la connessione di lettura
+     */
+    public static synchronized Connection getReadConnection() throws SQLException {
+        if (readConnection == null || readConnection.isClosed()) {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly(true);
+            config.setBusyTimeout(BUSY_TIMEOUT_MS);
+            readConnection = DriverManager.getConnection("jdbc:sqlite:" + databasePath, config.toProperties());
+        }
+        return readConnection;
+    }
+
+    /**
+     * Cambia il file del database, ad esempio per la riga di comando.
+     *
+     * @param path il percorso del file SQLite
+     * @post la connessione aperta sul file precedente è chiusa e la prossima {@link #getInstance()} apre {@code path}
+     */
+    public static synchronized void setDatabasePath(String path) {
+        closeConnection();
+        databasePath = path;
+    }
+
+    public static synchronized String getDatabasePath() {
+        return databasePath;
+    }
+
+    //chiude anche le connessioni delle miniature e di lettura: chi sostituisce o copia il file non deve trovarlo ancora aperto
+    public static synchronized void closeConnection() {
+        if (thumbnailConnection != null) {
+            try {
+                thumbnailConnection.close();
+            } catch (SQLException e) {
+                System.err.println("Errore durante la chiusura della connessione delle miniature: " + e.getMessage());
+            }
+            thumbnailConnection = null;
+        }
+        if (readConnection != null) {
+            try {
+                readConnection.close();
+            } catch (SQLException e) {
+                System.err.println("Errore durante la chiusura della connessione di lettura: " + e.getMessage());
+            }
+            readConnection = null;
+        }
         if (instance != null) {
             try {
                 instance.close();
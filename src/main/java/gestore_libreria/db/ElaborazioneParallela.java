@@ -0,0 +1,336 @@
+package gestore_libreria.db;
+
+import gestore_libreria.model.Libro;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Filtra e ordina in memoria liste di libri già caricate, come le righe di un'interrogazione viva.
+ * Sotto una soglia di dimensione le operazioni restano sul thread chiamante, dove costano meno della
+ * suddivisione del lavoro; sopra la soglia la lista viene divisa in blocchi elaborati dal pool fork/join:
+ * il filtro unisce i blocchi mantenendo l'ordine, l'ordinamento è un merge sort con fusione parallela.
+ * <p>
+ * Il catalogo completo resta in memoria solo fino a {@link GestoreLibroConcreto#SOGLIA_PAGINAZIONE} libri, quindi
+ * restringerlo è sempre sequenziale. Le liste oltre la soglia sono i risultati delle query su un catalogo a pagine:
+ * il riordino delle interrogazioni vive che li mostrano e i filtri combinati della riga di comando.
+ * <p>
+ * La soglia predefinita si può cambiare con {@link #PROPRIETA_SOGLIA}; il punto in cui conviene passare al
+ * parallelo dipende dai core della macchina e si misura con {@code BenchmarkElaborazioneParallela} nei test.
+ */
+public class ElaborazioneParallela {
+
+    /**
+     * Numero di libri sotto il quale le operazioni sono sequenziali.
+     */
+    public static final int SOGLIA_PREDEFINITA = 20_000;
+
+    /**
+     * Proprietà di sistema con cui indicare un'altra soglia, ad esempio {@code -Dgestore_libreria.db.sogliaParallela=50000}.
+     */
+    public static final String PROPRIETA_SOGLIA = "gestore_libreria.db.sogliaParallela";
+
+    // sotto questa dimensione un blocco non viene più diviso
+    private static final int BLOCCO_MINIMO = 2_048;
+
+    private static final ElaborazioneParallela ISTANZA = new ElaborazioneParallela(sogliaConfigurata(), ForkJoinPool.commonPool());
+
+    private final int soglia;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param soglia il numero di libri da cui usare il pool; 0 rende parallela ogni operazione abbastanza grande da dividere
+     * @param pool il pool su cui eseguire le operazioni parallele
+     * @pre {@code soglia >= 0} e {@code pool} non è null
+     */
+    public ElaborazioneParallela(int soglia, ForkJoinPool pool) {
+        if (soglia < 0) {
+            throw new IllegalArgumentException("La soglia non può essere negativa");
+        }
+        this.soglia = soglia;
+        this.pool = pool;
+    }
+
+    /**
+     * @return l'istanza condivisa, sul pool comune e con la soglia configurata
+     */
+    public static ElaborazioneParallela getIstanza() {
+        return ISTANZA;
+    }
+
+    /**
+     * @return la soglia indicata da {@link #PROPRIETA_SOGLIA} oppure {@link #SOGLIA_PREDEFINITA}
+     */
+    static int sogliaConfigurata() {
+        String configurata = System.getProperty(PROPRIETA_SOGLIA);
+        if (configurata != null) {
+            try {
+                return Math.max(0, Integer.parseInt(configurata.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Valore non valido per " + PROPRIETA_SOGLIA + ": " + configurata);
+            }
+        }
+        return SOGLIA_PREDEFINITA;
+    }
+
+    public int getSoglia() {
+        return soglia;
+    }
+
+    /**
+     * @param libri i libri da filtrare, con accesso per indice
+     * @param filtro la condizione; deve poter essere valutata da più thread insieme
+     * @post la lista restituita contiene i libri che rispettano il filtro, nello stesso ordine di {@code libri}
+     * @return una nuova lista modificabile
+     */
+    public List<Libro> filtra(List<Libro> libri, Predicate<Libro> filtro) {
+        if (!parallelo(libri.size())) {
+            return filtraBlocco(libri, filtro, 0, libri.size());
+        }
+        return pool.invoke(new Filtro(libri, filtro, 0, libri.size()));
+    }
+
+    /**
+     * Ordina gli indici di una lista senza spostare i libri, come serve alle permutazioni delle interrogazioni vive.
+     *
+     * @param libri i libri da ordinare, con accesso per indice
+     * @param ordine il comparatore; deve poter essere usato da più thread insieme
+     * @post {@code libri.get(risultato[i])} è ordinata secondo {@code ordine}; a parità l'ordine di {@code libri} è mantenuto
+     * @return la permutazione degli indici da 0 a {@code libri.size() - 1}
+     */
+    public int[] ordinaIndici(List<Libro> libri, Comparator<Libro> ordine) {
+        int dimensione = libri.size();
+        int[] indici = new int[dimensione];
+        for (int i = 0; i < dimensione; i++) {
+            indici[i] = i;
+        }
+        int[] appoggio = new int[dimensione];
+        Ordinamento ordinamento = new Ordinamento(libri, ordine, indici, appoggio, 0, dimensione);
+        if (parallelo(dimensione)) {
+            pool.invoke(ordinamento);
+        } else {
+            ordinamento.ordinaSequenziale(0, dimensione);
+        }
+        return indici;
+    }
+
+    /**
+     * @param libri i libri da ordinare
+     * @param ordine il comparatore
+     * @return una nuova lista con i libri ordinati secondo {@code ordine}
+     */
+    public List<Libro> ordina(List<Libro> libri, Comparator<Libro> ordine) {
+        int[] indici = ordinaIndici(libri, ordine);
+        List<Libro> ordinati = new ArrayList<>(indici.length);
+        for (int indice : indici) {
+            ordinati.add(libri.get(indice));
+        }
+        return ordinati;
+    }
+
+    private boolean parallelo(int dimensione) {
+        return dimensione >= soglia && dimensione > BLOCCO_MINIMO;
+    }
+
+    private static List<Libro> filtraBlocco(List<Libro> libri, Predicate<Libro> filtro, int da, int a) {
+        List<Libro> trovati = new ArrayList<>();
+        for (int i = da; i < a; i++) {
+            Libro libro = libri.get(i);
+            if (filtro.test(libro)) {
+                trovati.add(libro);
+            }
+        }
+        return trovati;
+    }
+
+    // divide a metà finché i blocchi sono grandi, poi concatena i risultati nell'ordine dei blocchi
+    // i task fork/join sono serializzabili solo per ereditarietà e non vengono mai serializzati
+    private static final class Filtro extends RecursiveTask<List<Libro>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Libro> libri;
+        private final transient Predicate<Libro> filtro;
+        private final int da;
+        private final int a;
+
+        Filtro(List<Libro> libri, Predicate<Libro> filtro, int da, int a) {
+            this.libri = libri;
+            this.filtro = filtro;
+            this.da = da;
+            this.a = a;
+        }
+
+        @Override
+        protected List<Libro> compute() {
+            if (a - da <= BLOCCO_MINIMO) {
+                return filtraBlocco(libri, filtro, da, a);
+            }
+            int meta = (da + a) >>> 1;
+            Filtro sinistra = new Filtro(libri, filtro, da, meta);
+            sinistra.fork();
+            List<Libro> destra = new Filtro(libri, filtro, meta, a).compute();
+            List<Libro> trovati = sinistra.join();
+            trovati.addAll(destra);
+            return trovati;
+        }
+    }
+
+    /**
+     * Merge sort degli indici: le due metà vengono ordinate in parallelo nell'array di appoggio e poi fuse
+     * nell'array degli indici, dividendo anche la fusione quando è grande.
+     */
+    private static final class Ordinamento extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Libro> libri;
+        private final transient Comparator<Libro> ordine;
+        private final int[] indici;
+        private final int[] appoggio;
+        private final int da;
+        private final int a;
+
+        Ordinamento(List<Libro> libri, Comparator<Libro> ordine, int[] indici, int[] appoggio, int da, int a) {
+            this.libri = libri;
+            this.ordine = ordine;
+            this.indici = indici;
+            this.appoggio = appoggio;
+            this.da = da;
+            this.a = a;
+        }
+
+        @Override
+        protected void compute() {
+            if (a - da <= BLOCCO_MINIMO) {
+                ordinaSequenziale(da, a);
+                return;
+            }
+            int meta = (da + a) >>> 1;
+            invokeAll(new Ordinamento(libri, ordine, indici, appoggio, da, meta),
+                    new Ordinamento(libri, ordine, indici, appoggio, meta, a));
+            System.arraycopy(indici, da, appoggio, da, a - da);
+            new Fusione(libri, ordine, appoggio, da, meta, meta, a, indici, da).compute();
+        }
+
+        // merge sort sequenziale dell'intervallo, stabile
+        void ordinaSequenziale(int inizio, int fine) {
+            if (fine - inizio < 2) {
+                return;
+            }
+            int meta = (inizio + fine) >>> 1;
+            ordinaSequenziale(inizio, meta);
+            ordinaSequenziale(meta, fine);
+            if (confronta(indici[meta - 1], indici[meta]) <= 0) {
+                return;     // le due metà sono già in ordine
+            }
+            System.arraycopy(indici, inizio, appoggio, inizio, fine - inizio);
+            int i = inizio;
+            int j = meta;
+            for (int k = inizio; k < fine; k++) {
+                if (j >= fine || (i < meta && confronta(appoggio[i], appoggio[j]) <= 0)) {
+                    indici[k] = appoggio[i++];
+                } else {
+                    indici[k] = appoggio[j++];
+                }
+            }
+        }
+
+        private int confronta(int primo, int secondo) {
+            return ordine.compare(libri.get(primo), libri.get(secondo));
+        }
+    }
+
+    /**
+     * Fonde due intervalli ordinati di {@code sorgente} in {@code destinazione}. Se sono grandi, divide il più lungo
+     * a metà, cerca con una ricerca binaria il punto corrispondente nell'altro e fonde le due parti in parallelo.
+     */
+    private static final class Fusione extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Libro> libri;
+        private final transient Comparator<Libro> ordine;
+        private final int[] sorgente;
+        private final int da1, a1, da2, a2;
+        private final int[] destinazione;
+        private final int inizio;
+
+        Fusione(List<Libro> libri, Comparator<Libro> ordine, int[] sorgente, int da1, int a1, int da2, int a2,
+                int[] destinazione, int inizio) {
+            this.libri = libri;
+            this.ordine = ordine;
+            this.sorgente = sorgente;
+            this.da1 = da1;
+            this.a1 = a1;
+            this.da2 = da2;
+            this.a2 = a2;
+            this.destinazione = destinazione;
+            this.inizio = inizio;
+        }
+
+        @Override
+        protected void compute() {
+            int n1 = a1 - da1;
+            int n2 = a2 - da2;
+            if (n1 + n2 <= BLOCCO_MINIMO) {
+                fondiSequenziale();
+                return;
+            }
+            // a parità gli elementi del primo intervallo vanno prima, per mantenere la stabilità
+            if (n1 >= n2) {
+                int meta1 = (da1 + a1) >>> 1;
+                int meta2 = primoNonMinore(sorgente[meta1], da2, a2, false);
+                int posizione = inizio + (meta1 - da1) + (meta2 - da2);
+                destinazione[posizione] = sorgente[meta1];
+                invokeAll(new Fusione(libri, ordine, sorgente, da1, meta1, da2, meta2, destinazione, inizio),
+                        new Fusione(libri, ordine, sorgente, meta1 + 1, a1, meta2, a2, destinazione, posizione + 1));
+            } else {
+                int meta2 = (da2 + a2) >>> 1;
+                int meta1 = primoNonMinore(sorgente[meta2], da1, a1, true);
+                int posizione = inizio + (meta1 - da1) + (meta2 - da2);
+                destinazione[posizione] = sorgente[meta2];
+                invokeAll(new Fusione(libri, ordine, sorgente, da1, meta1, da2, meta2, destinazione, inizio),
+                        new Fusione(libri, ordine, sorgente, meta1, a1, meta2 + 1, a2, destinazione, posizione + 1));
+            }
+        }
+
+        // la prima posizione dell'intervallo il cui libro va dopo quello indicato; con uguali = true anche a parità
+        private int primoNonMinore(int indice, int da, int a, boolean uguali) {
+            Libro libro = libri.get(indice);
+            int basso = da;
+            int alto = a;
+            while (basso < alto) {
+                int medio = (basso + alto) >>> 1;
+                int confronto = ordine.compare(libri.get(sorgente[medio]), libro);
+                if (confronto < 0 || (uguali && confronto == 0)) {
+                    basso = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return basso;
+        }
+
+        private void fondiSequenziale() {
+            int i = da1;
+            int j = da2;
+            int k = inizio;
+            while (i < a1 && j < a2) {
+                if (ordine.compare(libri.get(sorgente[i]), libri.get(sorgente[j])) <= 0) {
+                    destinazione[k++] = sorgente[i++];
+                } else {
+                    destinazione[k++] = sorgente[j++];
+                }
+            }
+            while (i < a1) {
+                destinazione[k++] = sorgente[i++];
+            }
+            while (j < a2) {
+                destinazione[k++] = sorgente[j++];
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package gestore_libreria.db;
+
+import java.sql.SQLException;
+
+/**
+ * Errore del database in un'operazione su più libri, sollevato dopo che la transazione è stata annullata.
+ * A differenza delle operazioni su un solo libro, che registrano l'errore e proseguono, le operazioni in blocco
+ * lo propagano fino alla transazione più esterna: chi le invoca non salva la cronologia e non notifica
+ * modifiche che il database non contiene.
+ */
+public class ErroreDatabase extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ErroreDatabase(String messaggio, SQLException causa) {
+        super(messaggio + ": " + causa.getMessage(), causa);
+    }
+}
@@ -1,18 +1,70 @@
 package gestore_libreria.db;
 
+import gestore_libreria.indice.ContatoreFacet;
+import gestore_libreria.indice.IndicePrefissi;
+import gestore_libreria.indice.IndiceTrigrammi;
 import gestore_libreria.memento.CustodeCronologiaLibro;
 import gestore_libreria.memento.MementoLibro;
+import gestore_libreria.model.CampoLibro;
 import gestore_libreria.model.Libro;
 import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.observer.EventoLibro;
 import gestore_libreria.observer.Soggetto;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 // Questa classe ora implementa l'interfaccia GestoreLibro.
 public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, CustodeCronologiaLibro.OnMementoListener  {
 
+    /**
+     * Numero di libri oltre il quale {@link #getTuttiLibriPaginati(CriterioOrdinamento)} legge i libri a pagine
+     */
+    public static final int SOGLIA_PAGINAZIONE = 2000;
+
     private final ImplementatoreRepositoryLibro repository;
+    private final ImplementatoreRepositoryLibro lettore;     // letture che possono avvenire fuori dall'EDT
     private final CustodeCronologiaLibro historyManager;
+    private final List<OnMutazioneListener> mutazioneListeners = new CopyOnWriteArrayList<>();
+    // facet e indici hanno lock separati: la costruzione degli indici in background non deve bloccare
+    // chi legge i conteggi dall'interfaccia
+    private final Object bloccoFacet = new Object();
+    private final Object bloccoIndici = new Object();
+    private volatile ContatoreFacet contatoreFacet;
+    private volatile IndiceTrigrammi indiceTitoli;
+    private volatile IndiceTrigrammi indiceAutori;
+    private volatile IndicePrefissi[] indiciPrefissi;
+
+    /**
+     * Interfaccia per ricevere le singole modifiche apportate ai libri (aggiunta, modifica, rimozione),
+     * comprese quelle causate da undo/redo.
+     * Permette a contatori e indici in memoria di aggiornarsi in modo incrementale senza interrogare il database.
+     */
+    public interface OnMutazioneListener {
+        /**
+         * @param libro il libro appena inserito, con l'id assegnato dal database
+         */
+        void libroAggiunto(Libro libro);
+
+        /**
+         * @param precedente lo stato del libro prima della modifica
+         * @param nuovo lo stato del libro dopo la modifica
+         */
+        void libroAggiornato(Libro precedente, Libro nuovo);
+
+        /**
+         * @param libro il libro appena rimosso
+         */
+        void libroRimosso(Libro libro);
+    }
 
     /**
      * Costruisce una nuova istanza di GestoreLibroConcreto.
@@ -25,8 +77,38 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      * @post L'istanza corrente di GestoreLibroConcreto è registrata come listener per il ripristino dei memento nella cronologia.
      */
     public GestoreLibroConcreto(ImplementatoreRepositoryLibro repository) {
+        this(repository, new CustodeCronologiaLibro());
+    }
+
+    /**
+     * Costruisce un GestoreLibroConcreto con una cronologia già preparata, ad esempio una che registra le
+     * operazioni su file con un {@link gestore_libreria.memento.GiornaleCronologia}.
+     *
+     * @param repository L'implementazione del repository per la gestione dei dati dei libri.
+     * @param historyManager La cronologia delle operazioni, eventualmente già popolata.
+     * @pre repository e historyManager non devono essere null.
+     * @post L'istanza corrente di GestoreLibroConcreto è registrata come listener per il ripristino dei memento nella cronologia.
+     */
+    public GestoreLibroConcreto(ImplementatoreRepositoryLibro repository, CustodeCronologiaLibro historyManager) {
+        this(repository, repository, historyManager);
+    }
+
+    /**
+     * Costruisce un GestoreLibroConcreto che esegue ricerche, letture a pagine e costruzione degli indici con un
+     * repository separato, ad esempio {@link RepositoryLibroSQLite#perLettura()}: queste letture avvengono anche
+     * fuori dall'EDT e non devono vedere le modifiche di una transazione ancora aperta sul repository principale.
+     *
+     * @param repository L'implementazione del repository per la gestione dei dati dei libri.
+     * @param lettore Il repository usato per le sole letture, sullo stesso database di {@code repository}.
+     * @param historyManager La cronologia delle operazioni, eventualmente già popolata.
+     * @pre repository, lettore e historyManager non devono essere null.
+     * @post L'istanza corrente di GestoreLibroConcreto è registrata come listener per il ripristino dei memento nella cronologia.
+     */
+    public GestoreLibroConcreto(ImplementatoreRepositoryLibro repository, ImplementatoreRepositoryLibro lettore,
+                                CustodeCronologiaLibro historyManager) {
         this.repository = repository;
-        this.historyManager = new CustodeCronologiaLibro();
+        this.lettore = lettore;
+        this.historyManager = historyManager;
         this.historyManager.setOnMementoRestoreListener(this);
     }
 
@@ -41,6 +123,348 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
         return historyManager;
     }
 
+    /**
+     * Registra un listener che riceve le singole modifiche ai libri.
+     *
+     * @param listener il listener da registrare
+     * @pre {@code listener} non deve essere null
+     * @post il listener riceve tutte le successive aggiunte, modifiche e rimozioni, comprese quelle di undo/redo
+     */
+    public void aggiungiOnMutazioneListener(OnMutazioneListener listener) {
+        if (!mutazioneListeners.contains(listener)) {
+            mutazioneListeners.add(listener);
+        }
+    }
+
+    /**
+     * Rimuove un listener registrato con {@link #aggiungiOnMutazioneListener(OnMutazioneListener)}.
+     *
+     * @param listener il listener da rimuovere
+     * @post il listener non riceve più notifiche
+     */
+    public void rimuoviOnMutazioneListener(OnMutazioneListener listener) {
+        mutazioneListeners.remove(listener);
+    }
+
+    /**
+     * Sottoscrive una ricerca o un filtro i cui risultati restano aggiornati senza nuove query: ogni modifica
+     * successiva ai libri viene confrontata con {@code filtro} e inserita nella posizione corretta dei risultati.
+     *
+     * @param filtro la condizione che i libri devono rispettare, equivalente alla query che ha prodotto {@code iniziali}
+     * @param criterio l'ordinamento dei risultati
+     * @param iniziali i libri che rispettano il filtro al momento della sottoscrizione
+     * @pre i parametri non devono essere null
+     * @post l'interrogazione riceve tutte le modifiche successive finché non viene chiusa con {@link InterrogazioneViva#chiudi()}
+     * @return l'interrogazione sottoscritta
+     */
+    public InterrogazioneViva sottoscrivi(Predicate<Libro> filtro, CriterioOrdinamento criterio, List<Libro> iniziali) {
+        InterrogazioneViva interrogazione = new InterrogazioneViva(this, filtro, criterio, iniziali);
+        aggiungiOnMutazioneListener(interrogazione);
+        return interrogazione;
+    }
+
+    /**
+     * Restituisce i conteggi dei libri per stato di lettura, valutazione e genere.
+     * Alla prima chiamata i conteggi vengono calcolati con un'unica query raggruppata, in seguito sono
+     * mantenuti aggiornati in modo incrementale a ogni aggiunta, modifica, rimozione e ripristino.
+     *
+     * @pre il repository deve essere stato inizializzato
+     * @post restituisce un'istanza non null di {@link ContatoreFacet}
+     * @return il contatore dei facet associato a questo manager
+     */
+    public ContatoreFacet getContatoreFacet() {
+        ContatoreFacet facet = contatoreFacet;
+        if (facet == null) {
+            synchronized (bloccoFacet) {
+                facet = contatoreFacet;
+                if (facet == null) {
+                    facet = repository.loadFacets();
+                    aggiungiOnMutazioneListener(facet);
+                    contatoreFacet = facet;
+                }
+            }
+        }
+        return facet;
+    }
+
+    /**
+     * Costruisce, se non ancora presenti, gli indici a trigrammi su titolo e autore usati dalla ricerca approssimata
+     * e gli indici dei prefissi usati dai suggerimenti.
+     * Può essere invocato in anticipo da un thread in background per evitare l'attesa alla prima ricerca; le modifiche
+     * fatte ai libri mentre gli indici vengono costruiti non vanno perse.
+     *
+     * @pre il repository deve essere stato inizializzato
+     * @post gli indici contengono tutti i libri del database e sono registrati per ricevere le modifiche successive
+     */
+    public void preparaIndiciRicerca() {
+        if (indiceTitoli != null) {
+            return;
+        }
+        synchronized (bloccoIndici) {
+            if (indiceTitoli != null) {
+                return;
+            }
+            // il registro riceve le modifiche già prima della lettura, così nessuna cade tra lettura e registrazione
+            RegistroModifiche registro = new RegistroModifiche();
+            aggiungiOnMutazioneListener(registro);
+            Map<Integer, Libro> libri = new HashMap<>();
+            for (Libro libro : lettore.loadAll(CriterioOrdinamento.NESSUNO)) {
+                libri.put(libro.getId(), libro);
+            }
+            registro.allinea(libri);
+
+            IndiceTrigrammi titoli = new IndiceTrigrammi(Libro::getTitolo);
+            IndiceTrigrammi autori = new IndiceTrigrammi(Libro::getAutore);
+            IndicePrefissi[] prefissi = {
+                    new IndicePrefissi(Libro::getTitolo),
+                    new IndicePrefissi(Libro::getAutore),
+                    new IndicePrefissi(Libro::getIsbn),
+                    new IndicePrefissi(Libro::getGenere)};
+            titoli.costruisci(libri.values());
+            autori.costruisci(libri.values());
+            for (IndicePrefissi indice : prefissi) {
+                indice.costruisci(libri.values());
+            }
+            List<OnMutazioneListener> indici = new ArrayList<>(List.of(titoli, autori));
+            indici.addAll(List.of(prefissi));
+            registro.inoltra(indici);
+
+            indiciPrefissi = prefissi;
+            indiceAutori = autori;
+            indiceTitoli = titoli;
+        }
+    }
+
+    /**
+     * @return {@code true} se gli indici della ricerca approssimata e dei suggerimenti sono pronti
+     */
+    public boolean isIndiciRicercaPronti() {
+        return indiceTitoli != null;
+    }
+
+    /**
+     * Raccoglie le modifiche arrivate mentre gli indici vengono costruiti. Le modifiche precedenti alla fine della
+     * lettura vengono riportate sui libri letti, dove contano solo come stato finale del libro e quindi non importa
+     * se la lettura le conteneva già; quelle successive vengono applicate agli indici una volta costruiti,
+     * dopodiché il registro inoltra agli indici ogni nuova modifica.
+     */
+    private static final class RegistroModifiche implements OnMutazioneListener {
+        // ogni modifica come coppia stato precedente / stato nuovo: null per un libro che non c'era o non c'è più
+        private final List<Libro[]> modifiche = new ArrayList<>();
+        private Map<Integer, Libro> libri;
+        private List<OnMutazioneListener> indici;
+
+        @Override
+        public synchronized void libroAggiunto(Libro libro) {
+            registra(null, libro);
+        }
+
+        @Override
+        public synchronized void libroAggiornato(Libro precedente, Libro nuovo) {
+            registra(precedente, nuovo);
+        }
+
+        @Override
+        public synchronized void libroRimosso(Libro libro) {
+            registra(libro, null);
+        }
+
+        private void registra(Libro precedente, Libro nuovo) {
+            if (indici == null) {
+                modifiche.add(new Libro[]{precedente, nuovo});
+            } else {
+                inoltra(precedente, nuovo);
+            }
+        }
+
+        // porta i libri letti allo stato delle modifiche arrivate finora
+        synchronized void allinea(Map<Integer, Libro> letti) {
+            for (Libro[] modifica : modifiche) {
+                if (modifica[1] == null) {
+                    letti.remove(modifica[0].getId());
+                } else {
+                    letti.put(modifica[1].getId(), modifica[1]);
+                }
+            }
+            modifiche.clear();
+            libri = letti;
+        }
+
+        // applica agli indici le modifiche arrivate durante la costruzione e da qui in poi le inoltra direttamente
+        synchronized void inoltra(List<OnMutazioneListener> destinatari) {
+            indici = destinatari;
+            for (Libro[] modifica : modifiche) {
+                // lo stato precedente è quello con cui il libro è negli indici, non quello dell'evento
+                Libro nuovo = modifica[1];
+                Libro precedente = libri.get(nuovo == null ? modifica[0].getId() : nuovo.getId());
+                inoltra(precedente, nuovo);
+            }
+            modifiche.clear();
+            libri = null;
+        }
+
+        private void inoltra(Libro precedente, Libro nuovo) {
+            if (libri != null) {
+                if (nuovo == null) {
+                    if (precedente != null) {
+                        libri.remove(precedente.getId());
+                    }
+                } else {
+                    libri.put(nuovo.getId(), nuovo);
+                }
+            }
+            for (OnMutazioneListener indice : indici) {
+                if (precedente == null && nuovo != null) {
+                    indice.libroAggiunto(nuovo);
+                } else if (nuovo == null && precedente != null) {
+                    indice.libroRimosso(precedente);
+                } else if (precedente != null) {
+                    indice.libroAggiornato(precedente, nuovo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restituisce i suggerimenti di completamento per il testo digitato nel campo di ricerca.
+     * Viene invocato a ogni tasto dall'EDT, quindi non costruisce gli indici e non ne attende la costruzione:
+     * finché {@link #preparaIndiciRicerca()} non è terminato non ci sono suggerimenti.
+     *
+     * @param criterio il campo su cui cercare: "Titolo", "Autore", "ISBN" o "Genere"
+     * @param prefisso il testo digitato finora
+     * @param limite il numero massimo di suggerimenti
+     * @pre prefisso non deve essere null
+     * @post Restituisce una lista non null, vuota se il criterio non è riconosciuto, se nessun valore inizia con il
+     *       prefisso o se gli indici non sono ancora pronti.
+     * @return i valori del campo che iniziano con {@code prefisso}, in ordine alfabetico
+     */
+    public List<String> suggerisci(String criterio, String prefisso, int limite) {
+        IndicePrefissi[] prefissi = indiciPrefissi;
+        if (prefissi == null) {
+            return new ArrayList<>();
+        }
+        int campo = switch (criterio) {
+            case "Titolo" -> 0;
+            case "Autore" -> 1;
+            case "ISBN" -> 2;
+            case "Genere" -> 3;
+            default -> -1;
+        };
+        return campo < 0 ? new ArrayList<>() : prefissi[campo].suggerisci(prefisso, limite);
+    }
+
+    /**
+     * Cerca i libri con un titolo simile al testo indicato, tollerando errori di battitura e accenti mancanti.
+     *
+     * @param title il testo da cercare
+     * @param limite il numero massimo di risultati
+     * @pre title non deve essere null
+     * @post Restituisce una lista non null ordinata dal libro più simile al meno simile.
+     * @return Una {@code List<Libro>} contenente i libri trovati.
+     */
+    public List<Libro> cercaApprossimataPerTitolo(String title, int limite) {
+        preparaIndiciRicerca();
+        return indiceTitoli.cerca(title, limite);
+    }
+
+    /**
+     * Cerca i libri con un autore simile al testo indicato, tollerando errori di battitura e accenti mancanti.
+     *
+     * @param author il testo da cercare
+     * @param limite il numero massimo di risultati
+     * @pre author non deve essere null
+     * @post Restituisce una lista non null ordinata dal libro più simile al meno simile.
+     * @return Una {@code List<Libro>} contenente i libri trovati.
+     */
+    public List<Libro> cercaApprossimataPerAutore(String author, int limite) {
+        preparaIndiciRicerca();
+        return indiceAutori.cerca(author, limite);
+    }
+
+    /**
+     * @pre il repository deve essere stato inizializzato
+     * @post Restituisce una lista non null dei percorsi di copertina distinti presenti nel database.
+     * @return Una {@code List<String>} con i percorsi delle copertine.
+     */
+    public List<String> getPercorsiCopertine() {
+        return repository.loadCoverPaths();
+    }
+
+    /**
+     * Sostituisce i percorsi delle copertine in tutti i libri che li usano, ad esempio dopo averle spostate
+     * nell'archivio delle copertine. L'operazione non viene registrata nella cronologia.
+     *
+     * @param percorsi la corrispondenza tra vecchio e nuovo percorso
+     * @pre percorsi non deve essere null
+     * @post ogni libro con una copertina tra le chiavi di {@code percorsi} usa il nuovo percorso
+     * @post i listener delle mutazioni ricevono ogni libro modificato con lo stato precedente e quello nuovo;
+     * se almeno un libro è cambiato vengono notificati gli Observer con un evento di tipo BULK.
+     */
+    public void sostituisciPercorsiCopertine(Map<String, String> percorsi) {
+        if (percorsi.isEmpty()) {
+            return;
+        }
+        // i libri coinvolti vanno letti prima della sostituzione, per passare ai listener gli stati precedenti
+        List<Libro> precedenti = repository.findByCoverPaths(percorsi.keySet());
+        repository.updateCoverPaths(percorsi);
+        CampoLibro[] campi = {CampoLibro.PERCORSO_COPERTINA};
+        List<Consumer<OnMutazioneListener>> mutazioni = new ArrayList<>(precedenti.size());
+        for (Libro precedente : precedenti) {
+            Libro nuovo = CampoLibro.sostituisci(precedente, campi,
+                    new Object[]{percorsi.get(precedente.getPercorsoCopertina())});
+            mutazioni.add(listener -> listener.libroAggiornato(precedente, nuovo));
+        }
+        notificaMassiva(mutazioni);
+    }
+
+    // le operazioni su più libri sono una transazione per gli Observer: chi accoda le notifiche, come
+    // DispatcherNotifiche, le consegna appena l'operazione termina, anche se fallisce, senza attendere la finestra
+    private void inTransazione(Runnable operazione) {
+        super.iniziaTransazione();
+        try {
+            operazione.run();
+        } finally {
+            super.terminaTransazione();
+        }
+    }
+
+    // i listener delle mutazioni (indici e contatori) vengono aggiornati prima degli Observer,
+    // che così leggono conteggi e indici già allineati alla modifica
+
+    // le operazioni su molti libri aggiornano i listener libro per libro e avvisano gli Observer una volta sola
+    private void notificaMassiva(List<Consumer<OnMutazioneListener>> mutazioni) {
+        if (mutazioni.isEmpty()) {
+            return;
+        }
+        for (Consumer<OnMutazioneListener> mutazione : mutazioni) {
+            for (OnMutazioneListener listener : mutazioneListeners) {
+                mutazione.accept(listener);
+            }
+        }
+        super.notificaOsservatori(EventoLibro.massivo());
+    }
+
+    private void notificaAggiunta(Libro libro) {
+        for (OnMutazioneListener listener : mutazioneListeners) {
+            listener.libroAggiunto(libro);
+        }
+        super.notificaOsservatori(EventoLibro.aggiunto(libro));
+    }
+
+    private void notificaModifica(Libro precedente, Libro nuovo) {
+        for (OnMutazioneListener listener : mutazioneListeners) {
+            listener.libroAggiornato(precedente, nuovo);
+        }
+        super.notificaOsservatori(EventoLibro.aggiornato(precedente, nuovo));
+    }
+
+    private void notificaRimozione(Libro libro) {
+        for (OnMutazioneListener listener : mutazioneListeners) {
+            listener.libroRimosso(libro);
+        }
+        super.notificaOsservatori(EventoLibro.rimosso(libro));
+    }
+
     /**
      * Consente l'inserimento di un libro nel database
      *
@@ -49,14 +473,42 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      * @pre Libro.getTitolo() non deve essere null o vuoto.
      * @pre Libro.getAutore() non deve essere null o vuoto.
      * @post Il libro è stato correttamente inserito nel database con codice ID univoco.
-     * @post Dopo l'inserimento vengono notificati gli Observer.
+     * @post Dopo l'inserimento vengono notificati gli Observer con un evento di tipo ADDED.
      * @post Dopo l'inserimento si salva il libro nello stack hystoryManager.
      */
     @Override
     public void aggiungiLibro(Libro Libro) {
         repository.save(Libro);
         historyManager.save(new MementoLibro(Libro, MementoLibro.OperationType.ADD));
-        super.notificaOsservatori();
+        notificaAggiunta(Libro);
+    }
+
+    /**
+     * Inserisce più libri in un'unica transazione.
+     *
+     * @param libri I libri da aggiungere.
+     * @pre libri non deve essere null e ogni libro deve avere titolo e autore.
+     * @post Ogni libro è inserito nel database e ha ricevuto il suo ID.
+     * @post Un solo memento, di tipo GRUPPO se i libri sono più di uno, è salvato nella cronologia.
+     * @post Gli Observer vengono notificati una sola volta con un evento di tipo BULK, all'interno di una transazione
+     * ({@link #iniziaTransazione()} e {@link #terminaTransazione()}) che si chiude anche in caso di errore.
+     * @throws ErroreDatabase se la transazione fallisce: il database, la cronologia e gli Observer restano invariati
+     */
+    public void aggiungiLibri(List<Libro> libri) {
+        if (libri.isEmpty()) {
+            return;
+        }
+        inTransazione(() -> {
+            repository.saveAll(libri);
+            historyManager.apriGruppo();
+            List<Consumer<OnMutazioneListener>> mutazioni = new ArrayList<>(libri.size());
+            for (Libro libro : libri) {
+                historyManager.save(new MementoLibro(libro, MementoLibro.OperationType.ADD));
+                mutazioni.add(listener -> listener.libroAggiunto(libro));
+            }
+            historyManager.chiudiGruppo();
+            notificaMassiva(mutazioni);
+        });
     }
 
     /**
@@ -67,7 +519,34 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      */
     @Override
     public List<Libro> getTuttiLibri(CriterioOrdinamento criteria) {
-        return repository.loadAll(criteria);
+        return lettore.loadAll(criteria);
+    }
+
+    /**
+     * @pre il database deve essere in uno stato consistente.
+     * @post Restituisce il numero di libri contenuti nel database.
+     * @return il numero di libri
+     */
+    public int contaLibri() {
+        return repository.count();
+    }
+
+    /**
+     * Restituisce tutti i libri come {@link #getTuttiLibri(CriterioOrdinamento)}, ma oltre
+     * {@link #SOGLIA_PAGINAZIONE} libri senza leggerli subito: la lista conosce solo il loro numero e
+     * carica dal database le pagine man mano che vengono lette.
+     *
+     * @param criteria il criterio di ordinamento
+     * @pre il database deve essere in uno stato consistente.
+     * @post Restituisce una lista non null di sola lettura con tutti i libri del database.
+     * @return Una {@code List<Libro>} con tutti i libri, eventualmente una {@link ListaLibriPaginata}.
+     */
+    public List<Libro> getTuttiLibriPaginati(CriterioOrdinamento criteria) {
+        int totale = lettore.count();
+        if (totale <= SOGLIA_PAGINAZIONE) {
+            return getTuttiLibri(criteria);
+        }
+        return new ListaLibriPaginata(lettore, criteria, totale);
     }
 
     /**
@@ -81,7 +560,7 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      */
     @Override
     public List<Libro> trovaLibroPerTitolo(String title, CriterioOrdinamento criteria) {
-        return repository.findByTitle(title, criteria);
+        return lettore.findByTitle(title, criteria);
     }
 
     /**
@@ -95,7 +574,7 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      */
     @Override
     public List<Libro> filtraLibroPerValutazione(int rating, CriterioOrdinamento criteria) {
-        return repository.findByRating(rating, criteria);
+        return lettore.findByRating(rating, criteria);
     }
 
     /**
@@ -110,7 +589,7 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      */
     @Override
     public List<Libro> filtraLibroPerStatoLettura(String readingState, CriterioOrdinamento criteria) {
-        return repository.findByReadingState(readingState, criteria);
+        return lettore.findByReadingState(readingState, criteria);
     }
 
     /**
@@ -124,7 +603,7 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      */
     @Override
     public List<Libro> trovaLibroPerAutore(String author, CriterioOrdinamento criteria) {
-        return repository.findByAuthor(author, criteria);
+        return lettore.findByAuthor(author, criteria);
     }
 
     /**
@@ -138,7 +617,7 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      */
     @Override
     public List<Libro> trovaLibroPerIsbn(String isbn, CriterioOrdinamento criteria) {
-        return repository.findByIsbn(isbn, criteria);
+        return lettore.findByIsbn(isbn, criteria);
     }
 
     /**
@@ -152,7 +631,7 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      */
     @Override
     public List<Libro> trovaLibroPerGenere(String genre, CriterioOrdinamento criteria) {
-        return repository.findByGenre(genre, criteria);
+        return lettore.findByGenre(genre, criteria);
     }
 
     /**
@@ -166,15 +645,123 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
      * @pre newBook.getTitolo() non deve essere null o vuoto.
      * @pre newBook.getAutore() non deve essere null o vuoto.
      * @post Lo stato del libro nel database è aggiornato con i dati di {@code newBook}.
-     * @post Un memento di tipo UPDATE è salvato nella cronologia, contenente sia {@code newBook} che {@code oldBook}.
+     * @post Un memento di tipo UPDATE è salvato nella cronologia, contenente i valori vecchi e nuovi dei soli campi cambiati.
      * @post Tutti gli osservatori sono notificati del cambiamento.
      *
      */
     @Override
     public void aggiornaLibro(Libro oldBook, Libro Libro) {
-        historyManager.save(new MementoLibro(Libro, MementoLibro.OperationType.UPDATE, oldBook));
+        historyManager.save(MementoLibro.differenza(oldBook, Libro));
         repository.aggiorna(Libro);
-        super.notificaOsservatori();
+        notificaModifica(oldBook, Libro);
+    }
+
+    /**
+     * Aggiorna più libri in un'unica transazione.
+     *
+     * @param precedenti Gli stati dei libri prima dell'aggiornamento.
+     * @param nuovi I libri con i dati aggiornati, nello stesso ordine e con gli stessi ID di {@code precedenti}.
+     * @pre precedenti e nuovi non devono essere null e devono avere la stessa lunghezza.
+     * @post Lo stato di ogni libro nel database è quello del corrispondente libro in {@code nuovi}.
+     * @post Un solo memento, di tipo GRUPPO se i libri sono più di uno, è salvato nella cronologia.
+     * @post Gli Observer vengono notificati una sola volta con un evento di tipo BULK, all'interno di una transazione
+     * ({@link #iniziaTransazione()} e {@link #terminaTransazione()}) che si chiude anche in caso di errore.
+     * @throws IllegalArgumentException se le due liste hanno lunghezze diverse
+     * @throws ErroreDatabase se la transazione fallisce: il database, la cronologia e gli Observer restano invariati
+     */
+    public void aggiornaLibri(List<Libro> precedenti, List<Libro> nuovi) {
+        if (precedenti.size() != nuovi.size()) {
+            throw new IllegalArgumentException("Ogni libro aggiornato deve avere il suo stato precedente");
+        }
+        if (nuovi.isEmpty()) {
+            return;
+        }
+        inTransazione(() -> {
+            repository.updateAll(nuovi);
+            historyManager.apriGruppo();
+            List<Consumer<OnMutazioneListener>> mutazioni = new ArrayList<>(nuovi.size());
+            for (int i = 0; i < nuovi.size(); i++) {
+                Libro precedente = precedenti.get(i);
+                Libro nuovo = nuovi.get(i);
+                historyManager.save(MementoLibro.differenza(precedente, nuovo));
+                mutazioni.add(listener -> listener.libroAggiornato(precedente, nuovo));
+            }
+            historyManager.chiudiGruppo();
+            notificaMassiva(mutazioni);
+        });
+    }
+
+    /**
+     * Imposta lo stesso valore di un campo su più libri, ad esempio lo stato di lettura dei libri selezionati,
+     * con un'unica transazione.
+     *
+     * @param ids Gli ID dei libri da modificare.
+     * @param campo Il campo da impostare.
+     * @param valore Il nuovo valore, del tipo del campo.
+     * @pre ids, campo e valore non devono essere null.
+     * @post Ogni libro indicato ancora presente nel database ha il campo impostato a {@code valore}.
+     * @post I libri che avevano già quel valore non vengono riscritti né registrati nella cronologia.
+     * @post Se almeno un libro cambia, un solo memento è salvato nella cronologia e gli Observer ricevono un solo evento BULK.
+     */
+    public void impostaCampo(Collection<Integer> ids, CampoLibro campo, Object valore) {
+        List<Libro> precedenti = new ArrayList<>();
+        List<Libro> nuovi = new ArrayList<>();
+        CampoLibro[] campi = {campo};
+        Object[] valori = {valore};
+        for (Libro libro : getLibri(ids)) {
+            Libro nuovo = CampoLibro.sostituisci(libro, campi, valori);
+            if (!campo.uguale(libro, nuovo)) {
+                precedenti.add(libro);
+                nuovi.add(nuovo);
+            }
+        }
+        aggiornaLibri(precedenti, nuovi);
+    }
+
+    /**
+     * @param ids Gli ID dei libri da leggere.
+     * @pre ids non deve essere null.
+     * @post Gli ID che non corrispondono a nessun libro vengono ignorati.
+     * @return I libri con gli ID indicati, nello stesso ordine.
+     */
+    public List<Libro> getLibri(Collection<Integer> ids) {
+        Map<Integer, Libro> trovati = repository.findByIds(ids);
+        List<Libro> libri = new ArrayList<>(trovati.size());
+        for (Integer id : ids) {
+            Libro libro = trovati.get(id);
+            if (libro != null) {
+                libri.add(libro);
+            }
+        }
+        return libri;
+    }
+
+    /**
+     * Elimina più libri in un'unica transazione.
+     *
+     * @param libri I libri da eliminare.
+     * @pre libri non deve essere null e ogni libro deve corrispondere a un libro esistente nel database.
+     * @post I libri sono rimossi dal database.
+     * @post Un solo memento, di tipo GRUPPO se i libri sono più di uno, è salvato nella cronologia.
+     * @post Gli Observer vengono notificati una sola volta con un evento di tipo BULK, all'interno di una transazione
+     * ({@link #iniziaTransazione()} e {@link #terminaTransazione()}) che si chiude anche in caso di errore.
+     * @throws ErroreDatabase se la transazione fallisce: il database, la cronologia e gli Observer restano invariati
+     */
+    public void eliminaLibri(List<Libro> libri) {
+        if (libri.isEmpty()) {
+            return;
+        }
+        inTransazione(() -> {
+            repository.deleteAll(libri);
+            historyManager.apriGruppo();
+            List<Consumer<OnMutazioneListener>> mutazioni = new ArrayList<>(libri.size());
+            for (Libro libro : libri) {
+                historyManager.save(new MementoLibro(libro, MementoLibro.OperationType.REMOVE));
+                mutazioni.add(listener -> listener.libroRimosso(libro));
+            }
+            historyManager.chiudiGruppo();
+            notificaMassiva(mutazioni);
+        });
     }
 
     /**
@@ -191,7 +778,7 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
     public void eliminaLibro(Libro Libro) {
         historyManager.save(new MementoLibro(Libro, MementoLibro.OperationType.REMOVE));
         repository.delete(Libro);
-        super.notificaOsservatori();
+        notificaRimozione(Libro);
     }
 
 /**
@@ -202,15 +789,22 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
  * @param direction La direzione dell'azione (UNDO o REDO).
  * @pre memento non deve essere null.
  * @pre memento.getBookState() non deve essere null per le operazioni ADD e REMOVE.
- * @pre memento.getPreviousBookState() non deve essere null per l'operazione UPDATE in caso di UNDO.
+ * @pre memento.getPreviousBookState() non deve essere null per l'operazione UPDATE in caso di UNDO, se il memento non è una differenza.
  * @post Il database viene modificato per riflettere lo stato del libro come specificato dal memento e dalla direzione.
  * @post Se l'operazione è un UNDO di ADD, il libro viene rimosso.
- * @post Se l'operazione è un REDO di ADD, il libro viene riaggiunto.
- * @post Se l'operazione è un UNDO di REMOVE, il libro viene riaggiunto.
+ * @post Se l'operazione è un REDO di ADD, il libro viene riaggiunto con il suo ID originale.
+ * @post Se l'operazione è un UNDO di REMOVE, il libro viene riaggiunto con il suo ID originale.
  * @post Se l'operazione è un REDO di REMOVE, il libro viene rimosso.
  * @post Se l'operazione è un UNDO di UPDATE, il libro viene ripristinato allo stato precedente.
  * @post Se l'operazione è un REDO di UPDATE, il libro viene ripristinato allo stato successivo.
- * @post Tutti gli osservatori sono notificati del cambiamento dopo il ripristino.
+ * @post Per un UPDATE salvato come differenza vengono riscritte solo le colonne dei campi cambiati; se il libro
+ *       non è più nel database il ripristino viene ignorato.
+ * @post Un GRUPPO viene ripristinato in un'unica transazione, all'indietro per l'UNDO, raggruppando le operazioni
+ *       consecutive dello stesso tipo in un solo statement; gli Observer ricevono un solo evento di tipo BULK,
+ *       all'interno di una transazione degli Observer.
+ * @post Se la transazione di un GRUPPO fallisce viene annullata per intero, nessuna modifica viene notificata e
+ *       l'{@link ErroreDatabase} viene propagato, così la cronologia non sposta il cursore.
+ * @post Tutti gli osservatori sono notificati del cambiamento dopo il ripristino con l'evento corrispondente.
  */
     @Override
     public void restore(MementoLibro memento, CustodeCronologiaLibro.ActionDirection direction) {
@@ -218,31 +812,138 @@ public class GestoreLibroConcreto extends Soggetto implements GestoreLibro, Cust
             case ADD:
                 if (direction == CustodeCronologiaLibro.ActionDirection.UNDO) {
                     repository.delete(memento.getBookState());
+                    notificaRimozione(memento.getBookState());
                     System.out.println("Undo ADD: Rimosso libro " + memento.getBookState().getTitolo());
                 } else {
-                    repository.save(memento.getBookState());
+                    repository.reinsertAll(List.of(memento.getBookState()));
+                    notificaAggiunta(memento.getBookState());
                     System.out.println("Redo ADD: Riaggiunto libro " + memento.getBookState().getTitolo());
                 }
                 break;
             case REMOVE:
                 if (direction == CustodeCronologiaLibro.ActionDirection.UNDO) {
-                    repository.save(memento.getBookState());
+                    repository.reinsertAll(List.of(memento.getBookState()));
+                    notificaAggiunta(memento.getBookState());
                     System.out.println("Undo DELETE: Riaggiunto libro " + memento.getBookState().getTitolo());
                 } else {
                     repository.delete(memento.getBookState());
+                    notificaRimozione(memento.getBookState());
                     System.out.println("Redo DELETE: Rimosso libro " + memento.getBookState().getTitolo());
                 }
                 break;
+            case GRUPPO:
+                ripristinaGruppo(memento, direction == CustodeCronologiaLibro.ActionDirection.REDO);
+                System.out.println((direction == CustodeCronologiaLibro.ActionDirection.UNDO ? "Undo" : "Redo")
+                        + " GRUPPO: Ripristinate " + memento.getParti().size() + " operazioni");
+                break;
             case UPDATE:
+                if (memento.isDifferenza()) {
+                    ripristinaDifferenza(memento, direction == CustodeCronologiaLibro.ActionDirection.REDO);
+                    break;
+                }
                 if (direction == CustodeCronologiaLibro.ActionDirection.UNDO) {
                     repository.aggiorna(memento.getPreviousBookState());
+                    notificaModifica(memento.getBookState(), memento.getPreviousBookState());
                     System.out.println("Undo UPDATE: Ripristinato libro " + memento.getPreviousBookState().getTitolo() + " allo stato precedente.");
                 } else {
                     repository.aggiorna(memento.getBookState());
+                    notificaModifica(memento.getPreviousBookState(), memento.getBookState());
                     System.out.println("Redo UPDATE: Ripristinato libro " + memento.getBookState().getTitolo() + " allo stato successivo.");
                 }
                 break;
         }
-        super.notificaOsservatori(); // Notifica la UI dopo il ripristino
+    }
+
+    // ricostruisce i due stati dal libro attuale e riscrive solo le colonne cambiate
+    private void ripristinaDifferenza(MementoLibro memento, boolean successivo) {
+        Libro attuale = repository.findById(memento.getIdLibro());
+        if (attuale == null) {
+            System.err.println("Ripristino ignorato: il libro " + memento.getIdLibro() + " non è più presente");
+            return;
+        }
+        Libro ripristinato = memento.ricostruisci(attuale, successivo);
+        Map<CampoLibro, Object> campi = new EnumMap<>(CampoLibro.class);
+        for (CampoLibro campo : memento.getCampi()) {
+            campi.put(campo, memento.getValore(campo, successivo));
+        }
+        repository.updateFields(memento.getIdLibro(), campi);
+        notificaModifica(attuale, ripristinato);
+        System.out.println((successivo ? "Redo" : "Undo") + " UPDATE: Ripristinato libro " + ripristinato.getTitolo()
+                + (successivo ? " allo stato successivo." : " allo stato precedente."));
+    }
+
+    // cosa fa sul database il ripristino di una parte di un gruppo
+    private enum Azione {
+        INSERISCI, RIMUOVI, AGGIORNA
+    }
+
+    private static Azione azione(MementoLibro memento, boolean successivo) {
+        return switch (memento.getOperationType()) {
+            case ADD -> successivo ? Azione.INSERISCI : Azione.RIMUOVI;
+            case REMOVE -> successivo ? Azione.RIMUOVI : Azione.INSERISCI;
+            default -> Azione.AGGIORNA;
+        };
+    }
+
+    private void ripristinaGruppo(MementoLibro gruppo, boolean successivo) {
+        List<MementoLibro> parti = new ArrayList<>(gruppo.getParti());
+        if (!successivo) {
+            Collections.reverse(parti);
+        }
+        List<Consumer<OnMutazioneListener>> mutazioni = new ArrayList<>(parti.size());
+        inTransazione(() -> {
+            repository.runInTransaction(() -> {
+                int inizio = 0;
+                while (inizio < parti.size()) {
+                    Azione azione = azione(parti.get(inizio), successivo);
+                    int fine = inizio + 1;
+                    while (fine < parti.size() && azione(parti.get(fine), successivo) == azione) {
+                        fine++;
+                    }
+                    ripristinaBlocco(parti.subList(inizio, fine), azione, successivo, mutazioni);
+                    inizio = fine;
+                }
+            });
+            notificaMassiva(mutazioni);
+        });
+    }
+
+    // le parti consecutive con la stessa azione diventano un solo statement
+    private void ripristinaBlocco(List<MementoLibro> blocco, Azione azione, boolean successivo,
+                                  List<Consumer<OnMutazioneListener>> mutazioni) {
+        List<Libro> libri = new ArrayList<>(blocco.size());
+        if (azione != Azione.AGGIORNA) {
+            for (MementoLibro memento : blocco) {
+                Libro libro = memento.getBookState();
+                libri.add(libro);
+                mutazioni.add(azione == Azione.INSERISCI
+                        ? listener -> listener.libroAggiunto(libro)
+                        : listener -> listener.libroRimosso(libro));
+            }
+            if (azione == Azione.INSERISCI) {
+                repository.reinsertAll(libri);
+            } else {
+                repository.deleteAll(libri);
+            }
+            return;
+        }
+        // gli stati completi si ricostruiscono dalle righe attuali, lette con una sola query per blocco
+        List<Integer> ids = new ArrayList<>(blocco.size());
+        for (MementoLibro memento : blocco) {
+            ids.add(memento.getIdLibro());
+        }
+        Map<Integer, Libro> attuali = repository.findByIds(ids);
+        for (MementoLibro memento : blocco) {
+            Libro attuale = attuali.get(memento.getIdLibro());
+            if (attuale == null) {
+                System.err.println("Ripristino ignorato: il libro " + memento.getIdLibro() + " non è più presente");
+                continue;
+            }
+            Libro ripristinato = memento.ricostruisci(attuale, successivo);
+            attuali.put(ripristinato.getId(), ripristinato);
+            libri.add(ripristinato);
+            mutazioni.add(listener -> listener.libroAggiornato(attuale, ripristinato));
+        }
+        repository.updateAll(libri);
     }
 }
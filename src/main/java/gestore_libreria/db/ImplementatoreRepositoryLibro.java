@@ -1,7 +1,11 @@
 package gestore_libreria.db;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
+import gestore_libreria.indice.ContatoreFacet;
+import gestore_libreria.model.CampoLibro;
 import gestore_libreria.model.Libro;
 import gestore_libreria.model.CriterioOrdinamento;
 
@@ -11,7 +15,15 @@ public interface ImplementatoreRepositoryLibro {
     //definisco i metodi che devono essere presenti nei database concreti
 
     void save(Libro Libro);
+    //le operazioni su più libri e runInTransaction sollevano ErroreDatabase dopo aver annullato la transazione
+    void saveAll(List<Libro> books);
+    void reinsertAll(List<Libro> books);
+    Libro findById(int id);
+    Map<Integer, Libro> findByIds(Collection<Integer> ids);
     List<Libro> loadAll(CriterioOrdinamento criteria);
+    int count();
+    List<Libro> loadPage(CriterioOrdinamento criteria, int offset, int limit);
+    List<Integer> loadPageIds(CriterioOrdinamento criteria, int offset, int limit);
     List<Libro> findByTitle(String title, CriterioOrdinamento criteria);
     List<Libro> findByRating(int rating, CriterioOrdinamento criteria);
     List<Libro> findByReadingState(String readingState, CriterioOrdinamento criteria);
@@ -19,5 +31,13 @@ public interface ImplementatoreRepositoryLibro {
     List<Libro> findByIsbn(String isbn, CriterioOrdinamento criteria);
     List<Libro> findByGenre(String genre, CriterioOrdinamento criteria);
     void delete(Libro Libro);
+    void deleteAll(List<Libro> books);
     void aggiorna(Libro Libro);
+    void updateAll(List<Libro> books);
+    void updateFields(int id, Map<CampoLibro, Object> fields);
+    ContatoreFacet loadFacets();
+    List<String> loadCoverPaths();
+    List<Libro> findByCoverPaths(Collection<String> paths);
+    void updateCoverPaths(Map<String, String> paths);
+    void runInTransaction(Runnable operations);
 }
@@ -0,0 +1,13 @@
+package gestore_libreria.db;
+
+
+public interface ImplementatoreRepositoryMiniature {
+
+    //definisco i metodi che devono essere presenti negli archivi concreti delle miniature
+
+    String findHash(String path, long size, long lastModified);
+    void saveSource(String path, long size, long lastModified, String hash);
+    byte[] findThumbnail(String hash, int width, int height);
+    void saveThumbnail(String hash, int width, int height, byte[] data);
+    int deleteOrphans();
+}
@@ -0,0 +1,358 @@
+package gestore_libreria.db;
+
+import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.model.Libro;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Risultato di una ricerca o di un filtro che resta aggiornato senza interrogare di nuovo il database.
+ * La sottoscrizione ({@link GestoreLibroConcreto#sottoscrivi(Predicate, CriterioOrdinamento, List)}) parte
+ * dal risultato di una query; ogni aggiunta, modifica o rimozione successiva viene confrontata con il filtro
+ * e, se lo riguarda, inserita, spostata o tolta dalla lista ordinata trovando la posizione con una ricerca binaria.
+ * I cambiamenti vengono comunicati riga per riga a un {@link OnRisultatiCambiati}, ad esempio il modello
+ * della tabella.
+ * <p>
+ * I libri sono tenuti una sola volta, nell'ordine in cui sono arrivati; ogni criterio di ordinamento usato è una
+ * permutazione di indici su di essi, mantenuta a ogni modifica. Cambiare criterio con {@link #ordina(CriterioOrdinamento)}
+ * sostituisce solo la permutazione mostrata, senza interrogare il database.
+ * <p>
+ * Solo la ricerca della posizione costa O(log n): inserire o togliere una riga sposta con
+ * {@link System#arraycopy} la coda dell'array di ogni permutazione, quindi una modifica costa O(n) per ogni
+ * criterio usato. È una copia contigua di 4 byte per riga, molto più economica della query che evita, ma cresce
+ * con il numero di risultati e con il numero di criteri di ordinamento usati.
+ * <p>
+ * La lista viene modificata sul thread che esegue le operazioni sul gestore, che per l'interfaccia grafica è l'EDT.
+ */
+public class InterrogazioneViva implements GestoreLibroConcreto.OnMutazioneListener {
+
+    /**
+     * Riceve le variazioni della lista dei risultati, già applicate quando il metodo viene invocato.
+     */
+    public interface OnRisultatiCambiati {
+        /**
+         * @param indice la posizione del libro entrato nei risultati
+         */
+        void rigaInserita(int indice);
+
+        /**
+         * @param indice la posizione del libro modificato, rimasto nello stesso punto
+         */
+        void rigaAggiornata(int indice);
+
+        /**
+         * @param indice la posizione che aveva il libro uscito dai risultati
+         */
+        void rigaRimossa(int indice);
+
+        /**
+         * Tutte le righe hanno cambiato posizione perché è cambiato il criterio di ordinamento.
+         */
+        void risultatiRiordinati();
+    }
+
+    /**
+     * Il filtro di un'interrogazione su tutto il catalogo: da essa le altre si possono ricavare senza query,
+     * vedi {@link #restringi(Predicate)}.
+     */
+    public static final Predicate<Libro> TUTTI = libro -> true;
+
+    private final GestoreLibroConcreto gestore;
+    private final Predicate<Libro> filtro;
+    // i libri nell'ordine di arrivo: le permutazioni contengono indici di questa lista
+    private final List<Libro> libri;
+    private final EnumMap<CriterioOrdinamento, Permutazione> permutazioni = new EnumMap<>(CriterioOrdinamento.class);
+    private final List<Libro> risultati = new Risultati();
+    private CriterioOrdinamento criterio;
+    private Permutazione attiva;
+    private OnRisultatiCambiati onRisultatiCambiati;
+
+    InterrogazioneViva(GestoreLibroConcreto gestore, Predicate<Libro> filtro, CriterioOrdinamento criterio, List<Libro> iniziali) {
+        this.gestore = gestore;
+        this.filtro = filtro;
+        this.libri = new ArrayList<>(iniziali);
+        // la permutazione iniziale viene ordinata con il comparatore, anche se i libri arrivano già ordinati
+        // da una query: così resta coerente con le ricerche binarie successive
+        this.criterio = criterio;
+        this.attiva = permutazione(criterio);
+    }
+
+    /**
+     * Filtro che riproduce le ricerche del repository: il campo contiene il testo, senza distinguere maiuscole
+     * e minuscole.
+     *
+     * @param campo il campo del libro in cui cercare
+     * @param testo il testo da cercare
+     * @return il filtro corrispondente
+     */
+    public static Predicate<Libro> contiene(Function<Libro, String> campo, String testo) {
+        String cercato = testo.toLowerCase(Locale.ROOT);
+        return libro -> {
+            String valore = campo.apply(libro);
+            return valore != null && valore.toLowerCase(Locale.ROOT).contains(cercato);
+        };
+    }
+
+    /**
+     * @param onRisultatiCambiati il destinatario delle variazioni riga per riga, o null
+     */
+    public void setOnRisultatiCambiati(OnRisultatiCambiati onRisultatiCambiati) {
+        this.onRisultatiCambiati = onRisultatiCambiati;
+    }
+
+    /**
+     * @return una vista non modificabile dei risultati, sempre aggiornata e ordinata secondo il criterio corrente
+     */
+    public List<Libro> getRisultati() {
+        return risultati;
+    }
+
+    public CriterioOrdinamento getCriterio() {
+        return criterio;
+    }
+
+    /**
+     * Ordina i risultati secondo un altro criterio senza rileggerli. La permutazione di un criterio viene
+     * calcolata la prima volta che serve e da quel momento è mantenuta insieme alle altre.
+     *
+     * @param criterio il nuovo criterio di ordinamento
+     * @pre {@code criterio} non deve essere null
+     * @post {@link #getRisultati()} è ordinata secondo {@code criterio}; se il criterio è cambiato il destinatario
+     * riceve {@link OnRisultatiCambiati#risultatiRiordinati()}
+     */
+    public void ordina(CriterioOrdinamento criterio) {
+        if (criterio == this.criterio) {
+            return;
+        }
+        this.criterio = criterio;
+        this.attiva = permutazione(criterio);
+        OnRisultatiCambiati listener = onRisultatiCambiati;
+        if (listener != null) {
+            listener.risultatiRiordinati();
+        }
+    }
+
+    private Permutazione permutazione(CriterioOrdinamento criterio) {
+        return permutazioni.computeIfAbsent(criterio, c -> new Permutazione(c.getComparatore()));
+    }
+
+    /**
+     * @return {@code true} se l'interrogazione contiene tutti i libri del catalogo
+     */
+    public boolean isCatalogoCompleto() {
+        return filtro == TUTTI;
+    }
+
+    /**
+     * Sottoscrive un filtro ricavandone i risultati dalle righe di questa interrogazione invece che dal database.
+     * Il filtro viene valutato in parallelo quando le righe sono molte.
+     *
+     * @param filtro la condizione che i libri devono rispettare
+     * @pre questa interrogazione contiene tutti i libri che possono rispettare {@code filtro}, ad esempio perché
+     * {@link #isCatalogoCompleto()}; {@code filtro} può essere valutato da più thread insieme
+     * @post la nuova interrogazione ha lo stesso criterio di ordinamento ed è indipendente da questa
+     * @return l'interrogazione sottoscritta
+     */
+    public InterrogazioneViva restringi(Predicate<Libro> filtro) {
+        return gestore.sottoscrivi(filtro, criterio, ElaborazioneParallela.getIstanza().filtra(libri, filtro));
+    }
+
+    /**
+     * Termina la sottoscrizione.
+     *
+     * @post i risultati non vengono più aggiornati e il destinatario non riceve più variazioni
+     */
+    public void chiudi() {
+        gestore.rimuoviOnMutazioneListener(this);
+        onRisultatiCambiati = null;
+    }
+
+    @Override
+    public void libroAggiunto(Libro libro) {
+        if (filtro.test(libro)) {
+            inserisci(libro);
+        }
+    }
+
+    @Override
+    public void libroAggiornato(Libro precedente, Libro nuovo) {
+        int indice = attiva.trova(precedente);
+        boolean resta = filtro.test(nuovo);
+        if (indice < 0) {
+            if (resta) {
+                inserisci(nuovo);
+            }
+            return;
+        }
+        if (!resta) {
+            rimuovi(indice);
+            return;
+        }
+        // il libro mantiene il suo indice, cambia solo la sua posizione in ogni permutazione
+        int posizioneLibro = attiva.indici[indice];
+        for (Permutazione permutazione : permutazioni.values()) {
+            permutazione.rimuovi(permutazione == attiva ? indice : permutazione.trova(precedente));
+        }
+        libri.set(posizioneLibro, nuovo);
+        for (Permutazione permutazione : permutazioni.values()) {
+            permutazione.inserisci(permutazione.posizione(nuovo), posizioneLibro);
+        }
+        int nuovoIndice = attiva.trova(nuovo);
+        OnRisultatiCambiati listener = onRisultatiCambiati;
+        if (listener == null) {
+            return;
+        }
+        if (nuovoIndice == indice) {
+            listener.rigaAggiornata(indice);
+        } else {
+            listener.rigaRimossa(indice);
+            listener.rigaInserita(nuovoIndice);
+        }
+    }
+
+    @Override
+    public void libroRimosso(Libro libro) {
+        int indice = attiva.trova(libro);
+        if (indice >= 0) {
+            rimuovi(indice);
+        }
+    }
+
+    private void inserisci(Libro libro) {
+        int posizioneLibro = libri.size();
+        libri.add(libro);
+        int indice = -1;
+        for (Permutazione permutazione : permutazioni.values()) {
+            int posizione = permutazione.posizione(libro);
+            permutazione.inserisci(posizione, posizioneLibro);
+            if (permutazione == attiva) {
+                indice = posizione;
+            }
+        }
+        OnRisultatiCambiati listener = onRisultatiCambiati;
+        if (listener != null) {
+            listener.rigaInserita(indice);
+        }
+    }
+
+    private void rimuovi(int indice) {
+        int posizioneLibro = attiva.indici[indice];
+        Libro libro = libri.get(posizioneLibro);
+        for (Permutazione permutazione : permutazioni.values()) {
+            permutazione.rimuovi(permutazione == attiva ? indice : permutazione.trova(libro));
+        }
+        // l'ultimo libro prende il posto di quello rimosso, così gli altri indici non cambiano
+        int ultimo = libri.size() - 1;
+        if (posizioneLibro != ultimo) {
+            Libro spostato = libri.get(ultimo);
+            for (Permutazione permutazione : permutazioni.values()) {
+                permutazione.indici[permutazione.trova(spostato)] = posizioneLibro;
+            }
+            libri.set(posizioneLibro, spostato);
+        }
+        libri.remove(ultimo);
+        OnRisultatiCambiati listener = onRisultatiCambiati;
+        if (listener != null) {
+            listener.rigaRimossa(indice);
+        }
+    }
+
+    // i risultati visti attraverso la permutazione del criterio corrente
+    private class Risultati extends AbstractList<Libro> {
+        @Override
+        public Libro get(int indice) {
+            if (indice < 0 || indice >= attiva.dimensione) {
+                throw new IndexOutOfBoundsException(indice);
+            }
+            return libri.get(attiva.indici[indice]);
+        }
+
+        @Override
+        public int size() {
+            return attiva.dimensione;
+        }
+    }
+
+    /**
+     * Gli indici dei libri nell'ordine di un criterio: {@code indici[i]} è la posizione in {@code libri}
+     * del libro che occupa la riga {@code i}. Inserimento e rimozione spostano la coda dell'array: O(n).
+     */
+    private class Permutazione {
+        private final Comparator<Libro> ordine;
+        private int[] indici;
+        private int dimensione;
+
+        Permutazione(Comparator<Libro> ordine) {
+            this.ordine = ordine;
+            this.indici = ElaborazioneParallela.getIstanza().ordinaIndici(libri, ordine);
+            this.dimensione = indici.length;
+        }
+
+        void inserisci(int indice, int posizioneLibro) {
+            if (dimensione == indici.length) {
+                indici = Arrays.copyOf(indici, Math.max(16, dimensione + (dimensione >> 1)));
+            }
+            System.arraycopy(indici, indice, indici, indice + 1, dimensione - indice);
+            indici[indice] = posizioneLibro;
+            dimensione++;
+        }
+
+        void rimuovi(int indice) {
+            System.arraycopy(indici, indice + 1, indici, indice, dimensione - indice - 1);
+            dimensione--;
+        }
+
+        // la posizione in cui il libro va inserito per mantenere l'ordine
+        int posizione(Libro libro) {
+            int basso = 0;
+            int alto = dimensione;
+            while (basso < alto) {
+                int medio = (basso + alto) >>> 1;
+                if (ordine.compare(libri.get(indici[medio]), libro) < 0) {
+                    basso = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return basso;
+        }
+
+        /**
+         * Cerca il libro con una ricerca binaria sul suo stato precedente; se lo stato non corrisponde a quello
+         * nella lista (ad esempio perché modificato altrove) ricade su una scansione per id.
+         */
+        int trova(Libro libro) {
+            int indice = posizione(libro);
+            if (indice < dimensione && libri.get(indici[indice]).getId() == libro.getId()) {
+                return indice;
+            }
+            for (int i = 0; i < dimensione; i++) {
+                if (libri.get(indici[i]).getId() == libro.getId()) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    //metriche
+
+    public int getNumeroRisultati() {
+        return libri.size();
+    }
+
+    /**
+     * @return il numero di criteri di ordinamento per cui è mantenuta una permutazione
+     */
+    public int getNumeroPermutazioni() {
+        return permutazioni.size();
+    }
+}
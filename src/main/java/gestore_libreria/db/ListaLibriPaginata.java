@@ -0,0 +1,243 @@
+package gestore_libreria.db;
+
+import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.model.Libro;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+/**
+ * Lista di sola lettura di tutti i libri che conosce da subito solo il loro numero e legge dal database
+ * le pagine di {@link #DIMENSIONE_PAGINA} libri man mano che vengono richieste.
+ * In memoria restano al più {@link #MASSIMO_PAGINE} pagine, scelte con una politica LRU.
+ * In modalità asincrona una pagina non ancora letta viene caricata in background e nel frattempo
+ * i suoi elementi valgono {@link #IN_CARICAMENTO}.
+ * Le modifiche ai singoli libri si applicano alle sole pagine in memoria con {@link #sostituisci(Libro)} e
+ * {@link #rimuovi(int)}, senza rileggere il catalogo.
+ */
+public class ListaLibriPaginata extends AbstractList<Libro> implements RandomAccess {
+
+    /**
+     * Numero di libri letti con una sola query
+     */
+    public static final int DIMENSIONE_PAGINA = 200;
+
+    /**
+     * Numero massimo di pagine tenute in memoria
+     */
+    public static final int MASSIMO_PAGINE = 25;
+
+    /**
+     * Libro segnaposto restituito per le righe la cui pagina è in caricamento
+     */
+    public static final Libro IN_CARICAMENTO = new Libro.Costruttore("Caricamento…", "…").build();
+
+    private final ImplementatoreRepositoryLibro repository;
+    private final CriterioOrdinamento criterio;
+    private volatile int dimensione;
+    private int generazione;        // cambia quando le pagine vengono scartate, per ignorare le letture già avviate
+    private final Map<Integer, List<Libro>> pagine = new LinkedHashMap<>(MASSIMO_PAGINE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Libro>> piuVecchia) {
+            return size() > MASSIMO_PAGINE;
+        }
+    };
+    private final Set<Integer> inCaricamento = new HashSet<>();
+    private volatile Executor esecutore;
+    private volatile BiConsumer<Integer, Integer> onPaginaCaricata;
+
+    /**
+     * @param repository il repository da cui leggere le pagine
+     * @param criterio l'ordinamento dei libri
+     * @param dimensione il numero totale di libri
+     * @pre {@code repository} non deve essere null
+     * @post la lista ha {@code dimensione} elementi e nessuna pagina è stata ancora letta
+     */
+    public ListaLibriPaginata(ImplementatoreRepositoryLibro repository, CriterioOrdinamento criterio, int dimensione) {
+        this.repository = repository;
+        this.criterio = criterio;
+        this.dimensione = dimensione;
+    }
+
+    /**
+     * Attiva il caricamento in background delle pagine non ancora lette.
+     *
+     * @param esecutore l'esecutore su cui leggere le pagine
+     * @param onPaginaCaricata invocato sul thread dell'esecutore con la prima e l'ultima riga della pagina letta
+     * @post {@link #get(int)} non accede più al database: per le pagine mancanti restituisce {@link #IN_CARICAMENTO}
+     */
+    public void setCaricamentoAsincrono(Executor esecutore, BiConsumer<Integer, Integer> onPaginaCaricata) {
+        this.onPaginaCaricata = onPaginaCaricata;
+        this.esecutore = esecutore;
+    }
+
+    @Override
+    public int size() {
+        return dimensione;
+    }
+
+    @Override
+    public Libro get(int indice) {
+        if (indice < 0 || indice >= dimensione) {
+            throw new IndexOutOfBoundsException("Indice " + indice + " fuori dalla lista di " + dimensione + " libri");
+        }
+        int numeroPagina = indice / DIMENSIONE_PAGINA;
+        List<Libro> pagina;
+        synchronized (this) {
+            pagina = pagine.get(numeroPagina);
+        }
+        if (pagina == null) {
+            pagina = esecutore == null ? carica(numeroPagina) : richiedi(numeroPagina);
+            if (pagina == null) {
+                return IN_CARICAMENTO;
+            }
+        }
+        int posizione = indice % DIMENSIONE_PAGINA;
+        // il database potrebbe essere cambiato dopo il conteggio
+        return posizione < pagina.size() ? pagina.get(posizione) : IN_CARICAMENTO;
+    }
+
+    /**
+     * Restituisce gli id dei libri in un intervallo di righe, anche di quelle non ancora lette.
+     * Se una pagina dell'intervallo manca non viene caricata: basta una query dei soli id, che non passa dalla
+     * cache delle pagine e quindi non ne rimuove quelle visibili.
+     *
+     * @param prima la prima riga dell'intervallo
+     * @param ultima l'ultima riga dell'intervallo, inclusa
+     * @pre {@code 0 <= prima <= ultima < size()}
+     * @return gli id dei libri nelle righe indicate, nell'ordine delle righe
+     */
+    public List<Integer> getIds(int prima, int ultima) {
+        List<Integer> ids = new ArrayList<>(ultima - prima + 1);
+        synchronized (this) {
+            for (int indice = prima; indice <= ultima; indice++) {
+                List<Libro> pagina = pagine.get(indice / DIMENSIONE_PAGINA);
+                int posizione = indice % DIMENSIONE_PAGINA;
+                if (pagina == null || posizione >= pagina.size()) {
+                    ids = null;
+                    break;
+                }
+                ids.add(pagina.get(posizione).getId());
+            }
+        }
+        if (ids == null) {
+            // tutto l'intervallo dalla stessa query, così righe lette e mancanti non si sovrappongono; la query
+            // avviene fuori dal lock per non bloccare i caricamenti delle pagine in background
+            return repository.loadPageIds(criterio, prima, ultima - prima + 1);
+        }
+        return ids;
+    }
+
+    /**
+     * @param libro il libro da verificare
+     * @return {@code true} se il libro è il segnaposto di una riga in caricamento
+     */
+    public static boolean isInCaricamento(Libro libro) {
+        return libro == IN_CARICAMENTO;
+    }
+
+    private List<Libro> carica(int numeroPagina) {
+        int letturaAvviata;
+        synchronized (this) {
+            letturaAvviata = generazione;
+        }
+        List<Libro> pagina = repository.loadPage(criterio, numeroPagina * DIMENSIONE_PAGINA, DIMENSIONE_PAGINA);
+        synchronized (this) {
+            if (letturaAvviata == generazione) {
+                pagine.put(numeroPagina, pagina);
+            }
+            inCaricamento.remove(numeroPagina);
+        }
+        return pagina;
+    }
+
+    /**
+     * Indica se una modifica lascia il libro nella stessa riga, cioè se non cambia i campi dell'ordinamento.
+     *
+     * @param precedente lo stato del libro prima della modifica
+     * @param nuovo lo stato del libro dopo la modifica
+     * @return {@code true} se il libro resta nella stessa riga
+     */
+    public boolean isStessaRiga(Libro precedente, Libro nuovo) {
+        return criterio.getComparatore().compare(precedente, nuovo) == 0;
+    }
+
+    /**
+     * Sostituisce un libro modificato nella pagina in memoria che lo contiene.
+     *
+     * @param nuovo il libro modificato
+     * @pre la modifica non cambia la riga del libro, vedi {@link #isStessaRiga(Libro, Libro)}
+     * @post se la pagina del libro è in memoria, contiene {@code nuovo}; le altre pagine lo leggeranno dal database
+     * @return la riga del libro, -1 se la sua pagina non è in memoria
+     */
+    public synchronized int sostituisci(Libro nuovo) {
+        for (Map.Entry<Integer, List<Libro>> pagina : pagine.entrySet()) {
+            List<Libro> libri = pagina.getValue();
+            for (int i = 0; i < libri.size(); i++) {
+                if (libri.get(i).getId() == nuovo.getId()) {
+                    libri.set(i, nuovo);
+                    return pagina.getKey() * DIMENSIONE_PAGINA + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Toglie un libro rimosso dalla lista. Le righe successive salgono di una posizione, quindi la pagina del libro
+     * e quelle seguenti vengono scartate e rilette alla prossima richiesta.
+     *
+     * @param id l'id del libro rimosso
+     * @post se il libro era in una pagina in memoria, la lista ha un elemento in meno
+     * @return la riga che occupava il libro, -1 se la sua pagina non è in memoria e la riga non è nota
+     */
+    public synchronized int rimuovi(int id) {
+        int riga = -1;
+        for (Map.Entry<Integer, List<Libro>> pagina : pagine.entrySet()) {
+            List<Libro> libri = pagina.getValue();
+            for (int i = 0; i < libri.size() && riga < 0; i++) {
+                if (libri.get(i).getId() == id) {
+                    riga = pagina.getKey() * DIMENSIONE_PAGINA + i;
+                }
+            }
+        }
+        if (riga >= 0) {
+            int numeroPagina = riga / DIMENSIONE_PAGINA;
+            pagine.keySet().removeIf(numero -> numero >= numeroPagina);
+            generazione++;
+            dimensione--;
+        }
+        return riga;
+    }
+
+    private List<Libro> richiedi(int numeroPagina) {
+        synchronized (this) {
+            if (!inCaricamento.add(numeroPagina)) {
+                return null;
+            }
+        }
+        esecutore.execute(() -> {
+            carica(numeroPagina);
+            BiConsumer<Integer, Integer> listener = onPaginaCaricata;
+            if (listener != null) {
+                int prima = numeroPagina * DIMENSIONE_PAGINA;
+                listener.accept(prima, Math.min(dimensione, prima + DIMENSIONE_PAGINA) - 1);
+            }
+        });
+        return null;
+    }
+
+    //metriche
+
+    public synchronized int getPagineInMemoria() {
+        return pagine.size();
+    }
+}
@@ -1,20 +1,65 @@
 package gestore_libreria.db;
 
+import gestore_libreria.indice.ContatoreFacet;
+import gestore_libreria.model.CampoLibro;
+import gestore_libreria.model.ChiaveOrdinamento;
 import gestore_libreria.model.Libro;
 import gestore_libreria.model.CriterioOrdinamento;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
 
 //classe che implementa il database
 public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
 
+    private static final String INSERT_SQL = """
+            INSERT INTO books (title, author, isbn, genre, rating, readingState, coverPath, title_sort, author_sort)
+            VALUES (?,?,?,?,?,?,?,?,?)
+            """;
+
+    private static final String UPDATE_SQL = """
+            UPDATE books SET
+            title=?,
+            author=?,
+            isbn=?,
+            genre=?,
+            rating=?,
+            readingState=?,
+            coverPath=?,
+            title_sort=?,
+            author_sort=?
+            WHERE id=?
+            """;
+
+    //limite dei parametri per le query con IN, sotto il minimo garantito da SQLite
+    private static final int IDS_PER_QUERY = 500;
+
+    //operazione sul database da eseguire dentro una transazione
+    private interface SQLOperation {
+        void run(Connection connection) throws SQLException;
+    }
+
     protected Connection getConnection() throws SQLException {
         return DatabaseConnectionSingleton.getInstance();
     }
 
     public RepositoryLibroSQLite(){
+        this(true);
+    }
+
+    //il repository di lettura non tocca lo schema, già preparato dal repository principale
+    private RepositoryLibroSQLite(boolean preparaSchema){
+        if (!preparaSchema) {
+            return;
+        }
         try{
             Connection connection = getConnection();
             Statement statement = connection.createStatement();
@@ -28,33 +73,81 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
                         genre TEXT,
                         rating INTEGER,
                         readingState TEXT,
-                        coverPath TEXT
+                        coverPath TEXT,
+                        title_sort BLOB,
+                        author_sort BLOB
                         );
                     """;
             statement.execute(createTable);
+            migrateSortKeys(connection);
         } catch (SQLException e) {
             System.err.println(e.getMessage());
         }
     }
 
+    /**
+     * Crea un repository che legge con {@link DatabaseConnectionSingleton#getReadConnection()}, da usare per le
+     * letture fuori dall'EDT. Le scritture su questo repository falliscono.
+     * Le letture che usa chiudono i propri statement: uno statement lasciato aperto terrebbe il lock condiviso
+     * sul file e la connessione principale non potrebbe più confermare le proprie transazioni.
+     *
+     * @pre il database deve essere già stato preparato da un {@link RepositoryLibroSQLite} principale
+     * @return un repository di sola lettura sullo stesso file
+     */
+    public static RepositoryLibroSQLite perLettura() {
+        return new RepositoryLibroSQLite(false) {
+            @Override
+            protected Connection getConnection() throws SQLException {
+                return DatabaseConnectionSingleton.getReadConnection();
+            }
+        };
+    }
+
+    //i database creati prima delle chiavi di ordinamento non hanno le colonne: le aggiungo e le calcolo una volta
+    private void migrateSortKeys(Connection connection) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        ResultSet tableInfo = connection.createStatement().executeQuery("PRAGMA table_info(books)");
+        while (tableInfo.next()) {
+            columns.add(tableInfo.getString("name"));
+        }
+        Statement statement = connection.createStatement();
+        if (!columns.contains("title_sort")) {
+            statement.execute("ALTER TABLE books ADD COLUMN title_sort BLOB");
+        }
+        if (!columns.contains("author_sort")) {
+            statement.execute("ALTER TABLE books ADD COLUMN author_sort BLOB");
+        }
+        inTransaction(transaction -> {
+            ResultSet resultSet = transaction.createStatement()
+                    .executeQuery("SELECT id, title, author FROM books WHERE title_sort IS NULL OR author_sort IS NULL");
+            PreparedStatement preparedStatement = transaction.prepareStatement("UPDATE books SET title_sort=?, author_sort=? WHERE id=?");
+            int rows = 0;
+            while (resultSet.next()) {
+                preparedStatement.setBytes(1, ChiaveOrdinamento.titolo(resultSet.getString("title")).toByteArray());
+                preparedStatement.setBytes(2, ChiaveOrdinamento.autore(resultSet.getString("author")).toByteArray());
+                preparedStatement.setInt(3, resultSet.getInt("id"));
+                preparedStatement.addBatch();
+                rows++;
+            }
+            if (rows > 0) {
+                preparedStatement.executeBatch();
+                System.err.println("Chiavi di ordinamento calcolate per " + rows + " libri");
+            }
+        });
+        //l'id è l'ultima colonna implicita di ogni indice, quindi anche l'ordine stabile delle pagine usa l'indice
+        statement.execute("CREATE INDEX IF NOT EXISTS books_title_sort ON books(title_sort)");
+        statement.execute("CREATE INDEX IF NOT EXISTS books_author_sort ON books(author_sort)");
+        statement.execute("CREATE INDEX IF NOT EXISTS books_rating_title_sort ON books(rating, title_sort)");
+    }
+
 
     @Override
     public void save(Libro Libro) {
         //Per inserire il libro preparo la stringa sql con gli elementi da aggiungere seguiti da ? per ogni parametro
-        String sql = """
-                INSERT INTO books (title, author, isbn, genre, rating, readingState, coverPath)
-                VALUES (?,?,?,?,?,?,?)
-                """;
         try{
             Connection connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            preparedStatement.setString(1, Libro.getTitolo());
-            preparedStatement.setString(2,Libro.getAutore());
-            preparedStatement.setString(3,Libro.getIsbn());
-            preparedStatement.setString(4,Libro.getGenere());
-            preparedStatement.setInt(5,Libro.getValutazione());
-            preparedStatement.setString(6, Libro.getStatoLettura());
-            preparedStatement.setString(7,Libro.getPercorsoCopertina());
+            PreparedStatement preparedStatement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            setBookParameters(preparedStatement, Libro);
             preparedStatement.executeUpdate();
 
             //ricavo il codice del libro e lo inserisco nell'oggetto
@@ -73,23 +166,127 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
         }
     }
 
+    @Override
+    public void saveAll(List<Libro> books) {
+        //un solo statement riusato per tutte le righe: gli id generati vanno letti riga per riga, quindi niente batch
+        int[] previousIds = new int[books.size()];
+        for (int i = 0; i < previousIds.length; i++) {
+            previousIds[i] = books.get(i).getId();
+        }
+        try{
+            inTransaction(connection -> {
+                PreparedStatement preparedStatement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                for (Libro book : books) {
+                    setBookParameters(preparedStatement, book);
+                    preparedStatement.executeUpdate();
+                    ResultSet resultSet = preparedStatement.getGeneratedKeys();
+                    if (resultSet.next()) {
+                        book.setId(resultSet.getInt(1));
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            //le righe sono state annullate: i libri non devono conservare gli id assegnati durante la transazione
+            for (int i = 0; i < previousIds.length; i++) {
+                books.get(i).setId(previousIds[i]);
+            }
+            throw new ErroreDatabase("Errore nel salvataggio dei libri", e);
+        }
+    }
+
+    @Override
+    public void reinsertAll(List<Libro> books) {
+        //gli id sono già noti: AUTOINCREMENT non riusa gli id eliminati, quindi sono ancora liberi
+        String sql = """
+                INSERT INTO books (title, author, isbn, genre, rating, readingState, coverPath, title_sort, author_sort, id)
+                VALUES (?,?,?,?,?,?,?,?,?,?)
+                """;
+        try{
+            inTransaction(connection -> {
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                for (Libro book : books) {
+                    setBookParameters(preparedStatement, book);
+                    preparedStatement.setInt(10, book.getId());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            });
+        } catch (SQLException e) {
+            throw new ErroreDatabase("Errore nel ripristino dei libri", e);
+        }
+    }
+
+    private static void setBookParameters(PreparedStatement preparedStatement, Libro book) throws SQLException {
+        preparedStatement.setString(1, book.getTitolo());
+        preparedStatement.setString(2, book.getAutore());
+        preparedStatement.setString(3, book.getIsbn());
+        preparedStatement.setString(4, book.getGenere());
+        preparedStatement.setInt(5, book.getValutazione());
+        preparedStatement.setString(6, book.getStatoLettura());
+        preparedStatement.setString(7, book.getPercorsoCopertina());
+        //le chiavi di ordinamento si calcolano una volta in scrittura, non a ogni ORDER BY
+        preparedStatement.setBytes(8, book.getChiaveTitolo().toByteArray());
+        preparedStatement.setBytes(9, book.getChiaveAutore().toByteArray());
+    }
+
+    private Libro mapBook(ResultSet resultSet) throws SQLException {
+        return new Libro.Costruttore(resultSet.getString("title"), resultSet.getString("author"))
+                .id(resultSet.getInt("id"))
+                .isbn(resultSet.getString("isbn"))
+                .genere(resultSet.getString("genre"))
+                .valutazione(resultSet.getInt("rating"))
+                .statoLettura(resultSet.getString("readingState"))
+                .percorsoCopertina(resultSet.getString("coverPath"))
+                .build();
+    }
+
+    //apre una transazione, oppure partecipa a quella già aperta da runInTransaction: in quel caso un errore
+    //risale fino alla transazione più esterna, che annulla tutto
+    private void inTransaction(SQLOperation operation) throws SQLException {
+        Connection connection = getConnection();
+        if (!connection.getAutoCommit()) {
+            operation.run(connection);
+            return;
+        }
+        connection.setAutoCommit(false);
+        try {
+            operation.run(connection);
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void runInTransaction(Runnable operations) {
+        try{
+            inTransaction(connection -> operations.run());
+        } catch (SQLException e) {
+            throw new ErroreDatabase("Errore nella transazione", e);
+        }
+    }
+
+    //come CriterioOrdinamento.getComparatore(): chiavi di ordinamento indicizzate e, a parità di chiave, l'id
     private String getOrderByCriteria(CriterioOrdinamento criteria){
         if(criteria == null || criteria == CriterioOrdinamento.NESSUNO){
             return "";
         }
         switch (criteria){
             case TITOLO_ASC:
-                return " ORDER BY LOWER(title) ASC";
+                return " ORDER BY title_sort ASC, id";
             case TITOLO_DESC:
-                return " ORDER BY LOWER(title) DESC";
+                return " ORDER BY title_sort DESC, id";
             case AUTORE_ASC:
-                return " ORDER BY LOWER(author) ASC";
+                return " ORDER BY author_sort ASC, id";
             case AUTORE_DESC:
-                return " ORDER BY LOWER(author) DESC";
+                return " ORDER BY author_sort DESC, id";
             case VALUTAZIONE_ASC:
-                return " ORDER BY rating ASC, LOWER(title) ASC";
+                return " ORDER BY rating ASC, title_sort ASC, id";
             case VALUTAZIONE_DESC:
-                return " ORDER BY rating DESC, LOWER(title) ASC";
+                return " ORDER BY rating DESC, title_sort ASC, id";
             default:
                 return "";
         }
@@ -100,9 +297,7 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
         List<Libro> books = new ArrayList<>();
         String sql = "SELECT * FROM books" + getOrderByCriteria(criteria);
 
-        try{
-            Connection connection = getConnection();
-            Statement statement = connection.createStatement();
+        try (Statement statement = getConnection().createStatement()) {
             ResultSet resultSet = statement.executeQuery(sql);
 
             while (resultSet.next()){
@@ -123,13 +318,69 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
         return books;
     }
 
+    @Override
+    public int count() {
+        String sql = "SELECT COUNT(*) FROM books";
+        try (Statement statement = getConnection().createStatement()) {
+            ResultSet resultSet = statement.executeQuery(sql);
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        } catch (SQLException e) {
+            System.err.println("Errore nel conteggio dei libri: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public List<Libro> loadPage(CriterioOrdinamento criteria, int offset, int limit) {
+        List<Libro> books = new ArrayList<>();
+        //l'id come ultimo criterio rende l'ordine stabile, così pagine diverse non si sovrappongono
+        String orderBy = getOrderByCriteria(criteria);
+        String sql = "SELECT * FROM books" + (orderBy.isEmpty() ? " ORDER BY id" : orderBy) + " LIMIT ? OFFSET ?";
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
+            preparedStatement.setInt(1, limit);
+            preparedStatement.setInt(2, offset);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()){
+                Libro Libro = new Libro.Costruttore(resultSet.getString("title"), resultSet.getString("author"))
+                        .id(resultSet.getInt("id"))
+                        .isbn(resultSet.getString("isbn"))
+                        .genere(resultSet.getString("genre"))
+                        .valutazione(resultSet.getInt("rating"))
+                        .statoLettura(resultSet.getString("readingState"))
+                        .percorsoCopertina(resultSet.getString("coverPath"))
+                        .build();
+                books.add(Libro);
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel caricamento della pagina di libri: " + e.getMessage());
+        }
+        return books;
+    }
+
+    @Override
+    public List<Integer> loadPageIds(CriterioOrdinamento criteria, int offset, int limit) {
+        //stesso ordine di loadPage, ma solo gli id: l'indice dell'ordinamento basta a rispondere
+        List<Integer> ids = new ArrayList<>();
+        String orderBy = getOrderByCriteria(criteria);
+        String sql = "SELECT id FROM books" + (orderBy.isEmpty() ? " ORDER BY id" : orderBy) + " LIMIT ? OFFSET ?";
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
+            preparedStatement.setInt(1, limit);
+            preparedStatement.setInt(2, offset);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()){
+                ids.add(resultSet.getInt("id"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel caricamento degli id della pagina di libri: " + e.getMessage());
+        }
+        return ids;
+    }
+
     @Override
     public List<Libro> findByTitle(String title, CriterioOrdinamento criteria) {
         List<Libro> books = new ArrayList<>();
         String sql = "SELECT * FROM books WHERE LOWER(title) LIKE LOWER(?)" + getOrderByCriteria(criteria);
-        try{
-            Connection connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
             preparedStatement.setString(1, "%" + title + "%");
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()){
@@ -150,12 +401,52 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
     }
 
     @Override
-    public List<Libro> findByRating(int rating, CriterioOrdinamento criteria) {
-        List<Libro> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE rating = ?" + getOrderByCriteria(criteria);
+    public Libro findById(int id) {
+        String sql = "SELECT * FROM books WHERE id = ?";
         try{
             Connection connection = getConnection();
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, id);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()){
+                return mapBook(resultSet);
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nella ricerca del libro dall'id");
+        }
+        return null;
+    }
+
+    @Override
+    public Map<Integer, Libro> findByIds(Collection<Integer> ids) {
+        Map<Integer, Libro> books = new HashMap<>();
+        List<Integer> remaining = new ArrayList<>(ids);
+        try{
+            Connection connection = getConnection();
+            for (int start = 0; start < remaining.size(); start += IDS_PER_QUERY) {
+                List<Integer> chunk = remaining.subList(start, Math.min(start + IDS_PER_QUERY, remaining.size()));
+                String sql = "SELECT * FROM books WHERE id IN (" + "?,".repeat(chunk.size() - 1) + "?)";
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                for (int i = 0; i < chunk.size(); i++) {
+                    preparedStatement.setInt(i + 1, chunk.get(i));
+                }
+                ResultSet resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()){
+                    Libro book = mapBook(resultSet);
+                    books.put(book.getId(), book);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nella ricerca dei libri dagli id: " + e.getMessage());
+        }
+        return books;
+    }
+
+    @Override
+    public List<Libro> findByRating(int rating, CriterioOrdinamento criteria) {
+        List<Libro> books = new ArrayList<>();
+        String sql = "SELECT * FROM books WHERE rating = ?" + getOrderByCriteria(criteria);
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
             preparedStatement.setInt(1,rating);
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()){
@@ -179,9 +470,7 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
     public List<Libro> findByReadingState(String readingState, CriterioOrdinamento criteria) {
         List<Libro> books = new ArrayList<>();
         String sql = "SELECT * FROM books WHERE LOWER(readingState) LIKE LOWER(?)" + getOrderByCriteria(criteria);
-        try{
-            Connection connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
             preparedStatement.setString(1, "%" + readingState + "%");
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()){
@@ -205,9 +494,7 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
     public List<Libro> findByAuthor(String author, CriterioOrdinamento criteria) {
         List<Libro> books = new ArrayList<>();
         String sql = "SELECT * FROM books WHERE LOWER(author) LIKE LOWER(?)" + getOrderByCriteria(criteria);
-        try{
-            Connection connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
             preparedStatement.setString(1, "%" + author + "%");
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()){
@@ -231,9 +518,7 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
     public List<Libro> findByIsbn(String isbn, CriterioOrdinamento criteria) {
         List<Libro> books = new ArrayList<>();
         String sql = "SELECT * FROM books WHERE LOWER(isbn) LIKE LOWER(?)" + getOrderByCriteria(criteria);
-        try{
-            Connection connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
             preparedStatement.setString(1, "%" + isbn + "%");
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()){
@@ -257,9 +542,7 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
     public List<Libro> findByGenre(String genre, CriterioOrdinamento criteria) {
         List<Libro> books = new ArrayList<>();
         String sql = "SELECT * FROM books WHERE LOWER(genre) LIKE LOWER(?)" + getOrderByCriteria(criteria);
-        try{
-            Connection connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
             preparedStatement.setString(1, "%" + genre + "%");
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()){
@@ -300,30 +583,29 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
         }
     }
 
+    @Override
+    public void deleteAll(List<Libro> books) {
+        try{
+            inTransaction(connection -> {
+                PreparedStatement preparedStatement = connection.prepareStatement("DELETE FROM books WHERE id = ?");
+                for (Libro book : books) {
+                    preparedStatement.setInt(1, book.getId());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            });
+        } catch (SQLException e) {
+            throw new ErroreDatabase("Errore nell'eliminazione dei libri", e);
+        }
+    }
+
     @Override
     public void aggiorna(Libro Libro) {
-        String sql = """
-                UPDATE books SET
-                title=?,
-                author=?,
-                isbn=?,
-                genre=?,
-                rating=?,
-                readingState=?,
-                coverPath=?
-                WHERE id=?
-                """;
         try{
             Connection connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            preparedStatement.setString(1, Libro.getTitolo());
-            preparedStatement.setString(2, Libro.getAutore());
-            preparedStatement.setString(3, Libro.getIsbn());
-            preparedStatement.setString(4, Libro.getGenere());
-            preparedStatement.setInt(5, Libro.getValutazione());
-            preparedStatement.setString(6, Libro.getStatoLettura());
-            preparedStatement.setString(7, Libro.getPercorsoCopertina());
-            preparedStatement.setInt(8, Libro.getId());      //il libro aggiornato deve avere lo stesso id del libro da modificare
+            PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_SQL);
+            setBookParameters(preparedStatement, Libro);
+            preparedStatement.setInt(10, Libro.getId());      //il libro aggiornato deve avere lo stesso id del libro da modificare
 
             int affectedRows = preparedStatement.executeUpdate();
 
@@ -334,6 +616,163 @@ public class RepositoryLibroSQLite implements ImplementatoreRepositoryLibro {
 
     }
 
+    @Override
+    public void updateAll(List<Libro> books) {
+        try{
+            inTransaction(connection -> {
+                PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_SQL);
+                for (Libro book : books) {
+                    setBookParameters(preparedStatement, book);
+                    preparedStatement.setInt(10, book.getId());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            });
+        } catch (SQLException e) {
+            throw new ErroreDatabase("Errore nell'aggiornamento dei libri", e);
+        }
+    }
+
+    @Override
+    public void updateFields(int id, Map<CampoLibro, Object> fields) {
+        //aggiorno solo le colonne dei campi cambiati
+        if (fields.isEmpty()) {
+            return;
+        }
+        //titolo e autore si portano dietro la loro chiave di ordinamento
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<CampoLibro, Object> field : fields.entrySet()) {
+            values.put(getColumn(field.getKey()), field.getValue());
+            if (field.getKey() == CampoLibro.TITOLO) {
+                values.put("title_sort", ChiaveOrdinamento.titolo((String) field.getValue()).toByteArray());
+            } else if (field.getKey() == CampoLibro.AUTORE) {
+                values.put("author_sort", ChiaveOrdinamento.autore((String) field.getValue()).toByteArray());
+            }
+        }
+        StringJoiner columns = new StringJoiner(", ", "UPDATE books SET ", " WHERE id=?");
+        for (String column : values.keySet()) {
+            columns.add(column + "=?");
+        }
+        try{
+            Connection connection = getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(columns.toString());
+            int index = 1;
+            for (Object value : values.values()) {
+                preparedStatement.setObject(index++, value);
+            }
+            preparedStatement.setInt(index, id);
+            preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Errore nell'aggiornamento dei campi del libro: " + e.getMessage());
+        }
+    }
+
+    private static String getColumn(CampoLibro campo) {
+        return switch (campo) {
+            case TITOLO -> "title";
+            case AUTORE -> "author";
+            case ISBN -> "isbn";
+            case GENERE -> "genre";
+            case VALUTAZIONE -> "rating";
+            case STATO_LETTURA -> "readingState";
+            case PERCORSO_COPERTINA -> "coverPath";
+        };
+    }
+
+    @Override
+    public ContatoreFacet loadFacets() {
+        //un'unica query raggruppata per tutte le combinazioni di stato, valutazione e genere
+        ContatoreFacet facet = new ContatoreFacet();
+        String sql = """
+                SELECT LOWER(TRIM(readingState)) AS state, rating, LOWER(TRIM(genre)) AS genreKey,
+                       MIN(TRIM(genre)) AS genre, COUNT(*) AS total
+                FROM books
+                GROUP BY state, rating, genreKey
+                """;
+        try{
+            Connection connection = getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery(sql);
+            while (resultSet.next()){
+                facet.aggiungiGruppo(resultSet.getString("state"), resultSet.getInt("rating"),
+                        resultSet.getString("genre"), resultSet.getInt("total"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel calcolo dei conteggi dei filtri: " + e.getMessage());
+        }
+        return facet;
+    }
+
+    @Override
+    public List<String> loadCoverPaths() {
+        //ogni copertina una sola volta, anche se usata da più libri
+        List<String> paths = new ArrayList<>();
+        String sql = "SELECT DISTINCT coverPath FROM books WHERE coverPath IS NOT NULL AND coverPath <> ''";
+        try{
+            Connection connection = getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery(sql);
+            while (resultSet.next()){
+                paths.add(resultSet.getString("coverPath"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nella lettura dei percorsi delle copertine: " + e.getMessage());
+        }
+        return paths;
+    }
+
+    @Override
+    public List<Libro> findByCoverPaths(Collection<String> paths) {
+        List<Libro> books = new ArrayList<>();
+        List<String> remaining = new ArrayList<>(paths);
+        try{
+            Connection connection = getConnection();
+            for (int start = 0; start < remaining.size(); start += IDS_PER_QUERY) {
+                List<String> chunk = remaining.subList(start, Math.min(start + IDS_PER_QUERY, remaining.size()));
+                String sql = "SELECT * FROM books WHERE coverPath IN (" + "?,".repeat(chunk.size() - 1) + "?)";
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                for (int i = 0; i < chunk.size(); i++) {
+                    preparedStatement.setString(i + 1, chunk.get(i));
+                }
+                ResultSet resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()){
+                    books.add(mapBook(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nella ricerca dei libri dalle copertine: " + e.getMessage());
+        }
+        return books;
+    }
+
+    @Override
+    public void updateCoverPaths(Map<String, String> paths) {
+        //tutte le sostituzioni in un'unica transazione, inviate al database in blocco
+        String sql = "UPDATE books SET coverPath = ? WHERE coverPath = ?";
+        try{
+            Connection connection = getConnection();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try{
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                for (Map.Entry<String, String> path : paths.entrySet()){
+                    preparedStatement.setString(1, path.getValue());
+                    preparedStatement.setString(2, path.getKey());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nell'aggiornamento dei percorsi delle copertine: " + e.getMessage());
+        }
+    }
+
 
 //    public static void main(String[] args) {
 //        RepositoryLibroSQLite repo = new RepositoryLibroSQLite();
@@ -0,0 +1,127 @@
+package gestore_libreria.db;
+
+import java.sql.*;
+
+//classe che conserva nel database le miniature delle copertine già ridimensionate
+public class RepositoryMiniatureSQLite implements ImplementatoreRepositoryMiniature {
+
+    //le miniature vengono scritte dai thread di decodifica: uso una connessione separata da quella dell'EDT,
+    //così non partecipano alle sue transazioni
+    protected Connection getConnection() throws SQLException {
+        return DatabaseConnectionSingleton.getThumbnailConnection();
+    }
+
+    public RepositoryMiniatureSQLite(){
+        try{
+            Connection connection = getConnection();
+            Statement statement = connection.createStatement();
+            //per ogni file di copertina ricordo dimensione, data di modifica e hash del contenuto:
+            //finché dimensione e data non cambiano l'hash non va ricalcolato
+            String createSources = """
+                    CREATE TABLE IF NOT EXISTS thumbnail_sources(
+                        path TEXT PRIMARY KEY,
+                        size INTEGER NOT NULL,
+                        lastModified INTEGER NOT NULL,
+                        hash TEXT NOT NULL
+                        );
+                    """;
+            //le miniature sono indicizzate per contenuto: la stessa immagine usata da più libri è salvata una volta sola
+            String createThumbnails = """
+                    CREATE TABLE IF NOT EXISTS thumbnails(
+                        hash TEXT NOT NULL,
+                        width INTEGER NOT NULL,
+                        height INTEGER NOT NULL,
+                        data BLOB NOT NULL,
+                        PRIMARY KEY (hash, width, height)
+                        );
+                    """;
+            statement.execute(createSources);
+            statement.execute(createThumbnails);
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    @Override
+    public String findHash(String path, long size, long lastModified) {
+        //l'hash vale solo se il file non è cambiato dall'ultima volta
+        String sql = "SELECT hash FROM thumbnail_sources WHERE path = ? AND size = ? AND lastModified = ?";
+        try{
+            Connection connection = getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, path);
+            preparedStatement.setLong(2, size);
+            preparedStatement.setLong(3, lastModified);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            return resultSet.next() ? resultSet.getString("hash") : null;
+        } catch (SQLException e) {
+            System.err.println("Errore nella lettura della sorgente della miniatura: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void saveSource(String path, long size, long lastModified, String hash) {
+        String sql = "INSERT OR REPLACE INTO thumbnail_sources (path, size, lastModified, hash) VALUES (?,?,?,?)";
+        try{
+            Connection connection = getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, path);
+            preparedStatement.setLong(2, size);
+            preparedStatement.setLong(3, lastModified);
+            preparedStatement.setString(4, hash);
+            preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Errore nel salvataggio della sorgente della miniatura: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public byte[] findThumbnail(String hash, int width, int height) {
+        String sql = "SELECT data FROM thumbnails WHERE hash = ? AND width = ? AND height = ?";
+        try{
+            Connection connection = getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, hash);
+            preparedStatement.setInt(2, width);
+            preparedStatement.setInt(3, height);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            return resultSet.next() ? resultSet.getBytes("data") : null;
+        } catch (SQLException e) {
+            System.err.println("Errore nella lettura della miniatura: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void saveThumbnail(String hash, int width, int height, byte[] data) {
+        String sql = "INSERT OR REPLACE INTO thumbnails (hash, width, height, data) VALUES (?,?,?,?)";
+        try{
+            Connection connection = getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, hash);
+            preparedStatement.setInt(2, width);
+            preparedStatement.setInt(3, height);
+            preparedStatement.setBytes(4, data);
+            preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Errore nel salvataggio della miniatura: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int deleteOrphans() {
+        //rimuovo le sorgenti non più usate da nessun libro e le miniature non più raggiungibili da nessuna sorgente
+        String deleteSources = "DELETE FROM thumbnail_sources WHERE path NOT IN (SELECT coverPath FROM books WHERE coverPath IS NOT NULL)";
+        String deleteThumbnails = "DELETE FROM thumbnails WHERE hash NOT IN (SELECT hash FROM thumbnail_sources)";
+        try{
+            Connection connection = getConnection();
+            Statement statement = connection.createStatement();
+            statement.executeUpdate(deleteSources);
+            return statement.executeUpdate(deleteThumbnails);
+        } catch (SQLException e) {
+            System.err.println("Errore nella pulizia delle miniature: " + e.getMessage());
+            return 0;
+        }
+    }
+}
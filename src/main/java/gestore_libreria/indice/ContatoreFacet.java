@@ -0,0 +1,140 @@
+package gestore_libreria.indice;
+
+import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.model.Libro;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mantiene in memoria il numero di libri per ogni stato di lettura, per ogni valutazione (0-5) e per ogni genere.
+ * I conteggi vengono inizializzati una sola volta dal database e poi aggiornati in modo incrementale
+ * ricevendo le modifiche da {@link GestoreLibroConcreto}, così i filtri possono mostrare il numero di risultati
+ * senza ulteriori query.
+ */
+public class ContatoreFacet implements GestoreLibroConcreto.OnMutazioneListener {
+
+    private final Map<String, Integer> perStato = new HashMap<>();
+    private final int[] perValutazione = new int[6];
+    private final Map<String, Integer> perGenere = new HashMap<>();
+    private final Map<String, String> etichetteGenere = new HashMap<>();
+    private int totale;
+
+    /**
+     * Aggiunge al contatore un gruppo di libri con le stesse caratteristiche.
+     * Utilizzato dal repository durante il caricamento iniziale con la query raggruppata.
+     *
+     * @param statoLettura lo stato di lettura del gruppo (può essere null)
+     * @param valutazione la valutazione del gruppo
+     * @param genere il genere del gruppo (può essere null)
+     * @param quantita il numero di libri nel gruppo
+     * @pre {@code quantita >= 0}
+     * @post i conteggi di stato, valutazione, genere e il totale sono incrementati di {@code quantita}
+     */
+    public synchronized void aggiungiGruppo(String statoLettura, int valutazione, String genere, int quantita) {
+        sposta(statoLettura, valutazione, genere, quantita);
+    }
+
+    @Override
+    public synchronized void libroAggiunto(Libro libro) {
+        sposta(libro.getStatoLettura(), libro.getValutazione(), libro.getGenere(), 1);
+    }
+
+    @Override
+    public synchronized void libroAggiornato(Libro precedente, Libro nuovo) {
+        sposta(precedente.getStatoLettura(), precedente.getValutazione(), precedente.getGenere(), -1);
+        sposta(nuovo.getStatoLettura(), nuovo.getValutazione(), nuovo.getGenere(), 1);
+    }
+
+    @Override
+    public synchronized void libroRimosso(Libro libro) {
+        sposta(libro.getStatoLettura(), libro.getValutazione(), libro.getGenere(), -1);
+    }
+
+    private void sposta(String statoLettura, int valutazione, String genere, int delta) {
+        totale += delta;
+        String stato = normalizza(statoLettura);
+        if (!stato.isEmpty()) {
+            perStato.merge(stato, delta, Integer::sum);
+        }
+        if (valutazione >= 0 && valutazione < perValutazione.length) {
+            perValutazione[valutazione] += delta;
+        }
+        String chiaveGenere = normalizza(genere);
+        if (!chiaveGenere.isEmpty()) {
+            int nuovoValore = perGenere.merge(chiaveGenere, delta, Integer::sum);
+            if (nuovoValore <= 0) {
+                perGenere.remove(chiaveGenere);
+                etichetteGenere.remove(chiaveGenere);
+            } else {
+                etichetteGenere.putIfAbsent(chiaveGenere, genere.trim());
+            }
+        }
+    }
+
+    private static String normalizza(String valore) {
+        return valore == null ? "" : valore.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return il numero totale di libri
+     */
+    public synchronized int getTotale() {
+        return totale;
+    }
+
+    /**
+     * Restituisce il numero di libri con lo stato di lettura specificato, senza distinzione tra maiuscole e minuscole.
+     *
+     * @param statoLettura lo stato da contare (es. "LETTO", "in lettura")
+     * @return il numero di libri con quello stato, 0 se nessuno
+     */
+    public synchronized int getPerStato(String statoLettura) {
+        return perStato.getOrDefault(normalizza(statoLettura), 0);
+    }
+
+    /**
+     * @param valutazione la valutazione da contare
+     * @pre {@code valutazione} compresa tra 0 e 5
+     * @return il numero di libri con la valutazione specificata, 0 se fuori intervallo
+     */
+    public synchronized int getPerValutazione(int valutazione) {
+        if (valutazione < 0 || valutazione >= perValutazione.length) {
+            return 0;
+        }
+        return perValutazione[valutazione];
+    }
+
+    /**
+     * @param genere il genere da contare, senza distinzione tra maiuscole e minuscole
+     * @return il numero di libri con il genere specificato
+     */
+    public synchronized int getPerGenere(String genere) {
+        return perGenere.getOrDefault(normalizza(genere), 0);
+    }
+
+    /**
+     * Restituisce i generi più frequenti in ordine decrescente di numero di libri.
+     *
+     * @param limite il numero massimo di generi da restituire
+     * @pre {@code limite >= 0}
+     * @post la mappa restituita contiene al più {@code limite} elementi ed è ordinata per conteggio decrescente
+     * @return una mappa ordinata genere -> numero di libri
+     */
+    public synchronized Map<String, Integer> getGeneriPrincipali(int limite) {
+        List<Map.Entry<String, Integer>> voci = new ArrayList<>(perGenere.entrySet());
+        voci.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        Map<String, Integer> risultato = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> voce : voci) {
+            if (risultato.size() >= limite) {
+                break;
+            }
+            risultato.put(etichetteGenere.get(voce.getKey()), voce.getValue());
+        }
+        return risultato;
+    }
+}
@@ -0,0 +1,155 @@
+package gestore_libreria.indice;
+
+import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.model.Libro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Indice in memoria per i suggerimenti di completamento su un campo dei libri (titolo, autore, ISBN o genere).
+ * I valori distinti del campo sono mantenuti in array ordinati per chiave normalizzata (minuscolo, senza accenti):
+ * tutti i valori che iniziano con un prefisso sono contigui e si trovano con una ricerca binaria.
+ * L'indice si aggiorna ricevendo le modifiche da {@link GestoreLibroConcreto}.
+ */
+public class IndicePrefissi implements GestoreLibroConcreto.OnMutazioneListener {
+
+    private final Function<Libro, String> campo;
+
+    private String[] chiavi = new String[256];
+    private String[] etichette = new String[256];
+    private int[] occorrenze = new int[256];
+    private int dimensione;
+
+    /**
+     * @param campo la funzione che estrae dal libro il valore da indicizzare (es. {@code Libro::getAutore})
+     * @pre {@code campo} non deve essere null
+     */
+    public IndicePrefissi(Function<Libro, String> campo) {
+        this.campo = campo;
+    }
+
+    /**
+     * Ricostruisce l'indice a partire da un insieme di libri, scartando il contenuto precedente.
+     *
+     * @param libri i libri da indicizzare
+     * @post l'indice contiene i valori distinti del campo per i libri forniti
+     */
+    public synchronized void costruisci(Collection<Libro> libri) {
+        // ordino tutte le coppie chiave/valore in una volta invece di inserirle una alla volta
+        String[][] coppie = new String[libri.size()][];
+        int numero = 0;
+        for (Libro libro : libri) {
+            String valore = campo.apply(libro);
+            String chiave = IndiceTrigrammi.normalizza(valore);
+            if (!chiave.isEmpty()) {
+                coppie[numero++] = new String[]{chiave, valore.trim()};
+            }
+        }
+        Arrays.sort(coppie, 0, numero, (a, b) -> a[0].compareTo(b[0]));
+
+        int capacita = Math.max(256, numero);
+        chiavi = new String[capacita];
+        etichette = new String[capacita];
+        occorrenze = new int[capacita];
+        dimensione = 0;
+        for (int i = 0; i < numero; i++) {
+            if (dimensione > 0 && chiavi[dimensione - 1].equals(coppie[i][0])) {
+                occorrenze[dimensione - 1]++;
+            } else {
+                chiavi[dimensione] = coppie[i][0];
+                etichette[dimensione] = coppie[i][1];
+                occorrenze[dimensione] = 1;
+                dimensione++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void libroAggiunto(Libro libro) {
+        aggiungi(campo.apply(libro));
+    }
+
+    @Override
+    public synchronized void libroAggiornato(Libro precedente, Libro nuovo) {
+        rimuovi(campo.apply(precedente));
+        aggiungi(campo.apply(nuovo));
+    }
+
+    @Override
+    public synchronized void libroRimosso(Libro libro) {
+        rimuovi(campo.apply(libro));
+    }
+
+    /**
+     * Restituisce i valori del campo che iniziano con il prefisso indicato, senza distinzione di maiuscole e accenti.
+     *
+     * @param prefisso il testo digitato dall'utente
+     * @param limite il numero massimo di suggerimenti
+     * @pre {@code prefisso} non deve essere null
+     * @post i suggerimenti sono in ordine alfabetico e senza duplicati
+     * @return una lista non null di al più {@code limite} valori
+     */
+    public synchronized List<String> suggerisci(String prefisso, int limite) {
+        List<String> suggerimenti = new ArrayList<>();
+        String chiavePrefisso = IndiceTrigrammi.normalizza(prefisso);
+        if (chiavePrefisso.isEmpty()) {
+            return suggerimenti;
+        }
+        int posizione = Arrays.binarySearch(chiavi, 0, dimensione, chiavePrefisso);
+        if (posizione < 0) {
+            posizione = -posizione - 1;
+        }
+        while (posizione < dimensione && suggerimenti.size() < limite && chiavi[posizione].startsWith(chiavePrefisso)) {
+            suggerimenti.add(etichette[posizione]);
+            posizione++;
+        }
+        return suggerimenti;
+    }
+
+    private void aggiungi(String valore) {
+        String chiave = IndiceTrigrammi.normalizza(valore);
+        if (chiave.isEmpty()) {
+            return;
+        }
+        int posizione = Arrays.binarySearch(chiavi, 0, dimensione, chiave);
+        if (posizione >= 0) {
+            occorrenze[posizione]++;
+            return;
+        }
+        posizione = -posizione - 1;
+        if (dimensione == chiavi.length) {
+            chiavi = Arrays.copyOf(chiavi, dimensione * 2);
+            etichette = Arrays.copyOf(etichette, dimensione * 2);
+            occorrenze = Arrays.copyOf(occorrenze, dimensione * 2);
+        }
+        System.arraycopy(chiavi, posizione, chiavi, posizione + 1, dimensione - posizione);
+        System.arraycopy(etichette, posizione, etichette, posizione + 1, dimensione - posizione);
+        System.arraycopy(occorrenze, posizione, occorrenze, posizione + 1, dimensione - posizione);
+        chiavi[posizione] = chiave;
+        etichette[posizione] = valore.trim();
+        occorrenze[posizione] = 1;
+        dimensione++;
+    }
+
+    private void rimuovi(String valore) {
+        String chiave = IndiceTrigrammi.normalizza(valore);
+        int posizione = Arrays.binarySearch(chiavi, 0, dimensione, chiave);
+        if (chiave.isEmpty() || posizione < 0) {
+            return;
+        }
+        if (--occorrenze[posizione] > 0) {
+            return;
+        }
+        int daSpostare = dimensione - posizione - 1;
+        System.arraycopy(chiavi, posizione + 1, chiavi, posizione, daSpostare);
+        System.arraycopy(etichette, posizione + 1, etichette, posizione, daSpostare);
+        System.arraycopy(occorrenze, posizione + 1, occorrenze, posizione, daSpostare);
+        dimensione--;
+        chiavi[dimensione] = null;
+        etichette[dimensione] = null;
+    }
+}
@@ -0,0 +1,313 @@
+package gestore_libreria.indice;
+
+import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.model.Libro;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Indice in memoria a trigrammi su un campo testuale dei libri (titolo o autore), per la ricerca approssimata.
+ * Il testo viene ridotto in minuscolo e privato degli accenti, quindi scomposto in trigrammi: una ricerca
+ * trova anche i libri scritti con errori di battitura o senza accenti, ordinati per somiglianza.
+ * <p>
+ * Ogni libro occupa uno slot numerico denso; per ogni trigramma si mantiene la lista ordinata degli slot
+ * che lo contengono (posting list) in un array di interi. L'indice si aggiorna ricevendo le modifiche da
+ * {@link GestoreLibroConcreto}.
+ */
+public class IndiceTrigrammi implements GestoreLibroConcreto.OnMutazioneListener {
+
+    private static final Pattern SEGNI_DIACRITICI = Pattern.compile("\\p{M}+");
+    private static final double SOGLIA_SOMIGLIANZA = 0.4;
+    private static final ListaPosting VUOTA = new ListaPosting();
+
+    private final Function<Libro, String> campo;
+
+    private final Map<Long, ListaPosting> posting = new HashMap<>();
+    private final Map<Integer, Integer> slotPerId = new HashMap<>();
+    private Libro[] libroPerSlot = new Libro[1024];
+    private int[] trigrammiPerSlot = new int[1024];
+    private int[] conteggi = new int[1024];
+    private int[] slotLiberi = new int[16];
+    private int numeroSlotLiberi;
+    private int prossimoSlot;
+
+    /**
+     * Lista ordinata e senza duplicati degli slot che contengono un trigramma.
+     */
+    private static final class ListaPosting {
+        private int[] slot = new int[4];
+        private int dimensione;
+
+        void aggiungi(int valore) {
+            int posizione = Arrays.binarySearch(slot, 0, dimensione, valore);
+            if (posizione >= 0) {
+                return;
+            }
+            posizione = -posizione - 1;
+            if (dimensione == slot.length) {
+                slot = Arrays.copyOf(slot, dimensione * 2);
+            }
+            System.arraycopy(slot, posizione, slot, posizione + 1, dimensione - posizione);
+            slot[posizione] = valore;
+            dimensione++;
+        }
+
+        void rimuovi(int valore) {
+            int posizione = Arrays.binarySearch(slot, 0, dimensione, valore);
+            if (posizione < 0) {
+                return;
+            }
+            System.arraycopy(slot, posizione + 1, slot, posizione, dimensione - posizione - 1);
+            dimensione--;
+        }
+    }
+
+    /**
+     * @param campo la funzione che estrae dal libro il testo da indicizzare (es. {@code Libro::getTitolo})
+     * @pre {@code campo} non deve essere null
+     */
+    public IndiceTrigrammi(Function<Libro, String> campo) {
+        this.campo = campo;
+    }
+
+    /**
+     * Ricostruisce l'indice a partire da un insieme di libri, scartando il contenuto precedente.
+     *
+     * @param libri i libri da indicizzare
+     * @post l'indice contiene esattamente i libri forniti
+     */
+    public synchronized void costruisci(Collection<Libro> libri) {
+        posting.clear();
+        slotPerId.clear();
+        int capacita = Math.max(1024, libri.size());
+        libroPerSlot = new Libro[capacita];
+        trigrammiPerSlot = new int[capacita];
+        conteggi = new int[capacita];
+        numeroSlotLiberi = 0;
+        prossimoSlot = 0;
+        for (Libro libro : libri) {
+            inserisci(libro);
+        }
+    }
+
+    @Override
+    public synchronized void libroAggiunto(Libro libro) {
+        inserisci(libro);
+    }
+
+    @Override
+    public synchronized void libroAggiornato(Libro precedente, Libro nuovo) {
+        elimina(precedente.getId());
+        inserisci(nuovo);
+    }
+
+    @Override
+    public synchronized void libroRimosso(Libro libro) {
+        elimina(libro.getId());
+    }
+
+    /**
+     * @return il numero di libri presenti nell'indice
+     */
+    public synchronized int dimensione() {
+        return slotPerId.size();
+    }
+
+    /**
+     * Cerca i libri il cui campo somiglia al testo indicato, tollerando errori di battitura, accenti e maiuscole.
+     *
+     * @param testo il testo da cercare
+     * @param limite il numero massimo di risultati
+     * @pre {@code testo} non deve essere null
+     * @pre {@code limite > 0}
+     * @post i risultati sono ordinati dal più simile al meno simile
+     * @return una lista non null di al più {@code limite} libri
+     */
+    public synchronized List<Libro> cerca(String testo, int limite) {
+        long[] trigrammiQuery = trigrammi(normalizza(testo));
+        if (trigrammiQuery.length == 0) {
+            return new ArrayList<>();
+        }
+
+        int minimoComuni = (int) Math.ceil(trigrammiQuery.length * SOGLIA_SOMIGLIANZA);
+        ListaPosting[] liste = new ListaPosting[trigrammiQuery.length];
+        for (int i = 0; i < liste.length; i++) {
+            liste[i] = posting.getOrDefault(trigrammiQuery[i], VUOTA);
+        }
+        Arrays.sort(liste, (a, b) -> Integer.compare(a.dimensione, b.dimensione));
+
+        // un libro con almeno minimoComuni trigrammi in comune compare per forza in una delle liste più corte:
+        // raccolgo i candidati solo da quelle e sulle liste lunghe conto i soli candidati già trovati
+        int listeCandidati = liste.length - minimoComuni + 1;
+        int[] toccati = new int[64];
+        int numeroToccati = 0;
+        for (int l = 0; l < listeCandidati; l++) {
+            ListaPosting lista = liste[l];
+            for (int i = 0; i < lista.dimensione; i++) {
+                int slot = lista.slot[i];
+                if (conteggi[slot]++ == 0) {
+                    if (numeroToccati == toccati.length) {
+                        toccati = Arrays.copyOf(toccati, numeroToccati * 2);
+                    }
+                    toccati[numeroToccati++] = slot;
+                }
+            }
+        }
+        for (int l = listeCandidati; l < liste.length; l++) {
+            ListaPosting lista = liste[l];
+            if ((long) numeroToccati * 32 < lista.dimensione) {
+                for (int i = 0; i < numeroToccati; i++) {
+                    if (Arrays.binarySearch(lista.slot, 0, lista.dimensione, toccati[i]) >= 0) {
+                        conteggi[toccati[i]]++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < lista.dimensione; i++) {
+                    int slot = lista.slot[i];
+                    if (conteggi[slot] > 0) {
+                        conteggi[slot]++;
+                    }
+                }
+            }
+        }
+
+        PriorityQueue<long[]> migliori = new PriorityQueue<>(limite + 1, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < numeroToccati; i++) {
+            int slot = toccati[i];
+            int comuni = conteggi[slot];
+            conteggi[slot] = 0;
+            if (comuni < minimoComuni) {
+                continue;
+            }
+            // copertura della query come criterio principale, coefficiente di Dice per preferire i testi più vicini
+            double copertura = (double) comuni / trigrammiQuery.length;
+            double dice = 2.0 * comuni / (trigrammiQuery.length + trigrammiPerSlot[slot]);
+            long punteggio = (long) ((copertura * 0.7 + dice * 0.3) * 1_000_000);
+            if (migliori.size() < limite) {
+                migliori.add(new long[]{punteggio, slot});
+            } else if (punteggio > migliori.peek()[0]) {
+                long[] peggiore = migliori.poll();
+                peggiore[0] = punteggio;
+                peggiore[1] = slot;
+                migliori.add(peggiore);
+            }
+        }
+
+        Libro[] risultato = new Libro[migliori.size()];
+        for (int i = risultato.length - 1; i >= 0; i--) {
+            risultato[i] = libroPerSlot[(int) migliori.poll()[1]];
+        }
+        return new ArrayList<>(Arrays.asList(risultato));
+    }
+
+    private void inserisci(Libro libro) {
+        if (slotPerId.containsKey(libro.getId())) {
+            elimina(libro.getId());
+        }
+        int slot = numeroSlotLiberi > 0 ? slotLiberi[--numeroSlotLiberi] : prossimoSlot++;
+        if (slot >= libroPerSlot.length) {
+            int capacita = libroPerSlot.length * 2;
+            libroPerSlot = Arrays.copyOf(libroPerSlot, capacita);
+            trigrammiPerSlot = Arrays.copyOf(trigrammiPerSlot, capacita);
+            conteggi = Arrays.copyOf(conteggi, capacita);
+        }
+        long[] trigrammiLibro = trigrammi(normalizza(campo.apply(libro)));
+        for (long trigramma : trigrammiLibro) {
+            posting.computeIfAbsent(trigramma, t -> new ListaPosting()).aggiungi(slot);
+        }
+        libroPerSlot[slot] = libro;
+        trigrammiPerSlot[slot] = trigrammiLibro.length;
+        slotPerId.put(libro.getId(), slot);
+    }
+
+    private void elimina(int id) {
+        Integer slot = slotPerId.remove(id);
+        if (slot == null) {
+            return;
+        }
+        for (long trigramma : trigrammi(normalizza(campo.apply(libroPerSlot[slot])))) {
+            ListaPosting lista = posting.get(trigramma);
+            if (lista != null) {
+                lista.rimuovi(slot);
+                if (lista.dimensione == 0) {
+                    posting.remove(trigramma);
+                }
+            }
+        }
+        libroPerSlot[slot] = null;
+        trigrammiPerSlot[slot] = 0;
+        if (numeroSlotLiberi == slotLiberi.length) {
+            slotLiberi = Arrays.copyOf(slotLiberi, numeroSlotLiberi * 2);
+        }
+        slotLiberi[numeroSlotLiberi++] = slot;
+    }
+
+    /**
+     * Riduce il testo in minuscolo, rimuove gli accenti e sostituisce tutto ciò che non è lettera o cifra con uno spazio.
+     *
+     * @param testo il testo da normalizzare (può essere null)
+     * @return il testo normalizzato, stringa vuota se {@code testo} è null
+     */
+    static String normalizza(String testo) {
+        if (testo == null) {
+            return "";
+        }
+        String senzaAccenti = SEGNI_DIACRITICI.matcher(Normalizer.normalize(testo, Normalizer.Form.NFD)).replaceAll("");
+        StringBuilder risultato = new StringBuilder(senzaAccenti.length());
+        boolean spazio = true;
+        for (int i = 0; i < senzaAccenti.length(); i += Character.charCount(senzaAccenti.codePointAt(i))) {
+            int c = senzaAccenti.codePointAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                risultato.appendCodePoint(Character.toLowerCase(c));
+                spazio = false;
+            } else if (!spazio) {
+                risultato.append(' ');
+                spazio = true;
+            }
+        }
+        return risultato.toString().trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Calcola i trigrammi distinti di un testo già normalizzato, aggiungendo un margine di spazi a ogni parola
+     * così anche le parole brevi e gli inizi di parola producono trigrammi significativi.
+     * Ogni trigramma è formato da tre code point di 21 bit in un long, così anche i testi in alfabeti non latini
+     * o con caratteri fuori dal piano multilingue di base non producono collisioni.
+     */
+    static long[] trigrammi(String testoNormalizzato) {
+        if (testoNormalizzato.isEmpty()) {
+            return new long[0];
+        }
+        int[] caratteri = ("  " + testoNormalizzato.replace(" ", "  ") + " ").codePoints().toArray();
+        long[] codici = new long[caratteri.length];
+        int numero = 0;
+        for (int i = 0; i + 2 < caratteri.length; i++) {
+            int a = caratteri[i];
+            int b = caratteri[i + 1];
+            int c = caratteri[i + 2];
+            if (b == ' ' && c == ' ') {
+                continue;
+            }
+            codici[numero++] = (long) a << 42 | (long) b << 21 | c;
+        }
+        long[] ordinati = Arrays.copyOf(codici, numero);
+        Arrays.sort(ordinati);
+        int distinti = 0;
+        for (int i = 0; i < ordinati.length; i++) {
+            if (i == 0 || ordinati[i] != ordinati[i - 1]) {
+                ordinati[distinti++] = ordinati[i];
+            }
+        }
+        return Arrays.copyOf(ordinati, distinti);
+    }
+}
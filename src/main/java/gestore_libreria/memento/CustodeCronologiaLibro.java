@@ -2,18 +2,55 @@ package gestore_libreria.memento;
 
 import gestore_libreria.model.Libro;
 
-import java.util.Stack;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Gestisce la cronologia degli stati di un oggetto {@link Libro} attraverso il pattern memento.
  * Permette le operazioni di undo/redo notificando gli observer registrati
+ * <p>
+ * La cronologia è un buffer circolare con un cursore: i memento prima del cursore possono essere annullati,
+ * quelli dopo ripetuti. Il numero di memento e la memoria stimata che trattengono sono limitati: superato uno
+ * dei due limiti vengono scartati i memento più vecchi, che non potranno più essere annullati.
+ * La classe non è sincronizzata e va usata da un solo thread, l'EDT per l'interfaccia grafica.
+ * <p>
+ * Con un {@link GiornaleCronologia} ogni operazione viene registrata anche su file: all'avvio la cronologia
+ * riparte da dove era rimasta, e i memento vengono letti dal file solo quando un undo o un redo li raggiunge.
+ * <p>
+ * Le operazioni salvate tra {@link #apriGruppo()} e {@link #chiudiGruppo()} diventano un solo memento di tipo
+ * GRUPPO, annullato e ripetuto con un solo comando.
  */
 
 public class CustodeCronologiaLibro {
 
-    private final Stack<MementoLibro> undoStack = new Stack<>();
-    private final Stack<MementoLibro> redoStack = new Stack<>();
+    /**
+     * Numero massimo predefinito di operazioni conservate
+     */
+    public static final int MASSIMO_VOCI_PREDEFINITO = 500;
+
+    /**
+     * Memoria massima predefinita occupata dai memento conservati, in byte
+     */
+    public static final long MASSIMO_BYTE_PREDEFINITO = 8L * 1024 * 1024;
 
+    private static final int CAPACITA_INIZIALE = 16;
+
+    private final int massimoVoci;
+    private final long massimoByte;
+
+    private MementoLibro[] voci;    // null per i memento del giornale non ancora letti
+    private long[] posizioni;       // posizione nel giornale dei memento non ancora letti
+    private long[] byteVoci;        // memoria stimata di ogni memento, anche se non ancora letto
+    private int testa;          // posizione nel buffer del memento più vecchio
+    private int dimensione;     // memento conservati, annullabili e ripetibili
+    private int cursore;        // memento annullabili: i primi "cursore" a partire dalla testa
+    private long byteStimati;
+    private long vociScartate;
+
+    private GiornaleCronologia giornale;
+    private int gruppiAperti;
+    private List<MementoLibro> gruppo = new ArrayList<>();
     private OnMementoListener restoreListener;
 
     /**
@@ -41,6 +78,64 @@ public class CustodeCronologiaLibro {
         void restore(MementoLibro memento, ActionDirection direction);
     }
 
+    /**
+     * Crea una cronologia con i limiti predefiniti {@link #MASSIMO_VOCI_PREDEFINITO} e {@link #MASSIMO_BYTE_PREDEFINITO}.
+     */
+    public CustodeCronologiaLibro() {
+        this(MASSIMO_VOCI_PREDEFINITO, MASSIMO_BYTE_PREDEFINITO);
+    }
+
+    /**
+     * @param massimoVoci il numero massimo di operazioni conservate
+     * @param massimoByte la memoria massima stimata occupata dai memento conservati
+     * @pre {@code massimoVoci > 0} e {@code massimoByte > 0}
+     * @post la cronologia è vuota
+     * @throws IllegalArgumentException se uno dei limiti non è positivo
+     */
+    public CustodeCronologiaLibro(int massimoVoci, long massimoByte) {
+        if (massimoVoci <= 0 || massimoByte <= 0) {
+            throw new IllegalArgumentException("I limiti della cronologia devono essere positivi");
+        }
+        this.massimoVoci = massimoVoci;
+        this.massimoByte = massimoByte;
+        this.voci = new MementoLibro[Math.min(CAPACITA_INIZIALE, massimoVoci)];
+        this.posizioni = new long[voci.length];
+        this.byteVoci = new long[voci.length];
+    }
+
+    /**
+     * Crea una cronologia che registra le operazioni nel giornale e riparte da quelle già registrate.
+     *
+     * @param massimoVoci il numero massimo di operazioni conservate
+     * @param massimoByte la memoria massima stimata occupata dai memento conservati
+     * @param giornale il giornale su file della cronologia
+     * @pre {@code massimoVoci > 0} e {@code massimoByte > 0}
+     * @post la cronologia contiene le operazioni registrate nel giornale entro i limiti indicati; se il giornale
+     *       non può essere aperto la cronologia parte vuota e non viene registrata
+     * @throws IllegalArgumentException se uno dei limiti non è positivo
+     */
+    public CustodeCronologiaLibro(int massimoVoci, long massimoByte, GiornaleCronologia giornale) {
+        this(massimoVoci, massimoByte);
+        try {
+            GiornaleCronologia.Contenuto contenuto = giornale.apri(massimoVoci, massimoByte);
+            int caricate = contenuto.posizioni.length;
+            int capacita = Math.max(voci.length, caricate);
+            voci = new MementoLibro[capacita];
+            posizioni = new long[capacita];
+            byteVoci = new long[capacita];
+            System.arraycopy(contenuto.posizioni, 0, posizioni, 0, caricate);
+            System.arraycopy(contenuto.byteStimati, 0, byteVoci, 0, caricate);
+            for (long stima : contenuto.byteStimati) {
+                byteStimati += stima;
+            }
+            dimensione = caricate;
+            cursore = contenuto.cursore;
+            this.giornale = giornale;
+        } catch (IOException e) {
+            System.err.println("Giornale della cronologia non disponibile: " + e.getMessage());
+        }
+    }
+
     /**
      * Salva un nuovo stato e svuota lo stack redo
      *
@@ -48,10 +143,103 @@ public class CustodeCronologiaLibro {
      * @pre {@code memento} non deve essere null
      * @post memento si posziona in cima allo stack undo
      * @post lo stack redo viene svuotato
+     * @post se la cronologia supera uno dei limiti, i memento più vecchi vengono scartati
      */
     public void save(MementoLibro memento) {
-        undoStack.push(memento);
-        redoStack.clear();      // una volta che faccio una nuova operazione ripulisco lo stack redo
+        if (gruppiAperti > 0) {
+            gruppo.add(memento);
+            return;
+        }
+        // una volta che faccio una nuova operazione ripulisco lo stack redo
+        while (dimensione > cursore) {
+            dimensione--;
+            byteStimati -= byteVoci[indice(dimensione)];
+            voci[indice(dimensione)] = null;
+        }
+        if (dimensione == voci.length) {
+            cresci();
+        }
+        voci[indice(dimensione)] = memento;
+        byteVoci[indice(dimensione)] = memento.getByteStimati();
+        dimensione++;
+        cursore++;
+        byteStimati += memento.getByteStimati();
+        if (giornale != null) {
+            giornale.salva(memento);
+        }
+
+        // l'ultimo memento viene sempre conservato, anche se da solo supera il limite di memoria
+        while (dimensione > 1 && (dimensione > massimoVoci || byteStimati > massimoByte)) {
+            byteStimati -= byteVoci[testa];
+            voci[testa] = null;
+            testa = (testa + 1) % voci.length;
+            dimensione--;
+            cursore--;
+            vociScartate++;
+        }
+    }
+
+    /**
+     * Inizia a raccogliere le operazioni salvate in un unico memento. I gruppi possono essere annidati: le
+     * operazioni vengono riunite alla chiusura del più esterno.
+     *
+     * @post i memento salvati fino alla chiusura del gruppo non sono annullabili singolarmente
+     */
+    public void apriGruppo() {
+        gruppiAperti++;
+    }
+
+    /**
+     * Chiude il gruppo aperto per ultimo.
+     *
+     * @pre c'è un gruppo aperto
+     * @post chiuso il gruppo più esterno, le operazioni raccolte vengono salvate come un solo memento di tipo GRUPPO,
+     *       o così come sono se è una sola; un gruppo vuoto non lascia traccia nella cronologia
+     * @throws IllegalStateException se nessun gruppo è aperto
+     */
+    public void chiudiGruppo() {
+        if (gruppiAperti == 0) {
+            throw new IllegalStateException("Nessun gruppo aperto");
+        }
+        if (--gruppiAperti > 0) {
+            return;
+        }
+        List<MementoLibro> parti = gruppo;
+        gruppo = new ArrayList<>();
+        if (parti.size() == 1) {
+            save(parti.get(0));
+        } else if (!parti.isEmpty()) {
+            save(MementoLibro.gruppo(parti));
+        }
+    }
+
+    private int indice(int posizione) {
+        return (testa + posizione) % voci.length;
+    }
+
+    private void cresci() {
+        int capacita = (int) Math.min((long) voci.length * 2, massimoVoci + 1L);
+        MementoLibro[] nuove = new MementoLibro[capacita];
+        long[] nuovePosizioni = new long[capacita];
+        long[] nuoviByte = new long[capacita];
+        for (int i = 0; i < dimensione; i++) {
+            nuove[i] = voci[indice(i)];
+            nuovePosizioni[i] = posizioni[indice(i)];
+            nuoviByte[i] = byteVoci[indice(i)];
+        }
+        voci = nuove;
+        posizioni = nuovePosizioni;
+        byteVoci = nuoviByte;
+        testa = 0;
+    }
+
+    // il memento in una posizione, letto dal giornale la prima volta che serve
+    private MementoLibro voce(int posizione) {
+        int i = indice(posizione);
+        if (voci[i] == null) {
+            voci[i] = giornale.leggi(posizioni[i]);
+        }
+        return voci[i];
     }
 
     /**
@@ -70,13 +258,22 @@ public class CustodeCronologiaLibro {
      * @pre lo stack undo può essere vuoto ma restituisce null
      * @post se disponibile il memento viene rimosso dallo stack undo e spostato nello stack redo.
      * @post se presente un listener, viene notificato con {@code ActionDirection.UNDO}
+     * @post se il listener solleva un'eccezione la cronologia resta invariata e l'eccezione viene propagata
      */
     public MementoLibro annulla() {
-        if (!undoStack.isEmpty()) {
-            MementoLibro memento = undoStack.pop();
-            redoStack.push(memento);        //prendo il memento dalla pila undo e lo sposto nella pila redo
+        if (cursore > 0) {
+            cursore--;        //il memento in cima alla pila undo diventa il primo della pila redo
+            MementoLibro memento = voce(cursore);
             if (restoreListener != null) {
-                restoreListener.restore(memento, ActionDirection.UNDO);
+                try {
+                    restoreListener.restore(memento, ActionDirection.UNDO);
+                } catch (RuntimeException e) {
+                    cursore++;      //il ripristino non è avvenuto: l'operazione resta da annullare
+                    throw e;
+                }
+            }
+            if (giornale != null) {
+                giornale.annulla();
             }
             return memento;
         }
@@ -89,13 +286,22 @@ public class CustodeCronologiaLibro {
      * @pre lo stack redo può essere vuoto ma restituisce null
      * @post se disponibile il memento viene rimosso dallo stack redo e spostato nello stack undo.
      * @post se presente un listener, viene notificato con {@code ActionDirection.REDO}
+     * @post se il listener solleva un'eccezione la cronologia resta invariata e l'eccezione viene propagata
      */
     public MementoLibro ripeti() {
-        if (!redoStack.isEmpty()) {
-            MementoLibro memento = redoStack.pop();
-            undoStack.push(memento);
+        if (cursore < dimensione) {
+            MementoLibro memento = voce(cursore);
+            cursore++;
             if (restoreListener != null) {
-                restoreListener.restore(memento, ActionDirection.REDO);
+                try {
+                    restoreListener.restore(memento, ActionDirection.REDO);
+                } catch (RuntimeException e) {
+                    cursore--;
+                    throw e;
+                }
+            }
+            if (giornale != null) {
+                giornale.ripeti();
             }
             return memento;
         }
@@ -111,7 +317,7 @@ public class CustodeCronologiaLibro {
      * @post il risultato riflette lo stato dello stack undo
      */
     public boolean puoAnnullare() {
-        return !undoStack.isEmpty();
+        return cursore > 0;
     }
 
     /**
@@ -121,18 +327,68 @@ public class CustodeCronologiaLibro {
      * @post il risultato riflette lo stato dello stack redo
      */
     public boolean puoRipetere() {
-        return !redoStack.isEmpty();
+        return cursore < dimensione;
     }
 
     /**
      * Pulisce completamente la cronologia di undo e redo.
      *
-     * @post entrambi gli stack sono vuoti
+     * @post entrambi gli stack sono vuoti e nessun gruppo è aperto: le operazioni raccolte da un gruppo
+     *       ancora aperto vengono scartate
      */
     public void cleanAll(){
-        undoStack.clear();
-        redoStack.clear();
+        gruppiAperti = 0;
+        gruppo = new ArrayList<>();
+        voci = new MementoLibro[Math.min(CAPACITA_INIZIALE, massimoVoci)];
+        posizioni = new long[voci.length];
+        byteVoci = new long[voci.length];
+        testa = 0;
+        dimensione = 0;
+        cursore = 0;
+        byteStimati = 0;
+        if (giornale != null) {
+            giornale.svuota();
+        }
+    }
+
+    /**
+     * Scrive su disco le operazioni non ancora registrate e chiude il giornale, se presente.
+     *
+     * @post le operazioni successive non vengono più registrate nel giornale; i memento già registrati
+     *       restano annullabili
+     */
+    public void chiudi() {
+        if (giornale != null) {
+            giornale.chiudi();
+        }
+    }
+
+    //metriche
+
+    public int getProfonditaAnnulla() {
+        return cursore;
+    }
+
+    public int getProfonditaRipeti() {
+        return dimensione - cursore;
     }
 
+    public long getByteStimati() {
+        return byteStimati;
+    }
 
+    /**
+     * @return quanti memento sono stati scartati perché la cronologia aveva raggiunto uno dei limiti
+     */
+    public long getVociScartate() {
+        return vociScartate;
+    }
+
+    public int getMassimoVoci() {
+        return massimoVoci;
+    }
+
+    public long getMassimoByte() {
+        return massimoByte;
+    }
 }
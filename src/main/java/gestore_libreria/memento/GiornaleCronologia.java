@@ -0,0 +1,471 @@
+package gestore_libreria.memento;
+
+import gestore_libreria.model.CampoLibro;
+import gestore_libreria.model.Libro;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * File in cui {@link CustodeCronologiaLibro} registra la cronologia, così da poter annullare le operazioni
+ * anche dopo un riavvio.
+ * <p>
+ * Il file è un giornale in sola aggiunta: ogni salvataggio, undo, redo o svuotamento della cronologia diventa un
+ * record con lunghezza e checksum CRC32. Le scritture vengono accumulate in memoria e scaricate insieme su un
+ * thread dedicato, che forza la sincronizzazione su disco al massimo ogni {@link #INTERVALLO_SINCRONIZZAZIONE_MS}:
+ * un'interruzione improvvisa fa perdere al più le ultime operazioni, e un record scritto a metà viene riconosciuto
+ * dal checksum e scartato.
+ * <p>
+ * All'apertura il file viene ripercorso leggendo solo le intestazioni dei record, con gli stessi limiti della
+ * cronologia, e poi mappato in memoria; i memento vengono decodificati solo quando un undo o un redo li raggiunge.
+ * Se il file contiene molti più record di quelli ancora utili, o termina con un record incompleto, viene riscritto
+ * con i soli memento sopravvissuti prima di mapparlo: un file mappato resta aperto finché il garbage collector
+ * non rilascia la mappa e su Windows non può essere sostituito.
+ */
+public class GiornaleCronologia {
+
+    /**
+     * Nome predefinito del file, accanto al database
+     */
+    public static final String FILE_PREDEFINITO = "Books_db.cronologia";
+
+    /**
+     * Intervallo massimo tra due sincronizzazioni del file su disco, in millisecondi
+     */
+    public static final long INTERVALLO_SINCRONIZZAZIONE_MS = 1000;
+
+    // oltre questa quantità di dati in attesa la scrittura parte senza aspettare l'intervallo
+    static final int SOGLIA_SCARICO = 64 * 1024;
+
+    private static final byte SALVA = 1;
+    private static final byte ANNULLA = 2;
+    private static final byte RIPETI = 3;
+    private static final byte SVUOTA = 4;
+
+    private static final int INTESTAZIONE = 8;      // lunghezza e checksum del record
+
+    /**
+     * Memento sopravvissuti nel file, nell'ordine della cronologia.
+     */
+    static final class Contenuto {
+        final long[] posizioni;     // dove inizia il corpo di ogni memento nel file mappato
+        final long[] byteStimati;
+        final int cursore;
+        final int record;
+
+        private Contenuto(List<long[]> voci, int cursore, int record) {
+            this.posizioni = new long[voci.size()];
+            this.byteStimati = new long[voci.size()];
+            for (int i = 0; i < voci.size(); i++) {
+                posizioni[i] = voci.get(i)[0];
+                byteStimati[i] = voci.get(i)[1];
+            }
+            this.cursore = cursore;
+            this.record = record;
+        }
+    }
+
+    private final Path file;
+    private final ScheduledExecutorService scrittore;
+    private FileChannel canale;
+    private ByteBuffer mappa;
+
+    private final ByteArrayOutputStream inAttesa = new ByteArrayOutputStream();
+    private boolean scaricoRichiesto;
+    private boolean chiuso;
+
+    private volatile long recordScritti;
+    private volatile long sincronizzazioni;
+    private int recordCompattati;
+
+    /**
+     * @param file il file del giornale, creato alla prima apertura se non esiste
+     * @post il giornale va aperto dalla cronologia che lo usa
+     */
+    public GiornaleCronologia(Path file) {
+        this.file = file.toAbsolutePath();
+        this.scrittore = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "giornale-cronologia");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ripercorre il file e lo prepara per le nuove scritture.
+     *
+     * @param massimoVoci il numero massimo di memento conservati dalla cronologia
+     * @param massimoByte la memoria massima stimata dei memento conservati
+     * @return i memento ancora annullabili o ripetibili, da leggere con {@link #leggi(long)}
+     * @throws IOException se il file non può essere letto o scritto
+     */
+    synchronized Contenuto apri(int massimoVoci, long massimoByte) throws IOException {
+        Path cartella = file.getParent();
+        if (cartella != null) {
+            Files.createDirectories(cartella);
+        }
+        // prima lettura senza mappa, così il file si può ancora sostituire con quello compattato
+        ByteBuffer letto = ByteBuffer.wrap(Files.exists(file) ? Files.readAllBytes(file) : new byte[0]);
+        long[] valida = new long[1];
+        Contenuto contenuto = scansiona(letto, massimoVoci, massimoByte, valida);
+        boolean incompleto = valida[0] < letto.capacity();
+        boolean compattato = false;
+        if (incompleto || contenuto.record > 2 * contenuto.posizioni.length + 16) {
+            try {
+                compatta(letto, contenuto);
+                recordCompattati = contenuto.record;
+                compattato = true;
+            } catch (IOException e) {
+                // senza compattazione il file resta solo più lungo; un record incompleto invece nasconderebbe i successivi
+                if (incompleto) {
+                    throw e;
+                }
+                System.err.println("Compattazione del giornale della cronologia rinviata: " + e.getMessage());
+            }
+        }
+        letto = null;
+        try (FileChannel lettura = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            mappa = lettura.map(FileChannel.MapMode.READ_ONLY, 0, lettura.size());
+        }
+        if (compattato) {
+            contenuto = scansiona(mappa, massimoVoci, massimoByte, valida);
+        }
+        canale = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        scrittore.scheduleWithFixedDelay(this::scarica, INTERVALLO_SINCRONIZZAZIONE_MS,
+                INTERVALLO_SINCRONIZZAZIONE_MS, TimeUnit.MILLISECONDS);
+        return contenuto;
+    }
+
+    // rigioca i record come farebbe la cronologia, senza decodificare i memento
+    private static Contenuto scansiona(ByteBuffer dati, int massimoVoci, long massimoByte, long[] valida) {
+        List<long[]> voci = new ArrayList<>();
+        int cursore = 0;
+        long totale = 0;
+        int record = 0;
+        int posizione = 0;
+        CRC32 crc = new CRC32();
+        while (posizione + INTESTAZIONE < dati.capacity()) {
+            int lunghezza = dati.getInt(posizione);
+            if (lunghezza <= 0 || lunghezza > dati.capacity() - posizione - INTESTAZIONE) {
+                break;
+            }
+            crc.reset();
+            crc.update(dati.slice(posizione + INTESTAZIONE, lunghezza));
+            if ((int) crc.getValue() != dati.getInt(posizione + 4)) {
+                break;
+            }
+            byte tipo = dati.get(posizione + INTESTAZIONE);
+            int corpo = posizione + INTESTAZIONE + 1;
+            long[] voce = lunghezza > 1 ? new long[]{corpo, dati.getLong(corpo)} : null;
+            if (tipo == SALVA && voce != null) {
+                while (voci.size() > cursore) {
+                    totale -= voci.remove(voci.size() - 1)[1];
+                }
+                voci.add(voce);
+                cursore++;
+                totale += voce[1];
+                while (voci.size() > 1 && (voci.size() > massimoVoci || totale > massimoByte)) {
+                    totale -= voci.remove(0)[1];
+                    cursore--;
+                }
+            } else if (tipo == ANNULLA) {
+                cursore = Math.max(0, cursore - 1);
+            } else if (tipo == RIPETI) {
+                cursore = Math.min(voci.size(), cursore + 1);
+            } else if (tipo == SVUOTA) {
+                voci.clear();
+                cursore = 0;
+                totale = 0;
+            } else {
+                break;
+            }
+            record++;
+            posizione += INTESTAZIONE + lunghezza;
+        }
+        valida[0] = posizione;
+        return new Contenuto(voci, cursore, record);
+    }
+
+    // riscrive il file con i soli memento sopravvissuti, seguiti dagli undo che riportano il cursore
+    private void compatta(ByteBuffer letto, Contenuto contenuto) throws IOException {
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteArrayOutputStream compattato = new ByteArrayOutputStream();
+        for (long posizione : contenuto.posizioni) {
+            int lunghezza = letto.getInt((int) posizione - 1 - INTESTAZIONE) - 1;
+            byte[] corpo = new byte[lunghezza];
+            letto.get((int) posizione, corpo);
+            compattato.writeBytes(record(SALVA, corpo));
+        }
+        for (int i = contenuto.cursore; i < contenuto.posizioni.length; i++) {
+            compattato.writeBytes(record(ANNULLA, new byte[0]));
+        }
+        try (FileChannel scrittura = FileChannel.open(temporaneo, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer dati = ByteBuffer.wrap(compattato.toByteArray());
+            while (dati.hasRemaining()) {
+                scrittura.write(dati);
+            }
+            scrittura.force(true);
+        }
+        try {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Decodifica un memento dal file mappato.
+     *
+     * @param posizione la posizione restituita da {@link #apri(int, long)}
+     * @return il memento salvato in quella posizione
+     */
+    synchronized MementoLibro leggi(long posizione) {
+        int lunghezza = mappa.getInt((int) posizione - 1 - INTESTAZIONE) - 1 - Long.BYTES;
+        byte[] dati = new byte[lunghezza];
+        mappa.get((int) posizione + Long.BYTES, dati);
+        try {
+            return decodifica(new DataInputStream(new ByteArrayInputStream(dati)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Memento non leggibile nel giornale della cronologia", e);
+        }
+    }
+
+    void salva(MementoLibro memento) {
+        accoda(record(SALVA, codifica(memento)));
+    }
+
+    void annulla() {
+        accoda(record(ANNULLA, new byte[0]));
+    }
+
+    void ripeti() {
+        accoda(record(RIPETI, new byte[0]));
+    }
+
+    void svuota() {
+        accoda(record(SVUOTA, new byte[0]));
+    }
+
+    private synchronized void accoda(byte[] record) {
+        if (chiuso) {
+            return;
+        }
+        inAttesa.writeBytes(record);
+        if (inAttesa.size() >= SOGLIA_SCARICO && !scaricoRichiesto) {
+            scaricoRichiesto = true;
+            scrittore.execute(this::scarica);
+        }
+    }
+
+    // scrive in un colpo i record in attesa e li sincronizza su disco; gira solo sul thread del giornale
+    private void scarica() {
+        byte[] dati;
+        int record;
+        synchronized (this) {
+            scaricoRichiesto = false;
+            if (inAttesa.size() == 0 || canale == null) {
+                return;
+            }
+            dati = inAttesa.toByteArray();
+            inAttesa.reset();
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(dati);
+            while (buffer.hasRemaining()) {
+                canale.write(buffer);
+            }
+            canale.force(false);
+            sincronizzazioni++;
+            for (int posizione = 0; posizione < dati.length; posizione += INTESTAZIONE + buffer.getInt(posizione)) {
+                recordScritti++;
+            }
+        } catch (IOException e) {
+            System.err.println("Errore nella scrittura del giornale della cronologia: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Scrive le operazioni in attesa e chiude il file.
+     *
+     * @post le operazioni registrate successivamente vengono ignorate
+     */
+    public void chiudi() {
+        synchronized (this) {
+            if (chiuso) {
+                return;
+            }
+            chiuso = true;
+        }
+        scrittore.shutdown();
+        try {
+            scrittore.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scarica();
+        try {
+            if (canale != null) {
+                canale.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Errore nella chiusura del giornale della cronologia: " + e.getMessage());
+        }
+    }
+
+    private static byte[] record(byte tipo, byte[] corpo) {
+        CRC32 crc = new CRC32();
+        crc.update(tipo);
+        crc.update(corpo);
+        ByteBuffer record = ByteBuffer.allocate(INTESTAZIONE + 1 + corpo.length);
+        record.putInt(1 + corpo.length).putInt((int) crc.getValue()).put(tipo).put(corpo);
+        return record.array();
+    }
+
+    //codifica dei memento: la stima della memoria in testa, letta all'apertura senza decodificare il resto
+
+    private static byte[] codifica(MementoLibro memento) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(memento.getByteStimati());
+            codifica(out, memento);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void codifica(DataOutputStream out, MementoLibro memento) throws IOException {
+        out.writeByte(memento.getOperationType().ordinal());
+        if (memento.getOperationType() == MementoLibro.OperationType.GRUPPO) {
+            out.writeInt(memento.getParti().size());
+            for (MementoLibro parte : memento.getParti()) {
+                codifica(out, parte);
+            }
+            return;
+        }
+        out.writeBoolean(memento.isDifferenza());
+        if (memento.isDifferenza()) {
+            out.writeInt(memento.getIdLibro());
+            CampoLibro[] campi = memento.getCampi();
+            out.writeByte(campi.length);
+            for (CampoLibro campo : campi) {
+                out.writeByte(campo.ordinal());
+                scriviValore(out, memento.getValore(campo, false));
+                scriviValore(out, memento.getValore(campo, true));
+            }
+        } else {
+            scriviLibro(out, memento.getBookState());
+            out.writeBoolean(memento.getPreviousBookState() != null);
+            if (memento.getPreviousBookState() != null) {
+                scriviLibro(out, memento.getPreviousBookState());
+            }
+        }
+    }
+
+    private static MementoLibro decodifica(DataInputStream in) throws IOException {
+        MementoLibro.OperationType tipo = MementoLibro.OperationType.values()[in.readByte()];
+        if (tipo == MementoLibro.OperationType.GRUPPO) {
+            List<MementoLibro> parti = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                parti.add(decodifica(in));
+            }
+            return MementoLibro.gruppo(parti);
+        }
+        if (in.readBoolean()) {
+            int id = in.readInt();
+            CampoLibro[] campi = new CampoLibro[in.readByte()];
+            Object[] valori = new Object[campi.length * 2];
+            for (int i = 0; i < campi.length; i++) {
+                campi[i] = CampoLibro.values()[in.readByte()];
+                valori[2 * i] = leggiValore(in);
+                valori[2 * i + 1] = leggiValore(in);
+            }
+            return new MementoLibro(id, campi, valori);
+        }
+        Libro stato = leggiLibro(in);
+        if (in.readBoolean()) {
+            return new MementoLibro(stato, tipo, leggiLibro(in));
+        }
+        return new MementoLibro(stato, tipo);
+    }
+
+    private static void scriviLibro(DataOutputStream out, Libro libro) throws IOException {
+        out.writeInt(libro.getId());
+        for (CampoLibro campo : CampoLibro.values()) {
+            scriviValore(out, campo.valore(libro));
+        }
+    }
+
+    private static Libro leggiLibro(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        Object[] valori = new Object[CampoLibro.values().length];
+        for (int i = 0; i < valori.length; i++) {
+            valori[i] = leggiValore(in);
+        }
+        return CampoLibro.crea(id, valori);
+    }
+
+    private static void scriviValore(DataOutputStream out, Object valore) throws IOException {
+        if (valore instanceof String testo) {
+            byte[] utf8 = testo.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(1);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        } else if (valore instanceof Integer numero) {
+            out.writeByte(2);
+            out.writeInt(numero);
+        } else {
+            out.writeByte(0);
+        }
+    }
+
+    private static Object leggiValore(DataInputStream in) throws IOException {
+        return switch (in.readByte()) {
+            case 1 -> new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+            case 2 -> in.readInt();
+            default -> null;
+        };
+    }
+
+    //metriche
+
+    public long getRecordScritti() {
+        return recordScritti;
+    }
+
+    public long getSincronizzazioni() {
+        return sincronizzazioni;
+    }
+
+    /**
+     * @return quanti record conteneva il file quando è stato compattato all'apertura, 0 se non è stato compattato
+     */
+    public int getRecordCompattati() {
+        return recordCompattati;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -1,10 +1,23 @@
 package gestore_libreria.memento;
 
+import gestore_libreria.model.CampoLibro;
 import gestore_libreria.model.Libro;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Rappresenta un memento contenente lo stato di un oggetto {@link Libro}
  * e il tipo di operazione eseguita (ADD, REMOVE e UPDATE)
+ * <p>
+ * Un UPDATE può essere salvato anche come differenza ({@link #differenza(Libro, Libro)}): il memento trattiene
+ * solo l'id del libro e i campi cambiati con il valore vecchio e quello nuovo, e ricostruisce il libro
+ * completo a partire dallo stato attuale quando serve.
+ * <p>
+ * Un memento di tipo GRUPPO ({@link #gruppo(List)}) riunisce più operazioni su libri diversi in un solo passo
+ * della cronologia, annullato e ripetuto tutto insieme.
  */
 
 public class MementoLibro {
@@ -14,12 +27,17 @@ public class MementoLibro {
      */
 
     public enum OperationType {
-        ADD, REMOVE, UPDATE;
+        ADD, REMOVE, UPDATE, GRUPPO;
     }
 
     private final Libro bookState;       // lo stato dopo l'operazione
     private final OperationType operationType;      //il tipo di operazione
     private final Libro previousBookState;       // lo stato del libro prima dell'operazione
+    private final long byteStimati;
+    private final int idLibro;
+    private final CampoLibro[] campi;       // per le differenze: i campi cambiati
+    private final Object[] valori;          // per le differenze: valore vecchio e nuovo di ogni campo, alternati
+    private final MementoLibro[] parti;     // per i gruppi: le operazioni nell'ordine in cui sono state eseguite
 
     // costruttore
 
@@ -32,16 +50,21 @@ public class MementoLibro {
      * @pre {@code operationType == ADD || operationType == REMOVE}
      * @pre {@code operationType != UPDATE}
      * @post il memento rappresenta l'operazione passata con stato precedente nullo
-     * @throws IllegalArgumentException se {@code operationType == UPDATE}
+     * @throws IllegalArgumentException se {@code operationType == UPDATE || operationType == GRUPPO}
      */
     public MementoLibro(Libro bookState, OperationType operationType) {
         //costruttore per le operazioni di delete e add, NO UPDATE
-        if(operationType == OperationType.UPDATE){
+        if(operationType == OperationType.UPDATE || operationType == OperationType.GRUPPO){
             throw new IllegalArgumentException("Update operation not supported");
         }
         this.bookState = bookState;
         this.operationType = operationType;
         this.previousBookState = null;
+        this.byteStimati = stimaByte(bookState, null);
+        this.idLibro = bookState.getId();
+        this.campi = null;
+        this.valori = null;
+        this.parti = null;
     }
 
     /**
@@ -55,16 +78,117 @@ public class MementoLibro {
      * @pre {@code operationType == UPDATE}
      * @pre {@code operationType != ADD || operationType != REMOVE}
      * @post il memento rappresenta correttamente l'update con stato precedente e successivo
-     * @throws IllegalArgumentException se {@code operationType == ADD || operationType == REMOVE}
+     * @throws IllegalArgumentException se {@code operationType != UPDATE}
      */
     public MementoLibro(Libro bookState, OperationType operationType, Libro previousBookState) {
         //costruttore per l'operazione di UPDATE
-        if(operationType == OperationType.ADD || operationType == OperationType.REMOVE){
+        if(operationType != OperationType.UPDATE){
             throw new IllegalArgumentException("Add operation and Remove operation not supported");
         }
         this.bookState = bookState;
         this.previousBookState = previousBookState;
         this.operationType = operationType;
+        this.byteStimati = stimaByte(bookState, previousBookState);
+        this.idLibro = bookState.getId();
+        this.campi = null;
+        this.valori = null;
+        this.parti = null;
+    }
+
+    // memento di differenza: valori contiene il valore vecchio e quello nuovo di ogni campo, alternati
+    MementoLibro(int idLibro, CampoLibro[] campi, Object[] valori) {
+        this.bookState = null;
+        this.previousBookState = null;
+        this.operationType = OperationType.UPDATE;
+        this.idLibro = idLibro;
+        this.campi = campi;
+        this.valori = valori;
+        this.parti = null;
+        // la valutazione è un Integer piccolo, preso dalla cache di Integer.valueOf: conta solo il riferimento
+        long totale = 32 + 16 + 8L * campi.length + 16 + 8L * valori.length;
+        for (Object valore : valori) {
+            if (valore instanceof String testo) {
+                totale += stimaByte(testo);
+            }
+        }
+        this.byteStimati = totale;
+    }
+
+    // gruppo di operazioni: nessuno stato proprio, la memoria è quella delle parti
+    private MementoLibro(MementoLibro[] parti) {
+        this.bookState = null;
+        this.previousBookState = null;
+        this.operationType = OperationType.GRUPPO;
+        this.idLibro = -1;
+        this.campi = null;
+        this.valori = null;
+        this.parti = parti;
+        long totale = 32 + 16 + 8L * parti.length;
+        for (MementoLibro parte : parti) {
+            totale += parte.getByteStimati();
+        }
+        this.byteStimati = totale;
+    }
+
+    /**
+     * Riunisce più operazioni in un solo memento. I gruppi contenuti vengono appiattiti.
+     *
+     * @param parti le operazioni nell'ordine in cui sono state eseguite
+     * @pre {@code parti} non deve essere null né contenere null
+     * @post il memento è di tipo GRUPPO e {@link #getParti()} restituisce le operazioni nello stesso ordine
+     * @return il memento del gruppo
+     */
+    public static MementoLibro gruppo(List<MementoLibro> parti) {
+        List<MementoLibro> appiattite = new ArrayList<>(parti.size());
+        for (MementoLibro parte : parti) {
+            if (parte.parti != null) {
+                appiattite.addAll(Arrays.asList(parte.parti));
+            } else {
+                appiattite.add(parte);
+            }
+        }
+        return new MementoLibro(appiattite.toArray(new MementoLibro[0]));
+    }
+
+    /**
+     * Crea il memento di un UPDATE che conserva solo i campi cambiati.
+     *
+     * @param previousBookState stato del libro prima dell'update
+     * @param bookState stato del libro dopo l'update
+     * @pre i due stati non devono essere null e devono avere lo stesso id
+     * @post il memento è di tipo UPDATE, {@link #isDifferenza()} è vero e gli stati completi sono null
+     * @return il memento con l'id del libro e i valori vecchi e nuovi dei soli campi cambiati
+     */
+    public static MementoLibro differenza(Libro previousBookState, Libro bookState) {
+        List<CampoLibro> cambiati = new ArrayList<>();
+        for (CampoLibro campo : CampoLibro.values()) {
+            if (!campo.uguale(previousBookState, bookState)) {
+                cambiati.add(campo);
+            }
+        }
+        CampoLibro[] campi = cambiati.toArray(new CampoLibro[0]);
+        Object[] valori = new Object[campi.length * 2];
+        for (int i = 0; i < campi.length; i++) {
+            valori[2 * i] = campi[i].valore(previousBookState);
+            valori[2 * i + 1] = campi[i].valore(bookState);
+        }
+        return new MementoLibro(bookState.getId(), campi, valori);
+    }
+
+    // stima per eccesso: intestazioni degli oggetti più due byte per carattere di ogni stringa
+    private static long stimaByte(Libro... stati) {
+        long totale = 32;
+        for (Libro stato : stati) {
+            if (stato != null) {
+                totale += 48 + stimaByte(stato.getTitolo()) + stimaByte(stato.getAutore()) + stimaByte(stato.getIsbn())
+                        + stimaByte(stato.getGenere()) + stimaByte(stato.getStatoLettura()) + stimaByte(stato.getPercorsoCopertina());
+            }
+        }
+        return totale;
+    }
+
+    private static long stimaByte(String testo) {
+        return testo == null ? 0 : 40 + 2L * testo.length();
     }
 
     public Libro getBookState() {
@@ -79,8 +203,90 @@ public class MementoLibro {
         return previousBookState;
     }
 
+    /**
+     * @return le operazioni di un gruppo nell'ordine in cui sono state eseguite, vuoto per gli altri memento
+     */
+    public List<MementoLibro> getParti() {
+        return parti == null ? List.of() : Collections.unmodifiableList(Arrays.asList(parti));
+    }
+
+    /**
+     * @return {@code true} se il memento conserva solo i campi cambiati invece degli stati completi
+     */
+    public boolean isDifferenza() {
+        return campi != null;
+    }
+
+    public int getIdLibro() {
+        return idLibro;
+    }
+
+    /**
+     * @return i campi cambiati da un memento di differenza, vuoto per gli altri memento
+     */
+    public CampoLibro[] getCampi() {
+        return campi == null ? new CampoLibro[0] : campi.clone();
+    }
+
+    /**
+     * @param campo uno dei campi cambiati
+     * @param successivo {@code true} per il valore dopo l'update, {@code false} per quello prima
+     * @pre {@link #isDifferenza()} e {@code campo} è tra quelli restituiti da {@link #getCampi()}
+     * @return il valore del campo
+     * @throws IllegalArgumentException se il campo non è cambiato
+     */
+    public Object getValore(CampoLibro campo, boolean successivo) {
+        for (int i = 0; campi != null && i < campi.length; i++) {
+            if (campi[i] == campo) {
+                return valori[2 * i + (successivo ? 1 : 0)];
+            }
+        }
+        throw new IllegalArgumentException("Campo non modificato: " + campo);
+    }
+
+    /**
+     * Ricostruisce lo stato completo del libro prima o dopo l'update.
+     * Per un memento di differenza i campi non cambiati vengono presi da {@code attuale}.
+     *
+     * @param attuale lo stato attuale del libro, usato solo dai memento di differenza
+     * @param successivo {@code true} per lo stato dopo l'update, {@code false} per quello prima
+     * @pre {@code operationType == UPDATE}
+     * @pre per un memento di differenza {@code attuale} non è null e ha l'id {@link #getIdLibro()}
+     * @return lo stato completo richiesto
+     */
+    public Libro ricostruisci(Libro attuale, boolean successivo) {
+        if (campi == null) {
+            return successivo ? bookState : previousBookState;
+        }
+        Object[] scelti = new Object[campi.length];
+        for (int i = 0; i < campi.length; i++) {
+            scelti[i] = valori[2 * i + (successivo ? 1 : 0)];
+        }
+        return CampoLibro.sostituisci(attuale, campi, scelti);
+    }
+
+    /**
+     * @return una stima per eccesso della memoria occupata dal memento e dagli stati che trattiene, in byte
+     */
+    public long getByteStimati() {
+        return byteStimati;
+    }
+
     @Override
     public String toString() {
+        if (parti != null) {
+            return "MementoLibro{" +
+                    "operationType=" + operationType +
+                    ", parti=" + parti.length +
+                    '}';
+        }
+        if (campi != null) {
+            return "MementoLibro{" +
+                    "idLibro=" + idLibro +
+                    ", operationType=" + operationType +
+                    ", campi=" + Arrays.toString(campi) +
+                    '}';
+        }
         return "MementoLibro{" +
                 "bookState=" + bookState +
                 ", operationType=" + operationType +
@@ -0,0 +1,84 @@
+package gestore_libreria.model;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * I campi modificabili di un {@link Libro}, usati per descrivere una modifica come l'insieme dei soli campi cambiati.
+ */
+public enum CampoLibro {
+    TITOLO(Libro::getTitolo),
+    AUTORE(Libro::getAutore),
+    ISBN(Libro::getIsbn),
+    GENERE(Libro::getGenere),
+    VALUTAZIONE(Libro::getValutazione),
+    STATO_LETTURA(Libro::getStatoLettura),
+    PERCORSO_COPERTINA(Libro::getPercorsoCopertina);
+
+    private static final CampoLibro[] CAMPI = values();
+
+    private final Function<Libro, Object> lettore;
+
+    CampoLibro(Function<Libro, Object> lettore) {
+        this.lettore = lettore;
+    }
+
+    /**
+     * @param libro il libro da leggere
+     * @return il valore del campo nel libro; la valutazione è un {@link Integer}, gli altri campi stringhe
+     */
+    public Object valore(Libro libro) {
+        return lettore.apply(libro);
+    }
+
+    /**
+     * @param primo il primo libro
+     * @param secondo il secondo libro
+     * @return {@code true} se il campo ha lo stesso valore nei due libri
+     */
+    public boolean uguale(Libro primo, Libro secondo) {
+        return Objects.equals(valore(primo), valore(secondo));
+    }
+
+    /**
+     * Ricostruisce un libro partendo da un libro esistente e sostituendo alcuni campi.
+     *
+     * @param base il libro da cui prendere i campi non sostituiti
+     * @param campi i campi da sostituire
+     * @param valori i nuovi valori, nello stesso ordine di {@code campi}
+     * @pre {@code campi} e {@code valori} hanno la stessa lunghezza e i valori sono del tipo del campo
+     * @post il libro restituito ha l'id di {@code base}
+     * @return un nuovo libro con i campi sostituiti
+     */
+    public static Libro sostituisci(Libro base, CampoLibro[] campi, Object[] valori) {
+        Object[] stato = new Object[CAMPI.length];
+        for (CampoLibro campo : CAMPI) {
+            stato[campo.ordinal()] = campo.valore(base);
+        }
+        for (int i = 0; i < campi.length; i++) {
+            stato[campi[i].ordinal()] = valori[i];
+        }
+        return crea(base.getId(), stato);
+    }
+
+    /**
+     * Crea un libro a partire dai valori di tutti i campi.
+     *
+     * @param id l'id del libro
+     * @param valori il valore di ogni campo, nella posizione data dal suo {@link #ordinal()}
+     * @pre {@code valori} contiene un valore per ogni campo, del tipo del campo; titolo e autore non sono vuoti
+     * @return il libro con i valori indicati
+     */
+    public static Libro crea(int id, Object[] valori) {
+        Libro.Costruttore costruttore = new Libro.Costruttore((String) valori[TITOLO.ordinal()], (String) valori[AUTORE.ordinal()])
+                .id(id)
+                .isbn((String) valori[ISBN.ordinal()])
+                .genere((String) valori[GENERE.ordinal()])
+                .valutazione((Integer) valori[VALUTAZIONE.ordinal()])
+                .percorsoCopertina((String) valori[PERCORSO_COPERTINA.ordinal()]);
+        if (valori[STATO_LETTURA.ordinal()] != null) {
+            costruttore.statoLettura((String) valori[STATO_LETTURA.ordinal()]);
+        }
+        return costruttore.build();
+    }
+}
@@ -0,0 +1,66 @@
+package gestore_libreria.model;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Chiavi di ordinamento di titoli e autori secondo le regole della lingua italiana: le lettere accentate
+ * seguono la lettera base invece di finire dopo la "z", maiuscole e minuscole sono equivalenti e nei titoli
+ * l'articolo iniziale ("Il", "La", "L'", ...) non conta.
+ * <p>
+ * Le chiavi si confrontano byte per byte, quindi il repository le salva come BLOB e SQLite le ordina con un indice
+ * senza conoscere le regole di collazione; {@link CriterioOrdinamento} usa le stesse chiavi per ordinare in memoria.
+ */
+public final class ChiaveOrdinamento {
+
+    // il RuleBasedCollator sincronizza il calcolo delle chiavi: un collatore per thread permette di calcolarle
+    // in parallelo, ad esempio ordinando molti libri con ElaborazioneParallela
+    private static final ThreadLocal<Collator> COLLATORE = ThreadLocal.withInitial(ChiaveOrdinamento::creaCollatore);
+
+    private static final String[] ARTICOLI = {"il ", "lo ", "la ", "i ", "gli ", "le ", "un ", "uno ", "una ", "l'", "l\u2019", "un'", "un\u2019"};
+
+    private ChiaveOrdinamento() {
+    }
+
+    private static Collator creaCollatore() {
+        Collator collatore = Collator.getInstance(Locale.ITALIAN);
+        // SECONDARY: gli accenti contano, maiuscole e minuscole no
+        collatore.setStrength(Collator.SECONDARY);
+        collatore.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return collatore;
+    }
+
+    /**
+     * @param titolo il titolo di un libro
+     * @return la chiave del titolo senza l'articolo iniziale
+     */
+    public static CollationKey titolo(String titolo) {
+        return COLLATORE.get().getCollationKey(senzaArticolo(titolo));
+    }
+
+    /**
+     * @param autore l'autore di un libro
+     * @return la chiave dell'autore
+     */
+    public static CollationKey autore(String autore) {
+        return COLLATORE.get().getCollationKey(autore == null ? "" : autore.strip());
+    }
+
+    /**
+     * @param testo un titolo
+     * @return il titolo senza spazi esterni e senza l'articolo iniziale, se dopo l'articolo resta qualcosa
+     */
+    static String senzaArticolo(String testo) {
+        if (testo == null) {
+            return "";
+        }
+        String titolo = testo.strip();
+        for (String articolo : ARTICOLI) {
+            if (titolo.length() > articolo.length() && titolo.regionMatches(true, 0, articolo, 0, articolo.length())) {
+                return titolo.substring(articolo.length()).stripLeading();
+            }
+        }
+        return titolo;
+    }
+}
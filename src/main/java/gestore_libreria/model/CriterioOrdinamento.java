@@ -1,5 +1,7 @@
 package gestore_libreria.model;
 
+import java.util.Comparator;
+
 public enum CriterioOrdinamento {
     NESSUNO,
     TITOLO_ASC,
@@ -7,5 +9,30 @@ public enum CriterioOrdinamento {
     AUTORE_ASC,
     AUTORE_DESC,
     VALUTAZIONE_ASC,
-    VALUTAZIONE_DESC,
+    VALUTAZIONE_DESC;
+
+    private static final Comparator<Libro> PER_ID = Comparator.comparingInt(Libro::getId);
+    private static final Comparator<Libro> PER_TITOLO = Comparator.comparing(Libro::getChiaveTitolo);
+    private static final Comparator<Libro> PER_AUTORE = Comparator.comparing(Libro::getChiaveAutore);
+    private static final Comparator<Libro> PER_VALUTAZIONE = Comparator.comparingInt(Libro::getValutazione);
+
+    /**
+     * Restituisce l'ordinamento in memoria equivalente a quello usato dal repository per questo criterio,
+     * così un libro può essere inserito nella posizione giusta di una lista già ordinata senza rileggerla.
+     * A parità di chiave i libri sono ordinati per id, cioè per ordine di inserimento.
+     *
+     * @post restituisce un comparatore non null
+     * @return il comparatore dei libri per questo criterio
+     */
+    public Comparator<Libro> getComparatore() {
+        return switch (this) {
+            case NESSUNO -> PER_ID;
+            case TITOLO_ASC -> PER_TITOLO.thenComparing(PER_ID);
+            case TITOLO_DESC -> PER_TITOLO.reversed().thenComparing(PER_ID);
+            case AUTORE_ASC -> PER_AUTORE.thenComparing(PER_ID);
+            case AUTORE_DESC -> PER_AUTORE.reversed().thenComparing(PER_ID);
+            case VALUTAZIONE_ASC -> PER_VALUTAZIONE.thenComparing(PER_TITOLO).thenComparing(PER_ID);
+            case VALUTAZIONE_DESC -> PER_VALUTAZIONE.reversed().thenComparing(PER_TITOLO).thenComparing(PER_ID);
+        };
+    }
 }
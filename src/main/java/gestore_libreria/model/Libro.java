@@ -1,5 +1,7 @@
 package gestore_libreria.model;
 
+import java.text.CollationKey;
+
 public class Libro {
     //dichiaro le variabili del libro
     private int id;
@@ -14,6 +16,10 @@ public class Libro {
     private final String statoLettura;
     private final String percorsoCopertina;     //per le immagini di copertina
 
+    //chiavi di ordinamento, calcolate al primo confronto
+    private CollationKey chiaveTitolo;
+    private CollationKey chiaveAutore;
+
     /**
      * Costruisce un'istanza di Libro utilizzando un oggetto Costruttore.
      *
@@ -71,6 +77,26 @@ public class Libro {
         return id;
     }
 
+    /**
+     * @return la chiave con cui il titolo viene ordinato, vedi {@link ChiaveOrdinamento#titolo(String)}
+     */
+    public CollationKey getChiaveTitolo() {
+        if (chiaveTitolo == null) {
+            chiaveTitolo = ChiaveOrdinamento.titolo(titolo);
+        }
+        return chiaveTitolo;
+    }
+
+    /**
+     * @return la chiave con cui l'autore viene ordinato, vedi {@link ChiaveOrdinamento#autore(String)}
+     */
+    public CollationKey getChiaveAutore() {
+        if (chiaveAutore == null) {
+            chiaveAutore = ChiaveOrdinamento.autore(autore);
+        }
+        return chiaveAutore;
+    }
+
     /**
      * Imposta l'ID del libro. Questo metodo è generalmente usato solo dal database
      * dopo che il libro è stato salvato e gli è stato assegnato un ID.
@@ -0,0 +1,167 @@
+package gestore_libreria.observer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Osservatore che si frappone tra il {@link Soggetto} e un altro osservatore per raccogliere le notifiche
+ * ravvicinate e consegnarle tutte insieme.
+ * Le notifiche ricevute entro {@code finestraMs} dalla prima, o fino alla fine di una transazione, vengono unite
+ * per libro (ad esempio un'aggiunta seguita da una modifica diventa una sola aggiunta, un'aggiunta seguita da
+ * una rimozione sparisce) e consegnate in un solo passaggio sull'esecutore scelto: l'EDT per gli osservatori
+ * dell'interfaccia, un pool in background per gli altri.
+ */
+public class DispatcherNotifiche implements OsservatoreLibro {
+
+    // un solo thread per tutti i dispatcher: si limita a far scadere le finestre
+    private static final ScheduledExecutorService TEMPORIZZATORE = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "notifiche-osservatori");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OsservatoreLibro destinatario;
+    private final Executor esecutore;
+    private final long finestraMs;
+
+    private List<EventoLibro> inAttesa = new ArrayList<>();
+    private boolean consegnaProgrammata;
+    private int transazioniAperte;
+
+    private long notificheRicevute;
+    private long notificheConsegnate;
+    private long batchConsegnati;
+
+    /**
+     * @param destinatario l'osservatore a cui consegnare le notifiche unite
+     * @param esecutore l'esecutore su cui invocare il destinatario, ad esempio {@code SwingUtilities::invokeLater}
+     * @param finestraMs per quanti millisecondi dopo la prima notifica attendere le successive
+     * @pre {@code destinatario} ed {@code esecutore} non devono essere null
+     * @pre {@code finestraMs >= 0}
+     * @post il dispatcher va registrato sul {@link Soggetto} al posto del destinatario
+     */
+    public DispatcherNotifiche(OsservatoreLibro destinatario, Executor esecutore, long finestraMs) {
+        this.destinatario = destinatario;
+        this.esecutore = esecutore;
+        this.finestraMs = finestraMs;
+    }
+
+    @Override
+    public void aggiorna() {
+        aggiorna(EventoLibro.reset());
+    }
+
+    @Override
+    public synchronized void aggiorna(EventoLibro evento) {
+        notificheRicevute++;
+        inAttesa.add(evento);
+        if (transazioniAperte == 0 && !consegnaProgrammata) {
+            consegnaProgrammata = true;
+            TEMPORIZZATORE.schedule(this::consegna, finestraMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void inizioTransazione() {
+        transazioniAperte++;
+    }
+
+    @Override
+    public synchronized void fineTransazione() {
+        if (transazioniAperte > 0 && --transazioniAperte == 0 && !inAttesa.isEmpty() && !consegnaProgrammata) {
+            // la transazione è finita: non serve attendere altre notifiche
+            consegnaProgrammata = true;
+            esecutore.execute(this::consegnaOra);
+        }
+    }
+
+    private void consegna() {
+        esecutore.execute(this::consegnaOra);
+    }
+
+    private void consegnaOra() {
+        List<EventoLibro> eventi;
+        synchronized (this) {
+            consegnaProgrammata = false;
+            if (transazioniAperte > 0 || inAttesa.isEmpty()) {
+                // una transazione iniziata nel frattempo consegnerà tutto alla sua fine
+                return;
+            }
+            eventi = unisci(inAttesa);
+            inAttesa = new ArrayList<>();
+            notificheConsegnate += eventi.size();
+            batchConsegnati++;
+        }
+        for (EventoLibro evento : eventi) {
+            destinatario.aggiorna(evento);
+        }
+    }
+
+    /**
+     * Unisce le notifiche che riguardano lo stesso libro, mantenendo l'ordine della prima notifica di ciascuno.
+     * Un evento {@link EventoLibro.Tipo#RESET} o {@link EventoLibro.Tipo#BULK} assorbe tutti gli altri,
+     * perché l'osservatore dovrà comunque rileggere i dati.
+     *
+     * @param eventi le notifiche nell'ordine in cui sono state ricevute
+     * @return le notifiche unite, una al più per libro
+     */
+    static List<EventoLibro> unisci(List<EventoLibro> eventi) {
+        EventoLibro complessivo = null;
+        Map<Integer, EventoLibro> perLibro = new LinkedHashMap<>();
+        for (EventoLibro evento : eventi) {
+            switch (evento.getTipo()) {
+                case RESET -> complessivo = evento;
+                case BULK -> complessivo = complessivo == null ? evento : complessivo;
+                default -> perLibro.merge(evento.getId(), evento, DispatcherNotifiche::componi);
+            }
+        }
+        if (complessivo == null && perLibro.containsValue(EventoLibro.reset())) {
+            complessivo = EventoLibro.reset();
+        }
+        return complessivo != null ? List.of(complessivo) : new ArrayList<>(perLibro.values());
+    }
+
+    /**
+     * @return l'effetto complessivo di due notifiche successive sullo stesso libro, null se si annullano
+     */
+    private static EventoLibro componi(EventoLibro prima, EventoLibro dopo) {
+        return switch (prima.getTipo()) {
+            case ADDED -> switch (dopo.getTipo()) {
+                case UPDATED -> EventoLibro.aggiunto(dopo.getLibro());
+                case REMOVED -> null;
+                default -> EventoLibro.reset();
+            };
+            case UPDATED -> switch (dopo.getTipo()) {
+                case UPDATED -> EventoLibro.aggiornato(prima.getPrecedente(), dopo.getLibro());
+                case REMOVED -> dopo;
+                default -> EventoLibro.reset();
+            };
+            case REMOVED -> dopo.getTipo() == EventoLibro.Tipo.ADDED
+                    ? EventoLibro.aggiornato(prima.getLibro(), dopo.getLibro()) : EventoLibro.reset();
+            default -> EventoLibro.reset();
+        };
+    }
+
+    //metriche
+
+    public synchronized long getNotificheRicevute() {
+        return notificheRicevute;
+    }
+
+    /**
+     * @return quante notifiche non sono state consegnate perché unite ad altre
+     */
+    public synchronized long getNotificheUnite() {
+        return notificheRicevute - notificheConsegnate - inAttesa.size();
+    }
+
+    public synchronized long getBatchConsegnati() {
+        return batchConsegnati;
+    }
+}
@@ -0,0 +1,114 @@
+package gestore_libreria.observer;
+
+import gestore_libreria.model.Libro;
+
+/**
+ * Descrive il cambiamento notificato agli osservatori, così chi riceve la notifica può aggiornare solo
+ * il libro interessato invece di rileggere l'intero catalogo.
+ * Gli eventi {@link Tipo#BULK} e {@link Tipo#RESET} non indicano un singolo libro: l'osservatore deve
+ * considerare cambiati tutti i dati.
+ */
+public final class EventoLibro {
+
+    /**
+     * Tipo di cambiamento
+     */
+    public enum Tipo {
+        /** un libro è stato aggiunto, anche tramite undo/redo */
+        ADDED,
+        /** un libro è stato modificato, anche tramite undo/redo */
+        UPDATED,
+        /** un libro è stato rimosso, anche tramite undo/redo */
+        REMOVED,
+        /** più libri sono stati modificati insieme */
+        BULK,
+        /** i dati vanno riletti, ad esempio dopo un cambio di ordinamento o di database */
+        RESET
+    }
+
+    private static final EventoLibro RESET = new EventoLibro(Tipo.RESET, null, null);
+    private static final EventoLibro BULK = new EventoLibro(Tipo.BULK, null, null);
+
+    private final Tipo tipo;
+    private final Libro libro;
+    private final Libro precedente;
+    // l'id è copiato alla creazione perché il libro è mutabile: save e saveAll gli assegnano l'id dopo l'inserimento
+    // e un saveAll fallito lo riporta al valore precedente (l'undo di una rimozione invece conserva l'id originale)
+    private final int id;
+
+    private EventoLibro(Tipo tipo, Libro libro, Libro precedente) {
+        this.tipo = tipo;
+        this.libro = libro;
+        this.precedente = precedente;
+        this.id = libro != null ? libro.getId() : -1;
+    }
+
+    /**
+     * @param libro il libro aggiunto, con l'id assegnato dal database
+     * @return l'evento di tipo {@link Tipo#ADDED}
+     */
+    public static EventoLibro aggiunto(Libro libro) {
+        return new EventoLibro(Tipo.ADDED, libro, null);
+    }
+
+    /**
+     * @param precedente lo stato del libro prima della modifica
+     * @param nuovo lo stato del libro dopo la modifica
+     * @return l'evento di tipo {@link Tipo#UPDATED}
+     */
+    public static EventoLibro aggiornato(Libro precedente, Libro nuovo) {
+        return new EventoLibro(Tipo.UPDATED, nuovo, precedente);
+    }
+
+    /**
+     * @param libro il libro rimosso
+     * @return l'evento di tipo {@link Tipo#REMOVED}
+     */
+    public static EventoLibro rimosso(Libro libro) {
+        return new EventoLibro(Tipo.REMOVED, libro, null);
+    }
+
+    /**
+     * @return l'evento di tipo {@link Tipo#BULK}
+     */
+    public static EventoLibro massivo() {
+        return BULK;
+    }
+
+    /**
+     * @return l'evento di tipo {@link Tipo#RESET}
+     */
+    public static EventoLibro reset() {
+        return RESET;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    /**
+     * @return il libro aggiunto o rimosso, o lo stato nuovo del libro modificato; null per BULK e RESET
+     */
+    public Libro getLibro() {
+        return libro;
+    }
+
+    /**
+     * @return lo stato del libro prima della modifica; null se l'evento non è di tipo UPDATED
+     */
+    public Libro getPrecedente() {
+        return precedente;
+    }
+
+    /**
+     * @return l'id che il libro interessato aveva quando l'evento è stato creato, -1 per BULK e RESET
+     */
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return libro != null ? tipo + " " + id : tipo.toString();
+    }
+}
@@ -10,4 +10,31 @@ public interface OsservatoreLibro {
      * @post L'osservatore ha ricevuto la notifica e può agire di conseguenza (aggiornare la UI in questo caso specifico).
      */
     void aggiorna();
+
+    /**
+     * Notifica un cambiamento indicando quale libro è stato aggiunto, modificato o rimosso.
+     * L'implementazione predefinita ignora il dettaglio e invoca {@link #aggiorna()}: gli osservatori
+     * che sanno aggiornarsi in modo incrementale possono ridefinirla.
+     *
+     * @param evento il cambiamento avvenuto
+     * @pre {@code evento} non deve essere null
+     * @post L'osservatore ha ricevuto la notifica e ha aggiornato il proprio stato.
+     */
+    default void aggiorna(EventoLibro evento) {
+        aggiorna();
+    }
+
+    /**
+     * Avvisa che le notifiche successive fanno parte di un'unica operazione, fino a {@link #fineTransazione()}.
+     * L'implementazione predefinita non fa nulla.
+     */
+    default void inizioTransazione() {
+    }
+
+    /**
+     * Avvisa che l'operazione iniziata con {@link #inizioTransazione()} è terminata.
+     * L'implementazione predefinita non fa nulla.
+     */
+    default void fineTransazione() {
+    }
 }
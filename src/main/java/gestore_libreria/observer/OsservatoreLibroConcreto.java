@@ -3,24 +3,34 @@ package gestore_libreria.observer;
 import gestore_libreria.db.GestoreLibro;
 import gestore_libreria.db.ImplementatoreRepositoryLibro;
 import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.db.InterrogazioneViva;
+import gestore_libreria.db.ListaLibriPaginata;
 import gestore_libreria.db.RepositoryLibroSQLite;
+import gestore_libreria.model.CriterioOrdinamento;
 import gestore_libreria.model.Libro;
 import gestore_libreria.ui.PannelloLibriUI;
 import gestore_libreria.ui.GestoreLibreriaUI;
 
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Implementazione concreta dell'interfaccia OsservatoreLibro.
  * Questo osservatore è responsabile dell'aggiornamento dell'interfaccia utente (UI)
  * quando vengono apportate modifiche allo stato del database.
+ * La tabella mostra un'interrogazione viva, che applica alle sue righe le aggiunte, modifiche e rimozioni
+ * dei singoli libri, comprese quelle di undo/redo; con un catalogo a pagine le modifiche e le rimozioni
+ * vengono applicate alle sole pagine in memoria. La lista completa viene riletta solo quando non è possibile.
  */
-public class OsservatoreLibroConcreto implements OsservatoreLibro{
+// final: il costruttore registra l'osservatore e lo aggiorna, quindi una sottoclasse lo riceverebbe non inizializzato
+public final class OsservatoreLibroConcreto implements OsservatoreLibro {
 
     //qui ho un'istanza del GestoreLibroConcreto
     private PannelloLibriUI bookPanel;
     private GestoreLibreriaUI gestoreLibreriaUI;
     private GestoreLibroConcreto db;
+    // l'oggetto effettivamente registrato sul db: l'osservatore stesso o il dispatcher che lo avvolge
+    private OsservatoreLibro registrato;
 
     /**
      * Costruisce una nuova istanza di OsservatoreLibroConcreto e richiama il metodo {@code aggiorna()}.
@@ -34,10 +44,27 @@ public class OsservatoreLibroConcreto implements OsservatoreLibro{
      * @throws IllegalArgumentException se PannelloLibriUI è null.
      */
     public OsservatoreLibroConcreto(GestoreLibreriaUI gestoreLibreriaUI, PannelloLibriUI bookPanel, GestoreLibroConcreto db) {
+        this(gestoreLibreriaUI, bookPanel, db, null);
+    }
+
+    /**
+     * Costruisce l'osservatore come {@link #OsservatoreLibroConcreto(GestoreLibreriaUI, PannelloLibriUI, GestoreLibroConcreto)},
+     * ma registrandolo tramite un dispatcher: le notifiche ravvicinate vengono unite e consegnate insieme.
+     *
+     * @param gestoreLibreriaUI l'interfaccia utente principale
+     * @param bookPanel Il pannello dell'interfaccia utente che questo osservatore deve aggiornare.
+     * @param db Istanza del database utilizzato
+     * @param dispatcher il dispatcher che avvolge questo osservatore, o null per ricevere le notifiche direttamente
+     * @pre gestoreLibreriaUI, bookPanel e db non devono essere null
+     * @post Sul db è registrato il dispatcher, se presente, altrimenti l'osservatore stesso.
+     */
+    public OsservatoreLibroConcreto(GestoreLibreriaUI gestoreLibreriaUI, PannelloLibriUI bookPanel, GestoreLibroConcreto db,
+                                    Function<OsservatoreLibro, DispatcherNotifiche> dispatcher) {
         this.bookPanel = bookPanel;
         this.db = db;
         this.gestoreLibreriaUI = gestoreLibreriaUI;
-        this.db.aggiungi(this);
+        this.registrato = dispatcher != null ? dispatcher.apply(this) : this;
+        this.db.aggiungi(registrato);
         aggiorna();
     }
 
@@ -48,16 +75,61 @@ public class OsservatoreLibroConcreto implements OsservatoreLibro{
      * notifica un cambiamento.
      *
      * @pre Il manager dei libri (db) e il pannello dei libri (bookPanel) devono essere stati inizializzati correttamente.
-     * @post La lista completa dei libri è stata recuperata dal database.
-     * @post Il metodo displayBooks del bookPanel è stato invocato con la lista aggiornata dei libri,
+     * @post La lista completa dei libri è stata recuperata dal database, a pagine se i libri sono molti.
+     * @post Il bookPanel mostra la lista aggiornata dei libri, come interrogazione viva se non è a pagine,
      * causando il refresh dell'interfaccia utente.
+     * @post I conteggi mostrati sui bottoni dei filtri sono stati aggiornati.
      * @post Lo stato dei menu Undo/Redo è stato aggiornato per riflettere la disponibilità di operazioni.
      */
     @Override
     public void aggiorna() {
         System.out.println("Aggiorno la bookView");
-        List<Libro> books = db.getTuttiLibri(gestoreLibreriaUI.getCriterioOrdinamentoCorrente());
-        bookPanel.displayBooks(books);
+        CriterioOrdinamento criterio = gestoreLibreriaUI.getCriterioOrdinamentoCorrente();
+        List<Libro> books = db.getTuttiLibriPaginati(criterio);
+        if (books instanceof ListaLibriPaginata) {
+            // il catalogo a pagine non è tenuto in memoria: le aggiunte e i libri che cambiano riga lo fanno rileggere
+            bookPanel.displayBooks(books);
+        } else {
+            bookPanel.displayInterrogazione(db.sottoscrivi(InterrogazioneViva.TUTTI, criterio, books));
+        }
+        aggiornaStato();
+    }
+
+    /**
+     * Se la tabella mostra un'interrogazione viva, il cambiamento di un singolo libro è già stato applicato
+     * alle sue righe e restano da aggiornare solo i conteggi e i menu. Con un catalogo a pagine una modifica
+     * che non sposta il libro e una rimozione in una pagina in memoria aggiornano solo le righe coinvolte.
+     * Negli altri casi, o se l'evento non riguarda un singolo libro, ricade su {@link #aggiorna()}.
+     *
+     * @param evento il cambiamento avvenuto
+     * @pre {@code evento} non deve essere null
+     * @post La tabella mostra il libro aggiunto, modificato o rimosso, senza perdere il filtro corrente.
+     * @post I conteggi mostrati sui bottoni dei filtri e lo stato dei menu Undo/Redo sono stati aggiornati.
+     */
+    @Override
+    public void aggiorna(EventoLibro evento) {
+        boolean singoloLibro = switch (evento.getTipo()) {
+            case ADDED, UPDATED, REMOVED -> true;
+            case BULK, RESET -> false;
+        };
+        if (singoloLibro && (bookPanel.isVistaViva() || aggiornaPagine(evento))) {
+            aggiornaStato();
+        } else {
+            aggiorna();
+        }
+    }
+
+    // applica l'evento alle righe del catalogo a pagine; false se la tabella va riletta
+    private boolean aggiornaPagine(EventoLibro evento) {
+        return switch (evento.getTipo()) {
+            case UPDATED -> bookPanel.aggiornaLibroPaginato(evento.getPrecedente(), evento.getLibro());
+            case REMOVED -> bookPanel.rimuoviLibroPaginato(evento.getLibro());
+            default -> false;
+        };
+    }
+
+    private void aggiornaStato() {
+        gestoreLibreriaUI.aggiornaConteggiFiltri();
         gestoreLibreriaUI.updateUndoRedoMenuState();
     }
 
@@ -72,7 +144,7 @@ public class OsservatoreLibroConcreto implements OsservatoreLibro{
      */
     public void unsubscribe() {
         if(this.db != null) {
-            this.db.rimuovi(this);
+            this.db.rimuovi(registrato);
             System.out.println("Unsubscribed");
         }
     }
@@ -42,12 +42,45 @@ public abstract class Soggetto {
     }
 
     /**
-     * Notifica tutti gli observer iscritti invocando il loro metodo {@code aggiorna()}
+     * Notifica tutti gli observer iscritti che i dati vanno riletti, con un evento di tipo
+     * {@link EventoLibro.Tipo#RESET}
      * @post tutti gli observer contenuti nella lista sono stati notificati
      */
     public void notificaOsservatori() {
+        notificaOsservatori(EventoLibro.reset());
+    }
+
+    /**
+     * Notifica tutti gli observer iscritti invocando il loro metodo {@code aggiorna(evento)}
+     * @param evento il cambiamento avvenuto
+     * @pre {@code evento} non deve essere null
+     * @post tutti gli observer contenuti nella lista sono stati notificati
+     */
+    public void notificaOsservatori(EventoLibro evento) {
+        for (OsservatoreLibro observer : observers) {
+            observer.aggiorna(evento);
+        }
+    }
+
+    /**
+     * Avvisa gli observer che le notifiche successive fanno parte di un'unica operazione, così chi le accoda
+     * (ad esempio un {@link DispatcherNotifiche}) le consegna tutte insieme alla fine.
+     * Ogni chiamata deve essere seguita da {@link #terminaTransazione()}, anche in caso di errore.
+     * @post gli observer hanno ricevuto {@code inizioTransazione()}
+     */
+    public void iniziaTransazione() {
+        for (OsservatoreLibro observer : observers) {
+            observer.inizioTransazione();
+        }
+    }
+
+    /**
+     * Avvisa gli observer che l'operazione iniziata con {@link #iniziaTransazione()} è terminata.
+     * @post gli observer hanno ricevuto {@code fineTransazione()}
+     */
+    public void terminaTransazione() {
         for (OsservatoreLibro observer : observers) {
-            observer.aggiorna();
+            observer.fineTransazione();
         }
     }
 }
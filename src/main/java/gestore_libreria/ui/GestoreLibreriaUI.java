@@ -1,21 +1,37 @@
 package gestore_libreria.ui;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import com.formdev.flatlaf.FlatLightLaf;
+import gestore_libreria.copertine.ArchivioCopertine;
+import gestore_libreria.copertine.CacheMiniature;
+import gestore_libreria.copertine.SorveglianteMemoria;
+import gestore_libreria.copertine.ValidatoreCopertine;
 import gestore_libreria.db.*;
+import gestore_libreria.indice.ContatoreFacet;
+import gestore_libreria.memento.CustodeCronologiaLibro;
+import gestore_libreria.memento.GiornaleCronologia;
+import gestore_libreria.model.CampoLibro;
 import gestore_libreria.model.Libro;
 import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.observer.DispatcherNotifiche;
 import gestore_libreria.observer.OsservatoreLibroConcreto;
 
 /**
@@ -35,6 +51,24 @@ public class GestoreLibreriaUI extends JFrame{
     private JMenuItem undo;
     private JMenuItem redo;
 
+    // bottoni dei filtri, aggiornati con il numero di libri che restituiscono
+    private JButton lettiBtn;
+    private JButton inLetturaBtn;
+    private JButton daLeggereBtn;
+    private JButton tuttiBtn;
+    private final JButton[] stelleBtn = new JButton[5];
+
+    private static final int RISULTATI_APPROSSIMATI = 50;
+    private static final int RITARDO_RICERCA_MS = 250;
+    private static final int NUMERO_SUGGERIMENTI = 8;
+    // le modifiche ravvicinate (ad esempio più undo di fila) aggiornano la tabella una volta sola
+    private static final long FINESTRA_NOTIFICHE_MS = 50;
+    // dimensione dell'anteprima della copertina nei dialoghi, salvata anche come variante persistente
+    static final int LARGHEZZA_ANTEPRIMA = 120;
+    static final int ALTEZZA_ANTEPRIMA = 180;
+
+    private SwingWorker<List<Libro>, Void> ricercaInCorso;
+
     private CriterioOrdinamento currentSortCriteria = CriterioOrdinamento.NESSUNO; // Default
 
     /**
@@ -77,8 +111,26 @@ public class GestoreLibreriaUI extends JFrame{
 
         PannelloLibriUI.setOnBookClickListener(this::mostraDialogModificaLibro);
         PannelloLibriUI.setOnDeleteBookListener(this::AzioneMenuPopup);
+        PannelloLibriUI.setOnAzioneMultipla(new gestore_libreria.ui.PannelloLibriUI.OnAzioneMultipla() {
+            @Override
+            public void elimina(List<Integer> ids) {
+                eliminaSelezionati(ids);
+            }
+
+            @Override
+            public void impostaCampo(List<Integer> ids, CampoLibro campo, Object valore) {
+                if (suDatabase(() -> db.impostaCampo(ids, campo, valore))) {
+                    PannelloLibriUI.svuotaSelezione();
+                }
+            }
+        });
 
-        this.OsservatoreLibro = new OsservatoreLibroConcreto(this,this.PannelloLibriUI,this.db);
+        this.OsservatoreLibro = creaOsservatore();
+
+        ValidatoreCopertine validatoreCopertine = PannelloLibriUI.getValidatoreCopertine();
+        validatoreCopertine.avviaOsservazione();
+        collegaValidatoreCopertine();
+        avviaMigrazioneCopertine();
 
         updateUndoRedoMenuState();
 
@@ -91,6 +143,8 @@ public class GestoreLibreriaUI extends JFrame{
                 if (OsservatoreLibro != null) {
                     OsservatoreLibro.unsubscribe();
                 }
+                validatoreCopertine.ferma();
+                db.getHistoryManager().chiudi();
             }
         });
 
@@ -125,8 +179,8 @@ public class GestoreLibreriaUI extends JFrame{
 
         // Immagine senza bordo
         JLabel imagePreview = new JLabel();
-        int width = 120;
-        int height = 180;
+        int width = LARGHEZZA_ANTEPRIMA;
+        int height = ALTEZZA_ANTEPRIMA;
         imagePreview.setPreferredSize(new Dimension(width, height));
 
         ImageIcon selectedIcon = loadAndScaleImage(Libro.getPercorsoCopertina(), width, height);
@@ -256,8 +310,8 @@ public class GestoreLibreriaUI extends JFrame{
         JButton browseBtn = new JButton("Sfoglia");
 
         JLabel imagePreview = new JLabel();
-        int width = 120;
-        int height = 180;
+        int width = LARGHEZZA_ANTEPRIMA;
+        int height = ALTEZZA_ANTEPRIMA;
         imagePreview.setPreferredSize(new Dimension(width, height));
 
         ImageIcon selectedIcon = loadAndScaleImage(Libro.getPercorsoCopertina(), width, height);
@@ -392,6 +446,37 @@ public class GestoreLibreriaUI extends JFrame{
         }
     }
 
+    // elimina i libri selezionati nella tabella in un solo passo annullabile
+    private void eliminaSelezionati(List<Integer> ids) {
+        String[] deleteOptions = {"Sì", "No"};
+        int confirm = JOptionPane.showOptionDialog(this,
+                "Sei sicuro di voler eliminare " + (ids.size() == 1 ? "il libro selezionato" : "i " + ids.size() + " libri selezionati") + "?",
+                "Conferma Eliminazione",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE,
+                null, deleteOptions, deleteOptions[1]);
+
+        if (confirm == 0) {
+            if (suDatabase(() -> db.eliminaLibri(db.getLibri(ids)))) {
+                PannelloLibriUI.svuotaSelezione();
+            }
+        }
+    }
+
+    // le operazioni su più libri annullano la transazione se il database fallisce: lo segnalo invece di ignorarlo
+    private boolean suDatabase(Runnable operazione) {
+        try {
+            operazione.run();
+            return true;
+        } catch (ErroreDatabase e) {
+            JOptionPane.showMessageDialog(this,
+                    "Operazione non eseguita, il database non è stato modificato.\n" + e.getMessage(),
+                    "Errore",
+                    JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
     /**
      * Crea la barra dei menu dell'applicazione, includendo le voci per file, modifica e criterio di visualizzazione.
      *
@@ -422,57 +507,51 @@ public class GestoreLibreriaUI extends JFrame{
         //sezione edit
         undo = new JMenuItem("Annulla");
         undo.addActionListener(e -> {
-            db.getHistoryManager().annulla();
+            suDatabase(() -> db.getHistoryManager().annulla());
         });
 
         redo = new JMenuItem("Ripeti");
         redo.addActionListener(e -> {
-            db.getHistoryManager().ripeti();
+            suDatabase(() -> db.getHistoryManager().ripeti());
         });
 
         //sezione view
         JMenuItem sortByTitleAsc = new JMenuItem("Ordina per Titolo (A-Z)");
         sortByTitleAsc.addActionListener(e -> {
-            this.currentSortCriteria = CriterioOrdinamento.TITOLO_ASC;
-            refreshBookListView();
+            cambiaOrdinamento(CriterioOrdinamento.TITOLO_ASC);
         });
         viewMenu.add(sortByTitleAsc);
 
 
         JMenuItem sortByTitleDesc = new JMenuItem("Ordina per Titolo (Z-A)");
         sortByTitleDesc.addActionListener(e -> {
-            this.currentSortCriteria = CriterioOrdinamento.TITOLO_DESC;
-            refreshBookListView();
+            cambiaOrdinamento(CriterioOrdinamento.TITOLO_DESC);
         });
         viewMenu.add(sortByTitleDesc);
         viewMenu.addSeparator();
 
         JMenuItem sortByAuthorAsc = new JMenuItem("Ordina per Autore (A-Z)");
         sortByAuthorAsc.addActionListener(e -> {
-            this.currentSortCriteria = CriterioOrdinamento.AUTORE_ASC;
-            refreshBookListView();
+            cambiaOrdinamento(CriterioOrdinamento.AUTORE_ASC);
         });
         viewMenu.add(sortByAuthorAsc);
 
         JMenuItem sortByAuthorDesc = new JMenuItem("Ordina per Autore (Z-A)");
         sortByAuthorDesc.addActionListener(e -> {
-            this.currentSortCriteria = CriterioOrdinamento.AUTORE_DESC;
-            refreshBookListView();
+            cambiaOrdinamento(CriterioOrdinamento.AUTORE_DESC);
         });
         viewMenu.add(sortByAuthorDesc);
         viewMenu.addSeparator();
 
         JMenuItem sortByRatingAsc = new JMenuItem("?Ordina per Rating (Crescente)");
         sortByRatingAsc.addActionListener(e -> {
-            this.currentSortCriteria = CriterioOrdinamento.VALUTAZIONE_ASC;
-            refreshBookListView();
+            cambiaOrdinamento(CriterioOrdinamento.VALUTAZIONE_ASC);
         });
         viewMenu.add(sortByRatingAsc);
 
         JMenuItem sortByRatingDesc = new JMenuItem("?Ordina per Rating (Decrescente)");
         sortByRatingDesc.addActionListener(e -> {
-            this.currentSortCriteria = CriterioOrdinamento.VALUTAZIONE_DESC;
-            refreshBookListView();
+            cambiaOrdinamento(CriterioOrdinamento.VALUTAZIONE_DESC);
         });
         viewMenu.add(sortByRatingDesc);
 
@@ -492,6 +571,59 @@ public class GestoreLibreriaUI extends JFrame{
         return menuBar;
     }
 
+    /**
+     * Registra il validatore delle copertine sul db corrente e ne verifica tutte le copertine una sola volta
+     * in background; da quel momento le cartelle sono osservate.
+     *
+     * @post il validatore riceve le mutazioni del db corrente
+     */
+    private void collegaValidatoreCopertine() {
+        ValidatoreCopertine validatoreCopertine = PannelloLibriUI.getValidatoreCopertine();
+        GestoreLibroConcreto corrente = this.db;
+        corrente.aggiungiOnMutazioneListener(validatoreCopertine);
+        Thread validazione = new Thread(() -> validatoreCopertine.valida(corrente.getPercorsiCopertine()), "validazione-copertine");
+        validazione.setDaemon(true);
+        validazione.start();
+    }
+
+    /**
+     * Migrazione una tantum delle copertine del db corrente nell'archivio locale. I percorsi vengono aggiornati
+     * sull'EDT come ogni altra modifica e solo dopo il salvataggio la migrazione risulta completata; se nel
+     * frattempo il db è stato sostituito da un'importazione il risultato viene scartato.
+     *
+     * @post al termine le copertine esterne del db corrente si trovano nell'archivio
+     */
+    private void avviaMigrazioneCopertine() {
+        ArchivioCopertine archivioCopertine = ArchivioCopertine.getIstanza();
+        if (archivioCopertine.isMigrazioneCompletata()) {
+            return;
+        }
+        GestoreLibroConcreto corrente = this.db;
+        Thread migrazione = new Thread(() -> {
+            Map<String, String> nuoviPercorsi = archivioCopertine.migra(corrente.getPercorsiCopertine());
+            SwingUtilities.invokeLater(() -> {
+                if (corrente != db) {
+                    return;
+                }
+                corrente.sostituisciPercorsiCopertine(nuoviPercorsi);
+                archivioCopertine.completaMigrazione();
+            });
+        }, "migrazione-copertine");
+        migrazione.setDaemon(true);
+        migrazione.start();
+    }
+
+    /**
+     * Crea l'osservatore della tabella, registrato sul db tramite un dispatcher che unisce le notifiche
+     * ravvicinate e le consegna sull'EDT.
+     *
+     * @return l'osservatore registrato sul db corrente
+     */
+    private OsservatoreLibroConcreto creaOsservatore() {
+        return new OsservatoreLibroConcreto(this, this.PannelloLibriUI, this.db,
+                osservatore -> new DispatcherNotifiche(osservatore, SwingUtilities::invokeLater, FINESTRA_NOTIFICHE_MS));
+    }
+
     /**
      * Ritorna il metodo di ordinamneto scelto dall'utente
      * @return il criterio di ordinamento corrente
@@ -500,6 +632,20 @@ public class GestoreLibreriaUI extends JFrame{
         return currentSortCriteria;
     }
 
+    /**
+     * Cambia il criterio di ordinamento della tabella. Se la tabella mostra un'interrogazione viva le righe sono già
+     * in memoria e vengono solo riordinate; il catalogo a pagine invece viene riletto con il nuovo ordinamento.
+     *
+     * @param criterio il criterio scelto dall'utente
+     * @post {@code getCriterioOrdinamentoCorrente() == criterio} e la tabella è ordinata secondo {@code criterio}
+     */
+    private void cambiaOrdinamento(CriterioOrdinamento criterio) {
+        this.currentSortCriteria = criterio;
+        if (!PannelloLibriUI.riordina(criterio)) {
+            refreshBookListView();
+        }
+    }
+
     /**
      * metodo per aggiornare la listView quando viene cambiato il criterio di  ordinamento
      * @pre {@code db != null}
@@ -544,7 +690,7 @@ public class GestoreLibreriaUI extends JFrame{
                 } catch (SQLException e) {
                     throw new RuntimeException(e);
                 }
-                PannelloLibriUI.displayBooks(db.getTuttiLibri(this.currentSortCriteria));
+                OsservatoreLibro.aggiorna();
             }
         }
     }
@@ -569,11 +715,21 @@ public class GestoreLibreriaUI extends JFrame{
 
                     DatabaseConnectionSingleton.getInstance();
 
-                    db = new GestoreLibroConcreto(new RepositoryLibroSQLite());
+                    // la cronologia si riferisce agli id del database sostituito: la svuoto prima di ripartire
+                    db.getHistoryManager().cleanAll();
+                    db.getHistoryManager().chiudi();
+                    // copertine e miniature del database sostituito non valgono per quello importato
+                    ValidatoreCopertine validatoreCopertine = PannelloLibriUI.getValidatoreCopertine();
+                    db.rimuoviOnMutazioneListener(validatoreCopertine);
+                    validatoreCopertine.azzera();
+                    CacheMiniature.getIstanza().svuota();
+                    db = new GestoreLibroConcreto(new RepositoryLibroSQLite(), RepositoryLibroSQLite.perLettura(), creaCronologia());
+                    avviaPreparazioneIndici(db);
+                    collegaValidatoreCopertine();
+                    ArchivioCopertine.getIstanza().riapriMigrazione();
+                    avviaMigrazioneCopertine();
                     OsservatoreLibro.unsubscribe();
-                    OsservatoreLibro = new OsservatoreLibroConcreto(this,this.PannelloLibriUI,this.db);
-
-                    PannelloLibriUI.displayBooks(db.getTuttiLibri(this.currentSortCriteria));
+                    OsservatoreLibro = creaOsservatore();
                 }catch (IOException | SQLException e){
                     JOptionPane.showMessageDialog(this, "Errore durante l'importazione del database: " + e.getMessage(), "Errore Importazione", JOptionPane.ERROR_MESSAGE);
                 }
@@ -644,38 +800,204 @@ public class GestoreLibreriaUI extends JFrame{
         
         rightPanel.add(topPanel, BorderLayout.NORTH);
 
-        // Listener per la ricerca
-        searchField.addActionListener(e -> {
-            String searchText = searchField.getText().trim();
-            String criterion = searchCriteriaCombo.getSelectedItem().toString();
-            
-            if (!searchText.isEmpty()) {
-                List<Libro> searchResults;
-                switch (criterion) {
-                    case "Titolo":
-                        searchResults = db.trovaLibroPerTitolo(searchText, this.currentSortCriteria);
-                        break;
-                    case "Autore":
-                        searchResults = db.trovaLibroPerAutore(searchText, this.currentSortCriteria);
-                        break;
-                    case "ISBN":
-                        searchResults = db.trovaLibroPerIsbn(searchText, this.currentSortCriteria);
-                        break;
-                    case "Genere":
-                        searchResults = db.trovaLibroPerGenere(searchText, this.currentSortCriteria);
-                        break;
-                    default:
-                        searchResults = db.getTuttiLibri(this.currentSortCriteria);
-                        break;
-                }
-                PannelloLibriUI.displayBooks(searchResults);
-            } else {
-                PannelloLibriUI.displayBooks(db.getTuttiLibri(this.currentSortCriteria));
+        // Ricerca mentre si digita: i suggerimenti arrivano subito dagli indici in memoria,
+        // la query parte solo quando l'utente smette di digitare per RITARDO_RICERCA_MS
+        JPopupMenu suggerimentiPopup = new JPopupMenu();
+        suggerimentiPopup.setFocusable(false);
+
+        Timer ritardoRicerca = new Timer(RITARDO_RICERCA_MS, e ->
+                avviaRicerca(searchField.getText().trim(), searchCriteriaCombo.getSelectedItem().toString()));
+        ritardoRicerca.setRepeats(false);
+
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { testoRicercaModificato(); }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) { testoRicercaModificato(); }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) { testoRicercaModificato(); }
+
+            private void testoRicercaModificato() {
+                ritardoRicerca.restart();
+                mostraSuggerimenti(searchField, searchCriteriaCombo.getSelectedItem().toString(), suggerimentiPopup);
             }
         });
+
+        // Invio e cambio di criterio cercano subito, senza attendere il ritardo
+        searchField.addActionListener(e -> {
+            ritardoRicerca.stop();
+            suggerimentiPopup.setVisible(false);
+            avviaRicerca(searchField.getText().trim(), searchCriteriaCombo.getSelectedItem().toString());
+        });
+        searchCriteriaCombo.addActionListener(e -> {
+            ritardoRicerca.stop();
+            avviaRicerca(searchField.getText().trim(), searchCriteriaCombo.getSelectedItem().toString());
+        });
         return rightPanel;
     }
 
+    /**
+     * Esegue la ricerca sul criterio scelto, ricadendo sulla ricerca approssimata per titolo e autore
+     * quando la ricerca esatta non trova nulla.
+     *
+     * @param searchText il testo da cercare, se vuoto vengono restituiti tutti i libri
+     * @param criterion il criterio di ricerca: "Titolo", "Autore", "ISBN" o "Genere"
+     * @return la lista dei libri trovati
+     */
+    private List<Libro> eseguiRicerca(String searchText, String criterion) {
+        if (searchText.isEmpty()) {
+            return db.getTuttiLibriPaginati(this.currentSortCriteria);
+        }
+        List<Libro> searchResults;
+        switch (criterion) {
+            case "Titolo":
+                searchResults = db.trovaLibroPerTitolo(searchText, this.currentSortCriteria);
+                if (searchResults.isEmpty()) {
+                    // nessuna corrispondenza esatta: provo con la ricerca tollerante a errori e accenti
+                    searchResults = db.cercaApprossimataPerTitolo(searchText, RISULTATI_APPROSSIMATI);
+                }
+                break;
+            case "Autore":
+                searchResults = db.trovaLibroPerAutore(searchText, this.currentSortCriteria);
+                if (searchResults.isEmpty()) {
+                    searchResults = db.cercaApprossimataPerAutore(searchText, RISULTATI_APPROSSIMATI);
+                }
+                break;
+            case "ISBN":
+                searchResults = db.trovaLibroPerIsbn(searchText, this.currentSortCriteria);
+                break;
+            case "Genere":
+                searchResults = db.trovaLibroPerGenere(searchText, this.currentSortCriteria);
+                break;
+            default:
+                searchResults = db.getTuttiLibriPaginati(this.currentSortCriteria);
+                break;
+        }
+        return searchResults;
+    }
+
+    /**
+     * @param searchText il testo cercato
+     * @param criterion il criterio di ricerca selezionato
+     * @return il filtro equivalente alla ricerca esatta sul criterio, o null se il criterio non è riconosciuto
+     */
+    private static Predicate<Libro> filtroRicerca(String searchText, String criterion) {
+        return switch (criterion) {
+            case "Titolo" -> InterrogazioneViva.contiene(Libro::getTitolo, searchText);
+            case "Autore" -> InterrogazioneViva.contiene(Libro::getAutore, searchText);
+            case "ISBN" -> InterrogazioneViva.contiene(Libro::getIsbn, searchText);
+            case "Genere" -> InterrogazioneViva.contiene(Libro::getGenere, searchText);
+            default -> null;
+        };
+    }
+
+    /**
+     * Mostra il risultato di un filtro o di una ricerca tenendolo aggiornato: le modifiche successive ai libri
+     * vengono applicate alla vista senza perdere il filtro e senza nuove query.
+     *
+     * @param filtro la condizione equivalente alla query che ha prodotto {@code risultati}
+     * @param risultati i libri trovati dalla query
+     */
+    private void mostraFiltro(Predicate<Libro> filtro, List<Libro> risultati) {
+        PannelloLibriUI.displayInterrogazione(db.sottoscrivi(filtro, this.currentSortCriteria, risultati));
+    }
+
+    /**
+     * Mostra un filtro come {@link #mostraFiltro(Predicate, List)}. Se la tabella mostra tutto il catalogo come
+     * interrogazione viva i risultati vengono ricavati dalle sue righe in memoria, altrimenti con la query.
+     *
+     * @param filtro la condizione equivalente alla query
+     * @param query la query che produce i libri che rispettano il filtro, eseguita solo se serve
+     */
+    private void mostraFiltro(Predicate<Libro> filtro, Supplier<List<Libro>> query) {
+        InterrogazioneViva catalogo = PannelloLibriUI.getInterrogazioneMostrata();
+        if (catalogo != null && catalogo.isCatalogoCompleto() && catalogo.getCriterio() == this.currentSortCriteria) {
+            PannelloLibriUI.displayInterrogazione(catalogo.restringi(filtro));
+        } else {
+            mostraFiltro(filtro, query.get());
+        }
+    }
+
+    /**
+     * Avvia la ricerca fuori dall'EDT annullando quella eventualmente ancora in corso.
+     * La tabella viene aggiornata solo con il risultato dell'ultima ricerca avviata.
+     *
+     * @param searchText il testo da cercare
+     * @param criterion il criterio di ricerca selezionato
+     * @post la ricerca precedente, se ancora in corso, è stata annullata e il suo risultato verrà scartato
+     */
+    private void avviaRicerca(String searchText, String criterion) {
+        if (ricercaInCorso != null) {
+            // cancel non ferma la query JDBC già avviata, che occupa la connessione di lettura fino alla fine:
+            // Statement.cancel interromperebbe con sqlite3_interrupt ogni statement della connessione, comprese
+            // le pagine della tabella in caricamento. La ricerca superata finisce quindi da sola e il suo risultato
+            // viene scartato
+            ricercaInCorso.cancel(true);
+        }
+        SwingWorker<List<Libro>, Void> ricerca = new SwingWorker<>() {
+            @Override
+            protected List<Libro> doInBackground() {
+                return eseguiRicerca(searchText, criterion);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || ricercaInCorso != this) {
+                    return;
+                }
+                try {
+                    List<Libro> risultati = get();
+                    Predicate<Libro> filtro = filtroRicerca(searchText, criterion);
+                    // i risultati della ricerca approssimata non sono descritti dal filtro: restano statici
+                    if (searchText.isEmpty() && !(risultati instanceof ListaLibriPaginata)) {
+                        mostraFiltro(InterrogazioneViva.TUTTI, risultati);
+                    } else if (filtro != null && risultati.stream().allMatch(filtro)) {
+                        mostraFiltro(filtro, risultati);
+                    } else {
+                        PannelloLibriUI.displayBooks(risultati);
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    System.err.println("Errore durante la ricerca: " + e.getMessage());
+                }
+            }
+        };
+        ricercaInCorso = ricerca;
+        ricerca.execute();
+    }
+
+    /**
+     * Mostra sotto il campo di ricerca i valori che iniziano con il testo digitato.
+     *
+     * @param searchField il campo di ricerca
+     * @param criterion il criterio di ricerca selezionato
+     * @param popup il menu in cui mostrare i suggerimenti
+     */
+    private void mostraSuggerimenti(JTextField searchField, String criterion, JPopupMenu popup) {
+        String prefisso = searchField.getText().trim();
+        popup.setVisible(false);
+        popup.removeAll();
+        if (prefisso.isEmpty() || !searchField.isShowing()) {
+            return;
+        }
+        for (String suggerimento : db.suggerisci(criterion, prefisso, NUMERO_SUGGERIMENTI)) {
+            if (suggerimento.equalsIgnoreCase(prefisso)) {
+                continue;
+            }
+            JMenuItem voce = new JMenuItem(suggerimento);
+            voce.addActionListener(e -> {
+                searchField.setText(suggerimento);
+                searchField.postActionEvent();
+            });
+            popup.add(voce);
+        }
+        if (popup.getComponentCount() > 0) {
+            popup.show(searchField, 0, searchField.getHeight());
+            searchField.requestFocusInWindow();
+        }
+    }
+
     /**
      * Crea la sezione dei filtri per la parte destra del layout orizzontale
      * (All, Letti, In lettura, Da leggere e stelle di valutazione)
@@ -688,11 +1010,11 @@ public class GestoreLibreriaUI extends JFrame{
         JPanel StatoBottoni = new JPanel();
         StatoBottoni.setLayout(new FlowLayout(FlowLayout.LEFT, 5, 0));
 
-        JButton lettiBtn = new JButton("Letti");
-        JButton inLetturaBtn = new JButton("In lettura");
-        JButton daLeggereBtn = new JButton("Da leggere");
+        lettiBtn = new JButton("Letti");
+        inLetturaBtn = new JButton("In lettura");
+        daLeggereBtn = new JButton("Da leggere");
 
-        Dimension buttonSize = new Dimension(80, 25); // Bottoni pi? piccoli per adattarsi al 50%
+        Dimension buttonSize = new Dimension(105, 25); // Spazio anche per il numero di libri
         Color selectedColor = new Color(180, 180, 180); // Grigio scuro per selezione
         Color defaultColor = new Color(240, 240, 240); // Grigio chiaro per default
 
@@ -716,17 +1038,20 @@ public class GestoreLibreriaUI extends JFrame{
         }
 
         lettiBtn.addActionListener(e -> {
-            PannelloLibriUI.displayBooks(db.filtraLibroPerStatoLettura("LETTO", this.currentSortCriteria));
+            mostraFiltro(InterrogazioneViva.contiene(Libro::getStatoLettura, "LETTO"),
+                    () -> db.filtraLibroPerStatoLettura("LETTO", this.currentSortCriteria));
             highlightButton(lettiBtn, stateButtons, selectedColor, defaultColor);
         });
 
         inLetturaBtn.addActionListener(e -> {
-            PannelloLibriUI.displayBooks(db.filtraLibroPerStatoLettura("IN LETTURA", this.currentSortCriteria));
+            mostraFiltro(InterrogazioneViva.contiene(Libro::getStatoLettura, "IN LETTURA"),
+                    () -> db.filtraLibroPerStatoLettura("IN LETTURA", this.currentSortCriteria));
             highlightButton(inLetturaBtn, stateButtons, selectedColor, defaultColor);
         });
 
         daLeggereBtn.addActionListener(e -> {
-            PannelloLibriUI.displayBooks(db.filtraLibroPerStatoLettura("DA LEGGERE", this.currentSortCriteria));
+            mostraFiltro(InterrogazioneViva.contiene(Libro::getStatoLettura, "DA LEGGERE"),
+                    () -> db.filtraLibroPerStatoLettura("DA LEGGERE", this.currentSortCriteria));
             highlightButton(daLeggereBtn, stateButtons, selectedColor, defaultColor);
         });
 
@@ -742,11 +1067,13 @@ public class GestoreLibreriaUI extends JFrame{
             starButton.setBorderPainted(false);
             starButton.setOpaque(true);
             starButton.setMargin(new Insets(0, 0, 0, 0));
-            starButton.setPreferredSize(new Dimension(20, 20)); // Stelle pi? piccole
+            starButton.setPreferredSize(new Dimension(38, 20)); // Stella seguita dal numero di libri
+            stelleBtn[i - 1] = starButton;
 
             final int currentRating = i;
             starButton.addActionListener(e -> {
-                PannelloLibriUI.displayBooks(db.filtraLibroPerValutazione(currentRating, this.currentSortCriteria));
+                mostraFiltro(libro -> libro.getValutazione() == currentRating,
+                        () -> db.filtraLibroPerValutazione(currentRating, this.currentSortCriteria));
                 highlightButton(starButton, stateButtons, selectedColor, defaultColor);
             });
             starsPanel.add(starButton);
@@ -756,6 +1083,7 @@ public class GestoreLibreriaUI extends JFrame{
         // Pannello per il bottone "Tutti" a destra
         JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
         JButton AllBtn = new JButton("Tutti");
+        tuttiBtn = AllBtn;
         AllBtn.setPreferredSize(buttonSize);
         AllBtn.setMinimumSize(buttonSize);
         AllBtn.setMaximumSize(buttonSize);
@@ -770,7 +1098,7 @@ public class GestoreLibreriaUI extends JFrame{
         stateButtons.add(AllBtn);
 
         AllBtn.addActionListener(e -> {
-            PannelloLibriUI.displayBooks(db.getTuttiLibri(this.currentSortCriteria));
+            OsservatoreLibro.aggiorna();
             highlightButton(AllBtn, stateButtons, selectedColor, defaultColor);
         });
 
@@ -788,6 +1116,36 @@ public class GestoreLibreriaUI extends JFrame{
         return filtersSection;
     }
 
+    /**
+     * Aggiorna il testo dei bottoni dei filtri con il numero di libri che ciascun filtro restituisce.
+     * I conteggi sono mantenuti in memoria da {@link ContatoreFacet}, quindi non viene eseguita
+     * nessuna query.
+     *
+     * @pre i bottoni dei filtri devono essere stati creati
+     * @post ogni bottone mostra il numero di libri corrispondente al proprio filtro
+     */
+    public void aggiornaConteggiFiltri() {
+        if (db == null || tuttiBtn == null) {
+            return;
+        }
+        ContatoreFacet facet = db.getContatoreFacet();
+        lettiBtn.setText("Letti (" + facet.getPerStato("LETTO") + ")");
+        inLetturaBtn.setText("In lettura (" + facet.getPerStato("IN LETTURA") + ")");
+        daLeggereBtn.setText("Da leggere (" + facet.getPerStato("DA LEGGERE") + ")");
+        tuttiBtn.setText("Tutti (" + facet.getTotale() + ")");
+        for (int i = 0; i < stelleBtn.length; i++) {
+            stelleBtn[i].setText("★" + facet.getPerValutazione(i + 1));
+            stelleBtn[i].setToolTipText((i + 1) + " stelle: " + facet.getPerValutazione(i + 1) + " libri");
+        }
+
+        StringBuilder generi = new StringBuilder("<html>Generi principali:");
+        for (Map.Entry<String, Integer> genere : facet.getGeneriPrincipali(5).entrySet()) {
+            generi.append("<br>").append(genere.getKey()).append(" (").append(genere.getValue()).append(")");
+        }
+        generi.append("</html>");
+        tuttiBtn.setToolTipText(generi.toString());
+    }
+
     private void highlightButton(JButton selectedButton, List<JButton> buttons, Color selectedColor, Color defaultColor) {
         for (JButton btn : buttons) {
             btn.setBackground(defaultColor);
@@ -861,8 +1219,8 @@ public class GestoreLibreriaUI extends JFrame{
 
             //Immagine di copertina
             JLabel imagePreview = new JLabel();
-            int width = 120;
-            int height = 180;
+            int width = LARGHEZZA_ANTEPRIMA;
+            int height = ALTEZZA_ANTEPRIMA;
             imagePreview.setPreferredSize(new Dimension(width, height));
 
             ImageIcon placeholder = loadPlaceholderImage(width, height);
@@ -942,21 +1300,15 @@ public class GestoreLibreriaUI extends JFrame{
         return addBookBtn;
     }
 
+    /**
+     * Restituisce l'immagine segnaposto ridimensionata, condivisa tra tutti i componenti che la mostrano.
+     *
+     * @param width larghezza desiderata
+     * @param height altezza desiderata
+     * @return l'icona segnaposto o {@code null} se la risorsa non è disponibile
+     */
     public static ImageIcon loadPlaceholderImage(int width, int height) {
-        try {
-            java.io.InputStream imageStream = GestoreLibreriaUI.class.getResourceAsStream("/images/segnaposto_immagine.png");
-            if (imageStream != null) {
-                ImageIcon icon = new ImageIcon(javax.imageio.ImageIO.read(imageStream));
-                Image scaled = icon.getImage().getScaledInstance(width, height, Image.SCALE_SMOOTH);
-                return new ImageIcon(scaled);
-            } else {
-                System.err.println("Immagine placeholder non trovata nel JAR");
-                return null;
-            }
-        } catch (Exception e) {
-            System.err.println("Errore nel caricamento dell'immagine placeholder: " + e.getMessage());
-            return null;
-        }
+        return CacheMiniature.getIstanza().getSegnaposto(width, height);
     }
 
     private void browseButtonAction(JButton browseBtn, JTextField imagePathField, JLabel imagePreview, int width, int height){
@@ -965,9 +1317,11 @@ public class GestoreLibreriaUI extends JFrame{
             int result = fileChooser.showOpenDialog(null);
             if (result == JFileChooser.APPROVE_OPTION) {
                 File selectedFile = fileChooser.getSelectedFile();
-                imagePathField.setText(fileChooser.getSelectedFile().getAbsolutePath());
+                // la copertina viene copiata nell'archivio locale: il libro non dipende più dal file scelto
+                String coverPath = ArchivioCopertine.getIstanza().importa(selectedFile.getAbsolutePath());
+                imagePathField.setText(coverPath);
 
-                ImageIcon selectedIcon = loadAndScaleImage(selectedFile.getAbsolutePath(), width, height);
+                ImageIcon selectedIcon = loadAndScaleImage(coverPath, width, height);
                 if (selectedIcon != null) {
                     imagePreview.setIcon(selectedIcon); // sostituisce il placeholder
                 } else {
@@ -977,32 +1331,39 @@ public class GestoreLibreriaUI extends JFrame{
         });
     }
 
+    /**
+     * Restituisce l'immagine di copertina ridimensionata, leggendola dal disco solo se non è già presente in
+     * {@link CacheMiniature}.
+     *
+     * @param path percorso della copertina (risorsa del JAR o file esterno)
+     * @param width larghezza desiderata
+     * @param height altezza desiderata
+     * @return l'icona ridimensionata o {@code null} se l'immagine non può essere letta
+     */
     public static ImageIcon loadAndScaleImage(String path, int width, int height) {
-        try {
-            // Se ? un percorso delle risorse, carica dal JAR
-            if (path != null && (path.startsWith("/images/") || path.equals("/images/segnaposto_immagine.png"))) {
-                java.io.InputStream imageStream = GestoreLibreriaUI.class.getResourceAsStream(path);
-                if (imageStream != null) {
-                    ImageIcon icon = new ImageIcon(javax.imageio.ImageIO.read(imageStream));
-                    Image scaled = icon.getImage().getScaledInstance(width, height, Image.SCALE_SMOOTH);
-                    return new ImageIcon(scaled);
-                }
-            }
+        return CacheMiniature.getIstanza().getMiniatura(path, width, height);
+    }
 
-            // Altrimenti, carica come file esterno
-            if (path != null && !path.isEmpty()) {
-                ImageIcon icon = new ImageIcon(path);
-                if (icon.getIconWidth() > 0) {
-                    Image scaled = icon.getImage().getScaledInstance(width, height, Image.SCALE_SMOOTH);
-                    return new ImageIcon(scaled);
-                }
-            }
+    /**
+     * @return una cronologia con i limiti predefiniti registrata nel giornale accanto al database, così gli
+     *         undo sopravvivono al riavvio
+     */
+    private static CustodeCronologiaLibro creaCronologia() {
+        return new CustodeCronologiaLibro(CustodeCronologiaLibro.MASSIMO_VOCI_PREDEFINITO,
+                CustodeCronologiaLibro.MASSIMO_BYTE_PREDEFINITO,
+                new GiornaleCronologia(Path.of(GiornaleCronologia.FILE_PREDEFINITO)));
+    }
 
-            return null;
-        } catch (Exception e) {
-            System.err.println("Errore nel caricamento immagine da: " + path + ". " + e.getMessage());
-            return null;
-        }
+    /**
+     * Prepara gli indici della ricerca approssimata in background, senza rallentare l'interfaccia.
+     *
+     * @param db il gestore di cui preparare gli indici
+     * @post i suggerimenti della ricerca sono disponibili appena il thread termina
+     */
+    private static void avviaPreparazioneIndici(GestoreLibroConcreto db) {
+        Thread preparazioneIndici = new Thread(db::preparaIndiciRicerca, "preparazione-indici");
+        preparazioneIndici.setDaemon(true);
+        preparazioneIndici.start();
     }
 
     public static void main(String[] args) {
@@ -1076,8 +1437,21 @@ public class GestoreLibreriaUI extends JFrame{
         } catch (UnsupportedLookAndFeelException e) {
             System.err.println("Impossibile caricare FlatLaf");
         }
+        // ricerche e pagine della tabella leggono in background con una connessione propria
         ImplementatoreRepositoryLibro repo = new RepositoryLibroSQLite();
-        GestoreLibroConcreto db = new GestoreLibroConcreto(repo);
+        GestoreLibroConcreto db = new GestoreLibroConcreto(repo, RepositoryLibroSQLite.perLettura(), creaCronologia());
+        avviaPreparazioneIndici(db);
+        // sotto pressione sullo heap la cache delle copertine cede memoria prima di arrivare a un OutOfMemoryError
+        new SorveglianteMemoria(CacheMiniature.getIstanza()).installa(SorveglianteMemoria.SOGLIA_PREDEFINITA);
+        // le miniature già calcolate negli avvii precedenti vengono lette dal database invece che dagli originali
+        RepositoryMiniatureSQLite repositoryMiniature = new RepositoryMiniatureSQLite();
+        CacheMiniature.getIstanza().abilitaPersistenza(repositoryMiniature,
+                new Dimension(gestore_libreria.ui.PannelloLibriUI.LARGHEZZA_COPERTINA,
+                        gestore_libreria.ui.PannelloLibriUI.ALTEZZA_COPERTINA),
+                new Dimension(LARGHEZZA_ANTEPRIMA, ALTEZZA_ANTEPRIMA));
+        Thread pulizia = new Thread(repositoryMiniature::deleteOrphans, "pulizia-miniature");
+        pulizia.setDaemon(true);
+        pulizia.start();
         SwingUtilities.invokeLater(() -> {
             GestoreLibreriaUI UI = new GestoreLibreriaUI(db);
             UI.setVisible(true);
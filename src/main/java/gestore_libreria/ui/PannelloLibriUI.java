@@ -1,5 +1,12 @@
 package gestore_libreria.ui;
 
+import gestore_libreria.copertine.CacheMiniature;
+import gestore_libreria.copertine.DecodificatoreCopertine;
+import gestore_libreria.copertine.ValidatoreCopertine;
+import gestore_libreria.db.InterrogazioneViva;
+import gestore_libreria.db.ListaLibriPaginata;
+import gestore_libreria.model.CampoLibro;
+import gestore_libreria.model.CriterioOrdinamento;
 import gestore_libreria.model.Libro;
 
 import javax.swing.*;
@@ -10,21 +17,68 @@ import javax.swing.table.TableCellEditor;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 public class PannelloLibriUI extends JPanel {
+    static final int LARGHEZZA_COPERTINA = 60;
+    static final int ALTEZZA_COPERTINA = 75;
+    // righe oltre la vista per cui le copertine in coda non vengono scartate
+    private static final int MARGINE_RIGHE_DECODIFICA = 10;
+    private static final Color COLORE_SELEZIONE = new Color(204, 228, 247);
+    private static final String[] STATI_LETTURA = {"letto", "in lettura", "da leggere"};
+
+    /**
+     * Riceve le azioni scelte dal menu contestuale per tutti i libri selezionati.
+     */
+    public interface OnAzioneMultipla {
+        /**
+         * @param ids gli id dei libri selezionati da eliminare
+         */
+        void elimina(List<Integer> ids);
+
+        /**
+         * @param ids gli id dei libri selezionati
+         * @param campo il campo da impostare
+         * @param valore il valore scelto, del tipo del campo
+         */
+        void impostaCampo(List<Integer> ids, CampoLibro campo, Object valore);
+    }
+
     private JTable tabellaLibri;
+    private JViewport viewport;
     private ModelloTabellaLibri modelloTabella;
+    // l'interrogazione i cui risultati sono mostrati, null se la tabella mostra una lista statica
+    private InterrogazioneViva interrogazioneMostrata;
     private Consumer<Libro> onBookEditListener;
     private Consumer<Libro> onDeleteBookListener;
+    private OnAzioneMultipla onAzioneMultipla;
+    private final SelezioneLibri selezione = new SelezioneLibri();
     private GestoreLibreriaUI gestoreLibreriaUI;
+    private final ValidatoreCopertine validatoreCopertine = new ValidatoreCopertine(CacheMiniature.getIstanza());
+    private final DecodificatoreCopertine decodificatore =
+            new DecodificatoreCopertine(CacheMiniature.getIstanza(), validatoreCopertine, this::copertinaPronta);
+    // le pagine dei cataloghi grandi vengono lette una alla volta fuori dall'EDT
+    private final ExecutorService caricamentoPagine = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "caricamento-pagine");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public PannelloLibriUI(GestoreLibreriaUI gestoreLibreriaUI) {
         this.gestoreLibreriaUI = gestoreLibreriaUI;
         setLayout(new BorderLayout());
         
         initializeTable();
+        validatoreCopertine.setOnCopertinaCambiata(this::copertinaPronta);
+    }
+
+    public ValidatoreCopertine getValidatoreCopertine() {
+        return validatoreCopertine;
     }
 
     private void initializeTable() {
@@ -39,11 +93,25 @@ public class PannelloLibriUI extends JPanel {
         tabellaLibri.setBackground(new Color(240, 240, 240)); // Grigio chiaro
         tabellaLibri.setSelectionBackground(new Color(240, 240, 240)); // Stesso colore per eliminare evidenziazione
         
-        // DISABILITO LA SELEZIONE PER MIGLIORARE LE PERFORMANCE
+        // DISABILITO LA SELEZIONE DI JTABLE PER MIGLIORARE LE PERFORMANCE: le righe selezionate sono tenute
+        // per id in SelezioneLibri e colorate direttamente dai renderer
         tabellaLibri.setRowSelectionAllowed(false);
         tabellaLibri.setColumnSelectionAllowed(false);
         tabellaLibri.setCellSelectionEnabled(false);
         tabellaLibri.setFocusable(false);
+        tabellaLibri.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                gestisciClic(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (e.isPopupTrigger()) {
+                    mostraMenuSelezione(e);
+                }
+            }
+        });
         
         // Aggiungo solo le linee orizzontali
         tabellaLibri.setShowHorizontalLines(true);
@@ -70,6 +138,7 @@ public class PannelloLibriUI extends JPanel {
         
         // Scroll pane ottimizzato per performance massima
         JScrollPane scrollPane = new JScrollPane(tabellaLibri);
+        viewport = scrollPane.getViewport();
         
         // Incrementi più aggressivi per scroll veloce
         scrollPane.getVerticalScrollBar().setUnitIncrement(80); // Raddoppiato
@@ -83,6 +152,21 @@ public class PannelloLibriUI extends JPanel {
         // Disabilita doppio buffering per scroll immediato
         scrollPane.getViewport().setDoubleBuffered(false);
         tabellaLibri.setDoubleBuffered(false); // Modo più veloce
+
+        // le copertine in coda per righe ormai uscite dalla vista non vengono più decodificate
+        scrollPane.getViewport().addChangeListener(e -> {
+            Rectangle vista = scrollPane.getViewport().getViewRect();
+            int prima = tabellaLibri.rowAtPoint(vista.getLocation());
+            int ultima = tabellaLibri.rowAtPoint(new Point(vista.x, vista.y + vista.height - 1));
+            if (prima >= 0) {
+                decodificatore.aggiornaRigheVisibili(prima, ultima >= 0 ? ultima : tabellaLibri.getRowCount() - 1,
+                        MARGINE_RIGHE_DECODIFICA);
+            }
+        });
+
+        // con lo scroll veloce le copertine delle prossime schermate vengono decodificate in anticipo
+        scrollPane.getViewport().addChangeListener(new PrefetchCopertine(tabellaLibri, scrollPane.getViewport(),
+                decodificatore, CacheMiniature.getIstanza(), validatoreCopertine, LARGHEZZA_COPERTINA, ALTEZZA_COPERTINA));
         
         add(scrollPane, BorderLayout.CENTER);
     }
@@ -118,14 +202,270 @@ public class PannelloLibriUI extends JPanel {
         this.onBookEditListener = onBookEditListener;
     }
 
+    public void setOnAzioneMultipla(OnAzioneMultipla onAzioneMultipla) {
+        this.onAzioneMultipla = onAzioneMultipla;
+    }
+
+    /**
+     * @post nessuna riga è selezionata
+     */
+    public void svuotaSelezione() {
+        selezione.svuota();
+        tabellaLibri.repaint();
+    }
+
+    private void gestisciClic(MouseEvent e) {
+        int riga = tabellaLibri.rowAtPoint(e.getPoint());
+        if (riga < 0) {
+            return;
+        }
+        if (SwingUtilities.isRightMouseButton(e) || e.isPopupTrigger()) {
+            // il menu agisce sulla selezione; una riga non selezionata diventa l'unica selezionata
+            if (!selezione.isSelezionato(modelloTabella.idRiga(riga))) {
+                selezione.clic(modelloTabella, riga, false, false);
+                tabellaLibri.repaint();
+            }
+            if (e.isPopupTrigger()) {
+                mostraMenuSelezione(e);
+            }
+            return;
+        }
+        if (tabellaLibri.columnAtPoint(e.getPoint()) == 7) {
+            return;     // i bottoni della riga non cambiano la selezione
+        }
+        selezione.clic(modelloTabella, riga, e.isControlDown() || e.isMetaDown(), e.isShiftDown());
+        tabellaLibri.repaint();
+    }
+
+    private void mostraMenuSelezione(MouseEvent e) {
+        if (selezione.isVuota() || onAzioneMultipla == null) {
+            return;
+        }
+        List<Integer> ids = selezione.getIds();
+        JPopupMenu menu = new JPopupMenu();
+
+        JMenuItem elimina = new JMenuItem(ids.size() == 1 ? "Elimina 1 libro" : "Elimina " + ids.size() + " libri");
+        elimina.addActionListener(a -> onAzioneMultipla.elimina(ids));
+        menu.add(elimina);
+
+        JMenu stato = new JMenu("Imposta stato");
+        for (String valore : STATI_LETTURA) {
+            JMenuItem voce = new JMenuItem(valore);
+            voce.addActionListener(a -> onAzioneMultipla.impostaCampo(ids, CampoLibro.STATO_LETTURA, valore));
+            stato.add(voce);
+        }
+        menu.add(stato);
+
+        JMenu valutazione = new JMenu("Imposta valutazione");
+        for (int stelle = 0; stelle <= 5; stelle++) {
+            int valore = stelle;
+            JMenuItem voce = new JMenuItem(stelle == 0 ? "Nessuna" : "\u2605".repeat(stelle));
+            voce.addActionListener(a -> onAzioneMultipla.impostaCampo(ids, CampoLibro.VALUTAZIONE, valore));
+            valutazione.add(voce);
+        }
+        menu.add(valutazione);
+
+        JMenuItem genere = new JMenuItem("Imposta genere…");
+        genere.addActionListener(a -> {
+            String valore = JOptionPane.showInputDialog(this, "Genere dei libri selezionati:", "Imposta genere",
+                    JOptionPane.QUESTION_MESSAGE);
+            if (valore != null && !valore.isBlank()) {
+                onAzioneMultipla.impostaCampo(ids, CampoLibro.GENERE, valore.trim());
+            }
+        });
+        menu.add(genere);
+
+        menu.addSeparator();
+        JMenuItem deseleziona = new JMenuItem("Annulla selezione");
+        deseleziona.addActionListener(a -> svuotaSelezione());
+        menu.add(deseleziona);
+
+        menu.show(tabellaLibri, e.getX(), e.getY());
+    }
+
+    // sfondo di una cella: non alloca, viene chiamato per ogni cella a ogni ridisegno
+    private Color sfondo(JTable table, int row) {
+        return selezione.isSelezionato(modelloTabella.idRiga(row)) ? COLORE_SELEZIONE : table.getBackground();
+    }
+
     public void displayBooks(List<Libro> books) {
+        if (interrogazioneMostrata != null) {
+            interrogazioneMostrata.chiudi();
+            interrogazioneMostrata = null;
+        }
+        // la selezione riguarda i libri della vista precedente
+        selezione.svuota();
+        // con un catalogo grande la lista conosce solo il numero di libri: le righe mostrano "Caricamento…"
+        // finché la loro pagina non è letta, poi viene ridisegnata solo quella pagina
+        if (books instanceof ListaLibriPaginata paginata) {
+            paginata.setCaricamentoAsincrono(caricamentoPagine, (prima, ultima) -> SwingUtilities.invokeLater(() -> {
+                if (modelloTabella.books == paginata) {
+                    modelloTabella.fireTableRowsUpdated(prima, ultima);
+                }
+            }));
+        }
         // Aggiornamento diretto senza flicker
         modelloTabella.setBooks(books);
         SwingUtilities.invokeLater(() -> modelloTabella.fireTableDataChanged());
     }
 
+    /**
+     * Mostra i risultati di un'interrogazione viva: le modifiche successive ai libri arrivano riga per riga,
+     * senza ricaricare la tabella, e la vista non si sposta.
+     *
+     * @param interrogazione l'interrogazione da mostrare; la precedente viene chiusa
+     * @post la tabella mostra {@code interrogazione.getRisultati()} e ne segue le variazioni
+     */
+    public void displayInterrogazione(InterrogazioneViva interrogazione) {
+        displayBooks(interrogazione.getRisultati());
+        interrogazione.setOnRisultatiCambiati(new AggiornamentoRighe());
+        interrogazioneMostrata = interrogazione;
+    }
+
+    /**
+     * Riordina le righe mostrate senza rileggerle, se la tabella mostra un'interrogazione viva.
+     *
+     * @param criterio il nuovo criterio di ordinamento
+     * @return {@code true} se le righe sono state riordinate, {@code false} se la vista va riletta dal database
+     */
+    public boolean riordina(CriterioOrdinamento criterio) {
+        if (interrogazioneMostrata == null) {
+            return false;
+        }
+        interrogazioneMostrata.ordina(criterio);
+        return true;
+    }
+
+    /**
+     * @return l'interrogazione viva mostrata dalla tabella, o null se la tabella mostra una lista statica o a pagine
+     */
+    public InterrogazioneViva getInterrogazioneMostrata() {
+        return interrogazioneMostrata;
+    }
+
+    /**
+     * @return {@code true} se la tabella mostra un'interrogazione viva, e quindi è già aggiornata
+     * dopo ogni modifica ai singoli libri
+     */
+    public boolean isVistaViva() {
+        return interrogazioneMostrata != null;
+    }
+
+    /**
+     * Applica alla tabella a pagine la modifica di un singolo libro, se non ne cambia la riga.
+     *
+     * @param precedente lo stato del libro prima della modifica
+     * @param nuovo lo stato del libro dopo la modifica
+     * @return {@code true} se la tabella è aggiornata, {@code false} se non mostra un catalogo a pagine
+     * o se il libro cambia riga e la tabella va riletta
+     */
+    public boolean aggiornaLibroPaginato(Libro precedente, Libro nuovo) {
+        if (!(modelloTabella.books instanceof ListaLibriPaginata paginata) || !paginata.isStessaRiga(precedente, nuovo)) {
+            return false;
+        }
+        int riga = paginata.sostituisci(nuovo);
+        if (riga >= 0) {
+            modelloTabella.fireTableRowsUpdated(riga, riga);
+        }
+        return true;
+    }
+
+    /**
+     * Toglie dalla tabella a pagine un libro rimosso, se la sua riga è nota.
+     *
+     * @param libro il libro rimosso
+     * @return {@code true} se la tabella è aggiornata, {@code false} se non mostra un catalogo a pagine
+     * o se la pagina del libro non è in memoria e la tabella va riletta
+     */
+    public boolean rimuoviLibroPaginato(Libro libro) {
+        if (!(modelloTabella.books instanceof ListaLibriPaginata paginata)) {
+            return false;
+        }
+        if (tabellaLibri.isEditing()) {
+            tabellaLibri.getCellEditor().cancelCellEditing();
+        }
+        int primaVisibile = tabellaLibri.rowAtPoint(viewport.getViewRect().getLocation());
+        int riga = paginata.rimuovi(libro.getId());
+        if (riga < 0) {
+            return false;
+        }
+        modelloTabella.fireTableRowsDeleted(riga, riga);
+        mantieniVista(primaVisibile, riga, -1);
+        return true;
+    }
+
+    // applica alla tabella le variazioni dell'interrogazione mostrata
+    private class AggiornamentoRighe implements InterrogazioneViva.OnRisultatiCambiati {
+        @Override
+        public void rigaInserita(int indice) {
+            int prima = prepara();
+            modelloTabella.fireTableRowsInserted(indice, indice);
+            mantieniVista(prima, indice, 1);
+        }
+
+        @Override
+        public void rigaAggiornata(int indice) {
+            modelloTabella.fireTableRowsUpdated(indice, indice);
+        }
+
+        @Override
+        public void rigaRimossa(int indice) {
+            int prima = prepara();
+            modelloTabella.fireTableRowsDeleted(indice, indice);
+            mantieniVista(prima, indice, -1);
+        }
+
+        @Override
+        public void risultatiRiordinati() {
+            prepara();
+            modelloTabella.fireTableDataChanged();
+        }
+
+        private int prepara() {
+            // la riga su cui è aperto l'editor dei bottoni potrebbe spostarsi
+            if (tabellaLibri.isEditing()) {
+                tabellaLibri.getCellEditor().cancelCellEditing();
+            }
+            return tabellaLibri.rowAtPoint(viewport.getViewRect().getLocation());
+        }
+    }
+
+    /**
+     * Sposta la vista insieme alle righe quando una riga viene inserita o rimossa sopra la prima riga visibile,
+     * così il contenuto mostrato resta fermo.
+     */
+    private void mantieniVista(int primaVisibile, int riga, int righe) {
+        if (primaVisibile >= 0 && riga < primaVisibile) {
+            Point posizione = viewport.getViewPosition();
+            posizione.y = Math.max(0, posizione.y + righe * tabellaLibri.getRowHeight());
+            viewport.setViewPosition(posizione);
+        }
+    }
+
+    /**
+     * Ridisegna solo le celle visibili che mostrano la copertina appena decodificata o il cui file è cambiato.
+     *
+     * @param percorso il percorso della copertina
+     */
+    private void copertinaPronta(String percorso) {
+        Rectangle vista = tabellaLibri.getVisibleRect();
+        int prima = tabellaLibri.rowAtPoint(vista.getLocation());
+        int ultima = tabellaLibri.rowAtPoint(new Point(vista.x, vista.y + vista.height - 1));
+        if (prima < 0) {
+            return;
+        }
+        if (ultima < 0) {
+            ultima = tabellaLibri.getRowCount() - 1;
+        }
+        for (int riga = prima; riga <= ultima; riga++) {
+            if (percorso.equals(modelloTabella.getValueAt(riga, 0))) {
+                tabellaLibri.repaint(tabellaLibri.getCellRect(riga, 0, false));
+            }
+        }
+    }
+
     // Modello della tabella personalizzato
-    private class ModelloTabellaLibri extends DefaultTableModel {
+    private class ModelloTabellaLibri extends DefaultTableModel implements SelezioneLibri.Righe {
         private List<Libro> books;
         private final String[] columnNames = {"Copertina", "Titolo", "Autore", "Genere", "ISBN", "Valutazione", "Stato", ""};
 
@@ -153,6 +493,15 @@ public class PannelloLibriUI extends JPanel {
             if (books == null || row >= books.size()) return null;
             
             Libro Libro = books.get(row);
+            if (ListaLibriPaginata.isInCaricamento(Libro)) {
+                // riga leggera mostrata finché la sua pagina non è stata letta dal database
+                return switch (col) {
+                    case 1 -> Libro.getTitolo();
+                    case 5 -> 0;
+                    case 0, 7 -> null;
+                    default -> "";
+                };
+            }
             return switch (col) {
                 case 0 -> Libro.getPercorsoCopertina(); // Per l'immagine
                 case 1 -> Libro.getTitolo();
@@ -166,9 +515,27 @@ public class PannelloLibriUI extends JPanel {
             };
         }
 
+        // id del libro in una riga, 0 per le righe ancora in caricamento
+        @Override
+        public int idRiga(int row) {
+            if (books == null || row >= books.size()) return 0;
+            return books.get(row).getId();
+        }
+
+        // con shift sul catalogo paginato anche le righe in caricamento entrano nell'intervallo,
+        // senza accodare la lettura delle loro pagine
+        @Override
+        public List<Integer> idIntervallo(int prima, int ultima) {
+            if (books instanceof ListaLibriPaginata paginata) {
+                return paginata.getIds(prima, Math.min(ultima, paginata.size() - 1));
+            }
+            return SelezioneLibri.Righe.super.idIntervallo(prima, ultima);
+        }
+
         @Override
         public boolean isCellEditable(int row, int column) {
-            return column == 7; // Solo la colonna delle azioni è editabile
+            // Solo la colonna delle azioni è editabile, e non per le righe ancora in caricamento
+            return column == 7 && !ListaLibriPaginata.isInCaricamento(books.get(row));
         }
 
         @Override
@@ -190,8 +557,8 @@ public class PannelloLibriUI extends JPanel {
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, 
                 boolean hasFocus, int row, int column) {
             setText(value != null ? value.toString() : "");
-            // IGNORO isSelected per performance - sfondo sempre uguale
-            setBackground(table.getBackground());
+            // IGNORO isSelected: la selezione è quella per id
+            setBackground(sfondo(table, row));
             setForeground(Color.BLACK);
             return this;
         }
@@ -209,8 +576,8 @@ public class PannelloLibriUI extends JPanel {
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, 
                 boolean hasFocus, int row, int column) {
             setText(value != null ? value.toString() : "");
-            // IGNORO isSelected per performance - sfondo sempre uguale
-            setBackground(table.getBackground());
+            // IGNORO isSelected: la selezione è quella per id
+            setBackground(sfondo(table, row));
             setForeground(Color.BLACK);
             return this;
         }
@@ -251,8 +618,8 @@ public class PannelloLibriUI extends JPanel {
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, 
                 boolean hasFocus, int row, int column) {
-            // IGNORO isSelected per performance - sfondo sempre uguale
-            setBackground(table.getBackground());
+            // IGNORO isSelected: la selezione è quella per id
+            setBackground(sfondo(table, row));
             return this;
         }
     }
@@ -308,6 +675,8 @@ public class PannelloLibriUI extends JPanel {
 
     // Renderer per le immagini
     private class RenderImmagine extends JLabel implements TableCellRenderer {
+        private final CacheMiniature cache = CacheMiniature.getIstanza();
+
         public RenderImmagine() {
             setHorizontalAlignment(CENTER);
             setFont(new Font("Segoe UI", Font.PLAIN, 10));
@@ -317,23 +686,25 @@ public class PannelloLibriUI extends JPanel {
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, 
                 boolean hasFocus, int row, int column) {
             String imagePath = (String) value;
-            
-            ImageIcon icon = GestoreLibreriaUI.loadAndScaleImage(imagePath, 60, 75);
-            if (icon != null) {
-                setIcon(icon);
-                setText("");
-            } else {
-                ImageIcon placeholder = GestoreLibreriaUI.loadPlaceholderImage(60, 75);
-                if (placeholder != null) {
-                    setIcon(placeholder);
-                    setText("");
-                } else {
-                    setIcon(null);
-                    setText("N/A");
-                }
+
+            // il renderer non legge mai dal disco: le copertine mancanti o da ricontrollare vengono decodificate
+            // in background e nel frattempo si mostra quella in cache o il segnaposto;
+            // per le copertine note come non valide si passa direttamente al segnaposto
+            if (validatoreCopertine.isNonValido(imagePath)) {
+                imagePath = null;
+            }
+            ImageIcon icon = imagePath != null ? cache.trova(imagePath, LARGHEZZA_COPERTINA, ALTEZZA_COPERTINA) : null;
+            if (imagePath != null && (icon == null || cache.richiedeVerifica(imagePath, LARGHEZZA_COPERTINA, ALTEZZA_COPERTINA))) {
+                decodificatore.richiedi(imagePath, LARGHEZZA_COPERTINA, ALTEZZA_COPERTINA, row,
+                        DecodificatoreCopertine.PRIORITA_VISIBILE);
+            }
+            if (icon == null) {
+                icon = cache.getSegnaposto(LARGHEZZA_COPERTINA, ALTEZZA_COPERTINA);
             }
+            setIcon(icon);
+            setText(icon != null ? "" : "N/A");
             
-            setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+            setBackground(sfondo(table, row));
             setOpaque(true);
             return this;
         }
@@ -345,28 +716,16 @@ public class PannelloLibriUI extends JPanel {
         private final Color GOLD = new Color(255, 215, 0);
         private final Color GRAY = new Color(180, 180, 180);
         private final Font STAR_FONT = new Font("SansSerif", Font.PLAIN, 16);
+        // il testo per ogni valutazione da 0 a 5, preparato una volta: il ridisegno non crea stringhe
+        private final String[] testi = new String[6];
         
         public RenderStelle() {
             setHorizontalAlignment(CENTER);
             setOpaque(true);
             setFont(STAR_FONT);
-        }
-
-        @Override
-        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, 
-                boolean hasFocus, int row, int column) {
-            
-            int rating = (Integer) value;
-            
-            // Crea la stringa delle stelle una sola volta
-            StringBuilder stars = new StringBuilder();
-            for (int i = 0; i < 5; i++) {
-                stars.append("\u2605 "); // Spazio tra stelle
-            }
-            setText(stars.toString().trim());
-            
-            // Usa HTML per colorare solo le stelle necessarie (più efficiente)
-            if (rating > 0) {
+            testi[0] = "\u2605 \u2605 \u2605 \u2605 \u2605";
+            for (int rating = 1; rating < testi.length; rating++) {
+                // Usa HTML per colorare solo le stelle necessarie
                 StringBuilder html = new StringBuilder("<html>");
                 for (int i = 0; i < 5; i++) {
                     if (i < rating) {
@@ -377,13 +736,22 @@ public class PannelloLibriUI extends JPanel {
                     if (i < 4) html.append(" ");
                 }
                 html.append("</html>");
-                setText(html.toString());
-            } else {
+                testi[rating] = html.toString();
+            }
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, 
+                boolean hasFocus, int row, int column) {
+            
+            int rating = Math.max(0, Math.min(5, (Integer) value));
+            setText(testi[rating]);
+            if (rating == 0) {
                 setForeground(GRAY);
             }
             
-            // IGNORO isSelected per performance - sfondo sempre uguale
-            setBackground(table.getBackground());
+            // IGNORO isSelected: la selezione è quella per id
+            setBackground(sfondo(table, row));
             return this;
         }
     }
@@ -403,7 +771,7 @@ public class PannelloLibriUI extends JPanel {
             setText(state != null ? state.toUpperCase() : "N/A");
             
             // Usa lo stesso colore di sfondo delle altre celle
-            setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+            setBackground(sfondo(table, row));
             setForeground(Color.BLACK); // Testo nero per uniformità
             
             return this;
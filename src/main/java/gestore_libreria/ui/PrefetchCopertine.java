@@ -0,0 +1,152 @@
+package gestore_libreria.ui;
+
+import gestore_libreria.copertine.CacheMiniature;
+import gestore_libreria.copertine.DecodificatoreCopertine;
+import gestore_libreria.copertine.ValidatoreCopertine;
+
+import javax.swing.JTable;
+import javax.swing.JViewport;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * Precarica le copertine delle righe che stanno per entrare nella vista durante lo scroll.
+ * Dalla posizione del viewport stima direzione e velocità di scorrimento e chiede al decodificatore,
+ * con priorità bassa, le copertine delle prossime schermate nella direzione di scorrimento: più lo scroll è veloce,
+ * più schermate vengono precaricate. Quando lo scroll si ferma o cambia direzione il prefetch in coda viene annullato.
+ */
+public class PrefetchCopertine implements ChangeListener {
+
+    /**
+     * Numero massimo di schermate precaricate davanti alla vista
+     */
+    static final int MASSIMO_SCHERMATE = 3;
+
+    // secondi di scorrimento da anticipare alla velocità corrente
+    private static final double ORIZZONTE_SECONDI = 0.5;
+    // dopo questo tempo senza movimenti lo scroll è considerato fermo
+    private static final int PAUSA_MS = 200;
+
+    private final JTable tabella;
+    private final JViewport viewport;
+    private final DecodificatoreCopertine decodificatore;
+    private final CacheMiniature cache;
+    private final ValidatoreCopertine validatore;
+    private final int larghezza;
+    private final int altezza;
+    private final Timer fermo;
+
+    private int primaPrecedente = -1;
+    private long istantePrecedente;
+    private int direzione;
+    private double velocita;
+    // ultima riga già chiesta nella direzione corrente, per non ripetere le stesse richieste a ogni evento
+    private int limitePrecaricato = -1;
+
+    /**
+     * @param tabella la tabella dei libri, con il percorso della copertina nella colonna 0
+     * @param viewport il viewport dello scroll pane che contiene la tabella
+     * @param decodificatore il decodificatore a cui chiedere le copertine
+     * @param cache la cache delle miniature, per non chiedere copertine già pronte
+     * @param validatore il registro delle copertine non valide, da non chiedere
+     * @param larghezza larghezza delle miniature in pixel
+     * @param altezza altezza delle miniature in pixel
+     * @post il prefetch si attiva registrando l'oggetto come {@link ChangeListener} del viewport
+     */
+    public PrefetchCopertine(JTable tabella, JViewport viewport, DecodificatoreCopertine decodificatore,
+                             CacheMiniature cache, ValidatoreCopertine validatore, int larghezza, int altezza) {
+        this.tabella = tabella;
+        this.viewport = viewport;
+        this.decodificatore = decodificatore;
+        this.cache = cache;
+        this.validatore = validatore;
+        this.larghezza = larghezza;
+        this.altezza = altezza;
+        this.fermo = new Timer(PAUSA_MS, e -> interrompi());
+        this.fermo.setRepeats(false);
+    }
+
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        Rectangle vista = viewport.getViewRect();
+        int prima = tabella.rowAtPoint(vista.getLocation());
+        int ultima = tabella.rowAtPoint(new Point(vista.x, vista.y + vista.height - 1));
+        if (prima < 0) {
+            return;
+        }
+        if (ultima < 0) {
+            ultima = tabella.getRowCount() - 1;
+        }
+        long adesso = System.nanoTime();
+        int spostamento = prima - primaPrecedente;
+        if (primaPrecedente < 0 || spostamento == 0) {
+            primaPrecedente = prima;
+            istantePrecedente = adesso;
+            return;
+        }
+
+        int nuovaDirezione = Integer.signum(spostamento);
+        if (nuovaDirezione != direzione) {
+            // inversione: quanto precaricato nell'altra direzione non serve più
+            decodificatore.annullaPrefetch();
+            direzione = nuovaDirezione;
+            velocita = 0;
+            limitePrecaricato = -1;
+        }
+        double secondi = Math.max(1e-3, (adesso - istantePrecedente) / 1e9);
+        velocita = velocita == 0 ? Math.abs(spostamento) / secondi : 0.5 * velocita + 0.5 * Math.abs(spostamento) / secondi;
+        primaPrecedente = prima;
+        istantePrecedente = adesso;
+
+        int[] intervallo = righeDaPrecaricare(prima, ultima, direzione, velocita, tabella.getRowCount());
+        precarica(intervallo[0], intervallo[1]);
+        fermo.restart();
+    }
+
+    /**
+     * Calcola le righe da precaricare davanti alla vista: almeno una schermata, fino a {@link #MASSIMO_SCHERMATE}
+     * a seconda di quante righe verranno percorse nel prossimo mezzo secondo alla velocità corrente.
+     *
+     * @param prima la prima riga visibile
+     * @param ultima l'ultima riga visibile
+     * @param direzione 1 se si scorre verso il basso, -1 verso l'alto
+     * @param velocita la velocità stimata in righe al secondo
+     * @param totaleRighe il numero di righe della tabella
+     * @return un array {@code {da, a}} con le righe da precaricare, ordinate dalla più vicina alla più lontana;
+     * vuoto ({@code da == a + direzione}) se non ci sono righe oltre la vista
+     */
+    static int[] righeDaPrecaricare(int prima, int ultima, int direzione, double velocita, int totaleRighe) {
+        int righeVisibili = ultima - prima + 1;
+        int schermate = (int) Math.ceil(velocita * ORIZZONTE_SECONDI / righeVisibili);
+        int righe = Math.max(1, Math.min(MASSIMO_SCHERMATE, schermate)) * righeVisibili;
+        if (direzione > 0) {
+            return new int[]{ultima + 1, Math.min(totaleRighe - 1, ultima + righe)};
+        }
+        return new int[]{prima - 1, Math.max(0, prima - righe)};
+    }
+
+    private void precarica(int da, int a) {
+        // riprendo dall'ultima riga già chiesta, se è ancora davanti alla vista
+        if (limitePrecaricato >= 0 && (limitePrecaricato - da) * direzione >= 0) {
+            da = limitePrecaricato + direzione;
+        }
+        for (int riga = da; (a - riga) * direzione >= 0; riga += direzione) {
+            Object valore = tabella.getModel().getValueAt(riga, 0);
+            if (valore instanceof String percorso && !validatore.isNonValido(percorso)
+                    && !cache.contiene(percorso, larghezza, altezza)) {
+                decodificatore.richiedi(percorso, larghezza, altezza, riga, DecodificatoreCopertine.PRIORITA_PREFETCH);
+            }
+            limitePrecaricato = riga;
+        }
+    }
+
+    private void interrompi() {
+        decodificatore.annullaPrefetch();
+        direzione = 0;
+        velocita = 0;
+        limitePrecaricato = -1;
+    }
+}
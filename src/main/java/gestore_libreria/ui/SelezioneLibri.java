@@ -0,0 +1,114 @@
+package gestore_libreria.ui;
+
+import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Libri selezionati nella tabella, memorizzati come insieme di bit indicizzato dall'id del libro.
+ * La selezione non dipende dalla posizione delle righe: resta corretta quando le righe vengono inserite,
+ * spostate o rimosse da un'interrogazione viva, e {@link #isSelezionato(int)} non alloca nulla, quindi può
+ * essere chiamato dai renderer a ogni ridisegno.
+ */
+public class SelezioneLibri {
+
+    /**
+     * Le righe della tabella su cui si clicca.
+     */
+    @FunctionalInterface
+    public interface Righe {
+        /**
+         * @param riga una riga della tabella
+         * @return l'id del libro nella riga, o un valore non positivo se la riga è ancora in caricamento
+         */
+        int idRiga(int riga);
+
+        /**
+         * Restituisce gli id dei libri in un intervallo di righe, per la selezione con shift.
+         * Le righe paginate lo ridefiniscono per risolvere anche le righe ancora in caricamento.
+         *
+         * @param prima la prima riga dell'intervallo
+         * @param ultima l'ultima riga dell'intervallo, inclusa
+         * @return gli id dei libri nelle righe indicate; i valori non positivi vengono ignorati
+         */
+        default List<Integer> idIntervallo(int prima, int ultima) {
+            List<Integer> ids = new ArrayList<>(ultima - prima + 1);
+            for (int riga = prima; riga <= ultima; riga++) {
+                ids.add(idRiga(riga));
+            }
+            return ids;
+        }
+    }
+
+    private final BitSet ids = new BitSet();
+    private int ancora = -1;        // riga dell'ultimo clic, da cui parte la selezione con shift
+
+    /**
+     * @param id l'id di un libro
+     * @return {@code true} se il libro è selezionato
+     */
+    public boolean isSelezionato(int id) {
+        return id > 0 && ids.get(id);
+    }
+
+    /**
+     * Applica un clic su una riga con le convenzioni delle tabelle: il clic semplice seleziona solo la riga,
+     * con ctrl la aggiunge o la toglie, con shift seleziona l'intervallo dall'ultima riga cliccata.
+     *
+     * @param righe le righe della tabella
+     * @param riga la riga cliccata
+     * @param aggiungi {@code true} se è premuto ctrl
+     * @param estendi {@code true} se è premuto shift
+     * @post la selezione contiene i libri indicati dal clic
+     */
+    public void clic(Righe righe, int riga, boolean aggiungi, boolean estendi) {
+        if (estendi && ancora >= 0) {
+            if (!aggiungi) {
+                ids.clear();
+            }
+            for (int id : righe.idIntervallo(Math.min(ancora, riga), Math.max(ancora, riga))) {
+                seleziona(id);
+            }
+            return;
+        }
+        int id = righe.idRiga(riga);
+        if (aggiungi) {
+            if (id > 0) {
+                ids.flip(id);
+            }
+        } else {
+            ids.clear();
+            seleziona(id);
+        }
+        ancora = riga;
+    }
+
+    private void seleziona(int id) {
+        if (id > 0) {
+            ids.set(id);
+        }
+    }
+
+    /**
+     * @post nessun libro è selezionato
+     */
+    public void svuota() {
+        ids.clear();
+        ancora = -1;
+    }
+
+    public boolean isVuota() {
+        return ids.isEmpty();
+    }
+
+    public int getNumeroSelezionati() {
+        return ids.cardinality();
+    }
+
+    /**
+     * @return gli id dei libri selezionati, in ordine crescente
+     */
+    public List<Integer> getIds() {
+        return ids.stream().boxed().toList();
+    }
+}
@@ -0,0 +1,224 @@
+package gestore_libreria.cli;
+
+import gestore_libreria.db.DatabaseConnectionSingleton;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GestoreLibreriaCLITest {
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+    private Path csv;
+
+    @Before
+    public void setUp() throws IOException {
+        DatabaseConnectionSingleton.setDatabasePath(cartella.getRoot().toPath().resolve("libri.db").toString());
+        csv = cartella.getRoot().toPath().resolve("libri.csv");
+        Files.writeString(csv, """
+                id,titolo,autore,isbn,genere,valutazione,stato,copertina
+                7,Il Nome della Rosa,Umberto Eco,978-88,Romanzo storico,5,letto,
+                8,"Baudolino, la storia",Umberto Eco,,Romanzo,3,in lettura,
+                9,"Le ""Città"" invisibili",Italo Calvino,,Romanzo,4,,
+                """, StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseConnectionSingleton.setDatabasePath(DatabaseConnectionSingleton.DATABASE_PREDEFINITO);
+    }
+
+    private int esegui(String... args) {
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+        return new GestoreLibreriaCLI(new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8)).esegui(args);
+    }
+
+    private List<List<String>> righe() throws IOException {
+        StringReader lettore = new StringReader(out.toString(StandardCharsets.UTF_8));
+        List<List<String>> righe = new ArrayList<>();
+        for (List<String> campi; (campi = FormatoCSV.leggiRiga(lettore)) != null; ) {
+            righe.add(campi);
+        }
+        return righe;
+    }
+
+    @Test
+    public void testImportaECerca() throws IOException {
+        assertEquals(0, esegui("importa", csv.toString()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("3"));
+
+        assertEquals(0, esegui("cerca", "--autore", "eco", "--ordina", "titolo_asc"));
+        List<List<String>> righe = righe();
+        assertEquals(FormatoCSV.INTESTAZIONE, righe.get(0));
+        assertEquals(3, righe.size());
+        assertEquals("Baudolino, la storia", righe.get(1).get(1));
+        assertEquals("Il Nome della Rosa", righe.get(2).get(1));
+
+        // il secondo filtro si applica ai libri trovati dal primo
+        assertEquals(0, esegui("cerca", "--autore", "eco", "--valutazione", "5"));
+        assertEquals(2, righe().size());
+
+        assertEquals(0, esegui("cerca", "--titolo", "citt"));
+        assertEquals("Le \"Città\" invisibili", righe().get(1).get(1));
+        assertEquals("da leggere", righe().get(1).get(6));
+    }
+
+    @Test
+    public void testAggiornaEStatistiche() throws IOException {
+        assertEquals(0, esegui("importa", csv.toString()));
+
+        // senza filtri serve --tutti
+        assertEquals(2, esegui("aggiorna", "--campo", "stato", "--valore", "letto"));
+
+        assertEquals(0, esegui("aggiorna", "--campo", "stato", "--valore", "letto", "--autore", "eco"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("trovati: 2, modificati: 1"));
+
+        assertEquals(0, esegui("aggiorna", "--campo", "valutazione", "--valore", "1", "--tutti"));
+
+        assertEquals(0, esegui("statistiche"));
+        String statistiche = out.toString(StandardCharsets.UTF_8);
+        assertTrue(statistiche.contains("totale\t3"));
+        assertTrue(statistiche.contains("stato\tletto\t2"));
+        assertTrue(statistiche.contains("valutazione\t1\t3"));
+        assertTrue(statistiche.contains("genere\tRomanzo\t2"));
+    }
+
+    @Test
+    public void testEsportaEReimporta() throws IOException {
+        assertEquals(0, esegui("importa", csv.toString()));
+        Path esportato = cartella.getRoot().toPath().resolve("esportato.csv");
+        assertEquals(0, esegui("esporta", esportato.toString(), "--ordina", "titolo_asc"));
+        Path copia = cartella.getRoot().toPath().resolve("copia.db");
+        assertEquals(0, esegui("esporta", copia.toString()));
+        assertTrue(Files.size(copia) > 0);
+
+        assertEquals(0, esegui("compatta"));
+
+        // un secondo database riceve gli stessi libri, nello stesso ordine
+        DatabaseConnectionSingleton.setDatabasePath(cartella.getRoot().toPath().resolve("altro.db").toString());
+        assertEquals(0, esegui("importa", esportato.toString()));
+        assertEquals(0, esegui("esporta", "-", "--ordina", "titolo_asc"));
+        List<List<String>> righe = righe();
+        List<String> esportate = Files.readAllLines(esportato, StandardCharsets.UTF_8);
+        assertEquals(4, righe.size());
+        for (int i = 1; i < righe.size(); i++) {
+            assertEquals(righe.get(i).subList(1, 8), FormatoCSV.leggiRiga(new StringReader(esportate.get(i))).subList(1, 8));
+        }
+
+        // importare la copia .db la sostituisce al database corrente
+        assertEquals(0, esegui("--db", cartella.getRoot().toPath().resolve("terzo.db").toString(), "importa", copia.toString()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("3 libri"));
+    }
+
+    @Test
+    public void testEsportaSulDatabaseAperto() throws IOException {
+        assertEquals(0, esegui("importa", csv.toString()));
+        Path database = Path.of(DatabaseConnectionSingleton.getDatabasePath());
+        long dimensione = Files.size(database);
+
+        // il database aperto non può essere la destinazione, neanche indicato con un altro percorso
+        assertEquals(2, esegui("esporta", database.toString()));
+        assertEquals(2, esegui("esporta", database.getParent().resolve(".").resolve(database.getFileName()).toString()));
+        assertEquals(dimensione, Files.size(database));
+        assertEquals(0, esegui("statistiche"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("totale\t3"));
+
+        // una copia già presente viene sostituita per intero
+        Path copia = cartella.getRoot().toPath().resolve("copia.db");
+        Files.writeString(copia, "non è un database");
+        assertEquals(0, esegui("esporta", copia.toString()));
+        assertEquals(0, esegui("--db", copia.toString(), "statistiche"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("totale\t3"));
+        assertFalse(Files.exists(cartella.getRoot().toPath().resolve("copia.db.tmp")));
+    }
+
+    @Test
+    public void testErroriDiUso() {
+        assertEquals(2, esegui());
+        assertEquals(2, esegui("sconosciuto"));
+        assertEquals(2, esegui("cerca", "--valutazione", "9"));
+        assertEquals(2, esegui("cerca", "--ordina", "peso"));
+        assertEquals(2, esegui("aggiorna", "--campo", "pagine", "--valore", "1", "--tutti"));
+        assertEquals(1, esegui("importa", cartella.getRoot().toPath().resolve("mancante.db").toString()));
+        assertEquals(0, esegui("aiuto"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("Uso:"));
+    }
+
+    @Test
+    public void testCSVConVirgoletteEACapo() throws IOException {
+        StringBuilder riga = new StringBuilder();
+        List<String> campi = List.of("1", "Titolo, con virgola", "Autore \"citato\"", "riga\nnuova", "");
+        FormatoCSV.scriviRiga(riga, campi);
+        assertEquals(campi, FormatoCSV.leggiRiga(new StringReader(riga.toString())));
+        try {
+            FormatoCSV.leggiRiga(new StringReader("1,\"non chiuso"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // atteso
+        }
+    }
+
+    // avvia main in una JVM separata e restituisce lo standard output; il codice di uscita deve essere 0
+    private String avvia(byte[] ingresso, String... args) throws Exception {
+        List<String> comando = new ArrayList<>(List.of(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path")));
+        comando.addAll(List.of(args));
+        Path errori = cartella.newFile().toPath();
+        Process processo = new ProcessBuilder(comando).redirectError(errori.toFile()).start();
+        try (var stdin = processo.getOutputStream()) {
+            stdin.write(ingresso);
+        }
+        String uscita = new String(processo.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(Files.readString(errori), 0, processo.waitFor());
+        return uscita;
+    }
+
+    @Test
+    public void testEsportaSuStandardOutputEReimporta() throws Exception {
+        String database = cartella.getRoot().toPath().resolve("libri.db").toString();
+        String classe = GestoreLibreriaCLI.class.getName();
+        avvia(new byte[0], classe, "--db", database, "importa", csv.toString());
+
+        // i messaggi della connessione e del repository non devono finire tra le righe del CSV
+        String esportato = avvia(new byte[0], classe, "--db", database, "esporta", "-", "--ordina", "titolo_asc");
+        assertTrue(esportato, esportato.startsWith(String.join(",", FormatoCSV.INTESTAZIONE) + "\r\n"));
+        assertEquals(4, esportato.split("\r\n").length);
+
+        String altro = cartella.getRoot().toPath().resolve("altro.db").toString();
+        avvia(esportato.getBytes(StandardCharsets.UTF_8), classe, "--db", altro, "importa", "-");
+        String reimportato = avvia(new byte[0], classe, "--db", altro, "esporta", "-", "--ordina", "titolo_asc");
+        // i libri importati ricevono id nuovi: si confrontano le righe senza la prima colonna
+        assertEquals(esportato.replaceAll("(?m)^\\d+,", ""), reimportato.replaceAll("(?m)^\\d+,", ""));
+    }
+
+    // la riga di comando non deve caricare AWT: si controllano le classi caricate dalla JVM separata
+    @Test
+    public void testNessunaClasseAWT() throws Exception {
+        String uscita = avvia(new byte[0], "-verbose:class", GestoreLibreriaCLI.class.getName(),
+                "--db", cartella.getRoot().toPath().resolve("libri.db").toString(), "importa", csv.toString());
+        assertTrue(uscita.contains("gestore_libreria.db.GestoreLibroConcreto"));
+        assertFalse(uscita.contains("java.awt."));
+        assertFalse(uscita.contains("javax.swing."));
+    }
+}
@@ -0,0 +1,81 @@
+package gestore_libreria.copertine;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ArchivioCopertineTest {
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    private ArchivioCopertine archivio;
+    private String copertina;
+    private String copia;
+
+    @Before
+    public void setUp() throws IOException {
+        archivio = new ArchivioCopertine(cartella.getRoot().toPath().resolve("copertine"));
+        File file = cartella.newFile("rosa.PNG");
+        ImageIO.write(new BufferedImage(40, 60, BufferedImage.TYPE_INT_RGB), "png", file);
+        copertina = file.getAbsolutePath();
+        File duplicato = cartella.newFile("rosa-copia.png");
+        Files.copy(file.toPath(), duplicato.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        copia = duplicato.getAbsolutePath();
+    }
+
+    @Test
+    public void testImportaConDeduplicazione() throws IOException {
+        String importata = archivio.importa(copertina);
+        String importataCopia = archivio.importa(copia);
+
+        assertEquals(importata, importataCopia);
+        assertTrue(archivio.contiene(importata));
+        assertEquals(CaricatoreImmagini.hashContenuto(copertina) + ".png", Path.of(importata).getFileName().toString());
+        try (var file = Files.list(archivio.getCartella())) {
+            assertEquals(1, file.count());
+        }
+        // una copertina già nell'archivio non viene reimportata
+        assertEquals(importata, archivio.importa(importata));
+    }
+
+    @Test
+    public void testPercorsiNonImportabili() {
+        String mancante = new File(cartella.getRoot(), "mancante.png").getAbsolutePath();
+        assertEquals(mancante, archivio.importa(mancante));
+        assertEquals(CaricatoreImmagini.PERCORSO_SEGNAPOSTO, archivio.importa(CaricatoreImmagini.PERCORSO_SEGNAPOSTO));
+        assertNull(archivio.importa(null));
+    }
+
+    @Test
+    public void testMigrazioneUnaTantum() {
+        String mancante = new File(cartella.getRoot(), "mancante.png").getAbsolutePath();
+        Map<String, String> nuoviPercorsi = archivio.migra(List.of(copertina, copia, mancante, CaricatoreImmagini.PERCORSO_SEGNAPOSTO));
+
+        assertEquals(2, nuoviPercorsi.size());
+        assertEquals(nuoviPercorsi.get(copertina), nuoviPercorsi.get(copia));
+        assertFalse(archivio.isMigrazioneCompletata());
+
+        archivio.completaMigrazione();
+        assertTrue(archivio.isMigrazioneCompletata());
+        assertTrue(archivio.migra(List.of(copertina)).isEmpty());
+
+        archivio.riapriMigrazione();
+        assertFalse(archivio.isMigrazioneCompletata());
+        assertEquals(nuoviPercorsi.get(copertina), archivio.migra(List.of(copertina)).get(copertina));
+        assertTrue(archivio.migra(List.of(nuoviPercorsi.get(copertina))).isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+package gestore_libreria.copertine;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Confronta la lettura a piena risoluzione seguita dal ridimensionamento con la lettura sottocampionata
+ * di {@link CaricatoreImmagini}, misurando tempo e memoria allocata per produrre una miniatura 60x75
+ * da una scansione 4000x6000.
+ * Non è un test: si esegue a mano dalla IDE o con {@code java -cp target/classes:target/test-classes}.
+ */
+public class BenchmarkDecodificaCopertine {
+
+    private static final int RIPETIZIONI = 10;
+
+    public static void main(String[] args) throws IOException {
+        File scansione = File.createTempFile("scansione", ".jpg");
+        scansione.deleteOnExit();
+        BufferedImage grande = new BufferedImage(4000, 6000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = grande.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, 4000, 6000, Color.BLUE));
+        g.fillRect(0, 0, 4000, 6000);
+        g.dispose();
+        ImageIO.write(grande, "jpg", scansione);
+        grande = null;
+        String percorso = scansione.getAbsolutePath();
+
+        // riscaldamento
+        letturaCompleta(percorso);
+        CaricatoreImmagini.caricaScalata(percorso, 60, 75);
+
+        misura("lettura completa + ridimensionamento", () -> letturaCompleta(percorso));
+        misura("lettura sottocampionata", () -> CaricatoreImmagini.caricaScalata(percorso, 60, 75));
+    }
+
+    private static BufferedImage letturaCompleta(String percorso) {
+        try {
+            return CaricatoreImmagini.ridimensiona(ImageIO.read(new File(percorso)), 60, 75);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void misura(String nome, Runnable lettura) {
+        com.sun.management.ThreadMXBean thread = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long idThread = Thread.currentThread().getId();
+        long allocatiPrima = thread.getThreadAllocatedBytes(idThread);
+        long inizio = System.nanoTime();
+        for (int i = 0; i < RIPETIZIONI; i++) {
+            lettura.run();
+        }
+        long millisecondi = (System.nanoTime() - inizio) / 1_000_000 / RIPETIZIONI;
+        long kilobyte = (thread.getThreadAllocatedBytes(idThread) - allocatiPrima) / RIPETIZIONI / 1024;
+        System.out.printf("%-40s %6d ms/miniatura %8d KB allocati/miniatura%n", nome, millisecondi, kilobyte);
+    }
+}
@@ -0,0 +1,189 @@
+package gestore_libreria.copertine;
+
+import gestore_libreria.db.RepositoryMiniatureSQLite;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class CacheMiniatureTest {
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    private String copertina1;
+    private String copertina2;
+
+    @Before
+    public void setUp() throws IOException {
+        copertina1 = creaImmagine("copertina1.png", 300, 450);
+        copertina2 = creaImmagine("copertina2.png", 200, 300);
+    }
+
+    private String creaImmagine(String nome, int larghezza, int altezza) throws IOException {
+        File file = cartella.newFile(nome);
+        ImageIO.write(new BufferedImage(larghezza, altezza, BufferedImage.TYPE_INT_RGB), "png", file);
+        return file.getAbsolutePath();
+    }
+
+    @Test
+    public void testHitEMiss() {
+        CacheMiniature cache = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        ImageIcon prima = cache.getMiniatura(copertina1, 60, 75);
+        ImageIcon seconda = cache.getMiniatura(copertina1, 60, 75);
+
+        assertNotNull(prima);
+        assertSame(prima, seconda);
+        assertEquals(60, prima.getIconWidth());
+        assertEquals(75, prima.getIconHeight());
+        assertEquals(1, cache.getMiss());
+        assertEquals(1, cache.getHit());
+        assertEquals(60 * 75 * 4, cache.getByteOccupati());
+    }
+
+    @Test
+    public void testEvizioneLRU() {
+        // budget sufficiente per una sola miniatura
+        CacheMiniature cache = new CacheMiniature(60 * 75 * 4);
+        cache.getMiniatura(copertina1, 60, 75);
+        cache.getMiniatura(copertina2, 60, 75);
+
+        assertEquals(1, cache.getNumeroVoci());
+        assertEquals(1, cache.getEvizioni());
+
+        cache.getMiniatura(copertina2, 60, 75);
+        assertEquals(1, cache.getHit());
+    }
+
+    @Test
+    public void testImmagineMancante() {
+        CacheMiniature cache = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        assertNull(cache.getMiniatura(new File(cartella.getRoot(), "mancante.png").getAbsolutePath(), 60, 75));
+        assertNull(cache.getMiniatura(null, 60, 75));
+        assertEquals(0, cache.getNumeroVoci());
+    }
+
+    @Test
+    public void testSegnapostoCondiviso() {
+        CacheMiniature cache = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        ImageIcon segnaposto = cache.getSegnaposto(60, 75);
+        assertNotNull(segnaposto);
+        assertSame(segnaposto, cache.getSegnaposto(60, 75));
+    }
+
+    @Test
+    public void testMiniaturePersistenti() throws SQLException {
+        Connection connessione = DriverManager.getConnection("jdbc:sqlite::memory:");
+        RepositoryMiniatureSQLite archivio = new RepositoryMiniatureSQLite() {
+            @Override
+            protected Connection getConnection() {
+                return connessione;
+            }
+        };
+
+        CacheMiniature primoAvvio = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        primoAvvio.abilitaPersistenza(archivio, new Dimension(60, 75), new Dimension(120, 180));
+        assertNotNull(primoAvvio.getMiniatura(copertina1, 60, 75));
+        assertEquals(0, primoAvvio.getLetteDaArchivio());
+
+        // al riavvio sia la miniatura della tabella sia l'anteprima dei dialoghi sono già in archivio
+        CacheMiniature secondoAvvio = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        secondoAvvio.abilitaPersistenza(archivio, new Dimension(60, 75), new Dimension(120, 180));
+        ImageIcon miniatura = secondoAvvio.getMiniatura(copertina1, 60, 75);
+        ImageIcon anteprima = secondoAvvio.getMiniatura(copertina1, 120, 180);
+        assertEquals(60, miniatura.getIconWidth());
+        assertEquals(180, anteprima.getIconHeight());
+        assertEquals(2, secondoAvvio.getLetteDaArchivio());
+    }
+
+    @Test
+    public void testStessoContenutoCondiviso() throws IOException, SQLException {
+        File copia = cartella.newFile("copia.png");
+        Files.copy(new File(copertina1).toPath(), copia.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Connection connessione = DriverManager.getConnection("jdbc:sqlite::memory:");
+        RepositoryMiniatureSQLite archivio = new RepositoryMiniatureSQLite() {
+            @Override
+            protected Connection getConnection() {
+                return connessione;
+            }
+        };
+        CacheMiniature cache = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        cache.abilitaPersistenza(archivio);
+
+        cache.getMiniatura(copertina1, 60, 75);
+        cache.getMiniatura(copia.getAbsolutePath(), 60, 75);
+        assertEquals(1, cache.getLetteDaArchivio());
+    }
+
+    @Test
+    public void testLiberaMemoria() throws IOException {
+        String copertina3 = creaImmagine("copertina3.png", 200, 300);
+        // un'anteprima 120x180 e due miniature 60x75 occupano 122400 byte
+        CacheMiniature cache = new CacheMiniature(220_000);
+        cache.getMiniatura(copertina1, 120, 180);
+        cache.getMiniatura(copertina2, 60, 75);
+        cache.getMiniatura(copertina3, 60, 75);
+        cache.getMiniatura(copertina1, 120, 180);
+
+        // pressione moderata: si scende a metà del budget togliendo le voci meno usate di recente
+        cache.liberaMemoria(CacheMiniature.PRESSIONE_MODERATA);
+        assertTrue(cache.getByteOccupati() <= 110_000);
+        assertFalse(cache.contiene(copertina2, 60, 75));
+        assertTrue(cache.contiene(copertina1, 120, 180));
+
+        // pressione alta: l'anteprima resta a metà risoluzione, con la stessa dimensione sullo schermo
+        cache.liberaMemoria(CacheMiniature.PRESSIONE_ALTA);
+        assertTrue(cache.getByteOccupati() <= 55_000);
+        assertTrue(cache.contiene(copertina3, 60, 75));
+        ImageIcon ridotta = cache.trova(copertina1, 120, 180);
+        assertEquals(120, ridotta.getIconWidth());
+        assertEquals(180, ridotta.getIconHeight());
+        assertEquals(60, ridotta.getImage().getWidth(null));
+        assertEquals(2, cache.getLiberazioni());
+
+        // alla prossima richiesta l'anteprima viene riletta a piena risoluzione
+        assertEquals(120, cache.getMiniatura(copertina1, 120, 180).getImage().getWidth(null));
+        assertEquals(1, cache.getEvizioni());
+    }
+
+    @Test
+    public void testBudgetConfigurato() {
+        String precedente = System.getProperty(CacheMiniature.PROPRIETA_BUDGET);
+        try {
+            System.setProperty(CacheMiniature.PROPRIETA_BUDGET, "8");
+            assertEquals(Math.min(8L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4), CacheMiniature.budgetConfigurato());
+            System.setProperty(CacheMiniature.PROPRIETA_BUDGET, "tanti");
+            assertEquals(Math.min(CacheMiniature.BUDGET_PREDEFINITO, Runtime.getRuntime().maxMemory() / 4),
+                    CacheMiniature.budgetConfigurato());
+        } finally {
+            if (precedente == null) {
+                System.clearProperty(CacheMiniature.PROPRIETA_BUDGET);
+            } else {
+                System.setProperty(CacheMiniature.PROPRIETA_BUDGET, precedente);
+            }
+        }
+    }
+
+    @Test
+    public void testSorveglianteMemoria() {
+        CacheMiniature cache = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        SorveglianteMemoria sorvegliante = new SorveglianteMemoria(cache);
+        assertEquals(CacheMiniature.PRESSIONE_MODERATA, sorvegliante.segnala(1_000_000));
+        assertEquals(CacheMiniature.PRESSIONE_ALTA, sorvegliante.segnala(1_005_000));
+        assertEquals(CacheMiniature.PRESSIONE_MODERATA, sorvegliante.segnala(1_005_000 + SorveglianteMemoria.INTERVALLO_ESCALATION_MS));
+    }
+}
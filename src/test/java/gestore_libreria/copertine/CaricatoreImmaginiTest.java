@@ -0,0 +1,49 @@
+package gestore_libreria.copertine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class CaricatoreImmaginiTest {
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    @Test
+    public void testFattoreSottocampionamento() {
+        // l'immagine letta deve restare almeno doppia rispetto alla destinazione
+        assertEquals(33, CaricatoreImmagini.fattoreSottocampionamento(4000, 6000, 60, 75));
+        assertEquals(16, CaricatoreImmagini.fattoreSottocampionamento(4000, 6000, 120, 180));
+        assertEquals(1, CaricatoreImmagini.fattoreSottocampionamento(200, 300, 120, 180));
+        assertEquals(1, CaricatoreImmagini.fattoreSottocampionamento(30, 40, 60, 75));
+    }
+
+    @Test
+    public void testCaricaSottocampionata() throws IOException {
+        File file = cartella.newFile("scansione.png");
+        ImageIO.write(new BufferedImage(1200, 1800, BufferedImage.TYPE_INT_RGB), "png", file);
+
+        BufferedImage letta = CaricatoreImmagini.carica(file.getAbsolutePath(), 60, 75);
+        assertNotNull(letta);
+        assertTrue(letta.getWidth() >= 120 && letta.getHeight() >= 150);
+        assertTrue(letta.getWidth() < 1200);
+
+        BufferedImage miniatura = CaricatoreImmagini.caricaScalata(file.getAbsolutePath(), 60, 75);
+        assertEquals(60, miniatura.getWidth());
+        assertEquals(75, miniatura.getHeight());
+    }
+
+    @Test
+    public void testFileNonImmagine() throws IOException {
+        File file = cartella.newFile("note.txt");
+        assertNull(CaricatoreImmagini.caricaScalata(file.getAbsolutePath(), 60, 75));
+        assertNull(CaricatoreImmagini.caricaScalata(null, 60, 75));
+    }
+}
@@ -0,0 +1,66 @@
+package gestore_libreria.copertine;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DecodificatoreCopertineTest {
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    private CacheMiniature cache;
+    private String copertina;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        File file = cartella.newFile("copertina.png");
+        ImageIO.write(new BufferedImage(300, 450, BufferedImage.TYPE_INT_RGB), "png", file);
+        copertina = file.getAbsolutePath();
+    }
+
+    @Test
+    public void testDecodificaInBackground() throws InterruptedException {
+        CountDownLatch pronta = new CountDownLatch(1);
+        DecodificatoreCopertine decodificatore = new DecodificatoreCopertine(cache, new ValidatoreCopertine(cache), percorso -> {
+            assertEquals(copertina, percorso);
+            pronta.countDown();
+        });
+
+        assertNull(cache.trova(copertina, 60, 75));
+        decodificatore.richiedi(copertina, 60, 75, 0, DecodificatoreCopertine.PRIORITA_VISIBILE);
+
+        assertTrue(pronta.await(5, TimeUnit.SECONDS));
+        assertNotNull(cache.trova(copertina, 60, 75));
+        assertEquals(1, decodificatore.getDecodificate());
+    }
+
+    @Test
+    public void testCopertinaNonLeggibileNonRitentata() throws InterruptedException {
+        String mancante = new File(cartella.getRoot(), "mancante.png").getAbsolutePath();
+        DecodificatoreCopertine decodificatore = new DecodificatoreCopertine(cache, new ValidatoreCopertine(cache), percorso -> fail());
+
+        decodificatore.richiedi(mancante, 60, 75, 0, DecodificatoreCopertine.PRIORITA_VISIBILE);
+        long scadenza = System.currentTimeMillis() + 5_000;
+        while (cache.getMiss() == 0 && System.currentTimeMillis() < scadenza) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        decodificatore.richiedi(mancante, 60, 75, 0, DecodificatoreCopertine.PRIORITA_VISIBILE);
+        Thread.sleep(100);
+
+        assertEquals(1, cache.getMiss());
+        assertEquals(0, decodificatore.getDecodificate());
+    }
+}
@@ -0,0 +1,102 @@
+package gestore_libreria.copertine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class ValidatoreCopertineTest {
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    private ValidatoreCopertine validatore;
+    private String valida;
+    private String mancante;
+    private String danneggiata;
+
+    @Before
+    public void setUp() throws IOException {
+        validatore = new ValidatoreCopertine(new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO));
+        File file = cartella.newFile("valida.png");
+        ImageIO.write(new BufferedImage(40, 60, BufferedImage.TYPE_INT_RGB), "png", file);
+        valida = file.getAbsolutePath();
+        mancante = new File(cartella.getRoot(), "mancante.png").getAbsolutePath();
+        File rotta = cartella.newFile("danneggiata.png");
+        Files.writeString(rotta.toPath(), "non è un'immagine");
+        danneggiata = rotta.getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() {
+        validatore.ferma();
+    }
+
+    @Test
+    public void testValida() {
+        validatore.valida(List.of(valida, mancante, danneggiata, CaricatoreImmagini.PERCORSO_SEGNAPOSTO));
+
+        assertFalse(validatore.isNonValido(valida));
+        assertTrue(validatore.isNonValido(mancante));
+        assertTrue(validatore.isNonValido(danneggiata));
+        assertFalse(validatore.isNonValido(CaricatoreImmagini.PERCORSO_SEGNAPOSTO));
+        assertFalse(validatore.isNonValido(null));
+        assertEquals(2, validatore.getNumeroNonValidi());
+    }
+
+    @Test
+    public void testAzzera() {
+        validatore.valida(List.of(valida, mancante, danneggiata));
+        validatore.azzera();
+
+        assertFalse(validatore.isNonValido(mancante));
+        assertFalse(validatore.isNonValido(danneggiata));
+        assertEquals(0, validatore.getNumeroNonValidi());
+    }
+
+    @Test
+    public void testCopertinaCreataDopoLaVerifica() throws IOException, InterruptedException {
+        validatore.avviaOsservazione();
+        validatore.valida(List.of(valida, mancante));
+        assertTrue(validatore.isNonValido(mancante));
+        assertEquals(1, validatore.getNumeroCartelleOsservate());
+
+        ImageIO.write(new BufferedImage(40, 60, BufferedImage.TYPE_INT_RGB), "png", new File(mancante));
+        assertTrue(attendi(() -> !validatore.isNonValido(mancante)));
+    }
+
+    @Test
+    public void testCopertinaEliminata() throws InterruptedException {
+        CacheMiniature cache = new CacheMiniature(CacheMiniature.BUDGET_PREDEFINITO);
+        validatore = new ValidatoreCopertine(cache);
+        validatore.avviaOsservazione();
+        validatore.valida(List.of(valida));
+        assertNotNull(cache.getMiniatura(valida, 60, 75));
+
+        assertTrue(new File(valida).delete());
+        assertTrue(attendi(() -> validatore.isNonValido(valida)));
+        assertNull(cache.trova(valida, 60, 75));
+    }
+
+    private static boolean attendi(BooleanSupplier condizione) throws InterruptedException {
+        long scadenza = System.currentTimeMillis() + 10_000;
+        while (!condizione.getAsBoolean()) {
+            if (System.currentTimeMillis() > scadenza) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package gestore_libreria.db;
+
+import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.model.Libro;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Confronta filtro e ordinamento sequenziali e paralleli di {@link ElaborazioneParallela} su liste di dimensione
+ * crescente, per trovare la dimensione da cui il parallelo conviene sulla macchina corrente e scegliere
+ * {@link ElaborazioneParallela#PROPRIETA_SOGLIA}.
+ * Non è un test: si esegue a mano dalla IDE o con {@code java -cp target/classes:target/test-classes},
+ * indicando eventualmente il numero di thread come primo argomento (predefinito: i core disponibili).
+ */
+public class BenchmarkElaborazioneParallela {
+
+    private static final int[] DIMENSIONI = {1_000, 5_000, 10_000, 20_000, 50_000, 100_000, 500_000};
+    private static final long DURATA_MISURA_NS = 500_000_000L;
+
+    public static void main(String[] args) {
+        int thread = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(thread);
+        ElaborazioneParallela sequenziale = new ElaborazioneParallela(Integer.MAX_VALUE, pool);
+        ElaborazioneParallela parallela = new ElaborazioneParallela(0, pool);
+        Predicate<Libro> filtro = InterrogazioneViva.contiene(Libro::getTitolo, "rosa");
+        Comparator<Libro> ordine = CriterioOrdinamento.TITOLO_ASC.getComparatore();
+
+        System.out.printf("%d thread%n", thread);
+        System.out.printf("%10s %14s %14s %8s %14s %14s %8s%n",
+                "libri", "filtro seq", "filtro par", "x", "ordina seq", "ordina par", "x");
+        for (int dimensione : DIMENSIONI) {
+            List<Libro> libri = catalogo(dimensione);
+            // le chiavi di ordinamento si calcolano al primo confronto: le preparo per misurare solo l'ordinamento
+            sequenziale.ordina(libri, ordine);
+
+            double filtroSequenziale = misura(() -> sequenziale.filtra(libri, filtro));
+            double filtroParallelo = misura(() -> parallela.filtra(libri, filtro));
+            double ordinaSequenziale = misura(() -> sequenziale.ordinaIndici(libri, ordine));
+            double ordinaParallelo = misura(() -> parallela.ordinaIndici(libri, ordine));
+            System.out.printf("%10d %11.3f ms %11.3f ms %7.2fx %11.3f ms %11.3f ms %7.2fx%n", dimensione,
+                    filtroSequenziale, filtroParallelo, filtroSequenziale / filtroParallelo,
+                    ordinaSequenziale, ordinaParallelo, ordinaSequenziale / ordinaParallelo);
+        }
+        pool.shutdown();
+    }
+
+    private static List<Libro> catalogo(int dimensione) {
+        Random casuale = new Random(dimensione);
+        String[] parole = {"rosa", "nome", "pendolo", "città", "notte", "mare", "èra", "isola", "vento", "lupo"};
+        List<Libro> libri = new ArrayList<>(dimensione);
+        for (int i = 0; i < dimensione; i++) {
+            String titolo = parole[casuale.nextInt(parole.length)] + " " + parole[casuale.nextInt(parole.length)] + " " + i;
+            libri.add(new Libro.Costruttore(titolo, "Autore " + casuale.nextInt(1_000))
+                    .id(i + 1)
+                    .valutazione(casuale.nextInt(6))
+                    .build());
+        }
+        return libri;
+    }
+
+    // tempo medio di un'esecuzione in millisecondi, dopo un riscaldamento
+    private static double misura(Supplier<?> operazione) {
+        for (int i = 0; i < 5; i++) {
+            operazione.get();
+        }
+        int ripetizioni = 0;
+        long inizio = System.nanoTime();
+        long trascorso;
+        do {
+            operazione.get();
+            ripetizioni++;
+            trascorso = System.nanoTime() - inizio;
+        } while (trascorso < DURATA_MISURA_NS);
+        return trascorso / 1e6 / ripetizioni;
+    }
+}
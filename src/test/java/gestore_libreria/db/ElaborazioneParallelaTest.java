@@ -0,0 +1,83 @@
+package gestore_libreria.db;
+
+import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.model.Libro;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class ElaborazioneParallelaTest {
+
+    private static ForkJoinPool pool;
+    private static List<Libro> libri;
+
+    @BeforeClass
+    public static void setUp() {
+        pool = new ForkJoinPool(4);
+        Random casuale = new Random(42);
+        libri = new ArrayList<>();
+        for (int i = 0; i < 30_000; i++) {
+            libri.add(new Libro.Costruttore("Titolo " + casuale.nextInt(5_000), "Autore " + casuale.nextInt(300))
+                    .id(i + 1)
+                    .valutazione(casuale.nextInt(6))
+                    .statoLettura(i % 3 == 0 ? "letto" : "da leggere")
+                    .build());
+        }
+    }
+
+    @AfterClass
+    public static void chiudiPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFiltroComeSequenziale() {
+        Predicate<Libro> filtro = libro -> libro.getValutazione() >= 4 && libro.getStatoLettura().equals("letto");
+        List<Libro> attesi = libri.stream().filter(filtro).toList();
+
+        assertEquals(attesi, new ElaborazioneParallela(0, pool).filtra(libri, filtro));
+        assertEquals(attesi, new ElaborazioneParallela(Integer.MAX_VALUE, pool).filtra(libri, filtro));
+        assertTrue(new ElaborazioneParallela(0, pool).filtra(libri, libro -> false).isEmpty());
+    }
+
+    @Test
+    public void testOrdinamentoComeSequenziale() {
+        ElaborazioneParallela parallela = new ElaborazioneParallela(0, pool);
+        for (CriterioOrdinamento criterio : CriterioOrdinamento.values()) {
+            List<Libro> attesi = new ArrayList<>(libri);
+            attesi.sort(criterio.getComparatore());
+            assertEquals(criterio.name(), attesi, parallela.ordina(libri, criterio.getComparatore()));
+        }
+    }
+
+    @Test
+    public void testOrdinamentoStabile() {
+        // solo la valutazione: moltissimi libri a parità, che devono restare nell'ordine di partenza
+        Comparator<Libro> perValutazione = Comparator.comparingInt(Libro::getValutazione);
+        List<Libro> attesi = new ArrayList<>(libri);
+        attesi.sort(perValutazione);
+
+        assertEquals(attesi, new ElaborazioneParallela(0, pool).ordina(libri, perValutazione));
+        assertEquals(attesi, new ElaborazioneParallela(Integer.MAX_VALUE, pool).ordina(libri, perValutazione));
+    }
+
+    @Test
+    public void testListeCorte() {
+        ElaborazioneParallela parallela = new ElaborazioneParallela(0, pool);
+        assertArrayEquals(new int[0], parallela.ordinaIndici(List.of(), Comparator.comparingInt(Libro::getId)));
+        List<Libro> tre = List.of(
+                new Libro.Costruttore("C", "Autore").id(3).build(),
+                new Libro.Costruttore("A", "Autore").id(1).build(),
+                new Libro.Costruttore("B", "Autore").id(2).build());
+        assertArrayEquals(new int[]{1, 2, 0}, parallela.ordinaIndici(tre, Comparator.comparingInt(Libro::getId)));
+    }
+}
@@ -1,16 +1,27 @@
 package gestore_libreria.db;
 
+import gestore_libreria.memento.MementoLibro;
+import gestore_libreria.model.CampoLibro;
 import gestore_libreria.model.Libro;
 import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.observer.EventoLibro;
+import gestore_libreria.observer.OsservatoreLibro;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -19,6 +30,9 @@ public class GestoreLibroTest {
     private Libro testBook1;
     private Libro testBook2;
     private Connection testConnection;
+    //modifiche eseguite subito prima e subito dopo la prossima lettura di tutti i libri
+    private Runnable primaDellaLettura;
+    private Runnable dopoLaLettura;
 
     //classe interna per istanziare un repository di test e un collegamento di test
     private class TestSQLiteBookRepository extends RepositoryLibroSQLite {
@@ -26,6 +40,22 @@ public class GestoreLibroTest {
         protected Connection getConnection() throws SQLException{
             return testConnection;
         }
+
+        @Override
+        public List<Libro> loadAll(CriterioOrdinamento criteria) {
+            Runnable prima = primaDellaLettura;
+            Runnable dopo = dopoLaLettura;
+            primaDellaLettura = null;
+            dopoLaLettura = null;
+            if (prima != null) {
+                prima.run();
+            }
+            List<Libro> libri = super.loadAll(criteria);
+            if (dopo != null) {
+                dopo.run();
+            }
+            return libri;
+        }
     }
 
     @Before
@@ -168,4 +198,368 @@ public class GestoreLibroTest {
         List<Libro> filteredBook = manager.filtraLibroPerStatoLettura("LETTO",CriterioOrdinamento.NESSUNO);
         assertEquals(allBooks.get(0).getStatoLettura(), filteredBook.get(0).getStatoLettura());
     }
+
+    @Test
+    public void testSostituisciPercorsiCopertine() throws SQLException{
+        manager.aggiungiLibro(new Libro.Costruttore("Il Nome della Rosa", "Umberto Eco")
+                .percorsoCopertina("/media/usb/rosa.jpg").build());
+        manager.aggiungiLibro(new Libro.Costruttore("Il pendolo di Foucault", "Umberto Eco")
+                .percorsoCopertina("/media/usb/rosa.jpg").build());
+
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        assertEquals(List.of("/media/usb/rosa.jpg"), concreto.getPercorsiCopertine());
+        List<Libro[]> aggiornati = new ArrayList<>();
+        concreto.aggiungiOnMutazioneListener(new GestoreLibroConcreto.OnMutazioneListener() {
+            @Override
+            public void libroAggiunto(Libro libro) {
+                fail();
+            }
+
+            @Override
+            public void libroAggiornato(Libro precedente, Libro nuovo) {
+                aggiornati.add(new Libro[]{precedente, nuovo});
+            }
+
+            @Override
+            public void libroRimosso(Libro libro) {
+                fail();
+            }
+        });
+        concreto.sostituisciPercorsiCopertine(Map.of("/media/usb/rosa.jpg", "copertine/abc.jpg"));
+
+        for (Libro libro : manager.getTuttiLibri(CriterioOrdinamento.NESSUNO)) {
+            assertEquals("copertine/abc.jpg", libro.getPercorsoCopertina());
+        }
+        // i listener delle mutazioni ricevono ogni libro coinvolto, come per le altre modifiche
+        assertEquals(2, aggiornati.size());
+        for (Libro[] coppia : aggiornati) {
+            assertEquals(coppia[0].getId(), coppia[1].getId());
+            assertEquals("/media/usb/rosa.jpg", coppia[0].getPercorsoCopertina());
+            assertEquals("copertine/abc.jpg", coppia[1].getPercorsoCopertina());
+            assertEquals(coppia[0].getTitolo(), coppia[1].getTitolo());
+        }
+    }
+
+    @Test
+    public void testComparatoreComeRepository() throws SQLException{
+        manager.aggiungiLibro(new Libro.Costruttore("il Gattopardo", "Tomasi di Lampedusa").valutazione(4).build());
+        manager.aggiungiLibro(new Libro.Costruttore("Il Nome della Rosa", "Umberto Eco").valutazione(5).build());
+        manager.aggiungiLibro(new Libro.Costruttore("Baudolino", "Umberto Eco").valutazione(4).build());
+        manager.aggiungiLibro(new Libro.Costruttore("Baudolino", "umberto eco").valutazione(3).build());
+
+        for (CriterioOrdinamento criterio : CriterioOrdinamento.values()) {
+            List<Libro> dalDatabase = manager.getTuttiLibri(criterio);
+            List<Libro> inMemoria = new ArrayList<>(manager.getTuttiLibri(CriterioOrdinamento.NESSUNO));
+            inMemoria.sort(criterio.getComparatore());
+            assertEquals(criterio.name(), dalDatabase.stream().map(Libro::getId).toList(),
+                    inMemoria.stream().map(Libro::getId).toList());
+        }
+    }
+
+    @Test
+    public void testOrdinamentoConChiavi() throws SQLException{
+        manager.aggiungiLibro(new Libro.Costruttore("Zanna Bianca", "Jack London").build());
+        manager.aggiungiLibro(new Libro.Costruttore("Èra glaciale", "Anonimo").build());
+        manager.aggiungiLibro(new Libro.Costruttore("Il barone rampante", "Italo Calvino").build());
+        manager.aggiungiLibro(new Libro.Costruttore("L'amica geniale", "Elena Ferrante").build());
+
+        // gli accenti non finiscono dopo la "z" e l'articolo iniziale non conta
+        assertEquals(List.of("L'amica geniale", "Il barone rampante", "Èra glaciale", "Zanna Bianca"),
+                manager.getTuttiLibri(CriterioOrdinamento.TITOLO_ASC).stream().map(Libro::getTitolo).toList());
+
+        // la tabella del test non aveva le colonne: il repository le ha aggiunte e l'ordinamento usa l'indice
+        ResultSet piano = testConnection.createStatement()
+                .executeQuery("EXPLAIN QUERY PLAN SELECT * FROM books ORDER BY title_sort ASC, id");
+        StringBuilder dettagli = new StringBuilder();
+        while (piano.next()) {
+            dettagli.append(piano.getString("detail"));
+        }
+        assertTrue(dettagli.toString(), dettagli.toString().contains("books_title_sort"));
+    }
+
+    @Test
+    public void testEventiOsservatori() throws SQLException{
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        List<EventoLibro> eventi = new ArrayList<>();
+        concreto.aggiungi(new OsservatoreLibro() {
+            @Override
+            public void aggiorna() {
+                fail("le modifiche ai singoli libri devono arrivare come eventi");
+            }
+
+            @Override
+            public void aggiorna(EventoLibro evento) {
+                eventi.add(evento);
+            }
+        });
+
+        manager.aggiungiLibro(testBook1);
+        Libro modificato = new Libro.Costruttore("Il nome della rosa", "Umberto Eco").id(testBook1.getId()).build();
+        manager.aggiornaLibro(testBook1, modificato);
+        manager.eliminaLibro(modificato);
+        concreto.getHistoryManager().annulla();
+
+        assertEquals(List.of(EventoLibro.Tipo.ADDED, EventoLibro.Tipo.UPDATED, EventoLibro.Tipo.REMOVED, EventoLibro.Tipo.ADDED),
+                eventi.stream().map(EventoLibro::getTipo).toList());
+        assertSame(testBook1, eventi.get(1).getPrecedente());
+        assertSame(modificato, eventi.get(1).getLibro());
+        // l'undo della rimozione reinserisce il libro: l'evento riporta l'id assegnato dal database
+        assertEquals(manager.getTuttiLibri(CriterioOrdinamento.NESSUNO).get(0).getId(), eventi.get(3).getId());
+    }
+
+    @Test
+    public void testUndoAggiornamentoParziale() throws SQLException{
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        manager.aggiungiLibro(testBook1);
+        Libro originale = manager.getTuttiLibri(CriterioOrdinamento.NESSUNO).get(0);
+        Libro modificato = new Libro.Costruttore(originale.getTitolo(), originale.getAutore())
+                .id(originale.getId())
+                .isbn(originale.getIsbn())
+                .genere(originale.getGenere())
+                .valutazione(3)
+                .statoLettura(originale.getStatoLettura())
+                .percorsoCopertina(originale.getPercorsoCopertina())
+                .build();
+        manager.aggiornaLibro(originale, modificato);
+
+        // una modifica fatta fuori dalla cronologia su un altro campo sopravvive all'undo
+        testConnection.createStatement().executeUpdate("UPDATE books SET genre = 'Giallo' WHERE id = " + originale.getId());
+        List<EventoLibro> eventi = new ArrayList<>();
+        concreto.aggiungi(new OsservatoreLibro() {
+            @Override
+            public void aggiorna() {
+            }
+
+            @Override
+            public void aggiorna(EventoLibro evento) {
+                eventi.add(evento);
+            }
+        });
+
+        concreto.getHistoryManager().annulla();
+        Libro annullato = manager.getTuttiLibri(CriterioOrdinamento.NESSUNO).get(0);
+        assertEquals(5, annullato.getValutazione());
+        assertEquals("Giallo", annullato.getGenere());
+        assertEquals(3, eventi.get(0).getPrecedente().getValutazione());
+        assertEquals(5, eventi.get(0).getLibro().getValutazione());
+
+        concreto.getHistoryManager().ripeti();
+        assertEquals(3, manager.getTuttiLibri(CriterioOrdinamento.NESSUNO).get(0).getValutazione());
+
+        // se il libro non esiste più il ripristino viene ignorato
+        testConnection.createStatement().executeUpdate("DELETE FROM books");
+        concreto.getHistoryManager().annulla();
+        assertEquals(0, manager.getTuttiLibri(CriterioOrdinamento.NESSUNO).size());
+    }
+
+    @Test
+    public void testGruppoAnnullatoInUnPasso() throws SQLException{
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        List<EventoLibro> eventi = new ArrayList<>();
+        concreto.aggiungi(new OsservatoreLibro() {
+            @Override
+            public void aggiorna() {
+            }
+
+            @Override
+            public void aggiorna(EventoLibro evento) {
+                eventi.add(evento);
+            }
+        });
+        List<Libro> libri = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            libri.add(new Libro.Costruttore("Libro " + i, "Autore " + (i % 10)).valutazione(i % 5).build());
+        }
+        concreto.aggiungiLibri(libri);
+        assertTrue(libri.get(999).getId() > 0);
+
+        List<Libro> valutati = new ArrayList<>();
+        for (Libro libro : libri) {
+            valutati.add(new Libro.Costruttore(libro.getTitolo(), libro.getAutore()).id(libro.getId()).valutazione(5).build());
+        }
+        concreto.aggiornaLibri(libri, valutati);
+        concreto.eliminaLibri(valutati.subList(0, 400));
+        assertEquals(600, concreto.contaLibri());
+        assertEquals(3, concreto.getHistoryManager().getProfonditaAnnulla());
+
+        // ogni operazione sui 1000 libri si annulla con un solo passo e una sola notifica
+        concreto.getHistoryManager().annulla();
+        assertEquals(1000, concreto.contaLibri());
+        concreto.getHistoryManager().annulla();
+        assertEquals(200, manager.filtraLibroPerValutazione(0, CriterioOrdinamento.NESSUNO).size());
+        concreto.getHistoryManager().annulla();
+        assertEquals(0, concreto.contaLibri());
+        concreto.getHistoryManager().ripeti();
+        assertEquals(1000, concreto.contaLibri());
+
+        assertEquals(7, eventi.size());
+        assertTrue(eventi.stream().allMatch(evento -> evento.getTipo() == EventoLibro.Tipo.BULK));
+    }
+
+    @Test
+    public void testOperazioniInBloccoAtomiche() throws SQLException{
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        List<EventoLibro> eventi = new ArrayList<>();
+        List<String> transazioni = new ArrayList<>();
+        concreto.aggiungi(new OsservatoreLibro() {
+            @Override
+            public void aggiorna() {
+            }
+
+            @Override
+            public void aggiorna(EventoLibro evento) {
+                eventi.add(evento);
+                transazioni.add(evento.getTipo().name());
+            }
+
+            @Override
+            public void inizioTransazione() {
+                transazioni.add("inizio");
+            }
+
+            @Override
+            public void fineTransazione() {
+                transazioni.add("fine");
+            }
+        });
+        testConnection.createStatement().execute("""
+                CREATE TRIGGER rifiuta BEFORE INSERT ON books WHEN NEW.title = 'Rifiutato'
+                BEGIN SELECT RAISE(ABORT, 'libro rifiutato'); END
+                """);
+
+        // un inserimento fallito annulla anche i libri già scritti e non lascia id, cronologia o notifiche
+        Libro accettato = new Libro.Costruttore("Accettato", "Autore").build();
+        try {
+            concreto.aggiungiLibri(List.of(accettato, new Libro.Costruttore("Rifiutato", "Autore").build()));
+            fail();
+        } catch (ErroreDatabase e) {
+            // atteso
+        }
+        assertEquals(0, concreto.contaLibri());
+        assertEquals(0, accettato.getId());
+        assertFalse(concreto.getHistoryManager().puoAnnullare());
+        assertTrue(eventi.isEmpty());
+        // la transazione degli Observer si chiude anche quando l'operazione fallisce
+        assertEquals(List.of("inizio", "fine"), transazioni);
+
+        // l'undo di un gruppo si ferma al primo blocco fallito e annulla anche i blocchi precedenti
+        concreto.aggiungiLibri(List.of(testBook1, testBook2));
+        Libro rinominato = new Libro.Costruttore("Il nome della rosa", testBook1.getAutore()).id(testBook1.getId()).build();
+        concreto.getHistoryManager().apriGruppo();
+        concreto.aggiornaLibro(testBook1, rinominato);
+        concreto.eliminaLibro(testBook2);
+        concreto.getHistoryManager().chiudiGruppo();
+        testConnection.createStatement().executeUpdate(
+                "INSERT INTO books (id, title, author, readingState) VALUES (" + testBook2.getId() + ", 'Occupa', 'Id', 'letto')");
+        eventi.clear();
+        try {
+            concreto.getHistoryManager().annulla();
+            fail();
+        } catch (ErroreDatabase e) {
+            // atteso
+        }
+        assertEquals("Il nome della rosa", manager.getTuttiLibri(CriterioOrdinamento.NESSUNO).stream()
+                .filter(libro -> libro.getId() == testBook1.getId()).findFirst().orElseThrow().getTitolo());
+        assertTrue(eventi.isEmpty());
+        assertTrue(testConnection.getAutoCommit());
+
+        // liberato l'id, lo stesso passo si annulla per intero
+        testConnection.createStatement().executeUpdate("DELETE FROM books WHERE title = 'Occupa'");
+        transazioni.clear();
+        concreto.getHistoryManager().annulla();
+        assertEquals(List.of("inizio", "BULK", "fine"), transazioni);
+        assertEquals(2, concreto.contaLibri());
+        assertEquals(1, manager.trovaLibroPerTitolo("Il Nome della Rosa", CriterioOrdinamento.NESSUNO).size());
+    }
+
+    @Test
+    public void testModificheDuranteCostruzioneIndici() throws Exception{
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        manager.aggiungiLibro(testBook1);
+        Libro aggiuntoPrima = new Libro.Costruttore("Baudolino", "Umberto Eco").build();
+        Libro rinominato = new Libro.Costruttore("Il pendolo di Foucault", testBook1.getAutore()).id(testBook1.getId()).build();
+        // la prima modifica è già nella lettura, la seconda arriva dopo: nessuna deve essere persa o contata due volte
+        primaDellaLettura = () -> manager.aggiungiLibro(aggiuntoPrima);
+        dopoLaLettura = () -> manager.aggiornaLibro(testBook1, rinominato);
+
+        assertFalse(concreto.isIndiciRicercaPronti());
+        // i suggerimenti non costruiscono gli indici: finché non sono pronti non ce ne sono
+        assertTrue(concreto.suggerisci("Titolo", "il", 5).isEmpty());
+        assertFalse(concreto.isIndiciRicercaPronti());
+        concreto.preparaIndiciRicerca();
+        assertTrue(concreto.isIndiciRicercaPronti());
+        assertEquals(List.of("Il pendolo di Foucault"), concreto.suggerisci("Titolo", "il", 5));
+        assertEquals("Il pendolo di Foucault", concreto.cercaApprossimataPerTitolo("pendolo", 1).get(0).getTitolo());
+
+        manager.eliminaLibro(aggiuntoPrima);
+        assertEquals(List.of(), concreto.suggerisci("Titolo", "baud", 5));
+        assertEquals(List.of("Umberto Eco"), concreto.suggerisci("Autore", "umb", 5));
+    }
+
+    @Test
+    public void testConteggiNonAttendonoGliIndici() throws Exception{
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        manager.aggiungiLibro(testBook1);
+        CountDownLatch inCostruzione = new CountDownLatch(1);
+        CountDownLatch sblocca = new CountDownLatch(1);
+        dopoLaLettura = () -> {
+            inCostruzione.countDown();
+            try {
+                sblocca.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Thread preparazione = new Thread(concreto::preparaIndiciRicerca);
+        preparazione.start();
+        assertTrue(inCostruzione.await(5, TimeUnit.SECONDS));
+
+        ExecutorService esecutore = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(1, (int) esecutore.submit(() -> concreto.getContatoreFacet().getTotale()).get(5, TimeUnit.SECONDS));
+        } finally {
+            sblocca.countDown();
+            esecutore.shutdown();
+        }
+        preparazione.join();
+    }
+
+    @Test
+    public void testImpostaCampoSuPiuLibri() throws SQLException{
+        GestoreLibroConcreto concreto = (GestoreLibroConcreto) manager;
+        List<Libro> libri = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            libri.add(new Libro.Costruttore("Libro " + i, "Autore").statoLettura(i < 4 ? "letto" : "da leggere").build());
+        }
+        concreto.aggiungiLibri(libri);
+        List<EventoLibro> eventi = new ArrayList<>();
+        concreto.aggiungi(new OsservatoreLibro() {
+            @Override
+            public void aggiorna() {
+            }
+
+            @Override
+            public void aggiorna(EventoLibro evento) {
+                eventi.add(evento);
+            }
+        });
+        List<Integer> ids = new ArrayList<>();
+        for (Libro libro : libri) {
+            ids.add(libro.getId());
+        }
+
+        concreto.impostaCampo(ids, CampoLibro.STATO_LETTURA, "letto");
+        assertEquals(10, manager.filtraLibroPerStatoLettura("letto", CriterioOrdinamento.NESSUNO).size());
+        assertEquals(1, eventi.size());
+        assertEquals(EventoLibro.Tipo.BULK, eventi.get(0).getTipo());
+        // i quattro libri già letti non fanno parte del passo annullabile
+        MementoLibro gruppo = concreto.getHistoryManager().annulla();
+        assertEquals(6, gruppo.getParti().size());
+
+        concreto.getHistoryManager().ripeti();
+        concreto.impostaCampo(ids, CampoLibro.STATO_LETTURA, "letto");
+        // riapplicato agli stessi libri non cambia nulla: nessun evento e nessun passo in più
+        assertEquals(3, eventi.size());
+        assertEquals(2, concreto.getHistoryManager().getProfonditaAnnulla());
+    }
 }
@@ -0,0 +1,193 @@
+package gestore_libreria.db;
+
+import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.model.Libro;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InterrogazioneVivaTest {
+    private GestoreLibroConcreto manager;
+    private Connection testConnection;
+    private int query;
+
+    //classe interna per istanziare un repository di test e un collegamento di test
+    private class TestSQLiteBookRepository extends RepositoryLibroSQLite {
+        @Override
+        protected Connection getConnection() throws SQLException{
+            return testConnection;
+        }
+
+        @Override
+        public List<Libro> findByRating(int rating, CriterioOrdinamento criteria) {
+            query++;
+            return super.findByRating(rating, criteria);
+        }
+    }
+
+    // registra le variazioni ricevute come "+indice", "~indice", "-indice" e "*" per il riordino
+    private static class TestRighe implements InterrogazioneViva.OnRisultatiCambiati {
+        private final List<String> variazioni = new ArrayList<>();
+
+        @Override
+        public void rigaInserita(int indice) {
+            variazioni.add("+" + indice);
+        }
+
+        @Override
+        public void rigaAggiornata(int indice) {
+            variazioni.add("~" + indice);
+        }
+
+        @Override
+        public void rigaRimossa(int indice) {
+            variazioni.add("-" + indice);
+        }
+
+        @Override
+        public void risultatiRiordinati() {
+            variazioni.add("*");
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        testConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        manager = new GestoreLibroConcreto(new TestSQLiteBookRepository());
+        manager.aggiungiLibro(libro("Il Nome della Rosa", 5));
+        manager.aggiungiLibro(libro("Baudolino", 4));
+        manager.aggiungiLibro(libro("Il pendolo di Foucault", 5));
+    }
+
+    @After
+    public void closeConnection() throws SQLException {
+        testConnection.close();
+    }
+
+    private static Libro libro(String titolo, int valutazione) {
+        return new Libro.Costruttore(titolo, "Umberto Eco").valutazione(valutazione).statoLettura("LETTO").build();
+    }
+
+    private static List<String> titoli(InterrogazioneViva interrogazione) {
+        return interrogazione.getRisultati().stream().map(Libro::getTitolo).toList();
+    }
+
+    @Test
+    public void testFiltroAggiornato() {
+        InterrogazioneViva cinqueStelle = manager.sottoscrivi(libro -> libro.getValutazione() == 5,
+                CriterioOrdinamento.TITOLO_ASC, manager.filtraLibroPerValutazione(5, CriterioOrdinamento.TITOLO_ASC));
+        TestRighe righe = new TestRighe();
+        cinqueStelle.setOnRisultatiCambiati(righe);
+        assertEquals(List.of("Il Nome della Rosa", "Il pendolo di Foucault"), titoli(cinqueStelle));
+
+        // un libro che rispetta il filtro entra nella posizione ordinata, gli altri vengono ignorati
+        manager.aggiungiLibro(libro("Il cimitero di Praga", 5));
+        manager.aggiungiLibro(libro("Numero zero", 3));
+        assertEquals(List.of("Il cimitero di Praga", "Il Nome della Rosa", "Il pendolo di Foucault"), titoli(cinqueStelle));
+
+        // una modifica che fa uscire il libro dal filtro lo rimuove, una che lo fa entrare lo inserisce
+        Libro baudolino = manager.getTuttiLibri(CriterioOrdinamento.TITOLO_ASC).get(0);
+        Libro rosa = cinqueStelle.getRisultati().get(1);
+        Libro rosaTre = new Libro.Costruttore(rosa.getTitolo(), rosa.getAutore()).id(rosa.getId()).valutazione(3).build();
+        manager.aggiornaLibro(rosa, rosaTre);
+        Libro baudolinoCinque = new Libro.Costruttore("Baudolino", "Umberto Eco").id(baudolino.getId()).valutazione(5).build();
+        manager.aggiornaLibro(baudolino, baudolinoCinque);
+        assertEquals(List.of("Baudolino", "Il cimitero di Praga", "Il pendolo di Foucault"), titoli(cinqueStelle));
+
+        // l'undo riporta il libro nel filtro
+        manager.getHistoryManager().annulla();
+        manager.getHistoryManager().annulla();
+        assertEquals(List.of("Il cimitero di Praga", "Il Nome della Rosa", "Il pendolo di Foucault"), titoli(cinqueStelle));
+
+        assertEquals(List.of("+0", "-1", "+0", "-0", "+1"), righe.variazioni);
+        // nessuna query dopo quella della sottoscrizione
+        assertEquals(1, query);
+    }
+
+    @Test
+    public void testModificaSpostaRiga() {
+        InterrogazioneViva tutti = manager.sottoscrivi(libro -> true, CriterioOrdinamento.TITOLO_ASC,
+                manager.getTuttiLibri(CriterioOrdinamento.TITOLO_ASC));
+        TestRighe righe = new TestRighe();
+        tutti.setOnRisultatiCambiati(righe);
+
+        Libro baudolino = tutti.getRisultati().get(0);
+        manager.aggiornaLibro(baudolino, new Libro.Costruttore("Baudolino", "U. Eco").id(baudolino.getId()).build());
+        manager.aggiornaLibro(tutti.getRisultati().get(0),
+                new Libro.Costruttore("Zeta", "U. Eco").id(baudolino.getId()).build());
+        manager.eliminaLibro(tutti.getRisultati().get(0));
+
+        assertEquals(List.of("Il pendolo di Foucault", "Zeta"), titoli(tutti));
+        assertEquals(List.of("~0", "-0", "+2", "-0"), righe.variazioni);
+
+        tutti.chiudi();
+        manager.aggiungiLibro(libro("Numero zero", 3));
+        assertEquals(2, tutti.getNumeroRisultati());
+    }
+
+    private static void assertOrdinata(InterrogazioneViva interrogazione, CriterioOrdinamento criterio) {
+        interrogazione.ordina(criterio);
+        List<Libro> attesi = new ArrayList<>(interrogazione.getRisultati());
+        attesi.sort(criterio.getComparatore());
+        assertEquals(attesi, interrogazione.getRisultati());
+    }
+
+    @Test
+    public void testRiordinoSenzaQuery() {
+        InterrogazioneViva tutti = manager.sottoscrivi(libro -> true, CriterioOrdinamento.TITOLO_ASC,
+                manager.getTuttiLibri(CriterioOrdinamento.TITOLO_ASC));
+        TestRighe righe = new TestRighe();
+        tutti.setOnRisultatiCambiati(righe);
+
+        tutti.ordina(CriterioOrdinamento.VALUTAZIONE_DESC);
+        assertEquals(List.of("Il Nome della Rosa", "Il pendolo di Foucault", "Baudolino"), titoli(tutti));
+        tutti.ordina(CriterioOrdinamento.VALUTAZIONE_DESC);
+        tutti.ordina(CriterioOrdinamento.TITOLO_DESC);
+        assertEquals(List.of("Il pendolo di Foucault", "Il Nome della Rosa", "Baudolino"), titoli(tutti));
+        assertEquals(List.of("*", "*"), righe.variazioni);
+
+        // le permutazioni già calcolate seguono aggiunte, modifiche e rimozioni
+        manager.aggiungiLibro(libro("Numero zero", 1));
+        manager.aggiungiLibro(libro("Il cimitero di Praga", 3));
+        Libro baudolino = tutti.getRisultati().get(4);
+        manager.aggiornaLibro(baudolino, new Libro.Costruttore("Baudolino", "Umberto Eco").id(baudolino.getId()).valutazione(2).build());
+        manager.eliminaLibro(tutti.getRisultati().get(0));
+        // l'articolo iniziale non conta: "Numero zero" va tra "pendolo" e "Nome"
+        assertEquals(List.of("Numero zero", "Il Nome della Rosa", "Il cimitero di Praga", "Baudolino"), titoli(tutti));
+        assertEquals(List.of("*", "*", "+1", "+3", "~4", "-0"), righe.variazioni);
+
+        assertOrdinata(tutti, CriterioOrdinamento.TITOLO_ASC);
+        assertOrdinata(tutti, CriterioOrdinamento.VALUTAZIONE_DESC);
+        assertOrdinata(tutti, CriterioOrdinamento.AUTORE_ASC);
+        // stesso autore: a parità di chiave conta l'ordine di inserimento
+        assertEquals(List.of("Il Nome della Rosa", "Baudolino", "Numero zero", "Il cimitero di Praga"), titoli(tutti));
+        assertEquals(4, tutti.getNumeroPermutazioni());
+        assertEquals(4, tutti.getNumeroRisultati());
+    }
+
+    @Test
+    public void testRestringiSenzaQuery() {
+        InterrogazioneViva tutti = manager.sottoscrivi(InterrogazioneViva.TUTTI, CriterioOrdinamento.TITOLO_ASC,
+                manager.getTuttiLibri(CriterioOrdinamento.TITOLO_ASC));
+        assertTrue(tutti.isCatalogoCompleto());
+
+        InterrogazioneViva cinqueStelle = tutti.restringi(libro -> libro.getValutazione() == 5);
+        assertFalse(cinqueStelle.isCatalogoCompleto());
+        assertEquals(List.of("Il Nome della Rosa", "Il pendolo di Foucault"), titoli(cinqueStelle));
+        assertEquals(0, query);
+
+        // l'interrogazione ricavata è sottoscritta come le altre
+        tutti.chiudi();
+        manager.aggiungiLibro(libro("Il cimitero di Praga", 5));
+        assertEquals(3, cinqueStelle.getNumeroRisultati());
+        assertEquals(3, tutti.getNumeroRisultati());
+    }
+}
@@ -0,0 +1,177 @@
+package gestore_libreria.db;
+
+import gestore_libreria.memento.CustodeCronologiaLibro;
+import gestore_libreria.model.CriterioOrdinamento;
+import gestore_libreria.model.Libro;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ListaLibriPaginataTest {
+    private RepositoryLibroSQLite repository;
+    private Connection testConnection;
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    //classe interna per istanziare un repository di test e un collegamento di test
+    private class TestSQLiteBookRepository extends RepositoryLibroSQLite {
+        @Override
+        protected Connection getConnection() throws SQLException{
+            return testConnection;
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        testConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        repository = new TestSQLiteBookRepository();
+        inserisciLibri(450);
+    }
+
+    private void inserisciLibri(int numero) throws SQLException {
+        Statement statement = testConnection.createStatement();
+        statement.executeUpdate("""
+                WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < %d)
+                INSERT INTO books (title, author, rating, readingState)
+                SELECT printf('Libro %%05d', i), 'Autore ' || (i %% 7), i %% 6, 'DA LEGGERE' FROM n
+                """.formatted(numero));
+        //le righe scritte senza il repository non hanno le chiavi di ordinamento: riaprendolo vengono calcolate
+        repository = new TestSQLiteBookRepository();
+    }
+
+    @After
+    public void closeConnection() throws SQLException {
+        testConnection.close();
+    }
+
+    @Test
+    public void testLetturaPerPagine() {
+        ListaLibriPaginata libri = new ListaLibriPaginata(repository, CriterioOrdinamento.TITOLO_DESC, repository.count());
+
+        assertEquals(450, libri.size());
+        assertEquals(0, libri.getPagineInMemoria());
+        assertEquals("Libro 00450", libri.get(0).getTitolo());
+        assertEquals("Libro 00001", libri.get(449).getTitolo());
+        assertEquals("Libro 00250", libri.get(200).getTitolo());
+        assertEquals(3, libri.getPagineInMemoria());
+    }
+
+    @Test
+    public void testLetturaFuoriDallaTransazioneDellEDT() throws Exception {
+        DatabaseConnectionSingleton.setDatabasePath(cartella.getRoot().toPath().resolve("libri.db").toString());
+        try {
+            GestoreLibroConcreto gestore = new GestoreLibroConcreto(new RepositoryLibroSQLite(),
+                    RepositoryLibroSQLite.perLettura(), new CustodeCronologiaLibro());
+            gestore.aggiungiLibro(new Libro.Costruttore("Confermato", "Autore").build());
+            Connection principale = DatabaseConnectionSingleton.getInstance();
+            principale.setAutoCommit(false);
+            principale.createStatement().executeUpdate(
+                    "INSERT INTO books (title, author, readingState) VALUES ('In sospeso', 'Autore', 'DA LEGGERE')");
+
+            // le letture in background non vedono le righe della transazione aperta sulla connessione principale
+            List<Libro> libri = gestore.getTuttiLibriPaginati(CriterioOrdinamento.NESSUNO);
+            assertEquals(1, libri.size());
+            assertEquals("Confermato", libri.get(0).getTitolo());
+            assertTrue(gestore.trovaLibroPerTitolo("sospeso", CriterioOrdinamento.NESSUNO).isEmpty());
+
+            principale.commit();
+            principale.setAutoCommit(true);
+            assertEquals(1, gestore.trovaLibroPerTitolo("sospeso", CriterioOrdinamento.NESSUNO).size());
+        } finally {
+            DatabaseConnectionSingleton.setDatabasePath(DatabaseConnectionSingleton.DATABASE_PREDEFINITO);
+        }
+    }
+
+    @Test
+    public void testPagineLRU() throws SQLException {
+        inserisciLibri(ListaLibriPaginata.DIMENSIONE_PAGINA * ListaLibriPaginata.MASSIMO_PAGINE);
+        ListaLibriPaginata libri = new ListaLibriPaginata(repository, CriterioOrdinamento.NESSUNO, repository.count());
+        for (int i = 0; i < libri.size(); i += ListaLibriPaginata.DIMENSIONE_PAGINA) {
+            assertNotNull(libri.get(i));
+        }
+        assertEquals(ListaLibriPaginata.MASSIMO_PAGINE, libri.getPagineInMemoria());
+    }
+
+    @Test
+    public void testCaricamentoAsincrono() throws InterruptedException {
+        ListaLibriPaginata libri = new ListaLibriPaginata(repository, CriterioOrdinamento.NESSUNO, repository.count());
+        CountDownLatch caricata = new CountDownLatch(1);
+        int[] righe = new int[2];
+        libri.setCaricamentoAsincrono(Executors.newSingleThreadExecutor(), (prima, ultima) -> {
+            righe[0] = prima;
+            righe[1] = ultima;
+            caricata.countDown();
+        });
+
+        assertTrue(ListaLibriPaginata.isInCaricamento(libri.get(420)));
+        assertTrue(caricata.await(5, TimeUnit.SECONDS));
+        assertEquals(400, righe[0]);
+        assertEquals(449, righe[1]);
+        assertEquals("Libro 00421", libri.get(420).getTitolo());
+    }
+
+    @Test
+    public void testIdsSenzaCaricarePagine() {
+        ListaLibriPaginata libri = new ListaLibriPaginata(repository, CriterioOrdinamento.TITOLO_DESC, repository.count());
+        libri.setCaricamentoAsincrono(Executors.newSingleThreadExecutor(), (prima, ultima) -> {});
+
+        // righe in caricamento: gli id arrivano dalla query dei soli id e nessuna pagina viene accodata
+        List<Integer> ids = libri.getIds(150, 420);
+        assertEquals(271, ids.size());
+        assertEquals(0, libri.getPagineInMemoria());
+
+        ListaLibriPaginata lette = new ListaLibriPaginata(repository, CriterioOrdinamento.TITOLO_DESC, repository.count());
+        for (int i = 150; i <= 420; i++) {
+            assertEquals(lette.get(i).getId(), (int) ids.get(i - 150));
+        }
+        assertEquals(ids, lette.getIds(150, 420));
+    }
+
+    @Test
+    public void testModificheSullePagineInMemoria() {
+        ListaLibriPaginata libri = new ListaLibriPaginata(repository, CriterioOrdinamento.TITOLO_ASC, repository.count());
+        Libro letto = libri.get(210);
+        libri.get(0);
+
+        // una modifica che non tocca il titolo lascia il libro nella sua riga
+        Libro valutato = new Libro.Costruttore(letto.getTitolo(), letto.getAutore()).id(letto.getId()).valutazione(5).build();
+        assertTrue(libri.isStessaRiga(letto, valutato));
+        assertFalse(libri.isStessaRiga(letto, new Libro.Costruttore("Aaa", letto.getAutore()).id(letto.getId()).build()));
+        assertEquals(210, libri.sostituisci(valutato));
+        assertSame(valutato, libri.get(210));
+        assertEquals(-1, libri.sostituisci(new Libro.Costruttore("Libro", "Autore").id(9999).build()));
+
+        // la rimozione scarta la pagina del libro e le successive, che vengono rilette con le righe spostate
+        repository.delete(letto);
+        assertEquals(210, libri.rimuovi(letto.getId()));
+        assertEquals(449, libri.size());
+        assertEquals(1, libri.getPagineInMemoria());
+        assertEquals("Libro 00212", libri.get(210).getTitolo());
+        assertEquals(-1, libri.rimuovi(letto.getId()));
+    }
+
+    @Test
+    public void testSogliaPaginazione() throws SQLException {
+        GestoreLibroConcreto manager = new GestoreLibroConcreto(repository);
+        assertFalse(manager.getTuttiLibriPaginati(CriterioOrdinamento.NESSUNO) instanceof ListaLibriPaginata);
+
+        inserisciLibri(GestoreLibroConcreto.SOGLIA_PAGINAZIONE);
+        List<Libro> libri = manager.getTuttiLibriPaginati(CriterioOrdinamento.NESSUNO);
+        assertTrue(libri instanceof ListaLibriPaginata);
+        assertEquals(450 + GestoreLibroConcreto.SOGLIA_PAGINAZIONE, libri.size());
+    }
+}
@@ -0,0 +1,102 @@
+package gestore_libreria.db;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class RepositoryMiniatureSQLiteTest {
+    private RepositoryMiniatureSQLite repository;
+    private Connection testConnection;
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    //classe interna per istanziare un repository di test su un database in memoria
+    private class TestSQLiteThumbnailRepository extends RepositoryMiniatureSQLite {
+        @Override
+        protected Connection getConnection() throws SQLException {
+            return testConnection;
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        testConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = testConnection.createStatement();
+        statement.executeUpdate("CREATE TABLE books(id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT, coverPath TEXT)");
+        statement.executeUpdate("INSERT INTO books (title, coverPath) VALUES ('Il Nome della Rosa', '/copertine/rosa.png')");
+        repository = new TestSQLiteThumbnailRepository();
+    }
+
+    @Test
+    public void testHashValidoSoloSeFileInvariato() {
+        repository.saveSource("/copertine/rosa.png", 1000, 42, "abc");
+        assertEquals("abc", repository.findHash("/copertine/rosa.png", 1000, 42));
+        assertNull(repository.findHash("/copertine/rosa.png", 1000, 43));
+        assertNull(repository.findHash("/copertine/rosa.png", 999, 42));
+
+        repository.saveSource("/copertine/rosa.png", 999, 43, "def");
+        assertEquals("def", repository.findHash("/copertine/rosa.png", 999, 43));
+    }
+
+    @Test
+    public void testMiniaturePerDimensione() {
+        byte[] piccola = {1, 2, 3};
+        byte[] media = {4, 5, 6, 7};
+        repository.saveThumbnail("abc", 60, 75, piccola);
+        repository.saveThumbnail("abc", 120, 180, media);
+
+        assertArrayEquals(piccola, repository.findThumbnail("abc", 60, 75));
+        assertArrayEquals(media, repository.findThumbnail("abc", 120, 180));
+        assertNull(repository.findThumbnail("abc", 30, 40));
+        assertNull(repository.findThumbnail("def", 60, 75));
+    }
+
+    @Test
+    public void testDeleteOrphans() {
+        repository.saveSource("/copertine/rosa.png", 1000, 42, "abc");
+        repository.saveSource("/copertine/eliminata.png", 1000, 42, "def");
+        repository.saveThumbnail("abc", 60, 75, new byte[]{1});
+        repository.saveThumbnail("def", 60, 75, new byte[]{2});
+
+        assertEquals(1, repository.deleteOrphans());
+        assertNotNull(repository.findThumbnail("abc", 60, 75));
+        assertNull(repository.findThumbnail("def", 60, 75));
+        assertNull(repository.findHash("/copertine/eliminata.png", 1000, 42));
+    }
+
+    @Test
+    public void testMiniatureFuoriDallaTransazioneDellEDT() throws Exception {
+        DatabaseConnectionSingleton.setDatabasePath(cartella.getRoot().toPath().resolve("libri.db").toString());
+        try {
+            RepositoryMiniatureSQLite miniature = new RepositoryMiniatureSQLite();
+            Connection principale = DatabaseConnectionSingleton.getInstance();
+            principale.createStatement().executeUpdate("CREATE TABLE books(id INTEGER PRIMARY KEY AUTOINCREMENT, coverPath TEXT)");
+            principale.setAutoCommit(false);
+            principale.createStatement().executeUpdate("INSERT INTO books (coverPath) VALUES ('/copertine/rosa.png')");
+
+            // la miniatura scritta durante la transazione attende che termini invece di entrarci
+            Thread decodifica = new Thread(() -> miniature.saveThumbnail("abc", 60, 75, new byte[]{1, 2}));
+            decodifica.start();
+            Thread.sleep(200);
+            principale.rollback();
+            principale.setAutoCommit(true);
+            decodifica.join();
+
+            assertArrayEquals(new byte[]{1, 2}, miniature.findThumbnail("abc", 60, 75));
+            ResultSet libri = principale.createStatement().executeQuery("SELECT COUNT(*) FROM books");
+            assertEquals(0, libri.getInt(1));
+        } finally {
+            DatabaseConnectionSingleton.setDatabasePath(DatabaseConnectionSingleton.DATABASE_PREDEFINITO);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package gestore_libreria.indice;
+
+import gestore_libreria.model.Libro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Misura costruzione e ricerca approssimata di {@link IndiceTrigrammi} su cataloghi di dimensione crescente, per
+ * verificare che una ricerca resti ben sotto i {@link #OBIETTIVO_MS} millisecondi anche con un milione di libri.
+ * Le query contengono errori di battitura, accenti mancanti e parole in alfabeti non latini.
+ * Non è un test: si esegue a mano dalla IDE o con {@code java -Xmx2g -cp target/classes:target/test-classes},
+ * indicando eventualmente la dimensione massima del catalogo come primo argomento (predefinita: un milione).
+ */
+public class BenchmarkIndiceTrigrammi {
+
+    private static final int[] DIMENSIONI = {10_000, 100_000, 500_000, 1_000_000};
+    private static final String[] QUERY = {"nome dela rosa", "citta invisbili", "pendolo fucault", "война и мир", "isola mare"};
+    private static final long DURATA_MISURA_NS = 1_000_000_000L;
+    private static final double OBIETTIVO_MS = 10;
+    private static final int LIMITE = 50;
+
+    public static void main(String[] args) {
+        int massimo = args.length > 0 ? Integer.parseInt(args[0]) : DIMENSIONI[DIMENSIONI.length - 1];
+
+        System.out.printf("%10s %14s %14s %14s%n", "libri", "costruzione", "ricerca media", "ricerca max");
+        for (int dimensione : DIMENSIONI) {
+            if (dimensione > massimo) {
+                break;
+            }
+            List<Libro> libri = catalogo(dimensione);
+            IndiceTrigrammi indice = new IndiceTrigrammi(Libro::getTitolo);
+            long inizio = System.nanoTime();
+            indice.costruisci(libri);
+            double costruzione = (System.nanoTime() - inizio) / 1e6;
+
+            double peggiore = 0;
+            double somma = 0;
+            for (String query : QUERY) {
+                double tempo = misura(indice, query);
+                somma += tempo;
+                peggiore = Math.max(peggiore, tempo);
+            }
+            System.out.printf("%10d %11.1f ms %11.3f ms %11.3f ms%s%n", dimensione, costruzione,
+                    somma / QUERY.length, peggiore, peggiore < OBIETTIVO_MS ? "" : "  oltre l'obiettivo");
+        }
+    }
+
+    // titoli di parole inventate da sillabe casuali, con qualche parola delle query, così le posting list hanno
+    // lunghezze simili a quelle di un catalogo reale invece di contenere tutti i libri
+    private static List<Libro> catalogo(int dimensione) {
+        Random casuale = new Random(dimensione);
+        String[] sillabe = {"ra", "no", "me", "del", "ro", "sa", "pen", "do", "lo", "fou", "cault", "cit", "ta", "in",
+                "vi", "si", "bi", "li", "not", "te", "ma", "re", "is", "ven", "lu", "po", "sen", "tie", "ni", "di",
+                "ра", "но", "ми", "во", "ка", "пре", "сту", "ле", "на", "за"};
+        String[] parole = {"rosa", "nome", "pendolo", "foucault", "città", "invisibili", "isola", "mare", "война", "мир"};
+        List<Libro> libri = new ArrayList<>(dimensione);
+        for (int i = 0; i < dimensione; i++) {
+            StringBuilder titolo = new StringBuilder();
+            int numeroParole = 2 + casuale.nextInt(4);
+            for (int p = 0; p < numeroParole; p++) {
+                if (casuale.nextInt(20) == 0) {
+                    titolo.append(parole[casuale.nextInt(parole.length)]);
+                } else {
+                    int numeroSillabe = 2 + casuale.nextInt(3);
+                    for (int s = 0; s < numeroSillabe; s++) {
+                        titolo.append(sillabe[casuale.nextInt(sillabe.length)]);
+                    }
+                }
+                titolo.append(' ');
+            }
+            titolo.append(i);
+            libri.add(new Libro.Costruttore(titolo.toString(), "Autore " + casuale.nextInt(10_000)).id(i + 1).build());
+        }
+        return libri;
+    }
+
+    // tempo medio di una ricerca in millisecondi, dopo un riscaldamento
+    private static double misura(IndiceTrigrammi indice, String query) {
+        for (int i = 0; i < 5; i++) {
+            indice.cerca(query, LIMITE);
+        }
+        int ripetizioni = 0;
+        long inizio = System.nanoTime();
+        long trascorso;
+        do {
+            indice.cerca(query, LIMITE);
+            ripetizioni++;
+            trascorso = System.nanoTime() - inizio;
+        } while (trascorso < DURATA_MISURA_NS);
+        return trascorso / 1e6 / ripetizioni;
+    }
+}
@@ -0,0 +1,106 @@
+package gestore_libreria.indice;
+
+import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.db.RepositoryLibroSQLite;
+import gestore_libreria.model.Libro;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ContatoreFacetTest {
+    private GestoreLibroConcreto manager;
+    private Connection testConnection;
+    private Libro testBook1;
+    private Libro testBook2;
+
+    private class TestSQLiteBookRepository extends RepositoryLibroSQLite {
+        @Override
+        protected Connection getConnection() throws SQLException {
+            return testConnection;
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        testConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        manager = new GestoreLibroConcreto(new TestSQLiteBookRepository());
+
+        testBook1 = new Libro.Costruttore("Il Gattopardo", "Giuseppe Tomasi di Lampedusa")
+                .genere("Romanzo storico")
+                .valutazione(5)
+                .statoLettura("letto")
+                .build();
+        testBook2 = new Libro.Costruttore("Le città invisibili", "Italo Calvino")
+                .genere("Romanzo")
+                .valutazione(4)
+                .statoLettura("da leggere")
+                .build();
+    }
+
+    @After
+    public void closeConnection() throws SQLException {
+        if (testConnection != null && !testConnection.isClosed()) {
+            testConnection.close();
+        }
+    }
+
+    @Test
+    public void testCaricamentoIniziale() {
+        manager.aggiungiLibro(testBook1);
+        manager.aggiungiLibro(testBook2);
+
+        ContatoreFacet facet = manager.getContatoreFacet();
+        assertEquals(2, facet.getTotale());
+        assertEquals(1, facet.getPerStato("LETTO"));
+        assertEquals(1, facet.getPerStato("DA LEGGERE"));
+        assertEquals(0, facet.getPerStato("IN LETTURA"));
+        assertEquals(1, facet.getPerValutazione(5));
+        assertEquals(1, facet.getPerValutazione(4));
+    }
+
+    @Test
+    public void testAggiornamentoIncrementale() {
+        ContatoreFacet facet = manager.getContatoreFacet();
+        manager.aggiungiLibro(testBook1);
+        assertEquals(1, facet.getPerStato("letto"));
+
+        Libro modificato = new Libro.Costruttore("Il Gattopardo", "Giuseppe Tomasi di Lampedusa")
+                .id(testBook1.getId())
+                .genere("Romanzo storico")
+                .valutazione(3)
+                .statoLettura("in lettura")
+                .build();
+        manager.aggiornaLibro(testBook1, modificato);
+        assertEquals(0, facet.getPerStato("letto"));
+        assertEquals(1, facet.getPerStato("in lettura"));
+        assertEquals(0, facet.getPerValutazione(5));
+        assertEquals(1, facet.getPerValutazione(3));
+
+        manager.getHistoryManager().annulla();
+        assertEquals(1, facet.getPerStato("letto"));
+        assertEquals(1, facet.getPerValutazione(5));
+
+        manager.eliminaLibro(testBook1);
+        assertEquals(0, facet.getTotale());
+        assertEquals(0, facet.getPerGenere("Romanzo storico"));
+    }
+
+    @Test
+    public void testGeneriPrincipali() {
+        manager.aggiungiLibro(testBook1);
+        manager.aggiungiLibro(testBook2);
+        manager.aggiungiLibro(new Libro.Costruttore("Il barone rampante", "Italo Calvino").genere("romanzo").build());
+
+        Map<String, Integer> generi = manager.getContatoreFacet().getGeneriPrincipali(1);
+        assertEquals(1, generi.size());
+        assertEquals(Integer.valueOf(2), generi.values().iterator().next());
+        assertEquals(2, manager.getContatoreFacet().getPerGenere("ROMANZO"));
+    }
+}
@@ -0,0 +1,62 @@
+package gestore_libreria.indice;
+
+import gestore_libreria.model.Libro;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndicePrefissiTest {
+    private IndicePrefissi indiceAutori;
+    private Libro testBook1;
+    private Libro testBook2;
+    private Libro testBook3;
+
+    @Before
+    public void setUp() {
+        testBook1 = new Libro.Costruttore("Il barone rampante", "Italo Calvino").id(1).build();
+        testBook2 = new Libro.Costruttore("Il visconte dimezzato", "Italo Calvino").id(2).build();
+        testBook3 = new Libro.Costruttore("Io non ho paura", "Niccolò Ammaniti").id(3).build();
+
+        List<Libro> libri = new ArrayList<>();
+        libri.add(testBook1);
+        libri.add(testBook2);
+        libri.add(testBook3);
+        indiceAutori = new IndicePrefissi(Libro::getAutore);
+        indiceAutori.costruisci(libri);
+    }
+
+    @Test
+    public void testSuggerisci() {
+        List<String> suggerimenti = indiceAutori.suggerisci("ital", 10);
+        assertEquals(1, suggerimenti.size());
+        assertEquals("Italo Calvino", suggerimenti.get(0));
+        assertTrue(indiceAutori.suggerisci("zzz", 10).isEmpty());
+        assertTrue(indiceAutori.suggerisci("", 10).isEmpty());
+    }
+
+    @Test
+    public void testAggiornamentoIncrementale() {
+        indiceAutori.libroRimosso(testBook1);
+        assertEquals(1, indiceAutori.suggerisci("Italo", 10).size());
+        indiceAutori.libroRimosso(testBook2);
+        assertTrue(indiceAutori.suggerisci("Italo", 10).isEmpty());
+
+        indiceAutori.libroAggiunto(new Libro.Costruttore("Ti prendo e ti porto via", "Niccolò Ammaniti").id(4).build());
+        Libro modificato = new Libro.Costruttore("Io non ho paura", "Nicola Ammaniti").id(3).build();
+        indiceAutori.libroAggiornato(testBook3, modificato);
+
+        List<String> suggerimenti = indiceAutori.suggerisci("nic", 10);
+        assertEquals(2, suggerimenti.size());
+        assertEquals("Niccolò Ammaniti", suggerimenti.get(0));
+        assertEquals("Nicola Ammaniti", suggerimenti.get(1));
+    }
+
+    @Test
+    public void testSenzaAccenti() {
+        assertEquals("Niccolò Ammaniti", indiceAutori.suggerisci("NICCOLO", 10).get(0));
+    }
+}
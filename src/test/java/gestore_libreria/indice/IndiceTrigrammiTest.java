@@ -0,0 +1,90 @@
+package gestore_libreria.indice;
+
+import gestore_libreria.model.Libro;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndiceTrigrammiTest {
+    private IndiceTrigrammi indiceAutori;
+    private IndiceTrigrammi indiceTitoli;
+    private Libro testBook1;
+    private Libro testBook2;
+    private Libro testBook3;
+
+    @Before
+    public void setUp() {
+        testBook1 = new Libro.Costruttore("Il Nome della Rosa", "Umberto Eco").id(1).build();
+        testBook2 = new Libro.Costruttore("Le città invisibili", "Italo Calvino").id(2).build();
+        testBook3 = new Libro.Costruttore("Il sentiero dei nidi di ragno", "Italo Calvino").id(3).build();
+
+        List<Libro> libri = new ArrayList<>();
+        libri.add(testBook1);
+        libri.add(testBook2);
+        libri.add(testBook3);
+
+        indiceAutori = new IndiceTrigrammi(Libro::getAutore);
+        indiceTitoli = new IndiceTrigrammi(Libro::getTitolo);
+        indiceAutori.costruisci(libri);
+        indiceTitoli.costruisci(libri);
+    }
+
+    @Test
+    public void testErroreDiBattitura() {
+        List<Libro> risultati = indiceAutori.cerca("Umberto Ecco", 10);
+        assertFalse(risultati.isEmpty());
+        assertEquals(testBook1, risultati.get(0));
+    }
+
+    @Test
+    public void testAccentiEMaiuscole() {
+        List<Libro> risultati = indiceTitoli.cerca("CITTA INVISIBILI", 10);
+        assertFalse(risultati.isEmpty());
+        assertEquals(testBook2, risultati.get(0));
+    }
+
+    @Test
+    public void testAlfabetiNonLatini() {
+        // con 10 bit per carattere "абвг" (U+0430..U+0433) e "0123" (U+0030..U+0033) avevano gli stessi trigrammi
+        Libro cirillico = new Libro.Costruttore("абвг", "Автор").id(4).build();
+        Libro cifre = new Libro.Costruttore("0123", "Autore").id(5).build();
+        Libro gotico = new Libro.Costruttore("\uD800\uDF30\uD800\uDF31\uD800\uDF32", "Autore").id(6).build();
+        IndiceTrigrammi indice = new IndiceTrigrammi(Libro::getTitolo);
+        indice.costruisci(List.of(cirillico, cifre, gotico));
+
+        assertEquals(List.of(cirillico), indice.cerca("АБВГ", 10));
+        assertEquals(List.of(cifre), indice.cerca("0123", 10));
+        assertEquals(List.of(gotico), indice.cerca("\uD800\uDF30\uD800\uDF31\uD800\uDF32", 10));
+    }
+
+    @Test
+    public void testLimite() {
+        assertEquals(2, indiceAutori.cerca("Calvino", 10).size());
+        assertEquals(1, indiceAutori.cerca("Calvino", 1).size());
+    }
+
+    @Test
+    public void testAggiornamentoIncrementale() {
+        indiceAutori.libroRimosso(testBook1);
+        assertTrue(indiceAutori.cerca("Umberto Eco", 10).isEmpty());
+
+        Libro nuovo = new Libro.Costruttore("Il pendolo di Foucault", "Umberto Eco").id(4).build();
+        indiceAutori.libroAggiunto(nuovo);
+        assertEquals(nuovo, indiceAutori.cerca("umberto eco", 10).get(0));
+
+        Libro modificato = new Libro.Costruttore("Il sentiero dei nidi di ragno", "Calvino, Italo").id(3).build();
+        indiceTitoli.libroAggiornato(testBook3, modificato);
+        assertEquals(modificato, indiceTitoli.cerca("sentero dei nidi", 10).get(0));
+        assertEquals(3, indiceTitoli.dimensione());
+    }
+
+    @Test
+    public void testNormalizza() {
+        assertEquals("citta perche", IndiceTrigrammi.normalizza("  Città,  PERCHÉ! "));
+        assertEquals("", IndiceTrigrammi.normalizza(null));
+    }
+}
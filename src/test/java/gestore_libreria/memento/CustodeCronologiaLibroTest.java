@@ -4,6 +4,8 @@ import gestore_libreria.model.Libro;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class CustodeCronologiaLibroTest {
@@ -102,4 +104,97 @@ public class CustodeCronologiaLibroTest {
         assertFalse(CustodeCronologiaLibro.puoAnnullare());
         assertFalse(CustodeCronologiaLibro.puoRipetere());
     }
+
+    @Test
+    public void testLimiteVoci() {
+        CustodeCronologiaLibro cronologia = new CustodeCronologiaLibro(3, Long.MAX_VALUE);
+        MementoLibro[] memento = new MementoLibro[40];
+        for (int i = 0; i < memento.length; i++) {
+            memento[i] = new MementoLibro(testBook1, MementoLibro.OperationType.ADD);
+            cronologia.save(memento[i]);
+        }
+        assertEquals(3, cronologia.getProfonditaAnnulla());
+        assertEquals(37, cronologia.getVociScartate());
+
+        // restano annullabili solo le ultime tre operazioni, nell'ordine inverso
+        assertSame(memento[39], cronologia.annulla());
+        assertSame(memento[38], cronologia.annulla());
+        assertSame(memento[37], cronologia.annulla());
+        assertNull(cronologia.annulla());
+        assertEquals(3, cronologia.getProfonditaRipeti());
+
+        assertSame(memento[37], cronologia.ripeti());
+        // una nuova operazione scarta le operazioni ripetibili
+        cronologia.save(testBookMemento2);
+        assertFalse(cronologia.puoRipetere());
+        assertEquals(2, cronologia.getProfonditaAnnulla());
+        assertSame(testBookMemento2, cronologia.annulla());
+        assertSame(memento[37], cronologia.annulla());
+    }
+
+    @Test
+    public void testLimiteMemoria() {
+        long perMemento = testBookMemento1.getByteStimati();
+        assertTrue(perMemento > 0);
+        CustodeCronologiaLibro cronologia = new CustodeCronologiaLibro(1000, perMemento * 5 / 2);
+
+        for (int i = 0; i < 10; i++) {
+            cronologia.save(new MementoLibro(testBook1, MementoLibro.OperationType.ADD));
+        }
+        assertEquals(2, cronologia.getProfonditaAnnulla());
+        assertEquals(2 * perMemento, cronologia.getByteStimati());
+
+        cronologia.annulla();
+        cronologia.save(new MementoLibro(testBook1, MementoLibro.OperationType.REMOVE));
+        assertEquals(2 * perMemento, cronologia.getByteStimati());
+
+        cronologia.cleanAll();
+        assertEquals(0, cronologia.getByteStimati());
+    }
+
+    @Test
+    public void testGruppo() {
+        CustodeCronologiaLibro.save(testBookMemento1);
+        CustodeCronologiaLibro.apriGruppo();
+        CustodeCronologiaLibro.save(testBookMemento2);
+        CustodeCronologiaLibro.apriGruppo();
+        CustodeCronologiaLibro.save(testBookMemento1);
+        CustodeCronologiaLibro.chiudiGruppo();
+        // finché il gruppo più esterno è aperto le operazioni non entrano nella cronologia
+        assertEquals(1, CustodeCronologiaLibro.getProfonditaAnnulla());
+        CustodeCronologiaLibro.chiudiGruppo();
+
+        assertEquals(2, CustodeCronologiaLibro.getProfonditaAnnulla());
+        MementoLibro gruppo = CustodeCronologiaLibro.annulla();
+        assertEquals(MementoLibro.OperationType.GRUPPO, gruppo.getOperationType());
+        assertEquals(List.of(testBookMemento2, testBookMemento1), gruppo.getParti());
+        assertSame(testBookMemento1, CustodeCronologiaLibro.annulla());
+
+        // un gruppo con una sola operazione la salva così com'è, uno vuoto non lascia traccia
+        CustodeCronologiaLibro.apriGruppo();
+        CustodeCronologiaLibro.save(testBookMemento2);
+        CustodeCronologiaLibro.chiudiGruppo();
+        CustodeCronologiaLibro.apriGruppo();
+        CustodeCronologiaLibro.chiudiGruppo();
+        assertSame(testBookMemento2, CustodeCronologiaLibro.annulla());
+        assertFalse(CustodeCronologiaLibro.puoAnnullare());
+    }
+
+    @Test
+    public void testCleanAllChiudeIGruppi() {
+        CustodeCronologiaLibro.apriGruppo();
+        CustodeCronologiaLibro.save(testBookMemento1);
+        CustodeCronologiaLibro.cleanAll();
+
+        // le operazioni successive non finiscono nel gruppo scartato
+        CustodeCronologiaLibro.save(testBookMemento2);
+        assertEquals(1, CustodeCronologiaLibro.getProfonditaAnnulla());
+        assertSame(testBookMemento2, CustodeCronologiaLibro.annulla());
+        assertFalse(CustodeCronologiaLibro.puoAnnullare());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testChiusuraSenzaGruppo() {
+        CustodeCronologiaLibro.chiudiGruppo();
+    }
 }
@@ -0,0 +1,160 @@
+package gestore_libreria.memento;
+
+import gestore_libreria.model.CampoLibro;
+import gestore_libreria.model.Libro;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class GiornaleCronologiaTest {
+
+    @Rule
+    public TemporaryFolder cartella = new TemporaryFolder();
+
+    private Path file;
+    private Libro zeno;
+    private Libro zenoLetto;
+
+    @Before
+    public void setUp() {
+        file = cartella.getRoot().toPath().resolve("cronologia");
+        zeno = new Libro.Costruttore("La Coscienza di Zeno", "Italo Svevo")
+                .id(7)
+                .isbn("9788807900895")
+                .valutazione(4)
+                .statoLettura("in lettura")
+                .build();
+        zenoLetto = new Libro.Costruttore("La Coscienza di Zeno", "Italo Svevo")
+                .id(7)
+                .isbn("9788807900895")
+                .valutazione(5)
+                .statoLettura("letto")
+                .build();
+    }
+
+    private CustodeCronologiaLibro apri(int massimoVoci) {
+        return new CustodeCronologiaLibro(massimoVoci, CustodeCronologiaLibro.MASSIMO_BYTE_PREDEFINITO, new GiornaleCronologia(file));
+    }
+
+    @Test
+    public void testRipresaDopoRiavvio() {
+        CustodeCronologiaLibro cronologia = apri(10);
+        cronologia.save(new MementoLibro(zeno, MementoLibro.OperationType.ADD));
+        cronologia.save(MementoLibro.differenza(zeno, zenoLetto));
+        cronologia.save(new MementoLibro(zenoLetto, MementoLibro.OperationType.REMOVE));
+        cronologia.annulla();
+        cronologia.chiudi();
+
+        CustodeCronologiaLibro riaperta = apri(10);
+        assertEquals(2, riaperta.getProfonditaAnnulla());
+        assertEquals(1, riaperta.getProfonditaRipeti());
+        assertEquals(cronologia.getByteStimati(), riaperta.getByteStimati());
+
+        MementoLibro rimozione = riaperta.ripeti();
+        assertEquals(MementoLibro.OperationType.REMOVE, rimozione.getOperationType());
+        assertEquals("La Coscienza di Zeno", rimozione.getBookState().getTitolo());
+        assertEquals(7, rimozione.getBookState().getId());
+
+        riaperta.annulla();
+        MementoLibro modifica = riaperta.annulla();
+        assertTrue(modifica.isDifferenza());
+        assertEquals(7, modifica.getIdLibro());
+        assertEquals(4, modifica.getValore(CampoLibro.VALUTAZIONE, false));
+        assertEquals("letto", modifica.getValore(CampoLibro.STATO_LETTURA, true));
+        riaperta.chiudi();
+    }
+
+    @Test
+    public void testRecordIncompletoScartato() throws IOException {
+        CustodeCronologiaLibro cronologia = apri(10);
+        cronologia.save(new MementoLibro(zeno, MementoLibro.OperationType.ADD));
+        cronologia.save(MementoLibro.differenza(zeno, zenoLetto));
+        cronologia.chiudi();
+        long lunghezza = Files.size(file);
+
+        // un'interruzione durante la scrittura lascia un record troncato in fondo al file
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        GiornaleCronologia giornale = new GiornaleCronologia(file);
+        CustodeCronologiaLibro riaperta = new CustodeCronologiaLibro(10, CustodeCronologiaLibro.MASSIMO_BYTE_PREDEFINITO, giornale);
+        assertEquals(2, riaperta.getProfonditaAnnulla());
+        assertEquals(2, giornale.getRecordCompattati());
+        assertEquals(lunghezza, Files.size(file));
+        riaperta.chiudi();
+    }
+
+    @Test
+    public void testCompattazioneSecondoIlLimite() throws IOException {
+        CustodeCronologiaLibro cronologia = apri(3);
+        for (int i = 0; i < 40; i++) {
+            cronologia.save(MementoLibro.differenza(i % 2 == 0 ? zeno : zenoLetto, i % 2 == 0 ? zenoLetto : zeno));
+        }
+        cronologia.cleanAll();
+        cronologia.save(new MementoLibro(zeno, MementoLibro.OperationType.ADD));
+        cronologia.chiudi();
+        long lunghezza = Files.size(file);
+
+        GiornaleCronologia giornale = new GiornaleCronologia(file);
+        CustodeCronologiaLibro riaperta = new CustodeCronologiaLibro(3, CustodeCronologiaLibro.MASSIMO_BYTE_PREDEFINITO, giornale);
+        assertEquals(1, riaperta.getProfonditaAnnulla());
+        assertEquals(42, giornale.getRecordCompattati());
+        assertTrue(Files.size(file) * 10 < lunghezza);
+        assertEquals(MementoLibro.OperationType.ADD, riaperta.annulla().getOperationType());
+        riaperta.chiudi();
+    }
+
+    @Test
+    public void testRiaperturaDopoCompattazione() {
+        CustodeCronologiaLibro cronologia = apri(3);
+        for (int i = 0; i < 40; i++) {
+            cronologia.save(MementoLibro.differenza(i % 2 == 0 ? zeno : zenoLetto, i % 2 == 0 ? zenoLetto : zeno));
+        }
+        cronologia.chiudi();
+
+        // il file compattato sostituisce quello vecchio e il giornale resta attivo per le nuove scritture
+        GiornaleCronologia giornale = new GiornaleCronologia(file);
+        CustodeCronologiaLibro compattata = new CustodeCronologiaLibro(3, CustodeCronologiaLibro.MASSIMO_BYTE_PREDEFINITO, giornale);
+        assertEquals(40, giornale.getRecordCompattati());
+        assertEquals(3, compattata.getProfonditaAnnulla());
+        compattata.save(new MementoLibro(zeno, MementoLibro.OperationType.REMOVE));
+        compattata.annulla();
+        compattata.chiudi();
+
+        GiornaleCronologia ultimo = new GiornaleCronologia(file);
+        CustodeCronologiaLibro riaperta = new CustodeCronologiaLibro(3, CustodeCronologiaLibro.MASSIMO_BYTE_PREDEFINITO, ultimo);
+        assertEquals(0, ultimo.getRecordCompattati());
+        assertEquals(2, riaperta.getProfonditaAnnulla());
+        assertEquals(1, riaperta.getProfonditaRipeti());
+        assertEquals(MementoLibro.OperationType.REMOVE, riaperta.ripeti().getOperationType());
+        riaperta.annulla();
+        assertTrue(riaperta.annulla().isDifferenza());
+        riaperta.chiudi();
+    }
+
+    @Test
+    public void testGruppoNelGiornale() {
+        CustodeCronologiaLibro cronologia = apri(10);
+        cronologia.apriGruppo();
+        cronologia.save(new MementoLibro(zeno, MementoLibro.OperationType.ADD));
+        cronologia.save(MementoLibro.differenza(zeno, zenoLetto));
+        cronologia.chiudiGruppo();
+        cronologia.chiudi();
+
+        CustodeCronologiaLibro riaperta = apri(10);
+        MementoLibro gruppo = riaperta.annulla();
+        assertEquals(MementoLibro.OperationType.GRUPPO, gruppo.getOperationType());
+        assertEquals(2, gruppo.getParti().size());
+        assertEquals(MementoLibro.OperationType.ADD, gruppo.getParti().get(0).getOperationType());
+        assertTrue(gruppo.getParti().get(1).isDifferenza());
+        assertEquals(gruppo.getByteStimati(), cronologia.getByteStimati());
+        riaperta.chiudi();
+    }
+}
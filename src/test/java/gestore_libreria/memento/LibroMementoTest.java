@@ -1,5 +1,6 @@
 package gestore_libreria.memento;
 
+import gestore_libreria.model.CampoLibro;
 import gestore_libreria.model.Libro;
 import org.junit.Before;
 import org.junit.Test;
@@ -65,4 +66,31 @@ public class LibroMementoTest {
     public void getPreviousBookState() {
         assertEquals(testBookOld, memento2.getPreviousBookState());
     }
+
+    @Test
+    public void testDifferenza() {
+        MementoLibro differenza = MementoLibro.differenza(testBookOld, testBookNew);
+
+        assertTrue(differenza.isDifferenza());
+        assertNull(differenza.getBookState());
+        assertArrayEquals(new CampoLibro[]{CampoLibro.TITOLO, CampoLibro.STATO_LETTURA}, differenza.getCampi());
+        assertEquals("LETTO", differenza.getValore(CampoLibro.STATO_LETTURA, true));
+        assertTrue(differenza.getByteStimati() < memento2.getByteStimati());
+
+        // per la modifica di un solo campo un ordine di grandezza in meno rispetto ai due stati completi
+        Libro valutato = new Libro.Costruttore("L'Amica Geniale", "Elena Ferrante")
+                .isbn("9788866328880")
+                .genere("Romanzo contemporaneo")
+                .valutazione(5)
+                .statoLettura("LETTO")
+                .build();
+        MementoLibro completo = new MementoLibro(valutato, MementoLibro.OperationType.UPDATE, testBookNew);
+        assertTrue(MementoLibro.differenza(testBookNew, valutato).getByteStimati() * 10 <= completo.getByteStimati());
+
+        Libro precedente = differenza.ricostruisci(testBookNew, false);
+        assertEquals("L'Amica Geniale - bozza", precedente.getTitolo());
+        assertEquals("DA LEGGERE", precedente.getStatoLettura());
+        assertEquals("9788866328880", precedente.getIsbn());
+        assertEquals(testBookNew.getTitolo(), differenza.ricostruisci(precedente, true).getTitolo());
+    }
 }
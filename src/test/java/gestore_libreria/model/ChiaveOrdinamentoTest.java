@@ -0,0 +1,48 @@
+package gestore_libreria.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ChiaveOrdinamentoTest {
+
+    @Test
+    public void testSenzaArticolo() {
+        assertEquals("Gattopardo", ChiaveOrdinamento.senzaArticolo("Il Gattopardo"));
+        assertEquals("amica geniale", ChiaveOrdinamento.senzaArticolo("L'amica geniale"));
+        assertEquals("amica geniale", ChiaveOrdinamento.senzaArticolo("L’amica geniale"));
+        assertEquals("promessi sposi", ChiaveOrdinamento.senzaArticolo("  I promessi sposi"));
+        assertEquals("Iliade", ChiaveOrdinamento.senzaArticolo("Iliade"));
+        // un titolo fatto solo dall'articolo resta com'è
+        assertEquals("Le", ChiaveOrdinamento.senzaArticolo("Le "));
+    }
+
+    @Test
+    public void testOrdineItaliano() {
+        List<String> titoli = new ArrayList<>(List.of("Zanna Bianca", "Èra glaciale", "il barone rampante", "L'amica geniale", "Eragon"));
+        titoli.sort((a, b) -> ChiaveOrdinamento.titolo(a).compareTo(ChiaveOrdinamento.titolo(b)));
+        assertEquals(List.of("L'amica geniale", "il barone rampante", "Èra glaciale", "Eragon", "Zanna Bianca"), titoli);
+
+        // maiuscole e minuscole sono equivalenti, gli accenti no
+        assertEquals(0, ChiaveOrdinamento.autore("umberto eco").compareTo(ChiaveOrdinamento.autore("Umberto Eco")));
+        assertNotEquals(0, ChiaveOrdinamento.autore("Nicolo").compareTo(ChiaveOrdinamento.autore("Nicolò")));
+    }
+
+    @Test
+    public void testByteComeConfronto() {
+        // il database confronta i byte delle chiavi: l'ordine deve essere lo stesso di compareTo
+        String[] autori = {"Italo Svevo", "italo calvino", "Émile Zola", "Elsa Morante", "Dacia Maraini", "Ennio Flaiano"};
+        for (String primo : autori) {
+            for (String secondo : autori) {
+                int confronto = ChiaveOrdinamento.autore(primo).compareTo(ChiaveOrdinamento.autore(secondo));
+                int byteConfronto = Arrays.compareUnsigned(ChiaveOrdinamento.autore(primo).toByteArray(),
+                        ChiaveOrdinamento.autore(secondo).toByteArray());
+                assertEquals(primo + " / " + secondo, Integer.signum(confronto), Integer.signum(byteConfronto));
+            }
+        }
+    }
+}
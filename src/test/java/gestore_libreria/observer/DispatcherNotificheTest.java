@@ -0,0 +1,112 @@
+package gestore_libreria.observer;
+
+import gestore_libreria.model.Libro;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DispatcherNotificheTest {
+
+    private Libro libro1;
+    private Libro libro1Modificato;
+    private Libro libro2;
+
+    private static class ConcreteTestSubject extends Soggetto {}
+
+    private static class TestObserver implements OsservatoreLibro {
+        private final List<EventoLibro> eventi = new ArrayList<>();
+        private CountDownLatch consegnati = new CountDownLatch(1);
+
+        @Override
+        public void aggiorna() {
+            fail("il dispatcher consegna sempre eventi");
+        }
+
+        @Override
+        public synchronized void aggiorna(EventoLibro evento) {
+            eventi.add(evento);
+            consegnati.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        libro1 = new Libro.Costruttore("Il Nome della Rosa", "Umberto Eco").id(1).build();
+        libro1Modificato = new Libro.Costruttore("Il nome della rosa", "Umberto Eco").id(1).build();
+        libro2 = new Libro.Costruttore("Baudolino", "Umberto Eco").id(2).build();
+    }
+
+    @Test
+    public void testUnisci() {
+        // aggiunta seguita da modifica: una sola aggiunta con lo stato finale
+        List<EventoLibro> uniti = DispatcherNotifiche.unisci(List.of(
+                EventoLibro.aggiunto(libro1), EventoLibro.aggiornato(libro1, libro1Modificato), EventoLibro.aggiunto(libro2)));
+        assertEquals(2, uniti.size());
+        assertEquals(EventoLibro.Tipo.ADDED, uniti.get(0).getTipo());
+        assertSame(libro1Modificato, uniti.get(0).getLibro());
+        assertSame(libro2, uniti.get(1).getLibro());
+
+        // aggiunta seguita da rimozione: nessun effetto
+        assertTrue(DispatcherNotifiche.unisci(List.of(EventoLibro.aggiunto(libro1), EventoLibro.rimosso(libro1))).isEmpty());
+
+        // due modifiche: una sola modifica dal primo stato all'ultimo
+        Libro libro1Finale = new Libro.Costruttore("Il nome della rosa", "U. Eco").id(1).build();
+        uniti = DispatcherNotifiche.unisci(List.of(
+                EventoLibro.aggiornato(libro1, libro1Modificato), EventoLibro.aggiornato(libro1Modificato, libro1Finale)));
+        assertEquals(1, uniti.size());
+        assertSame(libro1, uniti.get(0).getPrecedente());
+        assertSame(libro1Finale, uniti.get(0).getLibro());
+
+        // un reset assorbe tutto
+        uniti = DispatcherNotifiche.unisci(List.of(
+                EventoLibro.aggiunto(libro2), EventoLibro.massivo(), EventoLibro.reset(), EventoLibro.rimosso(libro1)));
+        assertEquals(List.of(EventoLibro.reset()), uniti);
+    }
+
+    @Test
+    public void testConsegnaDopoFinestra() throws InterruptedException {
+        TestObserver destinatario = new TestObserver();
+        destinatario.consegnati = new CountDownLatch(2);
+        DispatcherNotifiche dispatcher = new DispatcherNotifiche(destinatario, Runnable::run, 50);
+        Soggetto soggetto = new ConcreteTestSubject();
+        soggetto.aggiungi(dispatcher);
+
+        soggetto.notificaOsservatori(EventoLibro.aggiunto(libro1));
+        soggetto.notificaOsservatori(EventoLibro.aggiornato(libro1, libro1Modificato));
+        soggetto.notificaOsservatori(EventoLibro.aggiunto(libro2));
+
+        assertTrue(destinatario.consegnati.await(5, TimeUnit.SECONDS));
+        synchronized (destinatario) {
+            assertEquals(2, destinatario.eventi.size());
+        }
+        assertEquals(3, dispatcher.getNotificheRicevute());
+        assertEquals(1, dispatcher.getNotificheUnite());
+        assertEquals(1, dispatcher.getBatchConsegnati());
+    }
+
+    @Test
+    public void testConsegnaAFineTransazione() {
+        TestObserver destinatario = new TestObserver();
+        // finestra lunghissima: la consegna può avvenire solo alla fine della transazione
+        DispatcherNotifiche dispatcher = new DispatcherNotifiche(destinatario, Runnable::run, TimeUnit.HOURS.toMillis(1));
+        Soggetto soggetto = new ConcreteTestSubject();
+        soggetto.aggiungi(dispatcher);
+
+        soggetto.iniziaTransazione();
+        for (int i = 0; i < 10; i++) {
+            soggetto.notificaOsservatori(EventoLibro.aggiornato(libro1, libro1Modificato));
+        }
+        assertTrue(destinatario.eventi.isEmpty());
+        soggetto.terminaTransazione();
+
+        assertEquals(1, destinatario.eventi.size());
+        assertEquals(EventoLibro.Tipo.UPDATED, destinatario.eventi.get(0).getTipo());
+        assertEquals(9, dispatcher.getNotificheUnite());
+    }
+}
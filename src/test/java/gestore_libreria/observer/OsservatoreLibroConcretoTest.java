@@ -1,6 +1,7 @@
 package gestore_libreria.observer;
 
 import gestore_libreria.db.GestoreLibroConcreto;
+import gestore_libreria.indice.ContatoreFacet;
 import gestore_libreria.model.Libro;
 import gestore_libreria.model.CriterioOrdinamento;
 import gestore_libreria.ui.PannelloLibriUI;
@@ -61,6 +62,16 @@ class OsservatoreLibroConcretoTest {
             return new ArrayList<>(books);
         }
 
+        @Override
+        public int contaLibri() {
+            return books.size();
+        }
+
+        @Override
+        public ContatoreFacet getContatoreFacet() {
+            return new ContatoreFacet();
+        }
+
         @Override
         public void aggiungi(OsservatoreLibro observer) {
             if (!observers.contains(observer)) {
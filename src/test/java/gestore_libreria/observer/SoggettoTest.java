@@ -1,5 +1,6 @@
 package gestore_libreria.observer;
 
+import gestore_libreria.model.Libro;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -12,6 +13,15 @@ public class SoggettoTest {
 
     private static class ConcreteTestSubject extends Soggetto {}
 
+    private static class TestObserverEventi extends TestObserver {
+        private EventoLibro ultimoEvento;
+
+        @Override
+        public void aggiorna(EventoLibro evento) {
+            ultimoEvento = evento;
+        }
+    }
+
     private static class TestObserver implements OsservatoreLibro {
 
         private int updateCount = 0;
@@ -63,4 +73,25 @@ public class SoggettoTest {
         assertEquals(0, observer1.getUpdateCount());
         assertEquals(1, observer2.getUpdateCount());
     }
+
+    @Test
+    public void testNotificaEvento() {
+        TestObserverEventi observerEventi = new TestObserverEventi();
+        Soggetto.aggiungi(observer1);
+        Soggetto.aggiungi(observerEventi);
+
+        Libro libro = new Libro.Costruttore("Il Nome della Rosa", "Umberto Eco").id(7).build();
+        Soggetto.notificaOsservatori(EventoLibro.aggiunto(libro));
+
+        // l'osservatore che non gestisce gli eventi riceve comunque aggiorna()
+        assertEquals(1, observer1.getUpdateCount());
+        assertEquals(0, observerEventi.getUpdateCount());
+        assertEquals(EventoLibro.Tipo.ADDED, observerEventi.ultimoEvento.getTipo());
+        assertSame(libro, observerEventi.ultimoEvento.getLibro());
+        assertEquals(7, observerEventi.ultimoEvento.getId());
+
+        Soggetto.notificaOsservatori();
+        assertEquals(EventoLibro.Tipo.RESET, observerEventi.ultimoEvento.getTipo());
+        assertEquals(-1, observerEventi.ultimoEvento.getId());
+    }
 }
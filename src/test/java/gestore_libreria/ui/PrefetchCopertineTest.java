@@ -0,0 +1,29 @@
+package gestore_libreria.ui;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrefetchCopertineTest {
+
+    @Test
+    public void testScrollLentoUnaSchermata() {
+        // 10 righe visibili, 5 righe al secondo: basta la schermata successiva
+        assertArrayEquals(new int[]{30, 39}, PrefetchCopertine.righeDaPrecaricare(20, 29, 1, 5, 1000));
+        assertArrayEquals(new int[]{19, 10}, PrefetchCopertine.righeDaPrecaricare(20, 29, -1, 5, 1000));
+    }
+
+    @Test
+    public void testScrollVelocePiuSchermate() {
+        // 50 righe al secondo: nel prossimo mezzo secondo si percorrono 25 righe, cioè 3 schermate
+        assertArrayEquals(new int[]{30, 59}, PrefetchCopertine.righeDaPrecaricare(20, 29, 1, 50, 1000));
+        // oltre il massimo di schermate la finestra non cresce
+        assertArrayEquals(new int[]{30, 59}, PrefetchCopertine.righeDaPrecaricare(20, 29, 1, 5000, 1000));
+    }
+
+    @Test
+    public void testBordiTabella() {
+        assertArrayEquals(new int[]{30, 34}, PrefetchCopertine.righeDaPrecaricare(20, 29, 1, 50, 35));
+        assertArrayEquals(new int[]{4, 0}, PrefetchCopertine.righeDaPrecaricare(5, 14, -1, 50, 100));
+    }
+}
@@ -0,0 +1,87 @@
+package gestore_libreria.ui;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SelezioneLibriTest {
+
+    // la riga 3 è ancora in caricamento, le altre mostrano il libro con id 10 * (riga + 1)
+    private final SelezioneLibri.Righe idRiga = riga -> riga == 3 ? 0 : 10 * (riga + 1);
+    private SelezioneLibri selezione;
+
+    @Before
+    public void setUp() {
+        selezione = new SelezioneLibri();
+    }
+
+    @Test
+    public void testClicSemplice() {
+        selezione.clic(idRiga, 0, false, false);
+        selezione.clic(idRiga, 2, false, false);
+        assertEquals(List.of(30), selezione.getIds());
+        assertFalse(selezione.isSelezionato(10));
+        assertTrue(selezione.isSelezionato(30));
+    }
+
+    @Test
+    public void testClicConCtrl() {
+        selezione.clic(idRiga, 0, false, false);
+        selezione.clic(idRiga, 4, true, false);
+        assertEquals(List.of(10, 50), selezione.getIds());
+
+        selezione.clic(idRiga, 0, true, false);
+        assertEquals(List.of(50), selezione.getIds());
+    }
+
+    @Test
+    public void testClicConShift() {
+        selezione.clic(idRiga, 5, false, false);
+        selezione.clic(idRiga, 1, false, true);
+        // la riga in caricamento non ha un libro da selezionare
+        assertEquals(List.of(20, 30, 50, 60), selezione.getIds());
+        assertEquals(4, selezione.getNumeroSelezionati());
+
+        // shift riparte dalla stessa ancora e sostituisce l'intervallo precedente
+        selezione.clic(idRiga, 6, false, true);
+        assertEquals(List.of(60, 70), selezione.getIds());
+    }
+
+    @Test
+    public void testShiftSuRigheInCaricamento() {
+        // le righe paginate risolvono l'intervallo per id, comprese quelle non ancora lette
+        List<int[]> intervalli = new ArrayList<>();
+        SelezioneLibri.Righe paginate = new SelezioneLibri.Righe() {
+            @Override
+            public int idRiga(int riga) {
+                return idRiga.idRiga(riga);
+            }
+
+            @Override
+            public List<Integer> idIntervallo(int prima, int ultima) {
+                intervalli.add(new int[]{prima, ultima});
+                return List.of(40, 50, 60);
+            }
+        };
+        selezione.clic(paginate, 5, false, false);
+        selezione.clic(paginate, 3, false, true);
+        assertEquals(List.of(40, 50, 60), selezione.getIds());
+        assertEquals(1, intervalli.size());
+        assertArrayEquals(new int[]{3, 5}, intervalli.get(0));
+    }
+
+    @Test
+    public void testSvuota() {
+        selezione.clic(idRiga, 0, false, false);
+        selezione.svuota();
+        assertTrue(selezione.isVuota());
+
+        // senza ancora shift si comporta come un clic semplice
+        selezione.clic(idRiga, 2, false, true);
+        assertEquals(List.of(30), selezione.getIds());
+    }
+}